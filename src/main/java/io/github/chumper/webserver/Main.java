@@ -6,10 +6,27 @@ import com.typesafe.config.ConfigFactory;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.Server;
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.data.CachingCommentRepository;
+import io.github.chumper.webserver.data.CommentRepository;
+import io.github.chumper.webserver.data.ConcurrentCommentRepository;
+import io.github.chumper.webserver.data.LogCommentRepository;
 import io.github.chumper.webserver.data.MongoDbCommentRepository;
+import io.github.chumper.webserver.data.WriteBehindCommentRepository;
+import io.github.chumper.webserver.files.DirectoryListings;
+import io.github.chumper.webserver.files.DirectoryWatcher;
+import io.github.chumper.webserver.files.FileCache;
+import io.github.chumper.webserver.files.FileIndex;
 import io.github.chumper.webserver.handler.HttpCommentHandler;
 import io.github.chumper.webserver.handler.HttpETagHandler;
 import io.github.chumper.webserver.handler.HttpFileHandler;
@@ -18,6 +35,7 @@ import io.github.chumper.webserver.handler.HttpRequestLogHandler;
 import io.github.chumper.webserver.handler.HttpRootHandler;
 import io.github.chumper.webserver.util.ConsoleLogger;
 import io.github.chumper.webserver.util.Logger;
+import io.github.chumper.webserver.util.Precompressor;
 
 /**
  * Main bootstrap class used to parse all configurations, to configure and start the server
@@ -38,31 +56,170 @@ public class Main {
         config.getInt("server.threads")
     );
 
+    // configure whether the workers are platform or virtual threads
+    server.setExecutorType(
+        Server.ExecutorType.valueOf(config.getString("server.executor").toUpperCase())
+    );
+
+    // configure whether connections are handled blocking or by event loops
+    server.setTransport(
+        Server.Transport.valueOf(config.getString("server.transport").toUpperCase()),
+        config.getInt("server.nio.eventLoops")
+    );
+
+    // reject requests with oversized heads or bodies
+    server.setRequestLimits(
+        config.getInt("server.http.maxRequestLineSize"),
+        config.getInt("server.http.maxHeaderSize"),
+        config.getInt("server.http.maxHeaderCount")
+    );
+    server.setMaxBodySize(config.getBytes("server.http.maxBodySize"));
+
+    // compress text responses for clients that accept it
+    if(config.getBoolean("server.http.compression.active")) {
+      server.setCompression(
+          config.getInt("server.http.compression.level"),
+          config.getBytes("server.http.compression.minSize"),
+          config.getStringList("server.http.compression.mimeTypes")
+      );
+    }
+
+    // answer requests with 503 whose asynchronous handler did not finish in time
+    server.setHandlerTimeout(config.getDuration("server.http.handlerTimeout").toMillis());
+
     // add handler that will work on /
-    server.addHttpHandler(new HttpRootHandler());
+    server.route(HttpBase.Method.GET, "/", new HttpRootHandler());
 
-    // if comments are active, add handler for that and give it a mongo repository
+    // if comments are active, add handler for that and give it a mongo repository. The database
+    // is called on its own threads, so a slow database does not occupy the workers
+    CachingCommentRepository commentCache = null;
+    WriteBehindCommentRepository commentWriter = null;
+    LogCommentRepository commentLog = null;
+    ConcurrentCommentRepository commentMemory = null;
+    HttpCommentHandler comments = null;
     if(config.getBoolean("server.comments.active")) {
-      server.addHttpHandler(new HttpCommentHandler(
-          new MongoDbCommentRepository(
+      ExecutorService commentExecutor = Executors.newFixedThreadPool(config.getInt("server.comments.threads"));
+      // the comments are either stored in the directory of the log, only in memory or in a mongo
+      // database
+      CommentRepository repository;
+      if(config.getString("server.comments.store").equals("memory")) {
+        commentMemory = new ConcurrentCommentRepository(
+            config.getInt("server.comments.memory.maxCount"),
+            config.getDuration("server.comments.memory.maxAge")
+        );
+        repository = commentMemory;
+      } else if(config.getString("server.comments.store").equals("log")) {
+        // a segment is mapped as a single buffer, which is indexed with an int
+        Long segmentSize = config.getBytes("server.comments.log.segmentSize");
+        if(segmentSize > Integer.MAX_VALUE) {
+          throw new IllegalArgumentException(
+              "server.comments.log.segmentSize must be at most " + Integer.MAX_VALUE +
+              " bytes, but is " + segmentSize);
+        }
+        commentLog = new LogCommentRepository(
+            Paths.get(config.getString("server.comments.log.directory")),
+            segmentSize.intValue(),
+            config.getBoolean("server.comments.log.sync")
+        );
+        repository = commentLog;
+      } else {
+        repository = new MongoDbCommentRepository(
             config.getString("server.comments.host"),
             config.getInt("server.comments.port")
-          )
-      ));
+        );
+      }
+      // keep the comments and the rendered page in memory until a comment is added or cleared
+      if(config.getBoolean("server.comments.cache")) {
+        commentCache = new CachingCommentRepository(repository);
+        repository = commentCache;
+      }
+      // write bursts of comments in batches, the cache sees them when they are written
+      if(config.getBoolean("server.comments.writeBehind.active")) {
+        commentWriter = new WriteBehindCommentRepository(
+            repository,
+            config.getInt("server.comments.writeBehind.queueSize"),
+            config.getInt("server.comments.writeBehind.batchSize"),
+            config.getDuration("server.comments.writeBehind.window").toMillis(),
+            WriteBehindCommentRepository.Durability.valueOf(config.getString(
+                "server.comments.writeBehind.durability").toUpperCase(Locale.ROOT)),
+            config.getDuration("server.comments.writeBehind.enqueueTimeout").toMillis()
+        );
+        repository = commentWriter;
+      }
+      comments = new HttpCommentHandler(
+          repository,
+          commentExecutor,
+          config.getInt("server.comments.pageSize")
+      );
+      server.routeAsync(HttpBase.Method.GET, "/comments", comments);
+      server.routeAsync(HttpBase.Method.POST, "/comments", comments);
+
+      // closed by the server when it stops: the handlers that are still running add their
+      // comments first, then the queued comments are written and the log is closed last
+      server.addCloseable(() -> {
+        commentExecutor.shutdown();
+        try {
+          commentExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      if(commentWriter != null) {
+        server.addCloseable(commentWriter);
+      }
+      if(commentLog != null) {
+        server.addCloseable(commentLog);
+      }
     }
 
     // if files are active add the handler and the etag handling
+    DirectoryWatcher watcher = null;
+    FileIndex fileIndex = null;
+    FileCache fileCache = null;
     if(config.getBoolean("server.files.active")) {
-      server.addHttpHandler(new HttpFileHandler(config.getString("server.files.root")));
-      server.addHttpHandler(new HttpETagHandler());
+      Path root = Paths.get(config.getString("server.files.root"));
+      // create the compressed variants of the static files once instead of for each request
+      if(config.getBoolean("server.files.precompress")) {
+        int created = new Precompressor(1024, 0.9).compress(root);
+        logger.log("Created {} precompressed files", created);
+      }
+      // the index and the cache learn about changes below the root from the same watcher
+      if(config.getBoolean("server.files.index") ||
+         config.getBoolean("server.files.cache.active")) {
+        watcher = new DirectoryWatcher(root);
+      }
+      // know every file up front, so requests for missing files do not touch the file system
+      if(config.getBoolean("server.files.index")) {
+        fileIndex = new FileIndex(watcher);
+        logger.log("Indexed {} paths", fileIndex.getCount());
+      }
+      // keep small hot files in memory, they are removed as soon as they change on disk
+      if(config.getBoolean("server.files.cache.active")) {
+        fileCache = new FileCache(
+            watcher,
+            config.getBytes("server.files.cache.maxSize"),
+            config.getBytes("server.files.cache.maxEntrySize"),
+            config.getBoolean("server.files.cache.offHeap")
+        );
+      }
+      // keep the sorted entries of listed directories until the directories change
+      DirectoryListings listings = null;
+      if(config.getLong("server.files.listingCache") > 0) {
+        listings = new DirectoryListings(config.getLong("server.files.listingCache"));
+      }
+      // everything below /files is served from the root
+      server.route(HttpBase.Method.GET, "/files/*", new HttpFileHandler(
+          config.getString("server.files.root"), fileCache, fileIndex, listings
+      ));
+      server.addFilter(new HttpETagHandler());
     }
 
     // add the keep alive handler so sockets can be reused
-    server.addHttpHandler(new HttpKeepAliveHandler());
+    server.addFilter(new HttpKeepAliveHandler());
 
     // add logging handler if active
     if(config.getBoolean("server.logging.active")) {
-      server.addHttpHandler(new HttpRequestLogHandler());
+      server.addFilter(new HttpRequestLogHandler());
     }
 
     // start the server and wait until it is started
@@ -74,7 +231,34 @@ public class Main {
 
     br.readLine();
 
-    // Stop the server
+    // Stop the server, it also writes the queued comments and closes the log
     server.stop();
+
+    if(comments != null) {
+      logger.log("{}", comments);
+    }
+    if(commentWriter != null) {
+      logger.log("{}", commentWriter);
+    }
+    if(commentLog != null) {
+      logger.log("{}", commentLog);
+    }
+    if(commentMemory != null) {
+      logger.log("{}", commentMemory);
+    }
+    if(commentCache != null) {
+      logger.log("{}", commentCache);
+    }
+
+    if(fileIndex != null) {
+      logger.log("{}", fileIndex);
+      fileIndex.close();
+    }
+    if(fileCache != null) {
+      logger.log("{}", fileCache);
+    }
+    if(watcher != null) {
+      watcher.close();
+    }
   }
 }
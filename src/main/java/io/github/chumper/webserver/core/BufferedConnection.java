@@ -0,0 +1,237 @@
+package io.github.chumper.webserver.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Base class for connections that keep a read buffer for the whole lifetime of the connection.
+ * Handlers can parse the buffered bytes directly and everything they did not consume stays in the
+ * buffer for the next message, the input stream of the connection will also return the buffered
+ * bytes first.
+ * Written data is buffered as well and only sent when the output stream is flushed or the
+ * connection needs to wait for more data, so the responses to pipelined requests leave in as few
+ * writes as possible.
+ */
+public abstract class BufferedConnection
+    implements Connection {
+
+  /**
+   * Initial size of the read buffer, it grows when a message does not fit into it
+   */
+  private static final int BUFFER_SIZE = 8192;
+  /**
+   * The maximum size of the read buffer, handlers need to consume the data before more can be read
+   */
+  private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+  private final InputStream inputStream = new BufferedConnectionInputStream();
+  private final OutputStream outputStream = new BufferedConnectionOutputStream();
+
+  /**
+   * Contains the data that has been read but not yet consumed, always in read mode
+   */
+  private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  /**
+   * Contains the data that has been written but not yet sent, always in write mode
+   */
+  private final ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+  /**
+   * State a handler wants to keep for this connection
+   */
+  private Object attachment;
+
+  protected BufferedConnection() {
+    buffer.flip();
+  }
+
+  /**
+   * Will read from the underlying connection into the given buffer
+   *
+   * @return the number of bytes read which can be 0 if no data is available, -1 if the connection
+   * was closed by the client
+   */
+  protected abstract int read(ByteBuffer target) throws IOException;
+
+  /**
+   * Will block until data is available to read
+   */
+  protected abstract void awaitReadable() throws IOException;
+
+  /**
+   * Will write all remaining bytes of the given buffers to the underlying connection, blocking if
+   * necessary. Implementations should use a gathering write so that all buffers leave in one
+   * system call.
+   */
+  protected abstract void send(ByteBuffer... sources) throws IOException;
+
+  /**
+   * Will write the given region of the file to the underlying connection, the buffered output has
+   * already been sent at this point
+   */
+  protected abstract void transfer(FileChannel file,
+                                   long position,
+                                   long count) throws IOException;
+
+  @Override
+  public InputStream getInputStream() {
+    return inputStream;
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return outputStream;
+  }
+
+  @Override
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Will send the buffered output first because the client might wait for it before it sends
+   * more data
+   */
+  @Override
+  public int fill() throws IOException {
+    outputStream.flush();
+    int read;
+    while ((read = readAvailable()) == 0) {
+      awaitReadable();
+    }
+    return read;
+  }
+
+  /**
+   * Small data is appended to the output buffer, larger data is sent together with the buffered
+   * output in one gathering write instead of copying it
+   */
+  @Override
+  public void write(ByteBuffer data) throws IOException {
+    if (data.remaining() <= output.remaining()) {
+      output.put(data);
+      return;
+    }
+    output.flip();
+    try {
+      send(output, data);
+    } finally {
+      output.clear();
+    }
+  }
+
+  @Override
+  public void transferFrom(FileChannel file,
+                           long position,
+                           long count) throws IOException {
+    outputStream.flush();
+    transfer(file, position, count);
+  }
+
+  @Override
+  public Object getAttachment() {
+    return attachment;
+  }
+
+  @Override
+  public void setAttachment(Object attachment) {
+    this.attachment = attachment;
+  }
+
+  /**
+   * Will read the data that is available into the buffer, the buffer grows if it is full
+   *
+   * @return the number of bytes read, -1 if the connection was closed by the client
+   * @throws IOException if the buffer reached its maximum size
+   */
+  protected int readAvailable() throws IOException {
+    buffer.compact();
+    try {
+      if (!buffer.hasRemaining()) {
+        if (buffer.capacity() >= MAX_BUFFER_SIZE) {
+          throw new IOException("Message does not fit into the buffer of the connection");
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_BUFFER_SIZE));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+      }
+      return read(buffer);
+    } finally {
+      buffer.flip();
+    }
+  }
+
+  /**
+   * Reads the buffered data first and then continues to read from the connection
+   */
+  private class BufferedConnectionInputStream
+      extends InputStream {
+
+    @Override
+    public int read() throws IOException {
+      if (!buffer.hasRemaining() && fill() == -1) {
+        return -1;
+      }
+      return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b,
+                    int off,
+                    int len) throws IOException {
+      if (len == 0) { return 0; }
+      if (!buffer.hasRemaining() && fill() == -1) {
+        return -1;
+      }
+      int length = Math.min(len, buffer.remaining());
+      buffer.get(b, off, length);
+      return length;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+  /**
+   * Collects small writes in the output buffer, writes that do not fit into it are sent together
+   * with the buffered data
+   */
+  private class BufferedConnectionOutputStream
+      extends OutputStream {
+
+    @Override
+    public void write(int b) throws IOException {
+      if (!output.hasRemaining()) {
+        flush();
+      }
+      output.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b,
+                      int off,
+                      int len) throws IOException {
+      if (len <= output.remaining()) {
+        output.put(b, off, len);
+      } else {
+        BufferedConnection.this.write(ByteBuffer.wrap(b, off, len));
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (output.position() == 0) { return; }
+      output.flip();
+      try {
+        BufferedConnection.this.send(output);
+      } finally {
+        output.clear();
+      }
+    }
+  }
+}
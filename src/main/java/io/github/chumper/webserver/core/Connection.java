@@ -0,0 +1,79 @@
+package io.github.chumper.webserver.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link Connection} is the transport independent view on a connected client. Handlers read the
+ * request from the input stream and write the response to the output stream, no matter if the
+ * server uses the blocking or the non blocking transport underneath.
+ */
+public interface Connection {
+
+  /**
+   * The stream to read incoming data from, reading blocks until data is available or the
+   * connection timed out. Data that is still in the buffer will be returned first.
+   */
+  InputStream getInputStream() throws IOException;
+
+  /**
+   * The data that has been received but not yet consumed, in read mode. Handlers can parse it in
+   * place and advance the position for everything they consumed, the rest stays buffered for the
+   * next message of the connection.
+   */
+  ByteBuffer getBuffer();
+
+  /**
+   * Will send the buffered output and block until more data has been received and appends it to
+   * the buffer
+   *
+   * @return the number of bytes appended, -1 if the client closed the connection
+   */
+  int fill() throws IOException;
+
+  /**
+   * The stream to write outgoing data to. Written data is buffered until the stream is flushed or
+   * the connection waits for more incoming data, so handlers do not need to flush after each
+   * message.
+   */
+  OutputStream getOutputStream() throws IOException;
+
+  /**
+   * Will write the remaining bytes of the given buffer after the data that has already been written
+   * to the output stream, without copying large buffers
+   */
+  void write(ByteBuffer data) throws IOException;
+
+  /**
+   * Will write the given region of the file to the connection. Implementations should use
+   * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} so the data
+   * does not need to be copied into the heap.
+   *
+   * @param file     The file to send
+   * @param position The first byte to send
+   * @param count    The number of bytes to send
+   */
+  void transferFrom(FileChannel file,
+                    long position,
+                    long count) throws IOException;
+
+  /**
+   * State that a handler wants to keep for the lifetime of the connection, e.g. a parser
+   */
+  Object getAttachment();
+
+  void setAttachment(Object attachment);
+
+  /**
+   * Whether this connection has been closed
+   */
+  boolean isClosed();
+
+  /**
+   * Will close the underlying connection
+   */
+  void close() throws IOException;
+}
@@ -1,8 +1,14 @@
 package io.github.chumper.webserver.core;
 
+import java.util.Collection;
+
+import io.github.chumper.webserver.core.http.AsyncHttpHandler;
+import io.github.chumper.webserver.core.http.HttpBase;
 import io.github.chumper.webserver.core.http.HttpHandler;
 import io.github.chumper.webserver.core.http.HttpRequest;
 import io.github.chumper.webserver.core.pipeline.HttpPipeline;
+import io.github.chumper.webserver.core.pipeline.HttpRouter;
+import io.github.chumper.webserver.core.pipeline.ResponseCompressor;
 
 /**
  * The {@link HttpServer} extends the {@link Server} and adds handler that will interpret the
@@ -29,10 +35,83 @@ public class HttpServer
   }
 
   /**
-   * Will add the given handler to the Http pipeline
+   * Will let the handler answer the requests with the method and a path that matches the pattern,
+   * see {@link HttpRouter}
+   */
+  public void route(HttpBase.Method method,
+                    String pattern,
+                    HttpHandler httpHandler) {
+    this.httpPipeline.route(method, pattern, httpHandler);
+  }
+
+  /**
+   * Will let the asynchronous handler answer the requests with the method and a path that matches
+   * the pattern, see {@link AsyncHttpHandler}
+   */
+  public void routeAsync(HttpBase.Method method,
+                         String pattern,
+                         AsyncHttpHandler httpHandler) {
+    this.httpPipeline.routeAsync(method, pattern, httpHandler);
+  }
+
+  /**
+   * Will add a handler to the Http pipeline that sees every request after its route
+   */
+  public void addFilter(HttpHandler filter) {
+    this.httpPipeline.addFilter(filter);
+  }
+
+  /**
+   * Will add a handler that sees every request, like before there were routes. It is added as a
+   * filter, so it runs after the route and a request without a route already has a 404 that the
+   * handler has to replace when it answers the request.
+   *
+   * @deprecated Use {@link #route} for the requests the handler answers, or {@link #addFilter} if
+   * it has to see every response
    */
+  @Deprecated
   public void addHttpHandler(HttpHandler httpHandler) {
-    this.httpPipeline.addHttpHandler(httpHandler);
+    addFilter(httpHandler);
+  }
+
+  /**
+   * Will configure the limits for the head of incoming requests, see
+   * {@link HttpPipeline#setRequestLimits(int, int, int)}
+   */
+  public void setRequestLimits(int maxRequestLineSize,
+                               int maxHeaderSize,
+                               int maxHeaderCount) {
+    this.httpPipeline.setRequestLimits(maxRequestLineSize, maxHeaderSize, maxHeaderCount);
+  }
+
+  /**
+   * Will configure the maximum size of request bodies, see
+   * {@link HttpPipeline#setMaxBodySize(long)}
+   */
+  public void setMaxBodySize(long maxBodySize) {
+    this.httpPipeline.setMaxBodySize(maxBodySize);
+  }
+
+  /**
+   * Will configure how long asynchronous handlers may take, see
+   * {@link HttpPipeline#setHandlerTimeout(long)}
+   */
+  public void setHandlerTimeout(long handlerTimeout) {
+    this.httpPipeline.setHandlerTimeout(handlerTimeout);
+  }
+
+  /**
+   * Will compress responses of the given content types that are larger than the given size, see
+   * {@link ResponseCompressor}
+   *
+   * @param level     The compression level from 1 (fastest) to 9 (smallest)
+   * @param minSize   The minimum number of bytes of a body to be compressed
+   * @param mimeTypes The content types that will be compressed
+   */
+  public void setCompression(int level,
+                             long minSize,
+                             Collection<String> mimeTypes) {
+    this.httpPipeline.setCompressor(new ResponseCompressor(level, minSize, mimeTypes));
   }
 
   @Override
@@ -1,8 +1,11 @@
 package io.github.chumper.webserver.core;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -10,6 +13,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import io.github.chumper.webserver.core.nio.EventLoop;
 import io.github.chumper.webserver.core.pipeline.SocketHandler;
 import io.github.chumper.webserver.util.ConsoleLogger;
 import io.github.chumper.webserver.util.Logger;
@@ -20,10 +24,28 @@ import io.github.chumper.webserver.util.Logger;
  */
 public abstract class Server {
 
+  /**
+   * The transports the server can use for its connections. BLOCKING will occupy a worker thread
+   * for the whole lifetime of a connection while NIO uses event loops to wait for data and only
+   * occupies a worker thread while a message is processed.
+   */
+  public enum Transport { BLOCKING, NIO }
+
+  /**
+   * The kind of worker pool. POOL uses a fixed number of platform threads while VIRTUAL starts a
+   * new virtual thread for each task, so blocking handlers do not limit the number of concurrent
+   * connections. VIRTUAL falls back to POOL on JVMs without virtual threads.
+   */
+  public enum ExecutorType { POOL, VIRTUAL }
+
   /**
    * The port the server will listen on
    */
   private int port;
+  /**
+   * The number of threads for the worker pool
+   */
+  private int threads;
   /**
    * Used to start the server async and provide a method to listen when the server started and is
    * ready to accept requests
@@ -37,6 +59,10 @@ public abstract class Server {
    * The socked that accepts the incomming messages
    */
   private ServerSocket ss;
+  /**
+   * The thread that accepts the connections
+   */
+  private SocketListenerThread socketListener;
   /**
    * Simple logger to log all events
    */
@@ -46,6 +72,22 @@ public abstract class Server {
    * processing
    */
   private List<SocketHandler> socketHandlers = new ArrayList<>();
+  /**
+   * The transport used for the connections
+   */
+  private Transport transport = Transport.BLOCKING;
+  /**
+   * The number of event loops used by the NIO transport
+   */
+  private int eventLoopCount = 1;
+  /**
+   * The event loops that wait for data when the NIO transport is used
+   */
+  private List<EventLoop> eventLoops = new ArrayList<>();
+  /**
+   * The resources that are closed when the server stops
+   */
+  private List<Closeable> closeables = new ArrayList<>();
 
   /**
    * Creates a server that will listen on the given port when started
@@ -56,6 +98,7 @@ public abstract class Server {
   public Server(int port,
                 int threads) {
     this.port = port;
+    this.threads = threads;
     this.executor = Executors.newFixedThreadPool(threads);
   }
 
@@ -68,6 +111,60 @@ public abstract class Server {
     this.socketHandlers.add(handler);
   }
 
+  /**
+   * Will close the given resource when the server stops, once no more requests are accepted. The
+   * resources are closed in the order they were added, so a resource that writes into another one
+   * has to be added before it.
+   *
+   * @param closeable The resource to close
+   */
+  public void addCloseable(Closeable closeable) {
+    this.closeables.add(closeable);
+  }
+
+  /**
+   * Will configure the transport that is used for the connections, needs to be called before the
+   * server is started.
+   *
+   * @param transport  The transport to use
+   * @param eventLoops The number of event loops, only used by the NIO transport
+   */
+  public void setTransport(Transport transport,
+                           int eventLoops) {
+    this.transport = transport;
+    this.eventLoopCount = Math.max(1, eventLoops);
+  }
+
+  /**
+   * Will configure the kind of worker pool, needs to be called before the server is started.
+   *
+   * @param executorType The kind of worker pool to use
+   */
+  public void setExecutorType(ExecutorType executorType) {
+    ExecutorService virtualExecutor;
+    if (executorType == ExecutorType.VIRTUAL && (virtualExecutor = newVirtualExecutor()) != null) {
+      this.executor.shutdown();
+      this.executor = virtualExecutor;
+    } else if (executorType == ExecutorType.VIRTUAL) {
+      logger.log("Virtual threads are not supported by this JVM, using a pool of {} threads", threads);
+    }
+  }
+
+  /**
+   * Virtual threads are only available since Java 21, so the executor is created via reflection
+   * to keep the server running on older JVMs.
+   *
+   * @return An executor that starts a virtual thread per task or null if not supported
+   */
+  private static ExecutorService newVirtualExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
   /**
    * Will start the server in a new thread and returns a future that will complete when the server
    * has been started
@@ -79,7 +176,20 @@ public abstract class Server {
 
     registerHandler();
 
-    SocketListenerThread socketListener = new SocketListenerThread(port);
+    if (transport == Transport.NIO) {
+      try {
+        for (int i = 0; i < eventLoopCount; i++) {
+          EventLoop eventLoop = new EventLoop(i, executor, socketHandlers);
+          eventLoop.start();
+          eventLoops.add(eventLoop);
+        }
+      } catch (IOException e) {
+        logger.log("Could not open the event loops: {}", e.getMessage());
+        return CompletableFuture.completedFuture(false);
+      }
+    }
+
+    socketListener = new SocketListenerThread(port);
     socketListener.start();
 
     return CompletableFuture.supplyAsync(() -> {
@@ -94,12 +204,33 @@ public abstract class Server {
 
   /**
    * Will stop the server and closes the sockets and shutdown the worker threads. All buffered
-   * request will be discarded and no new connections will be accepted.
+   * request will be discarded and no new connections will be accepted. Afterwards the added
+   * resources are closed.
    */
   public void stop() throws IOException {
 
     ss.close();
-    executor.shutdown();
+    // interrupting the workers closes the connections of the blocking transport that wait for the
+    // next request, otherwise they would still be served by this server until they time out
+    executor.shutdownNow();
+    eventLoops.forEach(EventLoop::shutdown);
+
+    // a channel is only released when the accepting thread left the accept call, so we wait for
+    // it to be able to bind the port again right away
+    try {
+      socketListener.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    // a resource that can not be closed does not keep the others open
+    for (Closeable closeable : closeables) {
+      try {
+        closeable.close();
+      } catch (IOException | RuntimeException e) {
+        logger.log("Could not close {}: {}", closeable, e.getMessage());
+      }
+    }
 
     logger.log("Server stopped");
   }
@@ -116,7 +247,8 @@ public abstract class Server {
 
     public void run() {
       try {
-        ss = new ServerSocket();
+        // the socket is backed by a channel so that the NIO transport can use it as well
+        ss = ServerSocketChannel.open().socket();
         ss.setReuseAddress(true);
         ss.setSoTimeout(0);
         ss.bind(new InetSocketAddress(port), 20000);
@@ -130,16 +262,25 @@ public abstract class Server {
       } catch (IOException e) {
         // we dont want to clutter the console with stacktraces in this simple exercise
         logger.log("Could not open the socket on port {}: {}", port, e.getMessage());
+        eventLoops.forEach(EventLoop::shutdown);
         startLatch.countDown();
       }
     }
 
     private void acceptData() {
+      int next = 0;
       while (true) {
         try {
-          if (executor.isTerminated()) { break; }
+          if (executor.isTerminated() || ss.isClosed()) { break; }
 
-          executor.execute(new SocketProcessor(ss.accept(), socketHandlers));
+          Socket socket = ss.accept();
+          if (transport == Transport.NIO) {
+            // distribute the connections evenly over all event loops
+            eventLoops.get(next).register(socket.getChannel());
+            next = (next + 1) % eventLoops.size();
+          } else {
+            executor.execute(new SocketProcessor(socket, socketHandlers));
+          }
 
         } catch (IOException e) {
           // I/O error in reading/writing data, or server closed while
@@ -0,0 +1,106 @@
+package io.github.chumper.webserver.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A {@link Connection} backed by a blocking socket, used by the thread per connection transport
+ */
+class SocketConnection
+    extends BufferedConnection {
+
+  /**
+   * The socket to wrap
+   */
+  private final Socket socket;
+
+  SocketConnection(Socket socket) {
+    this.socket = socket;
+  }
+
+  @Override
+  protected int read(ByteBuffer target) throws IOException {
+    int read = socket.getInputStream()
+        .read(target.array(), target.arrayOffset() + target.position(), target.remaining());
+    if (read > 0) {
+      target.position(target.position() + read);
+    }
+    return read;
+  }
+
+  @Override
+  protected void awaitReadable() {
+    // reading from the socket blocks already
+  }
+
+  @Override
+  protected void send(ByteBuffer... sources) throws IOException {
+    if (socket.getChannel() != null) {
+      // the channel of an accepted socket is blocking, so each write sends all it can
+      long remaining = remaining(sources);
+      while (remaining > 0) {
+        remaining -= socket.getChannel().write(sources);
+      }
+      return;
+    }
+    for (ByteBuffer source : sources) {
+      if (!source.hasArray()) {
+        // direct and read-only buffers are copied by the channel
+        WritableByteChannel target = Channels.newChannel(socket.getOutputStream());
+        while (source.hasRemaining()) {
+          target.write(source);
+        }
+        continue;
+      }
+      socket.getOutputStream()
+          .write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+      source.position(source.limit());
+    }
+  }
+
+  @Override
+  protected void transfer(FileChannel file,
+                           long position,
+                           long count) throws IOException {
+    // sockets that have been accepted by a channel can use sendfile, others need to copy the data
+    WritableByteChannel target = socket.getChannel() != null
+                                 ? socket.getChannel()
+                                 : Channels.newChannel(socket.getOutputStream());
+    long end = position + count;
+    while (position < end) {
+      long transferred = file.transferTo(position, end - position, target);
+      if (transferred == 0) {
+        throw new EOFException("File is shorter than expected");
+      }
+      position += transferred;
+    }
+  }
+
+  private static long remaining(ByteBuffer[] buffers) {
+    long remaining = 0;
+    for (ByteBuffer buffer : buffers) {
+      remaining += buffer.remaining();
+    }
+    return remaining;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return socket.isClosed();
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+
+  @Override
+  public String toString() {
+    return socket.toString();
+  }
+}
@@ -26,11 +26,16 @@ class SocketProcessor
    * similar to the netty pipeline but much more simple and less robust.
    */
   private List<SocketHandler> socketHandlers;
+  /**
+   * The view on the socket that will be passed to the handlers
+   */
+  private Connection connection;
 
   SocketProcessor(Socket socket,
                   List<SocketHandler> socketHandlers) {
     this.socket = socket;
     this.socketHandlers = socketHandlers;
+    this.connection = new SocketConnection(socket);
   }
 
   @Override
@@ -43,7 +48,7 @@ class SocketProcessor
       while(!socket.isClosed()) {
         SocketHandler.State state;
         for (SocketHandler socketHandler : socketHandlers) {
-          state = socketHandler.process(socket);
+          state = socketHandler.process(connection);
           // when a handler returns no response we will asume that the pipeline should be interrupted
           // This could be more robust (e.g. exceptions or a pipeline status object) but should be enough for now.
           if (state == SocketHandler.State.DISCARD) {
@@ -57,6 +62,10 @@ class SocketProcessor
       logger.log("Could not configure the socket: {}", e.getMessage());
     } finally {
       try {
+        // send what the handlers wrote before the socket is closed
+        if (!socket.isClosed()) {
+          connection.getOutputStream().flush();
+        }
         // just in case a handler did not clean, we will do it here
         socket.shutdownInput();
         socket.shutdownOutput();
@@ -0,0 +1,40 @@
+package io.github.chumper.webserver.core.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * The asynchronous variant of the {@link HttpHandler} for handlers that wait for I/O, e.g. for a
+ * database. The handler returns as soon as it started its work and completes the returned stage
+ * once the response is ready. The server does not occupy a worker thread in the meantime when the
+ * non blocking transport is used, and the response is sent in the order of the requests.
+ *
+ * The request body has to be read before the handler returns, as the connection is only read by
+ * the worker thread.
+ */
+public interface AsyncHttpHandler {
+
+  /**
+   * A completed stage for handlers that answered right away
+   */
+  CompletionStage<Void> COMPLETED = CompletableFuture.completedFuture(null);
+
+  /**
+   * @param request  The incoming {@link HttpRequest}
+   * @param response The response that will be returned to the client once the stage completed
+   * @return a stage that completes when the response is ready, exceptionally if it failed
+   */
+  CompletionStage<Void> handle(HttpRequest request,
+                               HttpResponse response);
+
+  /**
+   * Will adapt a synchronous handler, the returned handler answers before it returns and throws
+   * the exceptions of the handler to the caller
+   */
+  static AsyncHttpHandler of(HttpHandler handler) {
+    return (request, response) -> {
+      handler.handle(request, response);
+      return COMPLETED;
+    };
+  }
+}
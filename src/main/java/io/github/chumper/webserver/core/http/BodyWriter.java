@@ -0,0 +1,19 @@
+package io.github.chumper.webserver.core.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Produces the body of a streamed response. It is called when the head of the response has been
+ * sent, everything written to the stream goes to the client without being held in memory as a
+ * whole. Calling {@link OutputStream#flush()} sends what has been written so far.
+ */
+@FunctionalInterface
+public interface BodyWriter {
+
+  /**
+   * Will write the body to the given stream, the stream must not be used after this method returned
+   * @param outputStream The stream to the client
+   */
+  void writeTo(OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,48 @@
+package io.github.chumper.webserver.core.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import io.github.chumper.webserver.core.Connection;
+
+/**
+ * A {@link ResponseBody} that sends content that is already in memory, e.g. a cached file. The
+ * buffer is shared between responses and never modified, each response sends its own view of it.
+ */
+public class BufferRegion
+    implements SliceableBody {
+
+  /**
+   * The content to send, read-only
+   */
+  private final ByteBuffer content;
+
+  public BufferRegion(ByteBuffer content) {
+    this.content = content.asReadOnlyBuffer();
+  }
+
+  /**
+   * A read-only view of the content
+   */
+  public ByteBuffer getContent() {
+    return content.duplicate();
+  }
+
+  @Override
+  public long getLength() {
+    return content.remaining();
+  }
+
+  @Override
+  public BufferRegion slice(ByteRange range) {
+    ByteBuffer slice = content.duplicate();
+    slice.position(content.position() + (int) range.getFirst());
+    slice.limit(slice.position() + (int) range.getLength());
+    return new BufferRegion(slice);
+  }
+
+  @Override
+  public void writeTo(Connection connection) throws IOException {
+    connection.write(content.duplicate());
+  }
+}
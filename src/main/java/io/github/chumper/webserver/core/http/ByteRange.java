@@ -0,0 +1,131 @@
+package io.github.chumper.webserver.core.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A range of bytes of a representation as requested by the Range header, see
+ * https://tools.ietf.org/html/rfc7233#section-2.1
+ */
+public class ByteRange {
+
+  /**
+   * Requests with more ranges are served completely, so clients can not make the server send
+   * thousands of tiny parts
+   */
+  public static final int MAX_RANGES = 16;
+
+  private static final String BYTES_UNIT = "bytes=";
+
+  /**
+   * The first byte of the range
+   */
+  private final long first;
+  /**
+   * The last byte of the range, inclusive
+   */
+  private final long last;
+
+  public ByteRange(long first,
+                   long last) {
+    this.first = first;
+    this.last = last;
+  }
+
+  public long getFirst() {
+    return first;
+  }
+
+  public long getLast() {
+    return last;
+  }
+
+  public long getLength() {
+    return last - first + 1;
+  }
+
+  /**
+   * The value of the Content-Range header for this range
+   */
+  public String toContentRange(long length) {
+    return "bytes " + first + "-" + last + "/" + length;
+  }
+
+  /**
+   * Will parse the value of a Range header against a representation of the given length.
+   * Overlapping and adjacent ranges are merged and sorted by their position.
+   *
+   * @return null if the header is invalid or has too many ranges and should be ignored, an empty
+   * list if no range can be satisfied
+   */
+  public static List<ByteRange> parse(String header,
+                                      long length) {
+    if (header == null || !header.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+      return null;
+    }
+    String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+    if (specs.length > MAX_RANGES) {
+      return null;
+    }
+
+    List<ByteRange> ranges = new ArrayList<>();
+    for (String spec : specs) {
+      spec = spec.trim();
+      int dash = spec.indexOf('-');
+      if (dash == -1) {
+        return null;
+      }
+      try {
+        if (dash == 0) {
+          // suffix range, the last n bytes
+          long suffix = Long.parseLong(spec.substring(1));
+          if (suffix < 0) {
+            return null;
+          }
+          if (suffix > 0 && length > 0) {
+            ranges.add(new ByteRange(Math.max(0, length - suffix), length - 1));
+          }
+        } else {
+          long first = Long.parseLong(spec.substring(0, dash));
+          long last = dash == spec.length() - 1 ? length - 1
+                                                : Long.parseLong(spec.substring(dash + 1));
+          if (first < 0 || (dash < spec.length() - 1 && last < first)) {
+            return null;
+          }
+          if (first < length) {
+            ranges.add(new ByteRange(first, Math.min(last, length - 1)));
+          }
+        }
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+    return merge(ranges);
+  }
+
+  private static List<ByteRange> merge(List<ByteRange> ranges) {
+    if (ranges.size() < 2) {
+      return ranges;
+    }
+    Collections.sort(ranges, Comparator.comparingLong(ByteRange::getFirst));
+    List<ByteRange> merged = new ArrayList<>();
+    ByteRange current = ranges.get(0);
+    for (ByteRange range : ranges.subList(1, ranges.size())) {
+      if (range.first <= current.last + 1) {
+        current = new ByteRange(current.first, Math.max(current.last, range.last));
+      } else {
+        merged.add(current);
+        current = range;
+      }
+    }
+    merged.add(current);
+    return merged;
+  }
+
+  @Override
+  public String toString() {
+    return first + "-" + last;
+  }
+}
@@ -0,0 +1,62 @@
+package io.github.chumper.webserver.core.http;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import io.github.chumper.webserver.core.Connection;
+
+/**
+ * A {@link ResponseBody} that sends a region of a file. The file is not read into memory, the
+ * connection will transfer it directly from the file system to the socket.
+ */
+public class FileRegion
+    implements SliceableBody {
+
+  /**
+   * The file to send
+   */
+  private final Path path;
+  /**
+   * The first byte of the file to send
+   */
+  private final long position;
+  /**
+   * The number of bytes to send
+   */
+  private final long count;
+
+  public FileRegion(Path path,
+                    long position,
+                    long count) {
+    this.path = path;
+    this.position = position;
+    this.count = count;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public long getPosition() {
+    return position;
+  }
+
+  @Override
+  public FileRegion slice(ByteRange range) {
+    return new FileRegion(path, position + range.getFirst(), range.getLength());
+  }
+
+  @Override
+  public long getLength() {
+    return count;
+  }
+
+  @Override
+  public void writeTo(Connection connection) throws IOException {
+    try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+      connection.transferFrom(file, position, count);
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package io.github.chumper.webserver.core.http;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Provides the Date header of the responses. The header only changes once per second, so instead
+ * of formatting it for every response a daemon thread formats it when the second changes and all
+ * responses share the encoded bytes.
+ */
+public final class HttpClock {
+
+  /**
+   * The complete header line including the line break
+   */
+  private static volatile byte[] dateHeader = encode(System.currentTimeMillis());
+
+  static {
+    Thread clock = new Thread(HttpClock::run, "HttpClock");
+    clock.setDaemon(true);
+    clock.start();
+  }
+
+  private HttpClock() {
+  }
+
+  /**
+   * The encoded line {@code Date: <IMF-fixdate>\r\n} of the current second, must not be modified
+   */
+  public static byte[] dateHeader() {
+    return dateHeader;
+  }
+
+  private static void run() {
+    while (true) {
+      long now = System.currentTimeMillis();
+      try {
+        // wake up right after the next second started
+        Thread.sleep(1000 - now % 1000);
+      } catch (InterruptedException e) {
+        return;
+      }
+      dateHeader = encode(System.currentTimeMillis());
+    }
+  }
+
+  private static byte[] encode(long time) {
+    return ("Date: " + HttpDate.format(time) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+  }
+}
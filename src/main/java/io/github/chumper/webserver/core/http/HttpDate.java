@@ -0,0 +1,294 @@
+package io.github.chumper.webserver.core.http;
+
+/**
+ * Formats and parses the dates of HTTP headers, see
+ * https://tools.ietf.org/html/rfc7231#section-7.1.1.1
+ *
+ * Dates are always sent as IMF-fixdate, e.g. {@code Sun, 06 Nov 1994 08:49:37 GMT}. Received
+ * dates may also use the obsolete RFC 850 format {@code Sunday, 06-Nov-94 08:49:37 GMT} or the
+ * asctime format {@code Sun Nov  6 08:49:37 1994}.
+ *
+ * Unlike a shared SimpleDateFormat all methods are thread-safe without locks. Parsing works on
+ * the characters directly and allocates nothing, and the formatted dates of recent timestamps are
+ * kept, as the same modification times are sent again and again.
+ */
+public final class HttpDate {
+
+  /**
+   * Returned by {@link #parse(CharSequence)} for values that are no valid date
+   */
+  public static final long INVALID = Long.MIN_VALUE;
+
+  /**
+   * The 1st of January 1970 was a Thursday
+   */
+  private static final String[] DAYS = {"Thu", "Fri", "Sat", "Sun", "Mon", "Tue", "Wed"};
+  private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun",
+                                          "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+  private static final long SECONDS_PER_DAY = 86400;
+
+  /**
+   * The number of formatted dates that are kept, must be a power of two
+   */
+  private static final int CACHE_SIZE = 256;
+
+  /**
+   * Each timestamp has a single slot that is simply overwritten. The entries are immutable, so
+   * threads may see an older entry of a slot but never a half written one.
+   */
+  private static final Entry[] cache = new Entry[CACHE_SIZE];
+
+  private HttpDate() {
+  }
+
+  /**
+   * @param millis The milliseconds since the epoch, they are cut to the second
+   * @return the IMF-fixdate of the time
+   */
+  public static String format(long millis) {
+    long seconds = Math.floorDiv(millis, 1000);
+    int slot = (int) ((seconds * 0x9E3779B97F4A7C15L) >>> 56) & (CACHE_SIZE - 1);
+    Entry entry = cache[slot];
+    if (entry != null && entry.seconds == seconds) {
+      return entry.value;
+    }
+    String value = encode(seconds);
+    cache[slot] = new Entry(seconds, value);
+    return value;
+  }
+
+  /**
+   * @param value A date in one of the three formats, may be null
+   * @return the seconds since the epoch or {@link #INVALID}
+   */
+  public static long parse(CharSequence value) {
+    if (value == null || value.length() < 24) {
+      return INVALID;
+    }
+    if (value.charAt(3) == ',') {
+      return parseFixdate(value);
+    }
+    if (value.charAt(3) == ' ') {
+      return parseAsctime(value);
+    }
+    return parseRfc850(value);
+  }
+
+  /**
+   * Sun, 06 Nov 1994 08:49:37 GMT
+   */
+  private static long parseFixdate(CharSequence value) {
+    if (value.length() != 29 || value.charAt(4) != ' ' || value.charAt(7) != ' ' ||
+        value.charAt(11) != ' ' || value.charAt(16) != ' ' || !isGmt(value, 25)) {
+      return INVALID;
+    }
+    return toSeconds(digits(value, 12, 4), month(value, 8), digits(value, 5, 2), value, 17);
+  }
+
+  /**
+   * Sunday, 06-Nov-94 08:49:37 GMT
+   */
+  private static long parseRfc850(CharSequence value) {
+    int comma = 6;
+    while (comma < 10 && comma < value.length() && value.charAt(comma) != ',') {
+      comma++;
+    }
+    int start = comma + 2;
+    if (value.length() != start + 22 || value.charAt(comma) != ',' ||
+        value.charAt(comma + 1) != ' ' || value.charAt(start + 2) != '-' ||
+        value.charAt(start + 6) != '-' || !isGmt(value, start + 18)) {
+      return INVALID;
+    }
+    int year = digits(value, start + 7, 2);
+    if (year < 0) {
+      return INVALID;
+    }
+    // the year is the one with these digits that is at most 50 years in the future
+    int current = yearOf(Math.floorDiv(System.currentTimeMillis(), 1000 * SECONDS_PER_DAY));
+    year = current - Math.floorMod(current - year, 100);
+    if (year + 100 <= current + 50) {
+      year += 100;
+    }
+    return toSeconds(year, month(value, start + 3), digits(value, start, 2), value, start + 10);
+  }
+
+  /**
+   * Sun Nov  6 08:49:37 1994
+   */
+  private static long parseAsctime(CharSequence value) {
+    if (value.length() != 24 || value.charAt(7) != ' ' || value.charAt(10) != ' ' ||
+        value.charAt(19) != ' ') {
+      return INVALID;
+    }
+    // single digit days are padded with a space
+    int day = value.charAt(8) == ' ' ? digits(value, 9, 1) : digits(value, 8, 2);
+    return toSeconds(digits(value, 20, 4), month(value, 4), day, value, 11);
+  }
+
+  /**
+   * @param time The position of the time of day as HH:MM:SS
+   */
+  private static long toSeconds(int year,
+                                int month,
+                                int day,
+                                CharSequence value,
+                                int time) {
+    if (value.charAt(time + 2) != ':' || value.charAt(time + 5) != ':') {
+      return INVALID;
+    }
+    int hour = digits(value, time, 2);
+    int minute = digits(value, time + 3, 2);
+    // 60 is a leap second
+    int second = digits(value, time + 6, 2);
+    if (year < 0 || month < 0 || day < 1 || day > daysOfMonth(year, month) || hour < 0 ||
+        hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+      return INVALID;
+    }
+    return daysOf(year, month + 1, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+  }
+
+  private static boolean isGmt(CharSequence value,
+                               int position) {
+    return value.charAt(position) == ' ' && value.charAt(position + 1) == 'G' &&
+           value.charAt(position + 2) == 'M' && value.charAt(position + 3) == 'T';
+  }
+
+  /**
+   * @return the month from 0 to 11, -1 if there is no month at the position
+   */
+  private static int month(CharSequence value,
+                           int position) {
+    for (int month = 0; month < MONTHS.length; month++) {
+      String name = MONTHS[month];
+      if (value.charAt(position) == name.charAt(0) &&
+          value.charAt(position + 1) == name.charAt(1) &&
+          value.charAt(position + 2) == name.charAt(2)) {
+        return month;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the decimal number, -1 if one of the characters is no digit
+   */
+  private static int digits(CharSequence value,
+                            int position,
+                            int count) {
+    int number = 0;
+    for (int i = position; i < position + count; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      number = number * 10 + c - '0';
+    }
+    return number;
+  }
+
+  /**
+   * @param month The month from 0 to 11
+   */
+  private static int daysOfMonth(int year,
+                                 int month) {
+    if (month == 1) {
+      boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+      return leap ? 29 : 28;
+    }
+    return month == 3 || month == 5 || month == 8 || month == 10 ? 30 : 31;
+  }
+
+  /**
+   * The days since the epoch of a date of the proleptic Gregorian calendar, see
+   * http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+   *
+   * @param month The month from 1 to 12
+   */
+  private static long daysOf(long year,
+                             int month,
+                             int day) {
+    year -= month <= 2 ? 1 : 0;
+    long era = Math.floorDiv(year, 400);
+    long yearOfEra = year - era * 400;
+    long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  /**
+   * The year of {@link #civil(long)} without the array
+   */
+  private static int yearOf(long days) {
+    long z = days + 719468;
+    long era = Math.floorDiv(z, 146097);
+    long dayOfEra = z - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    // March is the first month of these years, so January and February belong to the next one
+    return (int) (yearOfEra + era * 400 + (dayOfYear >= 306 ? 1 : 0));
+  }
+
+  /**
+   * The reverse of {@link #daysOf(long, int, int)}
+   *
+   * @return the year, the month from 1 to 12 and the day
+   */
+  private static long[] civil(long days) {
+    long z = days + 719468;
+    long era = Math.floorDiv(z, 146097);
+    long dayOfEra = z - era * 146097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long shiftedMonth = (5 * dayOfYear + 2) / 153;
+    long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+    long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+    return new long[]{yearOfEra + era * 400 + (month <= 2 ? 1 : 0), month, day};
+  }
+
+  private static String encode(long seconds) {
+    long days = Math.floorDiv(seconds, SECONDS_PER_DAY);
+    int time = (int) (seconds - days * SECONDS_PER_DAY);
+    long[] date = civil(days);
+
+    char[] chars = new char[29];
+    DAYS[(int) Math.floorMod(days, 7L)].getChars(0, 3, chars, 0);
+    chars[3] = ',';
+    chars[4] = ' ';
+    put(chars, 5, 2, date[2]);
+    chars[7] = ' ';
+    MONTHS[(int) date[1] - 1].getChars(0, 3, chars, 8);
+    chars[11] = ' ';
+    put(chars, 12, 4, date[0]);
+    chars[16] = ' ';
+    put(chars, 17, 2, time / 3600);
+    chars[19] = ':';
+    put(chars, 20, 2, time / 60 % 60);
+    chars[22] = ':';
+    put(chars, 23, 2, time % 60);
+    " GMT".getChars(0, 4, chars, 25);
+    return new String(chars);
+  }
+
+  private static void put(char[] chars,
+                          int position,
+                          int count,
+                          long number) {
+    for (int i = position + count - 1; i >= position; i--) {
+      chars[i] = (char) ('0' + number % 10);
+      number /= 10;
+    }
+  }
+
+  private static final class Entry {
+
+    private final long seconds;
+    private final String value;
+
+    private Entry(long seconds,
+                  String value) {
+      this.seconds = seconds;
+      this.value = value;
+    }
+  }
+}
@@ -1,10 +1,20 @@
 package io.github.chumper.webserver.core.http;
 
-import java.text.SimpleDateFormat;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * The headers of a request or response. Names are case-insensitive, so {@code content-length}
+ * finds {@code Content-Length}, and a name may have several values.
+ *
+ * The headers are kept in the order they were added, as names and values in two flat arrays
+ * instead of a map with an object per entry. Well known names are stored as the constants of this
+ * class and the position of their first value is kept, so looking them up does not compare any
+ * strings. The values are strings and not positions in the buffer of the parser, as the buffer is
+ * reused for the next request of the connection while a handler may still hold this one.
+ */
 public class HttpHeaders {
 
   public static final String CONNECTION = "Connection";
@@ -16,37 +26,313 @@ public class HttpHeaders {
   public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
   public static final String IF_UNMODIFIED_SINCE = "If-Unmodified-Since";
   public static final String ETAG = "ETag";
+  public static final String HOST = "Host";
+  public static final String USER_AGENT = "User-Agent";
+  public static final String ACCEPT = "Accept";
+  public static final String ACCEPT_ENCODING = "Accept-Encoding";
+  public static final String ACCEPT_LANGUAGE = "Accept-Language";
+  public static final String CACHE_CONTROL = "Cache-Control";
+  public static final String COOKIE = "Cookie";
+  public static final String REFERER = "Referer";
+  public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+  public static final String EXPECT = "Expect";
+  public static final String RANGE = "Range";
+  public static final String IF_RANGE = "If-Range";
+  public static final String ACCEPT_RANGES = "Accept-Ranges";
+  public static final String CONTENT_RANGE = "Content-Range";
+  public static final String CONTENT_ENCODING = "Content-Encoding";
+  public static final String VARY = "Vary";
+  public static final String ALLOW = "Allow";
 
-  public static final SimpleDateFormat headerTime = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z");
+  /**
+   * The names that are recognized, headers with these names are stored with the constant
+   */
+  private static final String[] KNOWN = {
+      HOST, CONNECTION, USER_AGENT, ACCEPT, ACCEPT_ENCODING, ACCEPT_LANGUAGE, CACHE_CONTROL, COOKIE,
+      REFERER, CONTENT_TYPE, CONTENT_LENGTH, TRANSFER_ENCODING, EXPECT, IF_MATCH, IF_NONE_MATCH,
+      IF_MODIFIED_SINCE, IF_UNMODIFIED_SINCE, RANGE, IF_RANGE, "Upgrade-Insecure-Requests",
+      LAST_MODIFIED, ETAG, ACCEPT_RANGES, CONTENT_RANGE, CONTENT_ENCODING, VARY
+  };
+  /**
+   * The known names in lower case, to compare them with received bytes
+   */
+  private static final byte[][] KNOWN_LOWER = new byte[KNOWN.length][];
+  /**
+   * An open addressing table from the hash of a name to the index of the known name plus one, 0
+   * for empty slots. The hash only looks at the length and the first and last character, which
+   * already tells the known names apart, so finding a name takes the same time for every length.
+   */
+  private static final byte[] TABLE = new byte[128];
 
-  private static final String HEADER_DELIMITER = ":";
+  static {
+    for (int i = 0; i < KNOWN.length; i++) {
+      String lower = KNOWN[i].toLowerCase();
+      KNOWN_LOWER[i] = new byte[lower.length()];
+      for (int j = 0; j < lower.length(); j++) {
+        KNOWN_LOWER[i][j] = (byte) lower.charAt(j);
+      }
+      byte[] name = KNOWN_LOWER[i];
+      int slot = hash(name.length, name[0], name[name.length - 1]);
+      while (TABLE[slot] != 0) {
+        slot = (slot + 1) & (TABLE.length - 1);
+      }
+      TABLE[slot] = (byte) (i + 1);
+    }
+  }
 
-  private final Map<String, String> headers = new HashMap<>();
+  private static final int INITIAL_CAPACITY = 16;
 
-  public void add(String headerLine) {
+  private String[] names = new String[INITIAL_CAPACITY];
+  private String[] values = new String[INITIAL_CAPACITY];
+  private int size;
+  /**
+   * The position of the first value of each known name plus one, 0 if the name is not present
+   */
+  private final short[] first = new short[KNOWN.length];
 
-    String[] splittedHeader = headerLine.split(HEADER_DELIMITER, 2);
-    if (splittedHeader.length == 2) {
-      headers.put(splittedHeader[0].trim().substring(0, 1).toUpperCase() +
-                  splittedHeader[0].trim().substring(1), splittedHeader[1].trim());
+  /**
+   * Will add a received header line like {@code Name: value} as another value of the name
+   */
+  public void add(String headerLine) {
+    int colon = headerLine.indexOf(':');
+    if (colon > 0) {
+      append(headerLine.substring(0, colon).trim(), headerLine.substring(colon + 1).trim());
     }
   }
 
+  /**
+   * @return the first value of the header, null if it is not present
+   */
   public String get(String name) {
     if (name == null) { return null; }
 
-    return headers.get(name);
+    int index = indexOf(name);
+    return index == -1 ? null : values[index];
   }
 
-  public Set<Map.Entry<String, String>> get() {
-    return headers.entrySet();
+  /**
+   * @return all values of the header in the order they were added
+   */
+  public List<String> getAll(String name) {
+    int index = name == null ? -1 : indexOf(name);
+    if (index == -1) {
+      return Collections.emptyList();
+    }
+    List<String> all = new ArrayList<>();
+    for (int i = index; i < size; i++) {
+      if (isSameName(names[i], name)) {
+        all.add(values[i]);
+      }
+    }
+    return all;
   }
 
+  /**
+   * Combines the values of a header that is a comma separated list, as if they were sent in a
+   * single line, see https://tools.ietf.org/html/rfc7230#section-3.2.2
+   *
+   * @return the combined values, null if the header is not present
+   */
+  public String getCombined(String name) {
+    int index = name == null ? -1 : indexOf(name);
+    if (index == -1) {
+      return null;
+    }
+    String combined = values[index];
+    for (int i = index + 1; i < size; i++) {
+      if (isSameName(names[i], name)) {
+        combined += ", " + values[i];
+      }
+    }
+    return combined;
+  }
+
+  /**
+   * Will set the header, values that were added before for the name are replaced
+   */
   public void add(String key,
                   String value) {
     if (key == null) { return; }
 
-    headers.put(key.trim(), value.trim());
+    String name = key.trim();
+    int index = indexOf(name);
+    if (index == -1) {
+      append(name, value);
+      return;
+    }
+    values[index] = value.trim();
+    if (removeFrom(index + 1, name)) {
+      updateFirst();
+    }
   }
 
+  /**
+   * Will add another value for the header, the values that were added before are kept
+   */
+  public void append(String name,
+                     String value) {
+    if (name == null) { return; }
+
+    if (size == names.length) {
+      names = Arrays.copyOf(names, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+    }
+    int known = known(name);
+    names[size] = known == -1 ? name : KNOWN[known];
+    values[size] = value.trim();
+    if (known != -1 && first[known] == 0) {
+      first[known] = (short) (size + 1);
+    }
+    size++;
+  }
+
+  /**
+   * Will remove all values of the header
+   */
+  public void remove(String name) {
+    int index = name == null ? -1 : indexOf(name);
+    if (index != -1 && removeFrom(index, name)) {
+      updateFirst();
+    }
+  }
+
+  /**
+   * @return the number of values of all headers
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param index The position of a header from 0 to {@link #size()}
+   */
+  public String getName(int index) {
+    return names[index];
+  }
+
+  /**
+   * @param index The position of a header from 0 to {@link #size()}
+   */
+  public String getValue(int index) {
+    return values[index];
+  }
+
+  /**
+   * Will find the constant for a header name in the received bytes without creating a string
+   *
+   * @return the constant of the name, null if it is no well known name
+   */
+  public static String knownName(byte[] data,
+                                 int start,
+                                 int end) {
+    int length = end - start;
+    if (length == 0) {
+      return null;
+    }
+    int slot = hash(length, data[start], data[end - 1]);
+    for (; TABLE[slot] != 0; slot = (slot + 1) & (TABLE.length - 1)) {
+      int known = TABLE[slot] - 1;
+      byte[] lower = KNOWN_LOWER[known];
+      if (lower.length != length) {
+        continue;
+      }
+      int i = 0;
+      while (i < length && matches(data[start + i], lower[i])) {
+        i++;
+      }
+      if (i == length) {
+        return KNOWN[known];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the index of the known name, -1 if it is no well known name
+   */
+  private static int known(String name) {
+    int length = name.length();
+    if (length == 0) {
+      return -1;
+    }
+    int slot = hash(length, name.charAt(0), name.charAt(length - 1));
+    for (; TABLE[slot] != 0; slot = (slot + 1) & (TABLE.length - 1)) {
+      int known = TABLE[slot] - 1;
+      // the constants themselves are found without comparing characters
+      if (KNOWN[known] == name || KNOWN[known].equalsIgnoreCase(name)) {
+        return known;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the slot of the table where the search for a name starts
+   */
+  private static int hash(int length,
+                          int first,
+                          int last) {
+    return ((length * 31 + (first | 0x20)) * 31 + (last | 0x20)) & (TABLE.length - 1);
+  }
+
+  /**
+   * Letters are compared case-insensitive, the dashes of the names exactly
+   */
+  private static boolean matches(int b,
+                                 byte lower) {
+    return lower == '-' ? b == '-' : (b | 0x20) == lower;
+  }
+
+  private int indexOf(String name) {
+    int known = known(name);
+    if (known != -1) {
+      return first[known] - 1;
+    }
+    for (int i = 0; i < size; i++) {
+      if (names[i].equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isSameName(String stored,
+                                    String name) {
+    return stored == name || stored.equalsIgnoreCase(name);
+  }
+
+  /**
+   * Will remove the values of the name from the given position on
+   *
+   * @return true if a value was removed
+   */
+  private boolean removeFrom(int start,
+                             String name) {
+    int kept = start;
+    for (int i = start; i < size; i++) {
+      if (!isSameName(names[i], name)) {
+        names[kept] = names[i];
+        values[kept] = values[i];
+        kept++;
+      }
+    }
+    Arrays.fill(names, kept, size, null);
+    Arrays.fill(values, kept, size, null);
+    boolean removed = kept < size;
+    size = kept;
+    return removed;
+  }
+
+  /**
+   * Will find the first values of the known names again after headers were removed
+   */
+  private void updateFirst() {
+    Arrays.fill(first, (short) 0);
+    for (int i = size - 1; i >= 0; i--) {
+      int known = known(names[i]);
+      if (known != -1) {
+        first[known] = (short) (i + 1);
+      }
+    }
+  }
 }
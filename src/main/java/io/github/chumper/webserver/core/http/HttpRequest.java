@@ -1,5 +1,14 @@
 package io.github.chumper.webserver.core.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * An {@link HttpRequest} object will contain all headers and content
  */
@@ -14,9 +23,17 @@ public class HttpRequest extends HttpBase {
    */
   private String path;
   /**
-   * The content as string
+   * The content as string, read from the body when it is requested the first time
    */
   private String content;
+  /**
+   * The body of the request, read from the connection while it is consumed
+   */
+  private InputStream body;
+  /**
+   * The parameters of the route that matched the path, null if it has none
+   */
+  private Map<String, String> pathParams;
 
   public void setMethod(Method method) {
     this.method = method;
@@ -38,10 +55,69 @@ public class HttpRequest extends HttpBase {
     return path;
   }
 
+  /**
+   * The part of the path behind the ?, null if the path has no query
+   */
+  public String getQuery() {
+    int separator = path.indexOf('?');
+    return separator == -1 ? null : path.substring(separator + 1);
+  }
+
+  /**
+   * The value of a parameter of the route that matched the path, e.g. the id of /comments/{id}
+   *
+   * @return null if the route has no such parameter
+   */
+  public String getPathParam(String name) {
+    return pathParams == null ? null : pathParams.get(name);
+  }
+
+  public void setPathParam(String name,
+                           String value) {
+    if (pathParams == null) {
+      pathParams = new HashMap<>(4);
+    }
+    pathParams.put(name, value);
+  }
+
+  /**
+   * Will read the whole body into a UTF-8 string, only meant for small bodies like forms. Handlers
+   * that expect large bodies should consume {@link #getBody()} instead.
+   *
+   * @throws UncheckedIOException if the body could not be read
+   */
   public String getContent() {
+    if (content == null && body != null) {
+      try {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+          data.write(buffer, 0, read);
+        }
+        content = new String(data.toByteArray(), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
     return content;
   }
 
+  /**
+   * The body of the request, it is read from the connection while it is consumed, so it can only
+   * be read once. Empty if the request has no body.
+   */
+  public InputStream getBody() {
+    if (body == null) {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+    return body;
+  }
+
+  public void setBody(InputStream body) {
+    this.body = body;
+  }
+
   public HttpHeaders getHeaders() {
     return headers;
   }
@@ -2,6 +2,7 @@ package io.github.chumper.webserver.core.http;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Represents the response that will be returned to the client
@@ -15,7 +16,15 @@ public class HttpResponse extends HttpBase {
   /**
    * The cntent as byte array
    */
-  private ByteArrayOutputStream content = new ByteArrayOutputStream();
+  private Content content = new Content();
+  /**
+   * A body that will be written directly to the connection instead of the buffered content
+   */
+  private ResponseBody body;
+  /**
+   * Produces the body while the response is sent, the length is not known in advance
+   */
+  private BodyWriter bodyWriter;
 
   public void setStatus(String status) {
     this.status = status;
@@ -42,11 +51,69 @@ public class HttpResponse extends HttpBase {
     return status;
   }
 
-  public int getContentLength() {
-    return content.size();
+  /**
+   * Will replace the buffered content with a body that is written directly to the connection, e.g.
+   * a {@link FileRegion}
+   */
+  public void setBody(ResponseBody body) {
+    this.body = body;
+  }
+
+  public ResponseBody getBody() {
+    return body;
+  }
+
+  /**
+   * Will stream the body instead of buffering it. As the length is not known in advance the body
+   * is sent chunked to HTTP/1.1 clients and delimited by closing the connection for HTTP/1.0
+   * clients.
+   */
+  public void stream(BodyWriter bodyWriter) {
+    this.bodyWriter = bodyWriter;
+  }
+
+  public BodyWriter getBodyWriter() {
+    return bodyWriter;
+  }
+
+  /**
+   * The length of the body, -1 if the body is streamed
+   */
+  public long getContentLength() {
+    if (bodyWriter != null) {
+      return -1;
+    }
+    return body != null ? body.getLength() : content.size();
+  }
+
+  /**
+   * Will drop everything a handler has written, set or streamed as body
+   */
+  public void clearBody() {
+    content.reset();
+    body = null;
+    bodyWriter = null;
   }
 
   public ByteArrayOutputStream getContent() {
     return content;
   }
+
+  /**
+   * The buffered content without copying it, must not be modified
+   */
+  public ByteBuffer getContentBuffer() {
+    return content.asBuffer();
+  }
+
+  /**
+   * Gives access to the written bytes without copying them
+   */
+  private static class Content
+      extends ByteArrayOutputStream {
+
+    ByteBuffer asBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
 }
@@ -0,0 +1,95 @@
+package io.github.chumper.webserver.core.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.github.chumper.webserver.core.Connection;
+
+/**
+ * A {@link ResponseBody} that sends several ranges of a {@link SliceableBody} as
+ * multipart/byteranges, see https://tools.ietf.org/html/rfc7233#appendix-A. Only the small part
+ * heads are held in memory, each range is sent like the body itself, e.g. a {@link FileRegion} is
+ * transferred directly from the file system to the socket.
+ */
+public class MultipartByteRanges
+    implements ResponseBody {
+
+  /**
+   * The parts of the representation, sorted and not overlapping
+   */
+  private final List<SliceableBody> parts;
+  /**
+   * The encoded head of each part, the first one starts with the boundary
+   */
+  private final byte[][] heads;
+  /**
+   * The encoded delimiter that ends the body
+   */
+  private final byte[] end;
+  /**
+   * The separator between the parts
+   */
+  private final String boundary;
+  /**
+   * The number of bytes of the whole body
+   */
+  private final long length;
+
+  /**
+   * @param body        The complete representation the ranges refer to
+   * @param contentType The type of the representation, may be null
+   * @param ranges      The ranges to send
+   */
+  public MultipartByteRanges(SliceableBody body,
+                             String contentType,
+                             List<ByteRange> ranges) {
+    this.parts = new ArrayList<>(ranges.size());
+    this.boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    this.heads = new byte[ranges.size()][];
+
+    long length = 0;
+    for (int i = 0; i < ranges.size(); i++) {
+      StringBuilder head = new StringBuilder();
+      if (i > 0) {
+        head.append("\r\n");
+      }
+      head.append("--").append(boundary).append("\r\n");
+      if (contentType != null) {
+        head.append(HttpHeaders.CONTENT_TYPE).append(": ").append(contentType).append("\r\n");
+      }
+      head.append(HttpHeaders.CONTENT_RANGE).append(": ")
+          .append(ranges.get(i).toContentRange(body.getLength())).append("\r\n\r\n");
+      heads[i] = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+      parts.add(body.slice(ranges.get(i)));
+      length += heads[i].length + ranges.get(i).getLength();
+    }
+    this.end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    this.length = length + end.length;
+  }
+
+  /**
+   * The value of the Content-Type header of the response
+   */
+  public String getContentType() {
+    return "multipart/byteranges; boundary=" + boundary;
+  }
+
+  @Override
+  public long getLength() {
+    return length;
+  }
+
+  @Override
+  public void writeTo(Connection connection) throws IOException {
+    for (int i = 0; i < parts.size(); i++) {
+      // the part head is buffered and leaves with the range
+      connection.write(ByteBuffer.wrap(heads[i]));
+      parts.get(i).writeTo(connection);
+    }
+    connection.write(ByteBuffer.wrap(end));
+  }
+}
@@ -0,0 +1,23 @@
+package io.github.chumper.webserver.core.http;
+
+import java.io.IOException;
+
+import io.github.chumper.webserver.core.Connection;
+
+/**
+ * A {@link ResponseBody} is the content of a response that is not buffered in memory but written
+ * directly to the connection when the response is sent.
+ */
+public interface ResponseBody {
+
+  /**
+   * The number of bytes this body will write
+   */
+  long getLength();
+
+  /**
+   * Will write the body to the given connection
+   * @param connection The connection of the client
+   */
+  void writeTo(Connection connection) throws IOException;
+}
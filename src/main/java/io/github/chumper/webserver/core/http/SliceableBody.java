@@ -0,0 +1,14 @@
+package io.github.chumper.webserver.core.http;
+
+/**
+ * A {@link ResponseBody} whose content is known in advance, so parts of it can be sent for range
+ * requests.
+ */
+public interface SliceableBody
+    extends ResponseBody {
+
+  /**
+   * The part of this body that is covered by the given range
+   */
+  SliceableBody slice(ByteRange range);
+}
@@ -0,0 +1,128 @@
+package io.github.chumper.webserver.core.nio;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import io.github.chumper.webserver.core.pipeline.SocketHandler;
+import io.github.chumper.webserver.util.ConsoleLogger;
+import io.github.chumper.webserver.util.Logger;
+
+/**
+ * The counterpart of the SocketProcessor for the non blocking transport. It will run the handlers
+ * once for the message that the {@link EventLoop} buffered and then returns the connection to the
+ * loop instead of waiting for the next message.
+ *
+ * A handler that has to wait for something else than the connection returns an incomplete stage
+ * from {@link SocketHandler#processAsync(io.github.chumper.webserver.core.Connection, Executor)}.
+ * The worker thread is released then and the processing continues with the next handler when the
+ * stage completed. The connection is neither read nor processed in the meantime.
+ */
+class ChannelProcessor
+    implements Runnable {
+
+  private final Logger logger = new ConsoleLogger();
+
+  /**
+   * The connection to process
+   */
+  private final NioConnection connection;
+  /**
+   * A list of handlers that can manipulate the connection and interact with the manipulated
+   * request
+   */
+  private final List<SocketHandler> socketHandlers;
+  /**
+   * The worker pool, handlers continue on it after they waited
+   */
+  private final Executor executor;
+
+  ChannelProcessor(NioConnection connection,
+                   List<SocketHandler> socketHandlers,
+                   Executor executor) {
+    this.connection = connection;
+    this.socketHandlers = socketHandlers;
+    this.executor = executor;
+  }
+
+  @Override
+  public void run() {
+    proceed(0);
+  }
+
+  /**
+   * Will process the current message from the given handler on and then the pipelined messages
+   * that are already buffered, so their responses can be sent together
+   *
+   * @param first The index of the first handler to run for the current message
+   */
+  private void proceed(int first) {
+    boolean keepOpen = false;
+    boolean suspended = false;
+    try {
+      do {
+        for (int i = first; i < socketHandlers.size(); i++) {
+          CompletableFuture<SocketHandler.State> state =
+              socketHandlers.get(i).processAsync(connection, executor).toCompletableFuture();
+          if (!state.isDone()) {
+            // the handler continues on another thread, the connection is finished by it
+            suspended = true;
+            int next = i + 1;
+            state.whenComplete((result, error) -> {
+              if (error == null && result == SocketHandler.State.CONTINUE) {
+                proceed(next);
+              } else {
+                finish(false);
+              }
+            });
+            return;
+          }
+          if (state.join() == SocketHandler.State.DISCARD) {
+            return;
+          }
+        }
+        first = 0;
+      } while (!connection.isClosed() && !socketHandlers.isEmpty() &&
+               socketHandlers.get(0).isComplete(connection));
+      keepOpen = !connection.isClosed();
+    } finally {
+      if (!suspended) {
+        finish(keepOpen);
+      }
+    }
+  }
+
+  /**
+   * Will send the responses the handlers wrote and either give the connection back to the loop or
+   * close it
+   */
+  private void finish(boolean keepOpen) {
+    keepOpen = flush() && keepOpen;
+    if (keepOpen) {
+      connection.getEventLoop().resume(connection);
+    } else {
+      try {
+        connection.close();
+      } catch (IOException e) {
+        logger.log("Could not close the connection: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Will send the responses the handlers wrote
+   *
+   * @return false if the output could not be sent
+   */
+  private boolean flush() {
+    if (connection.isClosed()) { return false; }
+    try {
+      connection.getOutputStream().flush();
+      return true;
+    } catch (IOException e) {
+      logger.log("Could not send the response: {}", e.getMessage());
+      return false;
+    }
+  }
+}
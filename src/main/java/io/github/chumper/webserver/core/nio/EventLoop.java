@@ -0,0 +1,193 @@
+package io.github.chumper.webserver.core.nio;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import io.github.chumper.webserver.core.pipeline.SocketHandler;
+import io.github.chumper.webserver.util.ConsoleLogger;
+import io.github.chumper.webserver.util.Logger;
+
+/**
+ * An {@link EventLoop} owns a selector and reads incoming data of all its connections. As soon
+ * as the first {@link SocketHandler} considers the buffered data of a connection complete, the
+ * connection is passed to the worker pool. Idle connections therefore do not occupy a worker
+ * thread.
+ */
+public class EventLoop
+    extends Thread {
+
+  private final Logger logger = new ConsoleLogger();
+
+  /**
+   * The selector that watches all connections of this loop
+   */
+  private final Selector selector;
+  /**
+   * Tasks that other threads want to run on this loop, e.g. registering new connections
+   */
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  /**
+   * The worker pool that processes complete messages
+   */
+  private final ExecutorService executor;
+  /**
+   * The handlers that will process the connections
+   */
+  private final List<SocketHandler> socketHandlers;
+
+  private volatile boolean running = true;
+
+  public EventLoop(int id,
+                   ExecutorService executor,
+                   List<SocketHandler> socketHandlers) throws IOException {
+    this.selector = Selector.open();
+    this.executor = executor;
+    this.socketHandlers = socketHandlers;
+    setName("EventLoop-" + id);
+  }
+
+  /**
+   * Will register the given channel with this loop, can be called from any thread
+   */
+  public void register(SocketChannel channel) {
+    execute(() -> {
+      NioConnection connection = new NioConnection(channel, this);
+      try {
+        channel.configureBlocking(false);
+        connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+      } catch (IOException e) {
+        logger.log("Could not register the connection: {}", e.getMessage());
+        close(connection);
+      }
+    });
+  }
+
+  /**
+   * Will stop the loop and close all connections
+   */
+  public void shutdown() {
+    running = false;
+    selector.wakeup();
+  }
+
+  /**
+   * Called by a worker when the connection has been processed, the loop will then either wait
+   * for new data or dispatch the connection again if there is already enough data buffered.
+   */
+  void resume(NioConnection connection) {
+    execute(() -> {
+      if (connection.isClosed()) { return; }
+      connection.touch();
+      if (isComplete(connection)) {
+        dispatch(connection);
+      } else {
+        connection.getKey().interestOps(SelectionKey.OP_READ);
+      }
+    });
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        selector.select(NioConnection.TIMEOUT / 6);
+
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+          task.run();
+        }
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (key.isValid() && key.isReadable()) {
+            read((NioConnection) key.attachment());
+          }
+        }
+
+        closeIdleConnections();
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      logger.log("Event loop stopped unexpectedly: {}", e.getMessage());
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        close((NioConnection) key.attachment());
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+        logger.log("Could not close the selector: {}", e.getMessage());
+      }
+    }
+  }
+
+  private void read(NioConnection connection) {
+    try {
+      if (connection.fillAvailable() == -1) {
+        close(connection);
+      } else if (isComplete(connection)) {
+        dispatch(connection);
+      }
+    } catch (IOException e) {
+      // also thrown when the message does not fit into the buffer
+      close(connection);
+    }
+  }
+
+  private boolean isComplete(NioConnection connection) {
+    return socketHandlers.isEmpty() || socketHandlers.get(0).isComplete(connection);
+  }
+
+  /**
+   * Will pass the connection to the worker pool, the loop will not read from it until the worker
+   * resumes the connection
+   */
+  private void dispatch(NioConnection connection) {
+    connection.getKey().interestOps(0);
+    try {
+      executor.execute(new ChannelProcessor(connection, socketHandlers, executor));
+    } catch (RejectedExecutionException e) {
+      // the server is shutting down
+      close(connection);
+    }
+  }
+
+  /**
+   * Closes all connections that are waiting for data for too long, connections that are
+   * currently processed by a worker are not affected.
+   */
+  private void closeIdleConnections() {
+    long now = System.currentTimeMillis();
+    for (SelectionKey key : selector.keys()) {
+      NioConnection connection = (NioConnection) key.attachment();
+      if (key.isValid() && key.interestOps() == SelectionKey.OP_READ &&
+          now - connection.getLastActivity() > NioConnection.TIMEOUT) {
+        logger.log("Socket was inactive for too long, closing {}", connection);
+        close(connection);
+      }
+    }
+  }
+
+  private void close(NioConnection connection) {
+    try {
+      connection.close();
+    } catch (IOException e) {
+      logger.log("Could not close the connection: {}", e.getMessage());
+    }
+  }
+
+  private void execute(Runnable task) {
+    tasks.add(task);
+    selector.wakeup();
+  }
+}
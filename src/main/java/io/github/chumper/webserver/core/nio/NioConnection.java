@@ -0,0 +1,181 @@
+package io.github.chumper.webserver.core.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import io.github.chumper.webserver.core.BufferedConnection;
+import io.github.chumper.webserver.core.Connection;
+
+/**
+ * A {@link Connection} backed by a non blocking {@link SocketChannel}.
+ * The {@link EventLoop} fills the read buffer while the connection is idle, a worker thread will
+ * then consume the buffer. Should the worker need more data than buffered (or the client does not
+ * read fast enough) it will wait on a temporary selector so that handlers can still be written
+ * against blocking streams.
+ */
+class NioConnection
+    extends BufferedConnection {
+
+  /**
+   * Same as the timeout of the blocking transport
+   */
+  static final int TIMEOUT = 3000;
+
+  /**
+   * Selectors that are used by worker threads to wait for a channel, shared between all
+   * connections because opening a selector is expensive
+   */
+  private static final Queue<Selector> temporarySelectors = new ConcurrentLinkedQueue<>();
+
+  private final SocketChannel channel;
+  private final EventLoop eventLoop;
+
+  /**
+   * The key of the channel at the selector of the event loop
+   */
+  private SelectionKey key;
+  /**
+   * The last time data has been read from the channel, used to close idle connections
+   */
+  private volatile long lastActivity = System.currentTimeMillis();
+
+  NioConnection(SocketChannel channel,
+                EventLoop eventLoop) {
+    this.channel = channel;
+    this.eventLoop = eventLoop;
+  }
+
+  @Override
+  protected int read(ByteBuffer target) throws IOException {
+    int read = channel.read(target);
+    if (read > 0) {
+      lastActivity = System.currentTimeMillis();
+    }
+    return read;
+  }
+
+  @Override
+  protected void awaitReadable() throws IOException {
+    await(SelectionKey.OP_READ);
+  }
+
+  @Override
+  protected void send(ByteBuffer... sources) throws IOException {
+    long remaining = 0;
+    for (ByteBuffer source : sources) {
+      remaining += source.remaining();
+    }
+    while (remaining > 0) {
+      long written = channel.write(sources);
+      if (written == 0) {
+        await(SelectionKey.OP_WRITE);
+      }
+      remaining -= written;
+    }
+  }
+
+  @Override
+  protected void transfer(FileChannel file,
+                           long position,
+                           long count) throws IOException {
+    long end = position + count;
+    while (position < end) {
+      long transferred = file.transferTo(position, end - position, channel);
+      if (transferred == 0) {
+        if (position >= file.size()) {
+          throw new EOFException("File is shorter than expected");
+        }
+        await(SelectionKey.OP_WRITE);
+      }
+      position += transferred;
+    }
+  }
+
+  @Override
+  public boolean isClosed() {
+    return !channel.isOpen();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (key != null) {
+      key.cancel();
+    }
+    channel.close();
+  }
+
+  @Override
+  public String toString() {
+    return channel.toString();
+  }
+
+  SocketChannel getChannel() {
+    return channel;
+  }
+
+  EventLoop getEventLoop() {
+    return eventLoop;
+  }
+
+  SelectionKey getKey() {
+    return key;
+  }
+
+  void setKey(SelectionKey key) {
+    this.key = key;
+  }
+
+  long getLastActivity() {
+    return lastActivity;
+  }
+
+  /**
+   * Marks the connection as active so the idle timeout starts again
+   */
+  void touch() {
+    lastActivity = System.currentTimeMillis();
+  }
+
+  /**
+   * Will read the data that is available without blocking, used by the event loop
+   *
+   * @return the number of bytes read, -1 if the client closed the connection
+   */
+  int fillAvailable() throws IOException {
+    return readAvailable();
+  }
+
+  /**
+   * Will block the current thread until the channel is ready for the given operations
+   *
+   * @throws SocketTimeoutException if the channel did not become ready in time
+   */
+  private void await(int ops) throws IOException {
+    Selector selector = temporarySelectors.poll();
+    if (selector == null) {
+      selector = Selector.open();
+    }
+    SelectionKey temporaryKey = null;
+    try {
+      temporaryKey = channel.register(selector, ops);
+      if (selector.select(TIMEOUT) == 0) {
+        throw new SocketTimeoutException("Connection was inactive for too long");
+      }
+    } finally {
+      if (temporaryKey != null) {
+        temporaryKey.cancel();
+      }
+      // deregister the cancelled key so the selector can be reused
+      selector.selectNow();
+      temporarySelectors.offer(selector);
+    }
+  }
+}
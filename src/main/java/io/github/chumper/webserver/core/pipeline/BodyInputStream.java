@@ -0,0 +1,126 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import io.github.chumper.webserver.core.Connection;
+
+/**
+ * The body of a request, read lazily from the connection while a handler consumes it. When the
+ * client sent {@code Expect: 100-continue} the interim response is only sent when a handler starts
+ * reading, so bodies nobody is interested in are never transferred.
+ */
+abstract class BodyInputStream
+    extends InputStream {
+
+  private static final byte[] CONTINUE =
+      "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * The connection the body is read from
+   */
+  private final Connection connection;
+  /**
+   * Whether the client waits for the interim response before it sends the body
+   */
+  private boolean expectContinue;
+  /**
+   * Set when the body is longer than allowed
+   */
+  private boolean tooLarge;
+  /**
+   * Set when the body has been read completely
+   */
+  private boolean finished;
+
+  BodyInputStream(Connection connection,
+                  boolean expectContinue) {
+    this.connection = connection;
+    this.expectContinue = expectContinue;
+  }
+
+  /**
+   * Will read the next part of the body from the connection
+   *
+   * @return the number of bytes read, -1 at the end of the body
+   */
+  protected abstract int readBody(byte[] b,
+                                  int off,
+                                  int len) throws IOException;
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b,
+                  int off,
+                  int len) throws IOException {
+    if (finished) {
+      return -1;
+    }
+    if (tooLarge) {
+      throw new IOException("Request body is too large");
+    }
+    if (len == 0) {
+      return 0;
+    }
+    if (expectContinue) {
+      expectContinue = false;
+      connection.getOutputStream().write(CONTINUE);
+      connection.getOutputStream().flush();
+    }
+    int read = readBody(b, off, len);
+    if (read == -1) {
+      finished = true;
+    }
+    return read;
+  }
+
+  /**
+   * Whether the body exceeded the maximum size, the request needs to be rejected then
+   */
+  boolean isTooLarge() {
+    return tooLarge;
+  }
+
+  /**
+   * Marks the body as too large and returns the exception to throw
+   */
+  protected IOException tooLarge() {
+    tooLarge = true;
+    return new IOException("Request body is too large");
+  }
+
+  /**
+   * Will skip the part of the body the handlers did not read, so the next request of the
+   * connection can be parsed
+   *
+   * @return false if the connection can not be used for another request
+   */
+  boolean finish() {
+    if (expectContinue || tooLarge) {
+      // the client did not send the body (yet) or we stopped reading it
+      return false;
+    }
+    try {
+      byte[] skipped = new byte[4096];
+      while (read(skipped, 0, skipped.length) != -1) {
+        // skip the rest of the body
+      }
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * The stream of the connection that provides the raw body
+   */
+  protected InputStream source() throws IOException {
+    return connection.getInputStream();
+  }
+}
@@ -0,0 +1,112 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.github.chumper.webserver.core.Connection;
+
+/**
+ * A body sent with the chunked transfer coding, the chunks are decoded while the body is read.
+ * Chunk extensions and trailers are ignored.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7230#section-4.1">RFC 7230 section 4.1</a>
+ */
+class ChunkedInputStream
+    extends BodyInputStream {
+
+  /**
+   * The maximum length of a chunk size or trailer line
+   */
+  private static final int MAX_LINE_SIZE = 4096;
+
+  /**
+   * The maximum number of body bytes
+   */
+  private final long maxSize;
+  /**
+   * The number of body bytes read so far
+   */
+  private long size;
+  /**
+   * The bytes left in the current chunk, -1 before the first chunk
+   */
+  private long chunkRemaining = -1;
+  private boolean lastChunk;
+
+  ChunkedInputStream(Connection connection,
+                     boolean expectContinue,
+                     long maxSize) {
+    super(connection, expectContinue);
+    this.maxSize = maxSize;
+  }
+
+  @Override
+  protected int readBody(byte[] b,
+                         int off,
+                         int len) throws IOException {
+    if (lastChunk) {
+      return -1;
+    }
+    InputStream source = source();
+    if (chunkRemaining <= 0) {
+      if (chunkRemaining == 0) {
+        // the line break after the data of the previous chunk
+        readLine(source);
+      }
+      chunkRemaining = parseChunkSize(readLine(source));
+      if (chunkRemaining == 0) {
+        lastChunk = true;
+        // skip the trailers up to the empty line
+        while (!readLine(source).isEmpty()) {
+          // trailers are not supported
+        }
+        return -1;
+      }
+      if (size + chunkRemaining > maxSize) {
+        throw tooLarge();
+      }
+      size += chunkRemaining;
+    }
+    int read = source.read(b, off, (int) Math.min(len, chunkRemaining));
+    if (read == -1) {
+      throw new EOFException("Client closed the connection before the body was complete");
+    }
+    chunkRemaining -= read;
+    return read;
+  }
+
+  private static long parseChunkSize(String line) throws IOException {
+    int end = line.indexOf(';');
+    String hex = (end == -1 ? line : line.substring(0, end)).trim();
+    if (hex.isEmpty() || hex.length() > 15) {
+      throw new IOException("Invalid chunk size: " + line);
+    }
+    long chunkSize = 0;
+    for (int i = 0; i < hex.length(); i++) {
+      int digit = Character.digit(hex.charAt(i), 16);
+      if (digit == -1) {
+        throw new IOException("Invalid chunk size: " + line);
+      }
+      chunkSize = chunkSize * 16 + digit;
+    }
+    return chunkSize;
+  }
+
+  private static String readLine(InputStream source) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int b;
+    while ((b = source.read()) != '\n') {
+      if (b == -1) {
+        throw new EOFException("Client closed the connection before the body was complete");
+      }
+      if (line.length() > MAX_LINE_SIZE) {
+        throw new IOException("Chunk line is too long");
+      }
+      if (b != '\r') {
+        line.append((char) b);
+      }
+    }
+    return line.toString();
+  }
+}
@@ -0,0 +1,106 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes the written data with the chunked transfer coding. Small writes are collected so that
+ * each chunk has a reasonable size, at most {@link #CHUNK_SIZE} bytes are held in memory.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7230#section-4.1">RFC 7230 section 4.1</a>
+ */
+class ChunkedOutputStream
+    extends OutputStream {
+
+  /**
+   * The maximum size of a chunk
+   */
+  static final int CHUNK_SIZE = 8192;
+
+  private static final byte[] CRLF = {'\r', '\n'};
+  private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+  private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+  private final OutputStream outputStream;
+  private final byte[] chunk = new byte[CHUNK_SIZE];
+  private int count;
+  private boolean closed;
+
+  /**
+   * @param outputStream The stream of the connection
+   */
+  ChunkedOutputStream(OutputStream outputStream) {
+    this.outputStream = outputStream;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    if (count == chunk.length) {
+      writeChunk();
+    }
+    chunk[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b,
+                    int off,
+                    int len) throws IOException {
+    ensureOpen();
+    while (len > 0) {
+      if (count == chunk.length) {
+        writeChunk();
+      }
+      int length = Math.min(len, chunk.length - count);
+      System.arraycopy(b, off, chunk, count, length);
+      count += length;
+      off += length;
+      len -= length;
+    }
+  }
+
+  /**
+   * Will send the collected data as a chunk and flush the connection
+   */
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    writeChunk();
+    outputStream.flush();
+  }
+
+  /**
+   * Will send the collected data and the last chunk, the connection stays open
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) { return; }
+    writeChunk();
+    outputStream.write(LAST_CHUNK);
+    closed = true;
+  }
+
+  private void writeChunk() throws IOException {
+    if (count == 0) {
+      // an empty chunk would end the body
+      return;
+    }
+    int shift = 28;
+    while (shift > 0 && (count >>> shift) == 0) {
+      shift -= 4;
+    }
+    for (; shift >= 0; shift -= 4) {
+      outputStream.write(HEX[(count >>> shift) & 0xf]);
+    }
+    outputStream.write(CRLF);
+    outputStream.write(chunk, 0, count);
+    outputStream.write(CRLF);
+    count = 0;
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream is closed");
+    }
+  }
+}
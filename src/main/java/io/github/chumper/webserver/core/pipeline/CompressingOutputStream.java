@@ -0,0 +1,80 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compresses everything written to it in the gzip or the zlib ("deflate" in HTTP) format with a
+ * given {@link Deflater}. Unlike the {@link java.util.zip.GZIPOutputStream} it does not create its
+ * own deflater, so pooled ones can be used. Flushing sends everything written so far.
+ */
+class CompressingOutputStream
+    extends DeflaterOutputStream {
+
+  private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0,
+                                             0, (byte) 0xff};
+
+  /**
+   * The deflater writes its output in parts of this size, the compressed data is small so a small
+   * buffer is enough
+   */
+  private static final int BUFFER_SIZE = 1024;
+
+  /**
+   * The checksum of the uncompressed data, only needed for gzip
+   */
+  private final CRC32 crc;
+  private boolean finished;
+
+  /**
+   * @param out      The stream that receives the compressed data
+   * @param deflater A deflater with nowrap for gzip, a wrapping one for deflate
+   * @param gzip     Whether the gzip header and trailer should be written
+   */
+  CompressingOutputStream(OutputStream out,
+                          Deflater deflater,
+                          boolean gzip) throws IOException {
+    super(out, deflater, BUFFER_SIZE, true);
+    this.crc = gzip ? new CRC32() : null;
+    if (gzip) {
+      out.write(GZIP_HEADER);
+    }
+  }
+
+  @Override
+  public void write(byte[] b,
+                    int off,
+                    int len) throws IOException {
+    super.write(b, off, len);
+    if (crc != null) {
+      crc.update(b, off, len);
+    }
+  }
+
+  /**
+   * Will write the rest of the compressed data and the gzip trailer, the underlying stream is not
+   * closed
+   */
+  @Override
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    super.finish();
+    if (crc != null) {
+      writeInt((int) crc.getValue());
+      writeInt((int) def.getBytesRead());
+    }
+  }
+
+  private void writeInt(int value) throws IOException {
+    out.write(value & 0xff);
+    out.write((value >> 8) & 0xff);
+    out.write((value >> 16) & 0xff);
+    out.write((value >> 24) & 0xff);
+  }
+}
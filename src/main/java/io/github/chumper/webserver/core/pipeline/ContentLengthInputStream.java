@@ -0,0 +1,45 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import io.github.chumper.webserver.core.Connection;
+
+/**
+ * A body with a known length that has been announced by the Content-Length header
+ */
+class ContentLengthInputStream
+    extends BodyInputStream {
+
+  /**
+   * The number of bytes that have not been read yet
+   */
+  private long remaining;
+
+  ContentLengthInputStream(Connection connection,
+                           boolean expectContinue,
+                           long length) {
+    super(connection, expectContinue);
+    this.remaining = length;
+  }
+
+  @Override
+  protected int readBody(byte[] b,
+                         int off,
+                         int len) throws IOException {
+    if (remaining == 0) {
+      return -1;
+    }
+    int read = source().read(b, off, (int) Math.min(len, remaining));
+    if (read == -1) {
+      throw new EOFException("Client closed the connection before the body was complete");
+    }
+    remaining -= read;
+    return read;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (int) Math.min(remaining, source().available());
+  }
+}
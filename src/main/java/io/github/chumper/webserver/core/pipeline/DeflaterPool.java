@@ -0,0 +1,60 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Keeps {@link Deflater} instances for reuse. Creating a deflater allocates its native state and
+ * large internal buffers, reusing them makes compressing small responses much cheaper.
+ */
+class DeflaterPool {
+
+  /**
+   * The compression level of all deflaters of this pool
+   */
+  private final int level;
+  /**
+   * Whether the deflaters write raw deflate data as needed for gzip or the zlib format
+   */
+  private final boolean nowrap;
+  /**
+   * At most this many idle deflaters are kept, the others are released
+   */
+  private final int maxIdle;
+
+  private final Queue<Deflater> idle = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  DeflaterPool(int level,
+               boolean nowrap,
+               int maxIdle) {
+    this.level = level;
+    this.nowrap = nowrap;
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * Will return an idle deflater or create a new one, it has to be given back with
+   * {@link #release(Deflater)}
+   */
+  Deflater acquire() {
+    Deflater deflater = idle.poll();
+    if (deflater == null) {
+      return new Deflater(level, nowrap);
+    }
+    idleCount.decrementAndGet();
+    return deflater;
+  }
+
+  void release(Deflater deflater) {
+    deflater.reset();
+    if (idleCount.incrementAndGet() <= maxIdle) {
+      idle.offer(deflater);
+    } else {
+      idleCount.decrementAndGet();
+      deflater.end();
+    }
+  }
+}
@@ -1,18 +1,25 @@
 package io.github.chumper.webserver.core.pipeline;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.Socket;
+import java.io.UncheckedIOException;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import io.github.chumper.webserver.core.Connection;
 import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.http.AsyncHttpHandler;
+import io.github.chumper.webserver.core.http.BodyWriter;
 import io.github.chumper.webserver.core.http.HttpBase;
 import io.github.chumper.webserver.core.http.HttpHandler;
 import io.github.chumper.webserver.core.http.HttpHeaders;
@@ -25,7 +32,9 @@ import io.github.chumper.webserver.util.Logger;
  * The {@link HttpPipeline} is the central piece of the provided {@link HttpServer}.
  * It will transform an incoming connection into an {@link HttpRequest} if possible, otherwise
  * it will reject the request.
- * It will call all registered {@link HttpHandler} and will return the response in the end.
+ * It will call the handler of the route and the filters and will return the response in the end.
+ * Asynchronous handlers do not occupy the worker thread of the non blocking transport while they
+ * wait, the connection is continued when they are done.
  * If the connection should be closed it will close the socket.
  */
 public class HttpPipeline implements SocketHandler {
@@ -33,133 +42,435 @@ public class HttpPipeline implements SocketHandler {
   private final Logger logger = new ConsoleLogger();
 
   /**
-   * All handlers that are interested in incoming {@link HttpRequest}
+   * The non blocking transport only waits for bodies up to this size to be buffered, larger
+   * bodies are read by the worker
    */
-  private List<HttpHandler> handlers = new ArrayList<>();
+  private static final int MAX_BUFFERED_BODY = 65536;
+
+  private static final CompletableFuture<State> DISCARDED =
+      CompletableFuture.completedFuture(State.DISCARD);
+
+  /**
+   * Fails the asynchronous handlers that take too long, shared by all pipelines as it only starts
+   * its thread when a handler has to wait
+   */
+  private static final ScheduledExecutorService timer = createTimer();
+
+  /**
+   * Passes each {@link HttpRequest} to the handler of its route
+   */
+  private final HttpRouter router = new HttpRouter();
+  /**
+   * Handlers that see every request after its route, like the ETag handling or the logging
+   */
+  private final List<HttpHandler> filters = new ArrayList<>();
+
+  private int maxRequestLineSize = 8192;
+  private int maxHeaderSize = 16384;
+  private int maxHeaderCount = 100;
+  private long maxBodySize = 10 * 1024 * 1024;
+
+  /**
+   * Compresses the responses after the handlers, null if responses are sent uncompressed
+   */
+  private ResponseCompressor compressor;
+
+  /**
+   * The milliseconds an asynchronous handler may take until the request is answered with 503, 0
+   * to wait forever
+   */
+  private long handlerTimeout;
 
   /**
-   * Add the given handler to the list of handlers that will be called when a http request is
-   * incoming.
-   * @param handler The handler to add.
+   * Will let the handler answer the requests with the method and a path that matches the pattern,
+   * see {@link HttpRouter#route(HttpBase.Method, String, HttpHandler)}
    */
-  public void addHttpHandler(HttpHandler handler) {
-    this.handlers.add(handler);
+  public void route(HttpBase.Method method,
+                    String pattern,
+                    HttpHandler handler) {
+    this.router.route(method, pattern, handler);
+  }
+
+  /**
+   * Will let the asynchronous handler answer the requests with the method and a path that matches
+   * the pattern, see {@link HttpRouter#routeAsync(HttpBase.Method, String, AsyncHttpHandler)}
+   */
+  public void routeAsync(HttpBase.Method method,
+                         String pattern,
+                         AsyncHttpHandler handler) {
+    this.router.routeAsync(method, pattern, handler);
+  }
+
+  /**
+   * Add the given handler to the list of handlers that will be called for every request after the
+   * handler of its route, in the order they were added
+   *
+   * @param filter The handler to add.
+   */
+  public void addFilter(HttpHandler filter) {
+    this.filters.add(filter);
+  }
+
+  /**
+   * Will configure the limits for the head of incoming requests, requests that exceed them will be
+   * rejected
+   *
+   * @param maxRequestLineSize The maximum number of bytes of the request line
+   * @param maxHeaderSize      The maximum number of bytes of all header lines
+   * @param maxHeaderCount     The maximum number of headers
+   */
+  public void setRequestLimits(int maxRequestLineSize,
+                               int maxHeaderSize,
+                               int maxHeaderCount) {
+    this.maxRequestLineSize = maxRequestLineSize;
+    this.maxHeaderSize = maxHeaderSize;
+    this.maxHeaderCount = maxHeaderCount;
+  }
+
+  /**
+   * Will configure the maximum size of request bodies, larger requests will be rejected with 413
+   *
+   * @param maxBodySize The maximum number of bytes of a request body
+   */
+  public void setMaxBodySize(long maxBodySize) {
+    this.maxBodySize = maxBodySize;
+  }
+
+  /**
+   * Will configure how long asynchronous handlers may take, requests they did not answer in time
+   * get 503 and their connection is closed
+   *
+   * @param handlerTimeout The timeout in milliseconds, 0 to wait forever
+   */
+  public void setHandlerTimeout(long handlerTimeout) {
+    this.handlerTimeout = handlerTimeout;
+  }
+
+  /**
+   * Will compress eligible responses with the given compressor, null disables compression
+   */
+  public void setCompressor(ResponseCompressor compressor) {
+    this.compressor = compressor;
+  }
+
+  @Override
+  public State process(Connection connection) {
+    // the blocking transport occupies the thread until the next request anyway, so it waits for
+    // asynchronous handlers
+    return process(connection, null).join();
   }
 
   @Override
-  public State process(Socket socket) {
+  public CompletionStage<State> processAsync(Connection connection,
+                                             Executor executor) {
+    return process(connection, executor);
+  }
+
+  /**
+   * Will read the next request of the connection and pass it to its handler
+   *
+   * @param executor Sends the response once an asynchronous handler completed, null to wait for
+   *                 the handler on the current thread
+   */
+  private CompletableFuture<State> process(Connection connection,
+                                           Executor executor) {
+    HttpRequest request;
+    BodyInputStream body;
     try {
-      // convert to easier to read stream
-      BufferedReader r = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-      Optional<HttpRequest> request = createRequest(r);
+      HttpRequestParser parser = getParser(connection);
+      HttpRequestParser.Result result;
+      while ((result = parser.parse(connection.getBuffer())) == HttpRequestParser.Result.INCOMPLETE) {
+        if (connection.fill() == -1) {
+          // the client closed the connection
+          return DISCARDED;
+        }
+      }
 
-      if (!request.isPresent()) {
+      if (result == HttpRequestParser.Result.ERROR) {
+        sendError(parser.getError(), connection);
+        return DISCARDED;
+      }
+      if (result == HttpRequestParser.Result.INVALID) {
         // cant read the request, so discard this message and close the connection
+        return DISCARDED;
+      }
+
+      request = parser.getRequest();
+      if (parser.getContentLength() > maxBodySize) {
+        // reject the request before the client sends the body
+        sendError("413 Payload too large", connection);
+        return DISCARDED;
+      }
+      body = createBody(parser, connection);
+      parser.reset();
+      request.setBody(body);
+    } catch (SocketTimeoutException e) {
+      logger.log("Socket was inactive for too long, closing {}", connection.toString());
+      return DISCARDED;
+    } catch (IOException e) {
+      logger.log("Error while converting the HttpInputStream to a HttpRequest: {}", e);
+      return DISCARDED;
+    }
+
+    // create the response object
+    HttpResponse response = new HttpResponse();
+
+    // pass it to the handler of its route, it reads the body from the connection while it needs it
+    CompletableFuture<Void> handled = handle(request, response);
+    if (handled.isDone() || executor == null) {
+      return CompletableFuture.completedFuture(
+          respond(request, response, body, await(handled), connection));
+    }
+    // nothing else uses the connection until the response has been sent, so pipelined requests
+    // are answered in order
+    return handled.handle((ignored, error) -> error)
+        .thenApplyAsync(error -> respond(request, response, body, error, connection), executor);
+  }
+
+  /**
+   * Will let the router handle the request. Handlers that do not complete within the timeout fail
+   * with a {@link TimeoutException}.
+   *
+   * @return a future that completes when the response is ready
+   */
+  private CompletableFuture<Void> handle(HttpRequest request,
+                                         HttpResponse response) {
+    CompletionStage<Void> stage;
+    try {
+      stage = router.handle(request, response);
+    } catch (UncheckedIOException e) {
+      CompletableFuture<Void> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+    CompletableFuture<Void> future = stage.toCompletableFuture();
+    if (future.isDone() || handlerTimeout <= 0) {
+      return future;
+    }
+    // the future of the handler is not completed by the timer, it may be shared
+    CompletableFuture<Void> handled = new CompletableFuture<>();
+    ScheduledFuture<?> timeout = timer.schedule(
+        () -> handled.completeExceptionally(new TimeoutException()),
+        handlerTimeout, TimeUnit.MILLISECONDS);
+    stage.whenComplete((ignored, error) -> {
+      timeout.cancel(false);
+      if (error == null) {
+        handled.complete(null);
+      } else {
+        handled.completeExceptionally(error);
+      }
+    });
+    return handled;
+  }
+
+  /**
+   * Will wait until the handler completed
+   *
+   * @return the error of the handler, null if it succeeded
+   */
+  private static Throwable await(CompletableFuture<Void> handled) {
+    try {
+      handled.get();
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause();
+    } catch (InterruptedException e) {
+      // the server is stopped
+      Thread.currentThread().interrupt();
+      return e;
+    }
+  }
+
+  /**
+   * Will run the filters and send the response once the handler completed
+   *
+   * @param error The error of the handler, null if it succeeded
+   */
+  private State respond(HttpRequest request,
+                        HttpResponse response,
+                        BodyInputStream body,
+                        Throwable error,
+                        Connection connection) {
+    if (error instanceof CompletionException && error.getCause() != null) {
+      error = error.getCause();
+    }
+    try {
+      if (body != null && body.isTooLarge()) {
+        sendError("413 Payload too large", connection);
+        return State.DISCARD;
+      }
+      if (error instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) error).getCause();
+      }
+      if (error instanceof InterruptedException) {
+        return State.DISCARD;
+      }
+      if (error != null) {
+        // the handler may still use the request, so the connection is not used for another one
+        logger.log("Could not handle {}: {}", request.getPath(),
+                   error instanceof TimeoutException ? "timed out" : error.toString());
+        sendError(error instanceof TimeoutException ? "503 Service unavailable"
+                                                    : "500 Internal server error", connection);
         return State.DISCARD;
       }
 
-      // create the response object
-      HttpResponse response = new HttpResponse();
+      for (HttpHandler filter : this.filters) {
+        filter.handle(request, response);
+      }
 
-      // pass it to the handlers
-      for (HttpHandler handler : this.handlers) {
-        handler.handle(request.get(), response);
+      if (compressor != null) {
+        compressor.compress(request, response);
+      }
+
+      if (response.getStatus().startsWith("304") || response.getStatus().startsWith("412")) {
+        // the conditions of the request decided the response, the representation is not sent.
+        // The compressor has seen its length already, so a 304 carries the tag of the variant
+        response.clearBody();
       }
 
       // send the response
-      sendResponse(request.get(), response, socket.getOutputStream());
+      sendResponse(request, response, connection);
+
+      // the next request can only be read when the rest of the body has been skipped
+      boolean bodyFinished = body == null || body.finish();
 
       // if it should kept open, then advice the socket processor to not close the socket
-      if(request.get().isKeepAlive()) {
+      if(bodyFinished && request.isKeepAlive() &&
+         !"close".equals(response.getHeaders().get(HttpHeaders.CONNECTION))) {
         return State.CONTINUE;
       }
     } catch (SocketTimeoutException e) {
-      logger.log("Socket was inactive for too long, closing {}", socket.toString());
+      logger.log("Socket was inactive for too long, closing {}", connection.toString());
     } catch (IOException e) {
-      logger.log("Error while converting the HttpInputStream to a HttpRequest: ", e.getMessage());
+      logger.log("Could not respond to {} on {}: {}", request.getPath(), connection, e);
     }
     return State.DISCARD;
   }
 
   /**
-   * Will send the {@link HttpResponse} to the client
+   * A request is complete when the head has been parsed and the body has been buffered. Messages
+   * that are no HTTP request or exceed the limits are complete as well so that they can be rejected
+   * right away.
    */
-  private void sendResponse(HttpRequest request,
-                            HttpResponse response,
-                            OutputStream outputStream) throws IOException {
-
-    // write headers
-    outputStream.write((response.getProtocol() + " " + response.getStatus() + "\r\n").getBytes());
-    outputStream.write(("Date: " + HttpHeaders.headerTime.format(new Date()) + "\r\n").getBytes());
-    outputStream.write(("Server: SimpleHttpServer\r\n").getBytes());
-    outputStream.write(("Content-Length: " + response.getContentLength() + "\r\n").getBytes());
-
-    for (Map.Entry<String, String> header : response.getHeaders().get()) {
-      outputStream.write((header.getKey() + ": " + header.getValue() + "\r\n").getBytes());
+  @Override
+  public boolean isComplete(Connection connection) {
+    HttpRequestParser parser = getParser(connection);
+    HttpRequestParser.Result result = parser.parse(connection.getBuffer());
+    if (result != HttpRequestParser.Result.COMPLETE) {
+      return result != HttpRequestParser.Result.INCOMPLETE;
     }
+    if (parser.isChunked() || parser.isExpectContinue() ||
+        parser.getContentLength() > maxBodySize) {
+      // the length is unknown, the client waits until the body is requested or the request will
+      // be rejected anyway
+      return true;
+    }
+    return parser.getContentLength() <= connection.getBuffer().remaining() ||
+           parser.getContentLength() > MAX_BUFFERED_BODY;
+  }
 
-    outputStream.write("\r\n".getBytes());
-
-    // write content if available
-    if (response.getContentLength() > 0 && request.getMethod() != HttpBase.Method.HEAD) {
-      outputStream.write(response.getContent().toByteArray());
+  /**
+   * Each connection gets its own parser so that the state survives between partial reads
+   */
+  private HttpRequestParser getParser(Connection connection) {
+    if (!(connection.getAttachment() instanceof HttpRequestParser)) {
+      connection.setAttachment(
+          new HttpRequestParser(maxRequestLineSize, maxHeaderSize, maxHeaderCount));
     }
+    return (HttpRequestParser) connection.getAttachment();
+  }
 
-    // flush the response
-    outputStream.flush();
+  /**
+   * Creates the stream the handlers read the body from, null if the request has no body
+   */
+  private BodyInputStream createBody(HttpRequestParser parser,
+                                     Connection connection) {
+    if (parser.isChunked()) {
+      return new ChunkedInputStream(connection, parser.isExpectContinue(), maxBodySize);
+    }
+    if (parser.getContentLength() > 0) {
+      return new ContentLengthInputStream(connection, parser.isExpectContinue(),
+                                          parser.getContentLength());
+    }
+    return null;
   }
 
   /**
-   * Will try to create an {@link HttpRequest} from the incomming connection, if not possible then
-   * the socket will be closed.
+   * Will send an empty response with the given status and close the connection afterwards
    */
-  private Optional<HttpRequest> createRequest(BufferedReader reader) throws IOException {
+  private void sendError(String status,
+                         Connection connection) throws IOException {
     HttpRequest request = new HttpRequest();
-    List<String> headers = new ArrayList<>();
+    request.setMethod(HttpBase.Method.GET);
+    HttpResponse response = new HttpResponse();
+    response.setStatus(status);
+    response.getHeaders().add(HttpHeaders.CONNECTION, "close");
+    sendResponse(request, response, connection);
+  }
 
-    String line = reader.readLine();
-    if (line == null || !line.matches("\\w+ /.* HTTP/.*")) {
-      // reject request as the first line is not a valid header or the client closed the connection
-      return Optional.empty();
-    }
-    while (reader.ready()) {
-      if (line.equals("")) { break; }
-      headers.add(line);
-      line = reader.readLine();
-    }
+  /**
+   * Will send the {@link HttpResponse} to the client
+   */
+  private void sendResponse(HttpRequest request,
+                            HttpResponse response,
+                            Connection connection) throws IOException {
 
-    if (headers.isEmpty()) {
-      return Optional.empty();
+    if (response.getBodyWriter() != null) {
+      // the length of a streamed body is unknown, so HTTP/1.0 clients read until the connection
+      // is closed
+      if (request.getProtocol() == HttpBase.Version.HTTP_1_1) {
+        response.getHeaders().add(HttpHeaders.TRANSFER_ENCODING, "chunked");
+      } else {
+        response.getHeaders().add(HttpHeaders.CONNECTION, "close");
+      }
     }
 
-    String rawFirstLine = headers.remove(0);
-    String[] methodAndPath = rawFirstLine.split(" ");
+    HttpResponseEncoder.writeHead(response, connection.getOutputStream());
 
-    request.setMethod(HttpBase.Method.valueOf(methodAndPath[0]));
-    request.setPath(methodAndPath[1]);
+    if (request.getMethod() == HttpBase.Method.HEAD) {
+      return;
+    }
 
-    switch (methodAndPath[2]) {
-      case "HTTP/1.1":
-        request.setProtocol(HttpBase.Version.HTTP_1_1);
-        break;
-      case "HTTP/1.0":
-        request.setProtocol(HttpBase.Version.HTTP_1_0);
-        break;
+    // write content if available
+    if (response.getBodyWriter() != null) {
+      streamBody(request, response.getBodyWriter(), connection);
+    } else if (response.getContentLength() > 0) {
+      if (response.getBody() != null) {
+        // the connection sends the buffered head before the body is transferred
+        response.getBody().writeTo(connection);
+      } else {
+        // small content is appended to the head, larger content leaves with it in one write
+        connection.write(response.getContentBuffer());
+      }
     }
 
-    headers.forEach(it -> request.getHeaders().add(it));
+    // the response is not flushed here, the connection sends it together with the responses to
+    // pipelined requests once it has to wait for the client or is handed back
+  }
 
-    if(request.getHeaders().get(HttpHeaders.CONTENT_LENGTH) != null) {
-      int read;
-      StringBuilder b = new StringBuilder();
-      while ((read = reader.read()) != -1) {
-        b.append((char) read);
-        if (b.length() == Integer.parseInt(request.getHeaders().get(HttpHeaders.CONTENT_LENGTH)))
-          break;
-      }
-      request.setContent(b.toString());
+  /**
+   * Will let the writer produce the body while it is sent, only a bounded part of it is buffered
+   */
+  private void streamBody(HttpRequest request,
+                          BodyWriter bodyWriter,
+                          Connection connection) throws IOException {
+    if (request.getProtocol() == HttpBase.Version.HTTP_1_1) {
+      ChunkedOutputStream outputStream = new ChunkedOutputStream(connection.getOutputStream());
+      bodyWriter.writeTo(outputStream);
+      outputStream.close();
+    } else {
+      bodyWriter.writeTo(connection.getOutputStream());
     }
+  }
 
-    return Optional.of(request);
+  private static ScheduledExecutorService createTimer() {
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "HandlerTimeout");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // most handlers complete in time, their timeouts do not need to wait in the queue
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
   }
 }
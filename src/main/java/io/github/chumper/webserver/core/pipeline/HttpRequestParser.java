@@ -0,0 +1,328 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.core.http.HttpRequest;
+
+/**
+ * Parses the head of a HTTP/1.x request directly from the bytes buffered by a connection.
+ * The parser works incremental, when only a part of the head has been received it remembers how
+ * far it got and continues from there when more data arrived, so each byte is only looked at once.
+ * A parser is created per connection and reused for all of its requests.
+ */
+public class HttpRequestParser {
+
+  /**
+   * INCOMPLETE if more data is needed, COMPLETE if the head has been parsed, INVALID if the data
+   * is no HTTP request at all and ERROR if the request should be answered with {@link #getError()}
+   */
+  public enum Result { INCOMPLETE, COMPLETE, INVALID, ERROR }
+
+  private static final byte[] GET = "GET".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] HEAD = "HEAD".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] POST = "POST".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] HTTP = "HTTP/1.".getBytes(StandardCharsets.US_ASCII);
+
+  private final int maxRequestLineSize;
+  private final int maxHeaderSize;
+  private final int maxHeaderCount;
+
+  private Result result = Result.INCOMPLETE;
+  private String error;
+  private HttpRequest request;
+  private long contentLength;
+  private boolean chunked;
+  private boolean expectContinue;
+  /**
+   * Where the scan will continue, relative to the position of the buffer
+   */
+  private int offset;
+  /**
+   * Where the current line starts, relative to the position of the buffer
+   */
+  private int lineStart;
+  /**
+   * Where the headers start, -1 if the request line has not been parsed yet
+   */
+  private int headersStart = -1;
+  private int headerCount;
+
+  /**
+   * @param maxRequestLineSize The maximum number of bytes of the request line
+   * @param maxHeaderSize      The maximum number of bytes of all header lines
+   * @param maxHeaderCount     The maximum number of headers
+   */
+  public HttpRequestParser(int maxRequestLineSize,
+                           int maxHeaderSize,
+                           int maxHeaderCount) {
+    this.maxRequestLineSize = maxRequestLineSize;
+    this.maxHeaderSize = maxHeaderSize;
+    this.maxHeaderCount = maxHeaderCount;
+  }
+
+  /**
+   * Will parse the buffered data as far as possible. When the head is complete the position of
+   * the buffer is moved behind it, so the buffer starts with the body of the request. Once the
+   * parser reached a result other than INCOMPLETE it will return it until {@link #reset()} is
+   * called.
+   *
+   * @param buffer The buffered data in read mode, needs to be backed by an array
+   * @return The result of the parsing
+   */
+  public Result parse(ByteBuffer buffer) {
+    if (result != Result.INCOMPLETE) {
+      return result;
+    }
+    byte[] data = buffer.array();
+    int base = buffer.arrayOffset() + buffer.position();
+    int available = buffer.remaining();
+
+    while (offset < available) {
+      if (data[base + offset] != '\n') {
+        offset++;
+        continue;
+      }
+      int lineEnd = offset;
+      if (lineEnd > lineStart && data[base + lineEnd - 1] == '\r') {
+        lineEnd--;
+      }
+      offset++;
+
+      if (headersStart == -1) {
+        // skip empty lines in front of the request
+        if (lineEnd > lineStart && !parseRequestLine(data, base + lineStart, base + lineEnd)) {
+          return result;
+        }
+        if (lineEnd > lineStart) {
+          headersStart = offset;
+        }
+      } else if (lineEnd == lineStart) {
+        // the empty line ends the head
+        buffer.position(buffer.position() + offset);
+        return result = Result.COMPLETE;
+      } else if (++headerCount > maxHeaderCount || offset - headersStart > maxHeaderSize) {
+        return fail("431 Request header fields too large");
+      } else if (!parseHeader(data, base + lineStart, base + lineEnd)) {
+        return result;
+      }
+      lineStart = offset;
+    }
+
+    if (headersStart == -1 && offset - lineStart > maxRequestLineSize) {
+      return fail("414 URI too long");
+    }
+    if (headersStart != -1 && offset - headersStart > maxHeaderSize) {
+      return fail("431 Request header fields too large");
+    }
+    return result;
+  }
+
+  /**
+   * The parsed request, available when the result is COMPLETE
+   */
+  public HttpRequest getRequest() {
+    return request;
+  }
+
+  /**
+   * The value of the content length header, 0 if none was sent
+   */
+  public long getContentLength() {
+    return contentLength;
+  }
+
+  /**
+   * Whether the body is sent with the chunked transfer coding
+   */
+  public boolean isChunked() {
+    return chunked;
+  }
+
+  /**
+   * Whether the client waits for a 100 Continue response before it sends the body
+   */
+  public boolean isExpectContinue() {
+    return expectContinue;
+  }
+
+  /**
+   * The status that should be returned to the client when the result is ERROR
+   */
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * Prepares the parser for the next request of the connection
+   */
+  public void reset() {
+    result = Result.INCOMPLETE;
+    error = null;
+    request = null;
+    contentLength = 0;
+    chunked = false;
+    expectContinue = false;
+    offset = 0;
+    lineStart = 0;
+    headersStart = -1;
+    headerCount = 0;
+  }
+
+  private boolean parseRequestLine(byte[] data,
+                                   int start,
+                                   int end) {
+    if (end - start > maxRequestLineSize) {
+      fail("414 URI too long");
+      return false;
+    }
+    int methodEnd = indexOf(data, start, end, (byte) ' ');
+    int pathEnd = methodEnd == -1 ? -1 : indexOf(data, methodEnd + 1, end, (byte) ' ');
+    if (pathEnd == -1 || data[methodEnd + 1] != '/' ||
+        end - (pathEnd + 1) != HTTP.length + 1 || !equals(data, pathEnd + 1, HTTP)) {
+      // not a HTTP request
+      result = Result.INVALID;
+      return false;
+    }
+
+    HttpBase.Method method;
+    if (methodEnd - start == GET.length && equals(data, start, GET)) {
+      method = HttpBase.Method.GET;
+    } else if (methodEnd - start == HEAD.length && equals(data, start, HEAD)) {
+      method = HttpBase.Method.HEAD;
+    } else if (methodEnd - start == POST.length && equals(data, start, POST)) {
+      method = HttpBase.Method.POST;
+    } else {
+      fail("501 Not implemented");
+      return false;
+    }
+
+    request = new HttpRequest();
+    request.setMethod(method);
+    request.setPath(new String(data, methodEnd + 1, pathEnd - methodEnd - 1,
+                               StandardCharsets.UTF_8));
+    switch (data[end - 1]) {
+      case '1':
+        request.setProtocol(HttpBase.Version.HTTP_1_1);
+        break;
+      case '0':
+        request.setProtocol(HttpBase.Version.HTTP_1_0);
+        break;
+      default:
+        fail("505 HTTP version not supported");
+        return false;
+    }
+    return true;
+  }
+
+  private boolean parseHeader(byte[] data,
+                              int start,
+                              int end) {
+    int colon = indexOf(data, start, end, (byte) ':');
+    if (colon == -1) {
+      // ignore lines that are no headers
+      return true;
+    }
+    int nameEnd = colon;
+    while (nameEnd > start && isWhitespace(data[nameEnd - 1])) { nameEnd--; }
+    int valueStart = colon + 1;
+    while (valueStart < end && isWhitespace(data[valueStart])) { valueStart++; }
+    int valueEnd = end;
+    while (valueEnd > valueStart && isWhitespace(data[valueEnd - 1])) { valueEnd--; }
+    if (nameEnd == start) {
+      return true;
+    }
+
+    String name = headerName(data, start, nameEnd);
+    // well known names are always the constants, so they can be compared by identity
+    if (name == HttpHeaders.CONTENT_LENGTH) {
+      contentLength = parseLength(data, valueStart, valueEnd);
+      if (contentLength < 0) {
+        fail("400 Bad request");
+        return false;
+      }
+    }
+    String value = new String(data, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1);
+    if (name == HttpHeaders.TRANSFER_ENCODING) {
+      if (value.equalsIgnoreCase("chunked")) {
+        chunked = true;
+      } else if (!value.equalsIgnoreCase("identity")) {
+        fail("501 Not implemented");
+        return false;
+      }
+    }
+    if (name == HttpHeaders.EXPECT && request.getProtocol() == HttpBase.Version.HTTP_1_1) {
+      if (!value.equalsIgnoreCase("100-continue")) {
+        fail("417 Expectation failed");
+        return false;
+      }
+      expectContinue = true;
+    }
+    // a header may be sent in several lines, each line adds a value
+    request.getHeaders().append(name, value);
+    return true;
+  }
+
+  /**
+   * Will return the constant of well known headers, other names are created as they were sent
+   */
+  private static String headerName(byte[] data,
+                                   int start,
+                                   int end) {
+    String known = HttpHeaders.knownName(data, start, end);
+    if (known != null) {
+      return known;
+    }
+    return new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+  }
+
+  private static long parseLength(byte[] data,
+                                  int start,
+                                  int end) {
+    if (start == end || end - start > 18) {
+      return -1;
+    }
+    long length = 0;
+    for (int i = start; i < end; i++) {
+      if (data[i] < '0' || data[i] > '9') {
+        return -1;
+      }
+      length = length * 10 + (data[i] - '0');
+    }
+    return length;
+  }
+
+  private Result fail(String error) {
+    this.error = error;
+    return result = Result.ERROR;
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t';
+  }
+
+  private static int indexOf(byte[] data,
+                             int start,
+                             int end,
+                             byte b) {
+    for (int i = start; i < end; i++) {
+      if (data[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean equals(byte[] data,
+                                int start,
+                                byte[] expected) {
+    for (int i = 0; i < expected.length; i++) {
+      if (data[start + i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
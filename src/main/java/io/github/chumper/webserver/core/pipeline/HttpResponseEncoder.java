@@ -0,0 +1,132 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpClock;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.core.http.HttpResponse;
+
+/**
+ * Writes the head of a {@link HttpResponse}. Status lines and header names are encoded once and
+ * then reused, the Date header comes from the {@link HttpClock}. The head is written to the
+ * buffered output of the connection, so it leaves together with the body.
+ */
+public final class HttpResponseEncoder {
+
+  /**
+   * Only this many different status lines and header names are kept, handlers could create new
+   * ones for each response
+   */
+  private static final int MAX_CACHED = 256;
+
+  private static final byte[] CRLF = {'\r', '\n'};
+  private static final byte[] SERVER = bytes("Server: SimpleHttpServer\r\n");
+  private static final byte[] CONTENT_LENGTH = bytes(HttpHeaders.CONTENT_LENGTH + ": ");
+
+  private static final Map<String, byte[]> statusLines11 = new ConcurrentHashMap<>();
+  private static final Map<String, byte[]> statusLines10 = new ConcurrentHashMap<>();
+  private static final Map<String, byte[]> headerNames = new ConcurrentHashMap<>();
+
+  static {
+    for (String status : new String[]{"200 OK", "206 Partial content",
+                                      "304 Not modified", "400 Bad request",
+                                      "404 Not found", "412 Precondition failed",
+                                      "416 Range not satisfiable",
+                                      "500 Internal server error"}) {
+      statusLine(HttpBase.Version.HTTP_1_1, status);
+      statusLine(HttpBase.Version.HTTP_1_0, status);
+    }
+    for (String name : new String[]{HttpHeaders.ACCEPT_RANGES, HttpHeaders.CONNECTION,
+                                    HttpHeaders.CONTENT_ENCODING, HttpHeaders.CONTENT_RANGE,
+                                    HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG,
+                                    HttpHeaders.LAST_MODIFIED, HttpHeaders.TRANSFER_ENCODING,
+                                    HttpHeaders.VARY}) {
+      headerName(name);
+    }
+  }
+
+  private HttpResponseEncoder() {
+  }
+
+  /**
+   * Will write the status line and all headers of the response, including the empty line that
+   * ends the head. Streamed responses and 304 responses, which never have a body, have no
+   * Content-Length header.
+   */
+  public static void writeHead(HttpResponse response,
+                               OutputStream outputStream) throws IOException {
+    outputStream.write(statusLine(response.getProtocol(), response.getStatus()));
+    outputStream.write(HttpClock.dateHeader());
+    outputStream.write(SERVER);
+    if (response.getContentLength() >= 0 && !response.getStatus().startsWith("304")) {
+      outputStream.write(CONTENT_LENGTH);
+      writeNumber(response.getContentLength(), outputStream);
+      outputStream.write(CRLF);
+    }
+
+    HttpHeaders headers = response.getHeaders();
+    for (int i = 0; i < headers.size(); i++) {
+      outputStream.write(headerName(headers.getName(i)));
+      writeValue(headers.getValue(i), outputStream);
+      outputStream.write(CRLF);
+    }
+
+    outputStream.write(CRLF);
+  }
+
+  private static byte[] statusLine(HttpBase.Version version,
+                                   String status) {
+    Map<String, byte[]> statusLines =
+        version == HttpBase.Version.HTTP_1_0 ? statusLines10 : statusLines11;
+    byte[] line = statusLines.get(status);
+    if (line == null) {
+      line = bytes(version + " " + status + "\r\n");
+      if (statusLines.size() < MAX_CACHED) {
+        statusLines.put(status, line);
+      }
+    }
+    return line;
+  }
+
+  private static byte[] headerName(String name) {
+    byte[] encoded = headerNames.get(name);
+    if (encoded == null) {
+      encoded = bytes(name + ": ");
+      if (headerNames.size() < MAX_CACHED) {
+        headerNames.put(name, encoded);
+      }
+    }
+    return encoded;
+  }
+
+  /**
+   * Header values are ISO-8859-1, so each character is written as a single byte
+   */
+  private static void writeValue(String value,
+                                 OutputStream outputStream) throws IOException {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      outputStream.write(c > 0xff ? '?' : c);
+    }
+  }
+
+  private static void writeNumber(long number,
+                                  OutputStream outputStream) throws IOException {
+    long divisor = 1;
+    while (divisor <= number / 10) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      outputStream.write((int) ('0' + number / divisor % 10));
+    }
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.ISO_8859_1);
+  }
+}
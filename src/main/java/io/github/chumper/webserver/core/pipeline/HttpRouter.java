@@ -0,0 +1,316 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletionStage;
+
+import io.github.chumper.webserver.core.http.AsyncHttpHandler;
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpHandler;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.core.http.HttpRequest;
+import io.github.chumper.webserver.core.http.HttpResponse;
+
+/**
+ * Passes each request to the single handler of the route that matches its method and path. The
+ * routes are kept in a tree with a node per path segment, so finding the route only walks the
+ * segments of the path, no matter how many routes there are.
+ *
+ * The segments of a pattern are matched in this order:
+ * <ul>
+ * <li>a literal segment like {@code comments}</li>
+ * <li>a parameter like {@code {id}} that matches any non-empty segment, its value is available
+ * with {@link HttpRequest#getPathParam(String)}</li>
+ * <li>a {@code *} as the last segment that matches the rest of the path, even if it is empty, so
+ * {@code /files/*} answers {@code /files}, {@code /files/} and everything below. The rest is
+ * available as the parameter {@link #REST}</li>
+ * </ul>
+ * The path of the request is never changed. HEAD requests are answered by the GET handler if the
+ * route has no HEAD handler. Requests without a route get 404, requests for a path whose routes do
+ * not accept the method get 405.
+ *
+ * Synchronous handlers are adapted with {@link AsyncHttpHandler#of(HttpHandler)}, so they still
+ * answer before {@link #handle(HttpRequest, HttpResponse)} returns.
+ */
+public class HttpRouter
+    implements AsyncHttpHandler {
+
+  /**
+   * The parameter with the rest of the path matched by a {@code *}, e.g. {@code /a/b.txt} for the
+   * path {@code /files/a/b.txt} and the pattern {@code /files/*}. Empty for {@code /files}.
+   */
+  public static final String REST = "*";
+
+  private final Node root = new Node(null);
+
+  /**
+   * Will register the handler for the method and the path pattern
+   *
+   * @param pattern The pattern of the path starting with /, e.g. /comments/{id} or /files/*
+   * @throws IllegalArgumentException if the pattern is invalid or already has a handler for the
+   *                                  method
+   */
+  public void route(HttpBase.Method method,
+                    String pattern,
+                    HttpHandler handler) {
+    routeAsync(method, pattern, AsyncHttpHandler.of(handler));
+  }
+
+  /**
+   * Will register the asynchronous handler for the method and the path pattern, see
+   * {@link #route(HttpBase.Method, String, HttpHandler)}
+   */
+  public void routeAsync(HttpBase.Method method,
+                         String pattern,
+                         AsyncHttpHandler handler) {
+    if (!pattern.startsWith("/")) {
+      throw new IllegalArgumentException("The pattern has to start with /: " + pattern);
+    }
+    Node node = root;
+    String[] segments =
+        pattern.length() == 1 ? new String[0] : pattern.substring(1).split("/", -1);
+    for (int i = 0; i < segments.length; i++) {
+      String segment = segments[i];
+      if (segment.equals(REST)) {
+        if (i != segments.length - 1) {
+          throw new IllegalArgumentException("* has to be the last segment: " + pattern);
+        }
+        register(node.rest, method, handler, pattern);
+        return;
+      }
+      if (segment.startsWith("{") && segment.endsWith("}")) {
+        String name = segment.substring(1, segment.length() - 1);
+        if (node.param == null) {
+          node.param = new Node(name);
+        } else if (!node.param.name.equals(name)) {
+          throw new IllegalArgumentException(
+              "The parameter {" + node.param.name + "} has another name in " + pattern);
+        }
+        node = node.param;
+      } else {
+        node = node.child(segment);
+      }
+    }
+    register(node.handlers, method, handler, pattern);
+  }
+
+  @Override
+  public CompletionStage<Void> handle(HttpRequest request,
+                                      HttpResponse response) {
+    String path = request.getPath();
+    int end = path.indexOf('?');
+    if (end == -1) {
+      end = path.length();
+    }
+    if (end == 0 || path.charAt(0) != '/') {
+      response.setStatus("404 Not found");
+      return COMPLETED;
+    }
+    // the root has no segment
+    int start = end == 1 ? 1 : 0;
+
+    AsyncHttpHandler handler = find(root, path, start, end, request.getMethod(), request, null);
+    if (handler != null) {
+      return handler.handle(request, response);
+    }
+
+    // only requests without a handler pay for finding out why
+    Set<HttpBase.Method> allowed = EnumSet.noneOf(HttpBase.Method.class);
+    find(root, path, start, end, request.getMethod(), request, allowed);
+    if (allowed.isEmpty()) {
+      response.setStatus("404 Not found");
+      return COMPLETED;
+    }
+    if (allowed.contains(HttpBase.Method.GET)) {
+      allowed.add(HttpBase.Method.HEAD);
+    }
+    StringJoiner allow = new StringJoiner(", ");
+    for (HttpBase.Method method : allowed) {
+      allow.add(method.name());
+    }
+    response.setStatus("405 Method not allowed");
+    response.getHeaders().add(HttpHeaders.ALLOW, allow.toString());
+    return COMPLETED;
+  }
+
+  /**
+   * Will find the handler for the rest of the path below the node. The parameters are set on the
+   * request once their route matched, so a route that was only tried leaves nothing behind.
+   *
+   * @param position The position of the / in front of the next segment, or the end
+   * @param allowed  Collects the methods of the routes that match the path if the handler is not
+   *                 found, null if they are not needed
+   * @return the handler, null if no route matches
+   */
+  private AsyncHttpHandler find(Node node,
+                                String path,
+                                int position,
+                                int end,
+                                HttpBase.Method method,
+                                HttpRequest request,
+                                Set<HttpBase.Method> allowed) {
+    if (position < end) {
+      int next = path.indexOf('/', position + 1);
+      if (next == -1 || next > end) {
+        next = end;
+      }
+      if (node.size > 0) {
+        Node child = node.find(path, position + 1, next);
+        if (child != null) {
+          AsyncHttpHandler handler = find(child, path, next, end, method, request, allowed);
+          if (handler != null) {
+            return handler;
+          }
+        }
+      }
+      if (node.param != null && next > position + 1) {
+        AsyncHttpHandler handler = find(node.param, path, next, end, method, request, allowed);
+        if (handler != null) {
+          request.setPathParam(node.param.name, path.substring(position + 1, next));
+          return handler;
+        }
+      }
+    } else {
+      AsyncHttpHandler handler = select(node.handlers, method, allowed);
+      if (handler != null) {
+        return handler;
+      }
+    }
+    AsyncHttpHandler handler = select(node.rest, method, allowed);
+    if (handler != null) {
+      request.setPathParam(REST, path.substring(position, end));
+    }
+    return handler;
+  }
+
+  private static AsyncHttpHandler select(Map<HttpBase.Method, AsyncHttpHandler> handlers,
+                                         HttpBase.Method method,
+                                         Set<HttpBase.Method> allowed) {
+    if (handlers.isEmpty()) {
+      return null;
+    }
+    if (allowed != null) {
+      allowed.addAll(handlers.keySet());
+      return null;
+    }
+    AsyncHttpHandler handler = handlers.get(method);
+    if (handler == null && method == HttpBase.Method.HEAD) {
+      handler = handlers.get(HttpBase.Method.GET);
+    }
+    return handler;
+  }
+
+  private static void register(Map<HttpBase.Method, AsyncHttpHandler> handlers,
+                               HttpBase.Method method,
+                               AsyncHttpHandler handler,
+                               String pattern) {
+    if (handlers.putIfAbsent(method, handler) != null) {
+      throw new IllegalArgumentException(method + " " + pattern + " has a handler already");
+    }
+  }
+
+  /**
+   * A segment of the registered patterns
+   */
+  private static final class Node {
+
+    /**
+     * The name of the parameter if this node is a parameter segment
+     */
+    private final String name;
+    /**
+     * The literal segments below this node in an open addressing table, so a segment of the path
+     * is found without cutting it out of the path first
+     */
+    private String[] segments = new String[4];
+    private Node[] children = new Node[4];
+    private int size;
+    private Node param;
+    /**
+     * The handlers of the routes that end at this node
+     */
+    private final Map<HttpBase.Method, AsyncHttpHandler> handlers =
+        new EnumMap<>(HttpBase.Method.class);
+    /**
+     * The handlers of the routes that end with a * below this node
+     */
+    private final Map<HttpBase.Method, AsyncHttpHandler> rest =
+        new EnumMap<>(HttpBase.Method.class);
+
+    private Node(String name) {
+      this.name = name;
+    }
+
+    /**
+     * @return the child for the literal segment, it is created if it does not exist
+     */
+    private Node child(String segment) {
+      Node child = find(segment, 0, segment.length());
+      if (child != null) {
+        return child;
+      }
+      if ((size + 1) * 2 > segments.length) {
+        String[] oldSegments = segments;
+        Node[] oldChildren = children;
+        segments = new String[oldSegments.length * 2];
+        children = new Node[oldChildren.length * 2];
+        for (int i = 0; i < oldSegments.length; i++) {
+          if (oldSegments[i] != null) {
+            insert(oldSegments[i], oldChildren[i]);
+          }
+        }
+      }
+      child = new Node(null);
+      insert(segment, child);
+      size++;
+      return child;
+    }
+
+    /**
+     * @return the child for the segment between start and end of the path, null if there is none
+     */
+    private Node find(String path,
+                      int start,
+                      int end) {
+      int length = end - start;
+      for (int slot = slot(hash(path, start, end)); segments[slot] != null;
+           slot = (slot + 1) & (segments.length - 1)) {
+        String segment = segments[slot];
+        if (segment.length() == length && path.regionMatches(start, segment, 0, length)) {
+          return children[slot];
+        }
+      }
+      return null;
+    }
+
+    private void insert(String segment,
+                        Node child) {
+      int slot = slot(segment.hashCode());
+      while (segments[slot] != null) {
+        slot = (slot + 1) & (segments.length - 1);
+      }
+      segments[slot] = segment;
+      children[slot] = child;
+    }
+
+    private int slot(int hash) {
+      return (hash ^ (hash >>> 16)) & (segments.length - 1);
+    }
+
+    /**
+     * The same hash as {@link String#hashCode()} of the segment
+     */
+    private static int hash(String path,
+                            int start,
+                            int end) {
+      int hash = 0;
+      for (int i = start; i < end; i++) {
+        hash = 31 * hash + path.charAt(i);
+      }
+      return hash;
+    }
+  }
+}
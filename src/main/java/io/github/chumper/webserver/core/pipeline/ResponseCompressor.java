@@ -0,0 +1,244 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import io.github.chumper.webserver.core.http.BodyWriter;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.core.http.HttpRequest;
+import io.github.chumper.webserver.core.http.HttpResponse;
+
+/**
+ * The compression stage of the {@link HttpPipeline}. It runs after all handlers and compresses
+ * buffered and streamed bodies with gzip or deflate if the client accepts it, the content type is
+ * allowed and the body is large enough. Bodies like a {@link
+ * io.github.chumper.webserver.core.http.FileRegion} are sent zero-copy and never compressed.
+ *
+ * Compressed responses are a different representation, so they get the coding appended to their
+ * ETag and all responses that could be compressed carry {@code Vary: Accept-Encoding}.
+ */
+public class ResponseCompressor {
+
+  public static final String GZIP = "gzip";
+  public static final String DEFLATE = "deflate";
+
+  /**
+   * The maximum number of idle deflaters kept per coding
+   */
+  private static final int MAX_IDLE_DEFLATERS = 64;
+
+  /**
+   * Smaller bodies are sent uncompressed, the saved bytes would not be worth the CPU time
+   */
+  private final long minSize;
+  /**
+   * The content types that are compressed, entries like text/* match all subtypes
+   */
+  private final Set<String> mimeTypes = new HashSet<>();
+
+  private final DeflaterPool gzipDeflaters;
+  private final DeflaterPool deflateDeflaters;
+
+  /**
+   * @param level     The compression level from 1 (fastest) to 9 (smallest)
+   * @param minSize   The minimum number of bytes of a body to be compressed
+   * @param mimeTypes The content types that will be compressed
+   */
+  public ResponseCompressor(int level,
+                            long minSize,
+                            Collection<String> mimeTypes) {
+    this.minSize = minSize;
+    for (String mimeType : mimeTypes) {
+      this.mimeTypes.add(mimeType.trim().toLowerCase(Locale.ROOT));
+    }
+    this.gzipDeflaters = new DeflaterPool(level, true, MAX_IDLE_DEFLATERS);
+    this.deflateDeflaters = new DeflaterPool(level, false, MAX_IDLE_DEFLATERS);
+  }
+
+  /**
+   * Will compress the body of the response if the client accepts it, for 304 responses only the
+   * headers of the compressed representation are set
+   */
+  public void compress(HttpRequest request,
+                       HttpResponse response) throws IOException {
+    if (!isEligible(response)) {
+      return;
+    }
+    addVary(response);
+
+    String coding = negotiate(request.getHeaders().get(HttpHeaders.ACCEPT_ENCODING));
+    if (coding == null) {
+      return;
+    }
+
+    if (response.getStatus().startsWith("200")) {
+      if (response.getBodyWriter() != null) {
+        compressStream(response, coding);
+      } else if (!compressContent(response, coding)) {
+        // the content did not get smaller, so the original is sent
+        return;
+      }
+      response.getHeaders().add(HttpHeaders.CONTENT_ENCODING, coding);
+    }
+
+    String etag = response.getHeaders().get(HttpHeaders.ETAG);
+    if (etag != null) {
+      response.getHeaders().add(HttpHeaders.ETAG, etag + "-" + coding);
+    }
+  }
+
+  /**
+   * Will remove the coding that was appended to the ETag of a compressed representation, so that
+   * the tags sent by clients can be compared with the ones of the handlers
+   */
+  public static String stripCoding(String etag) {
+    for (String coding : new String[]{GZIP, DEFLATE}) {
+      if (etag.endsWith("-" + coding)) {
+        return etag.substring(0, etag.length() - coding.length() - 1);
+      }
+    }
+    return etag;
+  }
+
+  private boolean isEligible(HttpResponse response) {
+    if (!response.getStatus().startsWith("200") && !response.getStatus().startsWith("304")) {
+      return false;
+    }
+    if (response.getBody() != null ||
+        response.getHeaders().get(HttpHeaders.CONTENT_ENCODING) != null) {
+      return false;
+    }
+    if (response.getBodyWriter() == null && response.getContentLength() < minSize) {
+      return false;
+    }
+    String contentType = response.getHeaders().get(HttpHeaders.CONTENT_TYPE);
+    if (contentType == null) {
+      return false;
+    }
+    int parameters = contentType.indexOf(';');
+    String mimeType = (parameters == -1 ? contentType : contentType.substring(0, parameters))
+        .trim().toLowerCase(Locale.ROOT);
+    return mimeTypes.contains(mimeType) ||
+           mimeTypes.contains(mimeType.substring(0, mimeType.indexOf('/') + 1) + "*");
+  }
+
+  /**
+   * Will choose the coding with the highest quality value of the Accept-Encoding header, gzip wins
+   * if both are equal
+   *
+   * @return null if the client accepts neither gzip nor deflate
+   */
+  static String negotiate(String acceptEncoding) {
+    double gzip = quality(acceptEncoding, GZIP);
+    double deflate = quality(acceptEncoding, DEFLATE);
+    if (gzip > 0 && gzip >= deflate) {
+      return GZIP;
+    }
+    return deflate > 0 ? DEFLATE : null;
+  }
+
+  /**
+   * Whether the Accept-Encoding header allows the given coding
+   */
+  public static boolean accepts(String acceptEncoding,
+                                String coding) {
+    return quality(acceptEncoding, coding) > 0;
+  }
+
+  /**
+   * The quality value of the coding in the Accept-Encoding header, 0 if it is not accepted
+   */
+  private static double quality(String acceptEncoding,
+                                String coding) {
+    if (acceptEncoding == null) {
+      return 0;
+    }
+    double quality = -1;
+    double any = 0;
+    for (String entry : acceptEncoding.split(",")) {
+      String[] parts = entry.split(";");
+      String name = parts[0].trim().toLowerCase(Locale.ROOT);
+      double value = 1;
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim();
+        if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+          try {
+            value = Double.parseDouble(parameter.substring(2));
+          } catch (NumberFormatException e) {
+            value = 0;
+          }
+        }
+      }
+      if (name.equals(coding) || (coding.equals(GZIP) && name.equals("x-gzip"))) {
+        quality = value;
+      } else if (name.equals("*")) {
+        any = value;
+      }
+    }
+    return quality < 0 ? any : quality;
+  }
+
+  private boolean compressContent(HttpResponse response,
+                                  String coding) throws IOException {
+    ByteBuffer content = response.getContentBuffer();
+    // text usually shrinks to a quarter or less
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.remaining() / 4 + 64);
+    DeflaterPool pool = pool(coding);
+    Deflater deflater = pool.acquire();
+    try {
+      CompressingOutputStream outputStream =
+          new CompressingOutputStream(compressed, deflater, coding.equals(GZIP));
+      outputStream.write(content.array(), content.arrayOffset() + content.position(),
+                         content.remaining());
+      outputStream.finish();
+    } finally {
+      pool.release(deflater);
+    }
+    if (compressed.size() >= content.remaining()) {
+      return false;
+    }
+    response.getContent().reset();
+    compressed.writeTo(response.getContent());
+    return true;
+  }
+
+  /**
+   * The streamed body is compressed while it is written, the deflater is only held during that
+   * time
+   */
+  private void compressStream(HttpResponse response,
+                              String coding) {
+    BodyWriter bodyWriter = response.getBodyWriter();
+    DeflaterPool pool = pool(coding);
+    response.stream(outputStream -> {
+      Deflater deflater = pool.acquire();
+      try {
+        CompressingOutputStream compressed =
+            new CompressingOutputStream(outputStream, deflater, coding.equals(GZIP));
+        bodyWriter.writeTo(compressed);
+        compressed.finish();
+      } finally {
+        pool.release(deflater);
+      }
+    });
+  }
+
+  private DeflaterPool pool(String coding) {
+    return coding.equals(GZIP) ? gzipDeflaters : deflateDeflaters;
+  }
+
+  private static void addVary(HttpResponse response) {
+    String vary = response.getHeaders().get(HttpHeaders.VARY);
+    if (vary == null) {
+      response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    } else if (!vary.toLowerCase(Locale.ROOT).contains("accept-encoding")) {
+      response.getHeaders().add(HttpHeaders.VARY, vary + ", " + HttpHeaders.ACCEPT_ENCODING);
+    }
+  }
+}
@@ -1,6 +1,10 @@
 package io.github.chumper.webserver.core.pipeline;
 
-import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+import io.github.chumper.webserver.core.Connection;
 
 /**
  * Abstract Handler class that can be used to modify the pipeline of the server
@@ -17,7 +21,32 @@ public interface SocketHandler {
    * Will process the incoming msg and transform it to the outgoing object.
    * For the sake of this exercise we will discard the msg when null is returned.
    * A more sophisticated exercise should handle this in a better way.
-   * @param socket The socket where the msg came from originally
+   * @param connection The connection where the msg came from originally
+   */
+  State process(Connection connection);
+
+  /**
+   * Used by the non blocking transport to process a message without occupying the worker thread
+   * while the handler waits, e.g. for a database. The connection must not be used by anyone else
+   * until the returned stage completed. By default the message is processed right away by
+   * {@link #process(Connection)}.
+   * @param connection The connection where the msg came from originally
+   * @param executor   The worker pool, work that continues after waiting has to run on it
+   * @return the state once the message has been processed
+   */
+  default CompletionStage<State> processAsync(Connection connection,
+                                              Executor executor) {
+    return CompletableFuture.completedFuture(process(connection));
+  }
+
+  /**
+   * Used by the non blocking transport to decide if enough data has been buffered so that
+   * {@link #process(Connection)} can run on a worker thread without waiting for the network.
+   * By default any data is enough.
+   * @param connection The connection with the buffered data
+   * @return boolean true if the connection should be passed to the worker pool
    */
-  State process(Socket socket);
+  default boolean isComplete(Connection connection) {
+    return connection.getBuffer().hasRemaining();
+  }
 }
@@ -0,0 +1,178 @@
+package io.github.chumper.webserver.data;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Decorates a {@link CommentRepository} with a copy of the newest page of comments in memory, the
+ * page every visitor sees first. It is answered from the copy, which is loaded from the decorated
+ * repository by the first read after a change. Changes are written through and invalidate the copy
+ * once they returned, so a read that starts after a change sees it. Older pages and all comments
+ * are always read from the decorated repository.
+ *
+ * Only changes made through the decorator are noticed, the decorated repository must not be
+ * changed by anyone else.
+ */
+public class CachingCommentRepository
+    implements CommentRepository {
+
+  /**
+   * The repository that stores the comments
+   */
+  private final CommentRepository repository;
+
+  /**
+   * Incremented after every change, a copy is current if it was loaded at the same version
+   */
+  private final AtomicLong version = new AtomicLong();
+  /**
+   * The last loaded copy, it may be outdated
+   */
+  private volatile Snapshot snapshot;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  /**
+   * The time that was spent loading the newest page
+   */
+  private final LongAdder loadNanos = new LongAdder();
+
+  public CachingCommentRepository(CommentRepository repository) {
+    this.repository = repository;
+  }
+
+  @Override
+  public Stream<Comment> all() {
+    return repository.all();
+  }
+
+  @Override
+  public Stream<Comment> page(Instant afterPosted,
+                              String afterId,
+                              int limit) {
+    if (afterPosted != null) {
+      return repository.page(afterPosted, afterId, limit);
+    }
+    return snapshot(limit).comments.stream();
+  }
+
+  @Override
+  public void add(Comment comment) {
+    try {
+      repository.add(comment);
+    } finally {
+      // a failed write may have changed the repository as well
+      version.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void addAll(List<Comment> comments) {
+    try {
+      repository.addAll(comments);
+    } finally {
+      version.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void clear() {
+    try {
+      repository.clear();
+    } finally {
+      version.incrementAndGet();
+    }
+  }
+
+  @Override
+  public long version() {
+    return version.get();
+  }
+
+  /**
+   * @return the current copy of the newest page, it is loaded if the comments changed since the
+   *         last load
+   */
+  private Snapshot snapshot(int limit) {
+    Snapshot current = snapshot;
+    if (current != null && current.version == version.get() && current.limit == limit) {
+      hits.increment();
+      return current;
+    }
+    // concurrent reads wait for a single load instead of querying the repository each
+    synchronized (this) {
+      long loading = version.get();
+      current = snapshot;
+      if (current != null && current.version == loading && current.limit == limit) {
+        hits.increment();
+        return current;
+      }
+      misses.increment();
+      long start = System.nanoTime();
+      List<Comment> comments = new ArrayList<>();
+      try (Stream<Comment> stream = repository.page(null, limit)) {
+        stream.forEachOrdered(comments::add);
+      }
+      loadNanos.add(System.nanoTime() - start);
+      // a change during the load leaves a copy with an old version, the next read loads again
+      current = new Snapshot(loading, limit, Collections.unmodifiableList(comments));
+      snapshot = current;
+      return current;
+    }
+  }
+
+  /**
+   * @return the number of reads of the newest page that were answered from memory
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the number of reads of the newest page that loaded it from the decorated repository
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the average time of a load in milliseconds
+   */
+  public double getLoadTime() {
+    long loads = misses.sum();
+    return loads == 0 ? 0 : loadNanos.sum() / (double) loads / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  @Override
+  public String toString() {
+    long hits = getHits();
+    long misses = getMisses();
+    return String.format("CommentCache: %d hits, %d misses, %.1f%% hit rate, %.2f ms per load",
+                         hits, misses, hits + misses == 0 ? 0 : 100.0 * hits / (hits + misses),
+                         getLoadTime());
+  }
+
+  /**
+   * The newest page as it was at a version
+   */
+  private static class Snapshot {
+
+    private final long version;
+    private final int limit;
+    private final List<Comment> comments;
+
+    private Snapshot(long version,
+                     int limit,
+                     List<Comment> comments) {
+      this.version = version;
+      this.limit = limit;
+      this.comments = comments;
+    }
+  }
+}
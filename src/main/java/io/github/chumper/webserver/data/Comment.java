@@ -10,13 +10,26 @@ public class Comment {
   public final Instant posted;
   public final String name;
   public final String message;
+  /**
+   * Given by the repository that stores the comment, null before. The ids of a repository sort
+   * like the comments posted at the same time, so together with the time they order all comments.
+   */
+  public final String id;
 
   public Comment(Instant posted,
                  String name,
                  String message) {
+    this(posted, name, message, null);
+  }
+
+  public Comment(Instant posted,
+                 String name,
+                 String message,
+                 String id) {
     this.posted = posted;
     this.name = name;
     this.message = message;
+    this.id = id;
   }
 
   @Override
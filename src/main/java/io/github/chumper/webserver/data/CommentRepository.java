@@ -1,5 +1,8 @@
 package io.github.chumper.webserver.data;
 
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
 import java.util.stream.Stream;
 
 /**
@@ -7,20 +10,99 @@ import java.util.stream.Stream;
  */
 public interface CommentRepository {
 
+  /**
+   * The version of repositories that do not track their changes
+   */
+  long UNVERSIONED = -1;
+
+  /**
+   * The order of the pages, comments posted at the same time are ordered by their id
+   */
+  Comparator<Comment> NEWEST_FIRST = Comparator.comparing((Comment comment) -> comment.posted)
+      .thenComparing(comment -> comment.id, Comparator.nullsFirst(Comparator.naturalOrder()))
+      .reversed();
+
   /**
    * Will get all comments
    * @return A List of comments
    */
   Stream<Comment> all();
 
+  /**
+   * Will get a page of the comments posted before the given time, the newest first
+   *
+   * @see #page(Instant, String, int)
+   */
+  default Stream<Comment> page(Instant afterPosted,
+                               int limit) {
+    return page(afterPosted, null, limit);
+  }
+
+  /**
+   * Will get a page of the comments, the newest first. The next page starts after the last comment
+   * of this one, so a page is found by the index of the repository no matter how many pages
+   * precede it, and comments that are added meanwhile do not shift the pages. The id of the last
+   * comment tells where the page ends between comments posted at the same time.
+   *
+   * @param afterPosted The time the last comment of the previous page was posted, null for the
+   *                    first page
+   * @param afterId     The id of the last comment of the previous page, null for all comments
+   *                    posted before afterPosted
+   * @param limit       The maximum number of comments
+   * @return The comments after the last one of the previous page, the newest first
+   */
+  default Stream<Comment> page(Instant afterPosted,
+                               String afterId,
+                               int limit) {
+    return all()
+        .filter(comment -> isAfter(comment, afterPosted, afterId))
+        .sorted(NEWEST_FIRST)
+        .limit(limit);
+  }
+
+  /**
+   * @return whether the comment comes after the last one of the previous page in the order of
+   *         {@link #NEWEST_FIRST}
+   */
+  static boolean isAfter(Comment comment,
+                         Instant afterPosted,
+                         String afterId) {
+    if (afterPosted == null) {
+      return true;
+    }
+    int result = comment.posted.compareTo(afterPosted);
+    return result < 0 ||
+           result == 0 && afterId != null && comment.id != null && comment.id.compareTo(afterId) < 0;
+  }
+
   /**
    * Add a comment
    * @param comment The comment to add
    */
   void add(Comment comment);
 
+  /**
+   * Add several comments at once, repositories that can store them together override this
+   * @param comments The comments to add
+   */
+  default void addAll(List<Comment> comments) {
+    comments.forEach(this::add);
+  }
+
   /**
    * Will clear all comments
    */
   void clear();
+
+  /**
+   * A number that changes with every {@link #add(Comment)} and {@link #clear()}, so callers can
+   * keep what they derived from the comments until it changes. It is read before the comments, as
+   * a change between both calls then only costs a needless rebuild.
+   *
+   * @return The version of the comments or {@link #UNVERSIONED} if the repository does not track
+   *         its changes
+   */
+  default long version() {
+    return UNVERSIONED;
+  }
 }
@@ -0,0 +1,446 @@
+package io.github.chumper.webserver.data;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the comments in memory for many threads that add and read them at the same time. The
+ * comments are appended to chunks of a fixed size that are never moved. An add reserves its slot
+ * with a single atomic increment and writes it without a lock. Reads take no lock and do not copy,
+ * {@link #all()} iterates the chunks directly.
+ *
+ * The written slots are published in the order they were reserved, so a read sees all comments up
+ * to a slot and nothing after it. This makes an add block: it waits until its slot is published,
+ * and so until the adds that reserved the slots before it wrote them. A thread that is preempted
+ * between reserving and writing its slot holds up the adds after it. They wait at most
+ * {@link #PUBLISH_TIMEOUT_NANOS} and then return with their comment not visible yet; the late add
+ * publishes it together with its own.
+ *
+ * Each chunk knows the oldest and the newest comment up to its end, so a page skips the chunks
+ * that can not contain a comment of it and stops once the earlier chunks only have older comments
+ * than the page. Comments usually arrive in the order they were posted, then a page reads little
+ * more than its own comments.
+ *
+ * The oldest comments are dropped when there are more than the maximum count or when they are
+ * older than the maximum age, both are optional. A clear replaces all chunks at once.
+ */
+public class ConcurrentCommentRepository
+    implements CommentRepository {
+
+  /**
+   * The number of comments in a chunk, a power of two
+   */
+  private static final int CHUNK_SIZE = 256;
+  private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  /**
+   * How often an add checks whether its slot is published before it parks
+   */
+  private static final int SPINS = 128;
+  private static final long PARK_NANOS = 10_000;
+  /**
+   * How long an add waits for the adds before it to write their slots
+   */
+  private static final long PUBLISH_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  /**
+   * The maximum number of comments, 0 for no limit
+   */
+  private final int maxCount;
+  /**
+   * The maximum age of a comment in milliseconds, 0 for no limit
+   */
+  private final long maxAgeMillis;
+
+  /**
+   * Counts the clears
+   */
+  private final AtomicLong generations = new AtomicLong();
+  /**
+   * The current comments, replaced by a clear
+   */
+  private volatile Store store = new Store(0);
+
+  /**
+   * Creates a repository that keeps all comments
+   */
+  public ConcurrentCommentRepository() {
+    this(0, Duration.ZERO);
+  }
+
+  /**
+   * @param maxCount The maximum number of comments, 0 for no limit
+   * @param maxAge   The maximum age of a comment, 0 for no limit
+   */
+  public ConcurrentCommentRepository(int maxCount,
+                                     Duration maxAge) {
+    this.maxCount = maxCount;
+    this.maxAgeMillis = maxAge.toMillis();
+  }
+
+  /**
+   * The comments in the order they were added, the comments added after the call are not part of
+   * it. Comments that are dropped because of their age while the stream is consumed may be
+   * missing.
+   */
+  @Override
+  public Stream<Comment> all() {
+    Store store = this.store;
+    long end = store.published;
+    long start = Math.min(store.start, end);
+    Instant cutoff = cutoff();
+    return LongStream.range(start, end)
+        .mapToObj(store::get)
+        .filter(Objects::nonNull)
+        .filter(comment -> cutoff == null || !comment.posted.isBefore(cutoff));
+  }
+
+  @Override
+  public Stream<Comment> page(Instant afterPosted,
+                              String afterId,
+                              int limit) {
+    Store store = this.store;
+    long end = store.published;
+    long start = Math.min(store.start, end);
+    Instant cutoff = cutoff();
+    if (limit <= 0 || end == start) {
+      return Stream.empty();
+    }
+
+    // the newest comments that were found so far, the oldest of them on top
+    PriorityQueue<Entry> newest = new PriorityQueue<>(limit, Entry.ORDER);
+    for (long chunkNumber = (end - 1) >>> CHUNK_SHIFT; chunkNumber >= start >>> CHUNK_SHIFT;
+         chunkNumber--) {
+      Chunk chunk = store.chunk(chunkNumber);
+      if (chunk == null) {
+        // dropped meanwhile
+        break;
+      }
+      // with an id the comments posted at the same time as the last one can still follow it
+      if (afterPosted == null || chunk.min.isBefore(afterPosted) ||
+          afterId != null && chunk.min.equals(afterPosted)) {
+        long first = Math.max(start, chunkNumber << CHUNK_SHIFT);
+        long last = Math.min(end, (chunkNumber + 1) << CHUNK_SHIFT) - 1;
+        for (long slot = last; slot >= first; slot--) {
+          Comment comment = chunk.comments.get((int) slot & CHUNK_MASK);
+          if (CommentRepository.isAfter(comment, afterPosted, afterId) &&
+              (cutoff == null || !comment.posted.isBefore(cutoff))) {
+            offer(newest, limit, comment, slot);
+          }
+        }
+      }
+      // the earlier chunks only have older comments than the page
+      Chunk previous = store.chunk(chunkNumber - 1);
+      if (newest.size() == limit && previous != null &&
+          previous.max.isBefore(newest.peek().comment.posted)) {
+        break;
+      }
+    }
+
+    Entry[] page = newest.toArray(new Entry[0]);
+    Arrays.sort(page, Entry.ORDER.reversed());
+    return Arrays.stream(page).map(entry -> entry.comment);
+  }
+
+  @Override
+  public void add(Comment comment) {
+    Objects.requireNonNull(comment.posted);
+    Store store = this.store;
+    long slot = store.reserved.getAndIncrement();
+    store.createChunk(slot >>> CHUNK_SHIFT).comments.set(
+        (int) slot & CHUNK_MASK,
+        new Comment(comment.posted, comment.name, comment.message, id(slot)));
+
+    // whoever publishes also publishes the slots that were written meanwhile, so an add only
+    // waits for the adds before it to write their slot, not for them to be published
+    long deadline = 0;
+    for (int spins = 0; ; spins++) {
+      if (store.publishing.compareAndSet(false, true)) {
+        try {
+          publish(store);
+        } finally {
+          store.publishing.set(false);
+        }
+      }
+      if (store.published > slot) {
+        return;
+      }
+      if (spins == SPINS) {
+        deadline = System.nanoTime() + PUBLISH_TIMEOUT_NANOS;
+      } else if (spins > SPINS && System.nanoTime() - deadline >= 0) {
+        // an earlier slot is still not written, its add publishes this one once it wrote it
+        return;
+      }
+      if (spins >= SPINS) {
+        // a yield does not always give the processor back to the thread that has it
+        LockSupport.parkNanos(PARK_NANOS);
+      } else if (spins >= SPINS / 2) {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Drops everything at once, the chunks are left to the garbage collector
+   */
+  @Override
+  public void clear() {
+    store = new Store(generations.incrementAndGet());
+  }
+
+  /**
+   * Derived from the number of clears and of published comments, so an add does not need another
+   * shared counter
+   */
+  @Override
+  public long version() {
+    Store store = this.store;
+    return (store.generation << 40) + store.published;
+  }
+
+  /**
+   * @return the number of comments, including the ones that are too old but not dropped yet
+   */
+  public long getCount() {
+    Store store = this.store;
+    return store.published - store.start;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CommentMemory: %d comments", getCount());
+  }
+
+  /**
+   * Will publish the written slots up to the first one that is not written yet. It is called by
+   * one thread at a time.
+   */
+  private void publish(Store store) {
+    long published = store.published;
+    Comment comment;
+    Chunk chunk;
+    while ((chunk = store.chunk(published >>> CHUNK_SHIFT)) != null &&
+           (comment = chunk.comments.get((int) published & CHUNK_MASK)) != null) {
+      if (chunk.min == null || comment.posted.isBefore(chunk.min)) {
+        chunk.min = comment.posted;
+      }
+      if (store.max == null || comment.posted.isAfter(store.max)) {
+        store.max = comment.posted;
+      }
+      chunk.max = store.max;
+      retain(store, published);
+      store.published = ++published;
+    }
+  }
+
+  /**
+   * Will move the start of the store past the comments that have to be dropped once the given
+   * slot is published
+   */
+  private void retain(Store store,
+                      long slot) {
+    long start = store.start;
+    if (maxCount > 0 && slot + 1 - start > maxCount) {
+      start = slot + 1 - maxCount;
+    }
+    Instant cutoff = cutoff();
+    while (cutoff != null && start <= slot && store.get(start).posted.isBefore(cutoff)) {
+      start++;
+    }
+    if (start != store.start) {
+      boolean chunkDropped = start >>> CHUNK_SHIFT != store.start >>> CHUNK_SHIFT;
+      store.start = start;
+      if (chunkDropped) {
+        store.dropChunks(start >>> CHUNK_SHIFT);
+      }
+    }
+  }
+
+  /**
+   * @return the time before which comments are too old, null if they never are
+   */
+  private Instant cutoff() {
+    return maxAgeMillis > 0 ? Instant.now().minusMillis(maxAgeMillis) : null;
+  }
+
+  /**
+   * @return the slot as hex digits of a fixed width, so the ids sort like the slots
+   */
+  private static String id(long slot) {
+    char[] id = new char[16];
+    for (int i = id.length - 1; i >= 0; i--, slot >>>= 4) {
+      id[i] = Character.forDigit((int) slot & 0xf, 16);
+    }
+    return new String(id);
+  }
+
+  /**
+   * Will keep the comment if it is newer than the oldest of a full page, the slots are offered
+   * from the newest to the oldest, so an equal time is older
+   */
+  private static void offer(PriorityQueue<Entry> newest,
+                            int limit,
+                            Comment comment,
+                            long slot) {
+    if (newest.size() < limit) {
+      newest.add(new Entry(comment, slot));
+    } else if (comment.posted.isAfter(newest.peek().comment.posted)) {
+      newest.poll();
+      newest.add(new Entry(comment, slot));
+    }
+  }
+
+  /**
+   * The comments between two clears
+   */
+  private static class Store {
+
+    private final long generation;
+    /**
+     * The next free slot
+     */
+    private final AtomicLong reserved = new AtomicLong();
+    /**
+     * The slots before are written and visible to reads
+     */
+    private volatile long published;
+    /**
+     * The first slot that was not dropped
+     */
+    private volatile long start;
+    /**
+     * Set while a thread publishes
+     */
+    private final AtomicBoolean publishing = new AtomicBoolean();
+    /**
+     * The newest comment, only used by the publishing thread
+     */
+    private Instant max;
+    /**
+     * The chunks, replaced when it grows
+     */
+    private volatile Directory directory = new Directory(0, new Chunk[16]);
+
+    private Store(long generation) {
+      this.generation = generation;
+    }
+
+    /**
+     * @return the chunk or null if it was dropped or not created yet
+     */
+    private Chunk chunk(long number) {
+      Directory directory = this.directory;
+      long index = number - directory.base;
+      return index < 0 || index >= directory.chunks.length ? null
+                                                           : directory.chunks[(int) index];
+    }
+
+    /**
+     * @return the comment of the slot or null if it was dropped
+     */
+    private Comment get(long slot) {
+      Chunk chunk = chunk(slot >>> CHUNK_SHIFT);
+      return chunk == null ? null : chunk.comments.get((int) slot & CHUNK_MASK);
+    }
+
+    /**
+     * Will return the chunk and create it if it does not exist yet, which happens once for every
+     * chunk
+     */
+    private Chunk createChunk(long number) {
+      Chunk chunk = chunk(number);
+      if (chunk != null) {
+        return chunk;
+      }
+      synchronized (this) {
+        Directory directory = this.directory;
+        int index = (int) (number - directory.base);
+        if (index >= directory.chunks.length) {
+          // the dropped chunks are not copied
+          long base = start >>> CHUNK_SHIFT;
+          Chunk[] chunks = new Chunk[Math.max(16, (int) (number - base + 1) * 2)];
+          for (long i = base; i < directory.base + directory.chunks.length; i++) {
+            chunks[(int) (i - base)] = directory.chunks[(int) (i - directory.base)];
+          }
+          directory = new Directory(base, chunks);
+          this.directory = directory;
+          index = (int) (number - base);
+        }
+        if (directory.chunks[index] == null) {
+          directory.chunks[index] = new Chunk();
+        }
+        return directory.chunks[index];
+      }
+    }
+
+    /**
+     * Will drop the chunks before the given one, so their comments can be collected
+     */
+    private synchronized void dropChunks(long first) {
+      Directory directory = this.directory;
+      long end = Math.min(first - directory.base, directory.chunks.length);
+      for (int i = 0; i < end; i++) {
+        directory.chunks[i] = null;
+      }
+    }
+  }
+
+  /**
+   * The chunks of a store, the first one has the number base
+   */
+  private static class Directory {
+
+    private final long base;
+    private final Chunk[] chunks;
+
+    private Directory(long base,
+                      Chunk[] chunks) {
+      this.base = base;
+      this.chunks = chunks;
+    }
+  }
+
+  private static class Chunk {
+
+    private final AtomicReferenceArray<Comment> comments = new AtomicReferenceArray<>(CHUNK_SIZE);
+    /**
+     * The oldest comment of the chunk
+     */
+    private volatile Instant min;
+    /**
+     * The newest comment of this and all previous chunks
+     */
+    private volatile Instant max;
+  }
+
+  /**
+   * A comment of a page with its slot, the later slot wins if two comments were posted at the
+   * same time
+   */
+  private static class Entry {
+
+    private static final Comparator<Entry> ORDER =
+        Comparator.comparing((Entry entry) -> entry.comment.posted)
+            .thenComparingLong(entry -> entry.slot);
+
+    private final Comment comment;
+    private final long slot;
+
+    private Entry(Comment comment,
+                  long slot) {
+      this.comment = comment;
+      this.slot = slot;
+    }
+  }
+}
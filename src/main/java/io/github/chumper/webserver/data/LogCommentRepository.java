@@ -0,0 +1,621 @@
+package io.github.chumper.webserver.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import io.github.chumper.webserver.util.ConsoleLogger;
+import io.github.chumper.webserver.util.Logger;
+
+/**
+ * Stores the comments in a directory without an external database. Comments are appended to
+ * memory mapped segment files of a fixed size, a new segment is started when the current one is
+ * full. Each record is prefixed with its length and a checksum. The positions of the records are
+ * kept in memory sorted by the time the comments were posted, so a page is found with a binary
+ * search and read from the mapped segments without a system call.
+ *
+ * On startup the segments are scanned to rebuild the positions. A record that was not written
+ * completely, e.g. because the process died, ends its segment. A clear starts a new segment that
+ * is marked as cleared and then deletes the older ones, a marked segment makes the recovery ignore
+ * all segments before it, so a crash in between does not bring back cleared comments. A new
+ * segment is written under a temporary name and renamed once its header is on the disk.
+ *
+ * The mapped segments survive a crash of the process, with sync they are also forced to the disk
+ * after every write, which survives a crash of the machine but takes a disk write per comment.
+ */
+public class LogCommentRepository
+    implements CommentRepository, Closeable {
+
+  private static final Logger logger = new ConsoleLogger();
+
+  /**
+   * The first bytes of every segment
+   */
+  private static final int MAGIC = 0x434f4d31;
+  /**
+   * The magic and the flags of the segment
+   */
+  private static final int SEGMENT_HEADER = 8;
+  /**
+   * The flag of segments that were started by a clear
+   */
+  private static final int CLEARED = 1;
+  /**
+   * The length of the payload and its checksum, a length of 0 marks the end of the records
+   */
+  private static final int RECORD_HEADER = 8;
+
+  private static final String PREFIX = "comments-";
+  private static final String SUFFIX = ".log";
+  /**
+   * The suffix of a segment while it is created
+   */
+  private static final String TEMPORARY = ".tmp";
+
+  private final Path directory;
+  /**
+   * The size of new segments in bytes
+   */
+  private final int segmentSize;
+  /**
+   * Whether every write is forced to the disk
+   */
+  private final boolean sync;
+
+  /**
+   * Reads share the positions, writes change them
+   */
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * The segments, the last one is written
+   */
+  private final List<Segment> segments = new ArrayList<>();
+
+  /**
+   * The time the comments were posted, sorted
+   */
+  private long[] seconds = new long[1024];
+  private int[] nanos = new int[1024];
+  /**
+   * The positions of the comments in the same order, the index of the segment in the upper and the
+   * offset in the lower 32 bits
+   */
+  private long[] positions = new long[1024];
+  /**
+   * The number of comments
+   */
+  private int size;
+
+  private final AtomicLong version = new AtomicLong();
+
+  public LogCommentRepository(Path directory,
+                              int segmentSize,
+                              boolean sync) throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.segmentSize = segmentSize;
+    this.sync = sync;
+    recover();
+  }
+
+  /**
+   * The comments from the newest to the oldest
+   */
+  @Override
+  public Stream<Comment> all() {
+    return page(null, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Stream<Comment> page(Instant afterPosted,
+                              String afterId,
+                              int limit) {
+    List<Comment> comments = new ArrayList<>(Math.min(limit, 64));
+    lock.readLock().lock();
+    try {
+      int end = afterPosted == null ? size : firstNotBefore(afterPosted, afterId);
+      for (int i = end - 1; i >= 0 && end - i <= limit; i--) {
+        comments.add(read(positions[i]));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return comments.stream();
+  }
+
+  @Override
+  public void add(Comment comment) {
+    addAll(Collections.singletonList(comment));
+  }
+
+  @Override
+  public void addAll(List<Comment> comments) {
+    // encoded before the lock is taken, the writers only share the copying
+    List<byte[]> records = comments.stream().map(LogCommentRepository::encode)
+        .collect(Collectors.toList());
+    lock.writeLock().lock();
+    try {
+      for (int i = 0; i < records.size(); i++) {
+        long position = append(records.get(i));
+        index(comments.get(i).posted, position);
+      }
+      if (sync) {
+        active().buffer.force();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      lock.writeLock().unlock();
+      version.incrementAndGet();
+    }
+  }
+
+  /**
+   * Will start a new segment and delete the others, so the space of the comments is freed
+   */
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      // the marked segment has to be on the disk before the others are gone
+      Segment cleared = open(active().sequence + 1, CLEARED);
+      cleared.buffer.force();
+      for (Segment segment : segments) {
+        segment.close();
+        Files.delete(segment.path);
+      }
+      segments.clear();
+      segments.add(cleared);
+      size = 0;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      lock.writeLock().unlock();
+      version.incrementAndGet();
+    }
+  }
+
+  @Override
+  public long version() {
+    return version.get();
+  }
+
+  /**
+   * Will force the written comments to the disk and close the segments
+   */
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (!segments.isEmpty()) {
+        active().buffer.force();
+      }
+      for (Segment segment : segments) {
+        segment.close();
+      }
+      segments.clear();
+      size = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of stored comments
+   */
+  public int getCount() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    lock.readLock().lock();
+    try {
+      return String.format("CommentLog: %d comments in %d segments", size, segments.size());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Will open the segments of the directory and read the positions of their comments
+   */
+  private void recover() throws IOException {
+    List<Path> paths;
+    List<Path> temporaries;
+    try (Stream<Path> files = Files.list(directory)) {
+      List<Path> all = files.collect(Collectors.toList());
+      paths = all.stream().filter(path -> sequence(path) >= 0)
+          .sorted((a, b) -> Long.compare(sequence(a), sequence(b)))
+          .collect(Collectors.toCollection(ArrayList::new));
+      temporaries = all.stream()
+          .filter(path -> path.getFileName().toString().endsWith(SUFFIX + TEMPORARY))
+          .collect(Collectors.toList());
+    }
+    // a segment that was not renamed yet holds no comments
+    for (Path path : temporaries) {
+      logger.log("Deleting the unfinished segment {}", path);
+      Files.delete(path);
+    }
+    // the same for a last segment without a header, which a crash while it was created by an
+    // earlier version leaves behind
+    if (!paths.isEmpty() && readHeader(paths.get(paths.size() - 1)) == null) {
+      Path path = paths.remove(paths.size() - 1);
+      logger.log("Deleting the segment {} without a header", path);
+      Files.delete(path);
+    }
+
+    // the segments before the last clear hold nothing, they remain if a clear was interrupted
+    int first = 0;
+    for (int i = paths.size() - 1; i > 0 && first == 0; i--) {
+      if ((readFlags(paths.get(i)) & CLEARED) != 0) {
+        first = i;
+      }
+    }
+    for (Path path : paths.subList(0, first)) {
+      Files.delete(path);
+    }
+
+    for (Path path : paths.subList(first, paths.size())) {
+      Segment segment = map(path, sequence(path));
+      if (segment.buffer.getInt(0) != MAGIC) {
+        segment.close();
+        throw new IOException("Not a segment of comments: " + path);
+      }
+      segments.add(segment);
+      scan(segment, segments.size() - 1);
+    }
+    if (segments.isEmpty()) {
+      segments.add(open(0, 0));
+    }
+    logger.log("Recovered {} comments from {} segments", size, segments.size());
+  }
+
+  /**
+   * Will index the records of the segment and position its buffer after the last complete one
+   */
+  private void scan(Segment segment,
+                    int index) {
+    ByteBuffer buffer = segment.buffer;
+    int offset = SEGMENT_HEADER;
+    while (offset + RECORD_HEADER <= buffer.limit()) {
+      int length = buffer.getInt(offset);
+      if (length == 0) {
+        break;
+      }
+      Comment comment = length > 0 && offset + RECORD_HEADER + length <= buffer.limit()
+                        ? verify(buffer, offset, length) : null;
+      if (comment == null) {
+        // the rest of an interrupted write, it is overwritten by the next comment
+        logger.log("Dropping an incomplete comment at {} of {}", offset, segment.path);
+        int end = length > 0 ? Math.min(buffer.limit(), offset + RECORD_HEADER + length)
+                             : buffer.limit();
+        for (int i = offset; i < end; i++) {
+          buffer.put(i, (byte) 0);
+        }
+        break;
+      }
+      index(comment.posted, ((long) index << 32) | offset);
+      offset += RECORD_HEADER + length;
+    }
+    buffer.position(offset);
+  }
+
+  /**
+   * @return the comment of the record or null if its checksum does not match
+   */
+  private static Comment verify(ByteBuffer buffer,
+                                int offset,
+                                int length) {
+    ByteBuffer payload = slice(buffer, offset + RECORD_HEADER, length);
+    CRC32 crc = new CRC32();
+    crc.update(payload.duplicate());
+    if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+      return null;
+    }
+    try {
+      return decode(payload);
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Will write the record to the active segment, a new segment is started if it does not fit
+   *
+   * @return the position of the record
+   */
+  private long append(byte[] payload) throws IOException {
+    int length = RECORD_HEADER + payload.length;
+    if (length > segmentSize - SEGMENT_HEADER) {
+      throw new IllegalArgumentException("The comment does not fit into a segment");
+    }
+    Segment segment = active();
+    // the rest of a full segment stays 0, which ends its records
+    if (segment.buffer.remaining() < length) {
+      segment.buffer.force();
+      segment = open(segment.sequence + 1, 0);
+      segments.add(segment);
+    }
+    MappedByteBuffer buffer = segment.buffer;
+    int offset = buffer.position();
+    CRC32 crc = new CRC32();
+    crc.update(payload, 0, payload.length);
+    buffer.putInt(offset + 4, (int) crc.getValue());
+    buffer.position(offset + RECORD_HEADER);
+    buffer.put(payload);
+    // the length comes last, the record is not seen before it is complete
+    buffer.putInt(offset, payload.length);
+    return ((long) (segments.size() - 1) << 32) | offset;
+  }
+
+  /**
+   * Will insert the position in the order of the time, comments with the same time stay in the
+   * order they were added
+   */
+  private void index(Instant posted,
+                     long position) {
+    if (size == positions.length) {
+      seconds = Arrays.copyOf(seconds, size * 2);
+      nanos = Arrays.copyOf(nanos, size * 2);
+      positions = Arrays.copyOf(positions, size * 2);
+    }
+    // comments usually arrive in order, then they are appended
+    int index = size > 0 && compare(size - 1, posted) > 0 ? firstAfter(posted) : size;
+    System.arraycopy(seconds, index, seconds, index + 1, size - index);
+    System.arraycopy(nanos, index, nanos, index + 1, size - index);
+    System.arraycopy(positions, index, positions, index + 1, size - index);
+    seconds[index] = posted.getEpochSecond();
+    nanos[index] = posted.getNano();
+    positions[index] = position;
+    size++;
+  }
+
+  /**
+   * @return the index of the first comment that was not posted before the time, or not before the
+   *         comment with the id if one was posted at the same time
+   */
+  private int firstNotBefore(Instant posted,
+                             String id) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      int result = compare(middle, posted);
+      if (result == 0 && id != null) {
+        result = id(positions[middle]).compareTo(id);
+      }
+      if (result < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the index of the first comment that was posted after the time
+   */
+  private int firstAfter(Instant posted) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (compare(middle, posted) <= 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private int compare(int index,
+                      Instant posted) {
+    int result = Long.compare(seconds[index], posted.getEpochSecond());
+    return result != 0 ? result : Integer.compare(nanos[index], posted.getNano());
+  }
+
+  private Comment read(long position) {
+    ByteBuffer buffer = segments.get((int) (position >>> 32)).buffer;
+    int offset = (int) position;
+    return decode(slice(buffer, offset + RECORD_HEADER, buffer.getInt(offset)), id(position));
+  }
+
+  /**
+   * The id is the sequence of the segment and the offset of the record, which does not change when
+   * the segments are recovered. Comments posted at the same time are kept in the order they were
+   * added, so their ids grow like their index.
+   */
+  private String id(long position) {
+    long sequence = segments.get((int) (position >>> 32)).sequence;
+    return String.format("%016x", (sequence << 32) | (position & 0xffffffffL));
+  }
+
+  private Segment active() {
+    return segments.get(segments.size() - 1);
+  }
+
+  /**
+   * Will create a new segment
+   */
+  private Segment open(long sequence,
+                       int flags) throws IOException {
+    Path path = directory.resolve(String.format("%s%010d%s", PREFIX, sequence, SUFFIX));
+    // the segment only gets its name once the header is on the disk, so the recovery never sees
+    // a segment without one
+    Path temporary = directory.resolve(path.getFileName() + TEMPORARY);
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING,
+                                                StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER);
+      header.putInt(MAGIC).putInt(flags).flip();
+      while (header.hasRemaining()) {
+        channel.write(header);
+      }
+      // the rest is 0, which ends the records
+      channel.write(ByteBuffer.allocate(1), segmentSize - 1);
+      channel.force(true);
+    }
+    Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+    Segment segment = map(path, sequence);
+    segment.buffer.position(SEGMENT_HEADER);
+    return segment;
+  }
+
+  /**
+   * Will map an existing segment with its size or a new one with the size of the segments
+   */
+  private Segment map(Path path,
+                      long sequence) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                           StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long size = channel.size() > 0 ? channel.size() : segmentSize;
+      return new Segment(path, sequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                                              size));
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static int readFlags(Path path) throws IOException {
+    ByteBuffer header = readHeader(path);
+    return header == null ? 0 : header.getInt(4);
+  }
+
+  /**
+   * @return the header of the segment or null if it has none
+   */
+  private static ByteBuffer readHeader(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // read the whole header
+      }
+      return header.hasRemaining() || header.getInt(0) != MAGIC ? null : header;
+    }
+  }
+
+  /**
+   * @return the sequence of a segment or -1 if the file is none
+   */
+  private static long sequence(Path path) {
+    String name = path.getFileName().toString();
+    if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer,
+                                  int offset,
+                                  int length) {
+    ByteBuffer slice = buffer.duplicate();
+    slice.position(offset);
+    slice.limit(offset + length);
+    return slice;
+  }
+
+  /**
+   * The time, then the name and the message with their lengths, -1 for null
+   */
+  private static byte[] encode(Comment comment) {
+    byte[] name = comment.name == null ? null : comment.name.getBytes(StandardCharsets.UTF_8);
+    byte[] message =
+        comment.message == null ? null : comment.message.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer payload = ByteBuffer.allocate(8 + 4 + 4 + length(name) + 4 + length(message));
+    payload.putLong(comment.posted.getEpochSecond());
+    payload.putInt(comment.posted.getNano());
+    put(payload, name);
+    put(payload, message);
+    return payload.array();
+  }
+
+  private static Comment decode(ByteBuffer payload) {
+    return decode(payload, null);
+  }
+
+  private static Comment decode(ByteBuffer payload,
+                                String id) {
+    Instant posted = Instant.ofEpochSecond(payload.getLong(), payload.getInt());
+    return new Comment(posted, getString(payload), getString(payload), id);
+  }
+
+  private static int length(byte[] value) {
+    return value == null ? 0 : value.length;
+  }
+
+  private static void put(ByteBuffer payload,
+                          byte[] value) {
+    payload.putInt(value == null ? -1 : value.length);
+    if (value != null) {
+      payload.put(value);
+    }
+  }
+
+  private static String getString(ByteBuffer payload) {
+    int length = payload.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] value = new byte[length];
+    payload.get(value);
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A mapped segment file, its position is where the next record is written
+   */
+  private static class Segment {
+
+    private final Path path;
+    private final long sequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private Segment(Path path,
+                    long sequence,
+                    FileChannel channel,
+                    MappedByteBuffer buffer) {
+      this.path = path;
+      this.sequence = sequence;
+      this.channel = channel;
+      this.buffer = buffer;
+    }
+
+    private void close() throws IOException {
+      channel.close();
+    }
+  }
+}
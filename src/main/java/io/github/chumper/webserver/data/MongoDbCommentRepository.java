@@ -2,11 +2,21 @@ package io.github.chumper.webserver.data;
 
 import com.mongodb.MongoClient;
 import com.mongodb.client.FindIterable;
-import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -16,37 +26,86 @@ import java.util.stream.StreamSupport;
  */
 public class MongoDbCommentRepository implements CommentRepository {
 
+  /**
+   * The times are stored with all nine fraction digits, so their strings sort like the times and
+   * the index on posted can answer the pages
+   */
+  private static final DateTimeFormatter POSTED =
+      DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSSSSSSSS'Z'").withZone(ZoneOffset.UTC);
+
   /**
    * The client to interact with the mongoDb
    */
   private final MongoClient client;
 
   /**
-   * The database to store the comments in
+   * The collection to store the comments in
    */
-  private final MongoDatabase database;
+  private final MongoCollection<Document> collection;
 
   public MongoDbCommentRepository(String mongoHost, int mongoPort) {
     this.client = new MongoClient(mongoHost, mongoPort);
-    this.database = client.getDatabase("topics");
+    this.collection = client.getDatabase("topics").getCollection("comments");
+    // does nothing if the index exists, the id orders the comments posted at the same time
+    collection.createIndex(Indexes.descending("posted", "_id"));
   }
 
 
   @Override
   public Stream<Comment> all() {
-    FindIterable<Document> documents = database.getCollection("comments").find();
+    FindIterable<Document> documents = collection.find();
+    return StreamSupport.stream(documents.spliterator(), false)
+        .map(this::from);
+  }
+
+  @Override
+  public Stream<Comment> page(Instant afterPosted,
+                              String afterId,
+                              int limit) {
+    Bson filter;
+    if (afterPosted == null) {
+      filter = new Document();
+    } else if (afterId == null || !ObjectId.isValid(afterId)) {
+      filter = Filters.lt("posted", format(afterPosted));
+    } else {
+      filter = Filters.or(
+          Filters.lt("posted", format(afterPosted)),
+          Filters.and(Filters.eq("posted", format(afterPosted)),
+                      Filters.lt("_id", new ObjectId(afterId))));
+    }
+    FindIterable<Document> documents = collection
+        .find(filter)
+        .sort(Sorts.descending("posted", "_id"))
+        .limit(limit)
+        .projection(Projections.include("_id", "posted", "name", "message"));
     return StreamSupport.stream(documents.spliterator(), false)
         .map(this::from);
   }
 
   @Override
   public void add(Comment comment) {
-    database.getCollection("comments").insertOne(from(comment));
+    collection.insertOne(from(comment));
+  }
+
+  /**
+   * Will insert the comments with a single round trip
+   */
+  @Override
+  public void addAll(List<Comment> comments) {
+    if (comments.isEmpty()) {
+      // the driver rejects empty inserts
+      return;
+    }
+    List<Document> documents = new ArrayList<>(comments.size());
+    for (Comment comment : comments) {
+      documents.add(from(comment));
+    }
+    collection.insertMany(documents);
   }
 
   @Override
   public void clear() {
-    database.getCollection("comments").deleteMany(new Document());
+    collection.deleteMany(new Document());
   }
 
   /**
@@ -58,7 +117,8 @@ public class MongoDbCommentRepository implements CommentRepository {
     return new Comment(
         Instant.parse(document.getString("posted")),
         document.getString("name"),
-        document.getString("message")
+        document.getString("message"),
+        document.getObjectId("_id").toHexString()
     );
   }
 
@@ -69,9 +129,13 @@ public class MongoDbCommentRepository implements CommentRepository {
    */
   private Document from(Comment comment) {
     Document document = new Document();
-    document.put("posted", comment.posted.toString());
+    document.put("posted", format(comment.posted));
     document.put("name", comment.name);
     document.put("message", comment.message);
     return document;
   }
+
+  private static String format(Instant posted) {
+    return POSTED.format(posted);
+  }
 }
@@ -0,0 +1,354 @@
+package io.github.chumper.webserver.data;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import io.github.chumper.webserver.util.ConsoleLogger;
+import io.github.chumper.webserver.util.Logger;
+
+/**
+ * Decorates a {@link CommentRepository} so added comments are written in batches. They are put
+ * into a bounded queue and a single thread writes them with {@link CommentRepository#addAll(List)},
+ * so a burst of comments costs one round trip per batch instead of one per comment.
+ *
+ * With {@link Durability#ENQUEUED} an add returns right away, the comment is lost if it can not be
+ * written, and reads see it only after its batch was written. A batch is written once it is full
+ * or its first comment waited for the window. With {@link Durability#FLUSHED} an add returns once
+ * its batch was written and fails if the batch could not be written. Nobody should wait for a
+ * window then, so a batch is written as soon as the writer is free and consists of the comments
+ * that were added while the previous batch was written. An add waits if the queue is full and is
+ * rejected if it is still full after the timeout.
+ *
+ * Reads go to the decorated repository. A {@link CachingCommentRepository} is decorated by this
+ * class and not the other way round, so the cache sees the comments when they are written.
+ */
+public class WriteBehindCommentRepository
+    implements CommentRepository, Closeable {
+
+  private static final Logger logger = new ConsoleLogger();
+
+  /**
+   * When an added comment counts as added
+   */
+  public enum Durability {
+    /**
+     * Once it is in the queue
+     */
+    ENQUEUED,
+    /**
+     * Once its batch was written to the decorated repository
+     */
+    FLUSHED
+  }
+
+  /**
+   * Ends the writer thread, the comments before it are written first
+   */
+  private static final Pending STOP = new Pending(null, null);
+
+  /**
+   * The repository that stores the comments
+   */
+  private final CommentRepository repository;
+
+  /**
+   * The comments that were not written yet, and markers that ask the writer to write everything
+   * before them right away
+   */
+  private final BlockingQueue<Pending> queue;
+
+  /**
+   * The maximum number of comments in a batch
+   */
+  private final int batchSize;
+  /**
+   * The time the first comment of a batch waits for more comments, if nobody waits for it
+   */
+  private final long windowNanos;
+  private final Durability durability;
+  /**
+   * The time an add waits for space in the queue
+   */
+  private final long enqueueTimeoutMillis;
+
+  /**
+   * Writes the batches
+   */
+  private final Thread writer;
+  /**
+   * Set once the repository is closed, comments are rejected from then on
+   */
+  private volatile boolean closed;
+
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder written = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+
+  public WriteBehindCommentRepository(CommentRepository repository,
+                                      int queueSize,
+                                      int batchSize,
+                                      long windowMillis,
+                                      Durability durability,
+                                      long enqueueTimeoutMillis) {
+    this.repository = repository;
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.batchSize = batchSize;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    this.durability = durability;
+    this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+    this.writer = new Thread(this::write, "CommentWriter");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  @Override
+  public Stream<Comment> all() {
+    return repository.all();
+  }
+
+  @Override
+  public Stream<Comment> page(Instant afterPosted,
+                              String afterId,
+                              int limit) {
+    return repository.page(afterPosted, afterId, limit);
+  }
+
+  @Override
+  public long version() {
+    return repository.version();
+  }
+
+  @Override
+  public void add(Comment comment) {
+    Pending pending = new Pending(comment, durability == Durability.FLUSHED
+                                           ? new CompletableFuture<>() : null);
+    enqueue(pending);
+    if (pending.written != null) {
+      // rethrows the error of the batch
+      pending.written.join();
+    }
+  }
+
+  @Override
+  public void addAll(List<Comment> comments) {
+    comments.forEach(this::add);
+  }
+
+  /**
+   * Will write the comments that are queued and then clear the repository, so comments added
+   * before are cleared as well
+   */
+  @Override
+  public void clear() {
+    flush();
+    repository.clear();
+  }
+
+  /**
+   * Will wait until the comments that were added before were written or failed
+   */
+  public void flush() {
+    Pending marker = new Pending(null, new CompletableFuture<>());
+    enqueue(marker);
+    marker.written.join();
+  }
+
+  /**
+   * Will write the queued comments and stop the writer, comments added afterwards are rejected
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      queue.put(STOP);
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      writer.interrupt();
+    }
+    // adds that passed the check concurrently are written by the closing thread
+    List<Pending> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    writeBatch(remaining);
+  }
+
+  private void enqueue(Pending pending) {
+    if (closed) {
+      throw new RejectedExecutionException("The comment repository is closed");
+    }
+    boolean enqueued;
+    try {
+      enqueued = queue.offer(pending, enqueueTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException("Interrupted while waiting for the comment queue");
+    }
+    if (!enqueued) {
+      throw new RejectedExecutionException("The comment queue is full");
+    }
+    // the queue may have been drained for the last time while this thread waited for space.
+    // Whoever took the comment from the queue completes it, otherwise it is rejected here
+    if (closed && queue.remove(pending)) {
+      throw new RejectedExecutionException("The comment repository is closed");
+    }
+  }
+
+  /**
+   * The loop of the writer thread
+   */
+  private void write() {
+    List<Pending> batch = new ArrayList<>(batchSize);
+    try {
+      while (true) {
+        Pending first = queue.take();
+        if (first == STOP) {
+          return;
+        }
+        batch.add(first);
+        collect(batch, first);
+        writeBatch(batch);
+        if (batch.get(batch.size() - 1) == STOP) {
+          return;
+        }
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      // nobody writes the queue from now on, so adds are rejected and the waiting threads fail
+      closed = true;
+      queue.drainTo(batch);
+      RejectedExecutionException error =
+          new RejectedExecutionException("The comment writer was interrupted");
+      int comments = 0;
+      for (Pending pending : batch) {
+        if (pending.comment != null) {
+          comments++;
+        }
+        if (pending.written != null) {
+          pending.written.completeExceptionally(error);
+        }
+      }
+      failed.add(comments);
+      logger.log("The comment writer was interrupted, {} comments were not written", comments);
+    }
+  }
+
+  /**
+   * Will add comments to the batch until it is full, the window of the first comment passed or a
+   * marker asks to write it now. Comments that are waited for only take the queued comments.
+   */
+  private void collect(List<Pending> batch,
+                       Pending first) throws InterruptedException {
+    if (first.comment == null) {
+      return;
+    }
+    long deadline = System.nanoTime() + (durability == Durability.FLUSHED ? 0 : windowNanos);
+    int comments = 1;
+    while (comments < batchSize) {
+      long remaining = deadline - System.nanoTime();
+      // once the window passed the comments that are already queued still join the batch
+      Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+      if (next == null) {
+        return;
+      }
+      batch.add(next);
+      if (next.comment == null) {
+        return;
+      }
+      comments++;
+    }
+  }
+
+  /**
+   * Will write the comments of the batch and then tell the waiting threads
+   */
+  private void writeBatch(List<Pending> batch) {
+    List<Comment> comments = new ArrayList<>(batch.size());
+    for (Pending pending : batch) {
+      if (pending.comment != null) {
+        comments.add(pending.comment);
+      }
+    }
+    RuntimeException error = null;
+    if (!comments.isEmpty()) {
+      try {
+        repository.addAll(comments);
+        batches.increment();
+        written.add(comments.size());
+      } catch (RuntimeException e) {
+        error = e;
+        failed.add(comments.size());
+        logger.log("Could not write {} comments: {}", comments.size(), e.getMessage());
+      }
+    }
+    for (Pending pending : batch) {
+      if (pending.written == null) {
+        continue;
+      }
+      // a flush only waits for the comments before it, it does not fail with them
+      if (error != null && pending.comment != null) {
+        pending.written.completeExceptionally(error);
+      } else {
+        pending.written.complete(null);
+      }
+    }
+  }
+
+  /**
+   * @return the number of written batches
+   */
+  public long getBatches() {
+    return batches.sum();
+  }
+
+  /**
+   * @return the number of written comments
+   */
+  public long getWritten() {
+    return written.sum();
+  }
+
+  /**
+   * @return the number of comments that could not be written
+   */
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  @Override
+  public String toString() {
+    long batches = getBatches();
+    return String.format("CommentWriter: %d comments in %d batches, %.1f per batch, %d failed",
+                         getWritten(), batches, batches == 0 ? 0 : getWritten() / (double) batches,
+                         getFailed());
+  }
+
+  /**
+   * A comment in the queue, or a marker without a comment
+   */
+  private static class Pending {
+
+    private final Comment comment;
+    /**
+     * Completed once the comment was written, null if nobody waits for it
+     */
+    private final CompletableFuture<Void> written;
+
+    private Pending(Comment comment,
+                    CompletableFuture<Void> written) {
+      this.comment = comment;
+      this.written = written;
+    }
+  }
+}
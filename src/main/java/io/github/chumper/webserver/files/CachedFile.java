@@ -0,0 +1,60 @@
+package io.github.chumper.webserver.files;
+
+import io.github.chumper.webserver.core.http.BufferRegion;
+
+/**
+ * The content of a file held by the {@link FileCache} together with the metadata needed to send
+ * it, so a cached file can be served without touching the file system.
+ */
+public class CachedFile {
+
+  /**
+   * The content of the file
+   */
+  private final BufferRegion content;
+  /**
+   * The content of the gzip compressed sibling of the file, null if there is none
+   */
+  private final BufferRegion precompressed;
+  /**
+   * The modification time of the file in milliseconds
+   */
+  private final long lastModified;
+  /**
+   * The strong entity tag derived from the content
+   */
+  private final String etag;
+
+  CachedFile(BufferRegion content,
+             BufferRegion precompressed,
+             long lastModified) {
+    this.content = content;
+    this.precompressed = precompressed;
+    this.lastModified = lastModified;
+    // the content is in memory already, so hashing it costs less than reading it did
+    this.etag = ContentHash.tag(content.getContent());
+  }
+
+  public BufferRegion getContent() {
+    return content;
+  }
+
+  public BufferRegion getPrecompressed() {
+    return precompressed;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  public String getETag() {
+    return etag;
+  }
+
+  /**
+   * The number of bytes this file takes in the cache
+   */
+  long getSize() {
+    return content.getLength() + (precompressed != null ? precompressed.getLength() : 0);
+  }
+}
@@ -0,0 +1,63 @@
+package io.github.chumper.webserver.files;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import io.github.chumper.webserver.util.XxHash64;
+
+/**
+ * Derives strong entity tags from the content of files. The tag only depends on the bytes of a
+ * file, so it survives a touch and is the same on every server that serves the same file.
+ */
+final class ContentHash {
+
+  /**
+   * The number of bytes read from a file at once
+   */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private ContentHash() {
+  }
+
+  /**
+   * @return the tag of the remaining bytes of the buffer, the buffer is not modified
+   */
+  static String tag(ByteBuffer content) {
+    XxHash64 hash = new XxHash64();
+    hash.update(content.duplicate());
+    return tag(hash.getValue());
+  }
+
+  /**
+   * Will read the whole file to derive its tag
+   *
+   * @param buffer A buffer to read the file into, its content is overwritten
+   */
+  static String tag(Path file,
+                    ByteBuffer buffer) throws IOException {
+    XxHash64 hash = new XxHash64();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer.clear();
+      while (channel.read(buffer) != -1) {
+        buffer.flip();
+        hash.update(buffer);
+        buffer.clear();
+      }
+    }
+    return tag(hash.getValue());
+  }
+
+  /**
+   * @return a buffer of a good size to read files with
+   */
+  static ByteBuffer buffer() {
+    return ByteBuffer.allocateDirect(BUFFER_SIZE);
+  }
+
+  private static String tag(long hash) {
+    return String.format("%016x", hash);
+  }
+}
@@ -0,0 +1,119 @@
+package io.github.chumper.webserver.files;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the sorted entries of recently listed directories, so a large directory is not read and
+ * sorted again for every request or page of its listing. The cache is bounded by the number of
+ * entries it holds and evicts the least recently used directories.
+ *
+ * A listing belongs to the modification time of its directory, which changes whenever an entry is
+ * created, deleted or renamed. Directories modified within the last {@link #RACY_PERIOD}
+ * milliseconds are not cached: the file system may have too coarse a resolution to tell a later
+ * change in the same period apart.
+ */
+public class DirectoryListings {
+
+  /**
+   * Covers file systems that store modification times in seconds or even two seconds
+   */
+  static final long RACY_PERIOD = 2000;
+
+  /**
+   * The maximum number of entries of all cached listings
+   */
+  private final long maxEntries;
+
+  /**
+   * The cached listings in access order, guarded by itself
+   */
+  private final LinkedHashMap<Path, Listing> listings = new LinkedHashMap<>(16, 0.75f, true);
+  /**
+   * The number of entries of all cached listings, guarded by {@link #listings}
+   */
+  private long entries;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @param maxEntries The maximum number of entries of all cached listings
+   */
+  public DirectoryListings(long maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * @param directory    The listed directory
+   * @param lastModified The current modification time of the directory
+   * @return the sorted entries, null if the directory was not listed since it was modified
+   */
+  public String[] get(Path directory,
+                      long lastModified) {
+    synchronized (listings) {
+      Listing listing = listings.get(directory);
+      if (listing != null && listing.lastModified == lastModified) {
+        hits.increment();
+        return listing.entries;
+      }
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * Will cache the entries of the directory unless it was modified too recently
+   *
+   * @param directory    The listed directory
+   * @param lastModified The modification time of the directory before it was read
+   * @param entries      The sorted entries, must not be modified afterwards
+   */
+  public void put(Path directory,
+                  long lastModified,
+                  String[] entries) {
+    if (System.currentTimeMillis() - lastModified < RACY_PERIOD || entries.length > maxEntries) {
+      return;
+    }
+    synchronized (listings) {
+      Listing previous = listings.put(directory, new Listing(lastModified, entries));
+      this.entries += entries.length - (previous != null ? previous.entries.length : 0);
+
+      Iterator<Listing> eldest = listings.values().iterator();
+      while (this.entries > maxEntries) {
+        this.entries -= eldest.next().entries.length;
+        eldest.remove();
+      }
+    }
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public String toString() {
+    synchronized (listings) {
+      return String.format("DirectoryListings: %d hits, %d misses, %d directories with %d entries",
+                           getHits(), getMisses(), listings.size(), entries);
+    }
+  }
+
+  private static class Listing {
+
+    private final long lastModified;
+    private final String[] entries;
+
+    Listing(long lastModified,
+            String[] entries) {
+      this.lastModified = lastModified;
+      this.entries = entries;
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package io.github.chumper.webserver.files;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import io.github.chumper.webserver.util.ConsoleLogger;
+import io.github.chumper.webserver.util.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches a root directory and all its subdirectories with a {@link WatchService} and reports
+ * every created, modified or deleted path to its listeners, so the {@link FileCache} and the
+ * {@link FileIndex} do not need to look at the file system on each request.
+ *
+ * The listeners are called one after another on a single daemon thread. The watch service of the
+ * platform may report changes with a delay, on Linux they arrive within milliseconds.
+ */
+public class DirectoryWatcher
+    implements Closeable {
+
+  private static final Logger logger = new ConsoleLogger();
+
+  /**
+   * Will be informed about the changes below the root
+   */
+  public interface Listener {
+
+    /**
+     * The path was created, modified or deleted. A created directory is watched already when this
+     * is called, so nothing created inside of it is missed.
+     */
+    void changed(Path path);
+
+    /**
+     * Changes were lost, everything below the root has to be considered changed
+     */
+    void overflow();
+  }
+
+  /**
+   * The watched directory, absolute and normalized
+   */
+  private final Path root;
+
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  private final WatchService watchService;
+  /**
+   * The watched directory of each key
+   */
+  private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+  /**
+   * Will start watching the root directory and all its subdirectories
+   */
+  public DirectoryWatcher(Path root) throws IOException {
+    this.root = root.toAbsolutePath().normalize();
+    this.watchService = this.root.getFileSystem().newWatchService();
+    register(this.root);
+    Thread watcher = new Thread(this::watch, "directory-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Will stop watching the root directory, no listener is called afterwards
+   */
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+
+  /**
+   * Will register the directory and all its subdirectories with the watch service
+   */
+  private void register(Path directory) throws IOException {
+    Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                       new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir,
+                                               BasicFileAttributes attributes) {
+        try {
+          directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY),
+                          dir);
+          return FileVisitResult.CONTINUE;
+        } catch (IOException e) {
+          // changes in this directory are not noticed, so it is logged
+          logger.log("Can not watch {}: {}", dir, e.getMessage());
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file,
+                                             IOException e) {
+        logger.log("Can not watch {}: {}", file, e.getMessage());
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir,
+                                                IOException e) {
+        if (e != null) {
+          logger.log("Can not watch below {}: {}", dir, e.getMessage());
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Will call every listener, a failing listener does not stop the watcher
+   */
+  private void inform(Consumer<Listener> call) {
+    for (Listener listener : listeners) {
+      try {
+        call.accept(listener);
+      } catch (RuntimeException e) {
+        logger.log("Listener {} failed: {}", listener, e.getMessage());
+      }
+    }
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == OVERFLOW || directory == null) {
+            inform(Listener::overflow);
+            continue;
+          }
+          Path changed = directory.resolve((Path) event.context());
+          if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed)) {
+            try {
+              register(changed);
+            } catch (IOException e) {
+              logger.log("Can not watch {}: {}", changed, e.getMessage());
+            }
+          }
+          inform(listener -> listener.changed(changed));
+        }
+        if (!key.reset()) {
+          directories.remove(key);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // the watcher was closed
+    }
+  }
+}
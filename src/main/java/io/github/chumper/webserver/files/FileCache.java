@@ -0,0 +1,302 @@
+package io.github.chumper.webserver.files;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.github.chumper.webserver.core.http.BufferRegion;
+import io.github.chumper.webserver.util.Precompressor;
+
+/**
+ * Keeps the content of small, frequently requested files below a root directory in memory. The
+ * cache is bounded by the number of bytes it holds and evicts the least recently used files.
+ *
+ * Cached files are not checked on each request, instead a {@link DirectoryWatcher} on the root
+ * directory removes files from the cache as soon as they or their precompressed siblings change.
+ */
+public class FileCache
+    implements Closeable {
+
+  /**
+   * Only files below this directory are cached, as only their changes are watched
+   */
+  private final Path root;
+  /**
+   * The maximum number of bytes of all cached files
+   */
+  private final long maxSize;
+  /**
+   * Larger files are not cached, they are sent zero-copy from the file system
+   */
+  private final long maxEntrySize;
+  /**
+   * Whether the content is kept in direct buffers outside of the heap
+   */
+  private final boolean offHeap;
+
+  /**
+   * The cached files in access order, guarded by itself
+   */
+  private final LinkedHashMap<Path, CachedFile> files = new LinkedHashMap<>(16, 0.75f, true);
+  /**
+   * The number of bytes of all cached files, guarded by {@link #files}
+   */
+  private long size;
+
+  /**
+   * Counts the changes reported by the watch service, a file that changed while it was read is
+   * not cached
+   */
+  private final AtomicLong invalidations = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * The watcher this cache created itself and closes, null if it is shared
+   */
+  private final DirectoryWatcher ownWatcher;
+
+  /**
+   * Will start watching the root directory and all its subdirectories
+   *
+   * @param root         The directory whose files can be cached
+   * @param maxSize      The maximum number of bytes of all cached files
+   * @param maxEntrySize The maximum number of bytes of a single file
+   * @param offHeap      Whether the content is kept outside of the heap
+   */
+  public FileCache(Path root,
+                   long maxSize,
+                   long maxEntrySize,
+                   boolean offHeap) throws IOException {
+    this(new DirectoryWatcher(root), maxSize, maxEntrySize, offHeap, true);
+  }
+
+  /**
+   * Will cache the files below the root of a watcher that is shared with others, e.g. a
+   * {@link FileIndex}
+   *
+   * @param watcher      Reports the changes below the directory whose files can be cached
+   * @param maxSize      The maximum number of bytes of all cached files
+   * @param maxEntrySize The maximum number of bytes of a single file
+   * @param offHeap      Whether the content is kept outside of the heap
+   */
+  public FileCache(DirectoryWatcher watcher,
+                   long maxSize,
+                   long maxEntrySize,
+                   boolean offHeap) {
+    this(watcher, maxSize, maxEntrySize, offHeap, false);
+  }
+
+  private FileCache(DirectoryWatcher watcher,
+                    long maxSize,
+                    long maxEntrySize,
+                    boolean offHeap,
+                    boolean ownWatcher) {
+    this.root = watcher.getRoot();
+    this.maxSize = maxSize;
+    this.maxEntrySize = maxEntrySize;
+    this.offHeap = offHeap;
+    this.ownWatcher = ownWatcher ? watcher : null;
+
+    watcher.addListener(new DirectoryWatcher.Listener() {
+      @Override
+      public void changed(Path path) {
+        invalidate(path);
+      }
+
+      @Override
+      public void overflow() {
+        // changes were lost, so nothing in the cache can be trusted
+        invalidateAll();
+      }
+    });
+  }
+
+  /**
+   * Will return the cached file or read it into the cache
+   *
+   * @return null if the path is no regular file or too large to be cached
+   */
+  public CachedFile get(Path path) {
+    Path file = path.toAbsolutePath().normalize();
+    synchronized (files) {
+      CachedFile cached = files.get(file);
+      if (cached != null) {
+        hits.increment();
+        return cached;
+      }
+    }
+    misses.increment();
+    return load(file);
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * The number of bytes of all cached files
+   */
+  public long getSize() {
+    synchronized (files) {
+      return size;
+    }
+  }
+
+  /**
+   * The number of cached files
+   */
+  public int getCount() {
+    synchronized (files) {
+      return files.size();
+    }
+  }
+
+  /**
+   * Will stop watching the root directory if the watcher is not shared, the cache must not be used
+   * afterwards
+   */
+  @Override
+  public void close() throws IOException {
+    if (ownWatcher != null) {
+      ownWatcher.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("FileCache: %d hits, %d misses, %d evictions, %d files with %d bytes",
+                         getHits(), getMisses(), getEvictions(), getCount(), getSize());
+  }
+
+  private CachedFile load(Path file) {
+    if (!file.startsWith(root)) {
+      // changes to this file would not be noticed
+      return null;
+    }
+    long generation = invalidations.get();
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      if (!attributes.isRegularFile() || attributes.size() > maxEntrySize) {
+        return null;
+      }
+      BufferRegion content = read(file, attributes.size());
+      long lastModified = attributes.lastModifiedTime().toMillis();
+
+      CachedFile cached = new CachedFile(content, readPrecompressed(file, lastModified),
+                                         lastModified);
+      put(file, cached, generation);
+      return cached;
+    } catch (IOException e) {
+      // the handler will look at the file itself and report the problem
+      return null;
+    }
+  }
+
+  /**
+   * Will read the gzip compressed sibling if it exists and is up to date, see
+   * {@link Precompressor}
+   */
+  private BufferRegion readPrecompressed(Path file,
+                                         long lastModified) throws IOException {
+    Path sibling = file.resolveSibling(file.getFileName() + Precompressor.SUFFIX);
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(sibling, BasicFileAttributes.class);
+      if (!attributes.isRegularFile() || attributes.size() > maxEntrySize ||
+          attributes.lastModifiedTime().toMillis() < lastModified) {
+        return null;
+      }
+      return read(sibling, attributes.size());
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  private BufferRegion read(Path file,
+                            long length) throws IOException {
+    ByteBuffer content = offHeap ? ByteBuffer.allocateDirect((int) length)
+                                 : ByteBuffer.allocate((int) length);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      while (content.hasRemaining() && channel.read(content) != -1) {
+        // read until the buffer is full, a file that shrank meanwhile is invalidated anyway
+      }
+    }
+    content.flip();
+    return new BufferRegion(content);
+  }
+
+  private void put(Path file,
+                   CachedFile cached,
+                   long generation) {
+    if (cached.getSize() > maxSize) {
+      return;
+    }
+    synchronized (files) {
+      if (invalidations.get() != generation) {
+        // something changed while the file was read, it may be outdated already
+        return;
+      }
+      CachedFile previous = files.put(file, cached);
+      size += cached.getSize() - (previous != null ? previous.getSize() : 0);
+
+      Iterator<CachedFile> eldest = files.values().iterator();
+      while (size > maxSize) {
+        size -= eldest.next().getSize();
+        eldest.remove();
+        evictions.increment();
+      }
+    }
+  }
+
+  /**
+   * Will remove the changed path from the cache, as well as everything below it if it was a
+   * directory and the file it was precompressed from
+   */
+  private void invalidate(Path path) {
+    invalidations.incrementAndGet();
+    String name = path.getFileName().toString();
+    Path original = name.endsWith(Precompressor.SUFFIX)
+                    ? path.resolveSibling(name.substring(0, name.length() -
+                                                             Precompressor.SUFFIX.length()))
+                    : null;
+    synchronized (files) {
+      Iterator<Map.Entry<Path, CachedFile>> entries = files.entrySet().iterator();
+      while (entries.hasNext()) {
+        Map.Entry<Path, CachedFile> entry = entries.next();
+        if (entry.getKey().startsWith(path) || entry.getKey().equals(original)) {
+          size -= entry.getValue().getSize();
+          entries.remove();
+        }
+      }
+    }
+  }
+
+  private void invalidateAll() {
+    invalidations.incrementAndGet();
+    synchronized (files) {
+      files.clear();
+      size = 0;
+    }
+  }
+}
@@ -0,0 +1,377 @@
+package io.github.chumper.webserver.files;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.github.chumper.webserver.util.ConsoleLogger;
+import io.github.chumper.webserver.util.Logger;
+import io.github.chumper.webserver.util.Precompressor;
+
+/**
+ * Knows the metadata of every file and directory below a root directory, so requests for files can
+ * be answered without asking the file system whether and what a path is.
+ *
+ * The index is built once and kept up to date by a {@link DirectoryWatcher}. As it contains every
+ * path below the root, a path that is not in the index does not exist: requests probing for
+ * missing files are rejected with a single map lookup. Paths that leave the root with ".." can not
+ * be in the index, so they are rejected by construction.
+ *
+ * A file created on disk is found as soon as the watch service reported it, on Linux within
+ * milliseconds. The strong entity tag of each file version is derived from its content by a
+ * background thread.
+ */
+public class FileIndex
+    implements Closeable {
+
+  private static final Logger logger = new ConsoleLogger();
+
+  /**
+   * The indexed directory, absolute and normalized
+   */
+  private final Path root;
+  /**
+   * The metadata of each path, keyed by the path relative to the root with / as separator, the
+   * root itself is the empty string. Replaced as a whole when the index is rebuilt.
+   */
+  private volatile Map<String, FileInfo> entries = new ConcurrentHashMap<>();
+  /**
+   * Guards the changes of the index, lookups do not need it
+   */
+  private final Object lock = new Object();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Derives the tags of the indexed files from their content
+   */
+  private final ExecutorService hasher = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "file-index-hasher");
+    thread.setDaemon(true);
+    return thread;
+  });
+  /**
+   * The files are read into this buffer to hash them, only used by the hasher
+   */
+  private final ByteBuffer buffer = ContentHash.buffer();
+
+  /**
+   * The watcher this index created itself and closes, null if it is shared
+   */
+  private final DirectoryWatcher ownWatcher;
+
+  /**
+   * Will index the root directory and keep watching it
+   */
+  public FileIndex(Path root) throws IOException {
+    this(new DirectoryWatcher(root), true);
+  }
+
+  /**
+   * Will index the root of a watcher that is shared with others, e.g. a {@link FileCache}
+   */
+  public FileIndex(DirectoryWatcher watcher) {
+    this(watcher, false);
+  }
+
+  private FileIndex(DirectoryWatcher watcher,
+                    boolean ownWatcher) {
+    this.root = watcher.getRoot();
+    this.ownWatcher = ownWatcher ? watcher : null;
+
+    // listen first, changes during the scan wait for the lock and are applied afterwards
+    watcher.addListener(new DirectoryWatcher.Listener() {
+      @Override
+      public void changed(Path path) {
+        update(path);
+      }
+
+      @Override
+      public void overflow() {
+        // changes were lost, so the whole tree is read again
+        rebuild();
+      }
+    });
+    synchronized (lock) {
+      scan(root, entries);
+    }
+  }
+
+  /**
+   * Will look up the metadata of a path below the root
+   *
+   * @param path The requested path relative to the root, e.g. /a/b.txt
+   * @return null if the path does not exist or leaves the root
+   */
+  public FileInfo get(String path) {
+    String key = key(path);
+    FileInfo info = key != null ? entries.get(key) : null;
+    if (info != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return info;
+  }
+
+  /**
+   * Will check whether the path is a known file or directory, without counting as a lookup
+   *
+   * @param path An absolute path below the root
+   */
+  public boolean contains(Path path) {
+    return path.startsWith(root) && entries.containsKey(keyOf(path));
+  }
+
+  /**
+   * Will look up the gzip compressed sibling of a file, see {@link Precompressor}
+   *
+   * @return null if there is none or it is older than the file
+   */
+  public FileInfo getPrecompressed(FileInfo file) {
+    FileInfo compressed = entries.get(keyOf(file.getPath()) + Precompressor.SUFFIX);
+    if (compressed == null || compressed.isDirectory() || !compressed.isReadable() ||
+        compressed.getLastModified() < file.getLastModified()) {
+      return null;
+    }
+    return compressed;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * The number of lookups for paths that do not exist or leave the root
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * The number of indexed files and directories, including the root
+   */
+  public int getCount() {
+    return entries.size();
+  }
+
+  /**
+   * Will stop hashing and watching the root directory if the watcher is not shared, the index is
+   * not updated afterwards
+   */
+  @Override
+  public void close() throws IOException {
+    hasher.shutdownNow();
+    if (ownWatcher != null) {
+      ownWatcher.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("FileIndex: %d hits, %d misses, %d paths", getHits(), getMisses(),
+                         getCount());
+  }
+
+  /**
+   * Will normalize a requested path into the key of the index, empty segments and . are ignored
+   *
+   * @return null if the path contains .., even if it would stay below the root
+   */
+  static String key(String path) {
+    StringBuilder key = new StringBuilder(path.length());
+    int start = 0;
+    while (start <= path.length()) {
+      int end = path.indexOf('/', start);
+      if (end < 0) {
+        end = path.length();
+      }
+      int length = end - start;
+      if (length == 2 && path.charAt(start) == '.' && path.charAt(start + 1) == '.') {
+        return null;
+      }
+      if (length > 0 && !(length == 1 && path.charAt(start) == '.')) {
+        if (key.length() > 0) {
+          key.append('/');
+        }
+        key.append(path, start, end);
+      }
+      start = end + 1;
+    }
+    return key.toString();
+  }
+
+  /**
+   * @return the key of a path below the root
+   */
+  private String keyOf(Path path) {
+    StringBuilder key = new StringBuilder();
+    for (Path name : root.relativize(path)) {
+      if (key.length() > 0) {
+        key.append('/');
+      }
+      key.append(name.toString());
+    }
+    return key.toString();
+  }
+
+  /**
+   * Will add the path and everything below it to the entries, needs the lock
+   */
+  private void scan(Path path,
+                    Map<String, FileInfo> entries) {
+    try {
+      Files.walkFileTree(path, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                         new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir,
+                                                 BasicFileAttributes attributes) {
+          put(dir, attributes, entries);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file,
+                                         BasicFileAttributes attributes) {
+          put(file, attributes, entries);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file,
+                                               IOException e) {
+          if (!(e instanceof NoSuchFileException)) {
+            logger.log("Can not index {}: {}", file, e.getMessage());
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir,
+                                                  IOException e) {
+          if (e != null) {
+            // the directory is known, but not what is inside
+            logger.log("Can not index {}: {}", dir, e.getMessage());
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      logger.log("Can not index {}: {}", path, e.getMessage());
+    }
+  }
+
+  private void put(Path path,
+                   BasicFileAttributes attributes,
+                   Map<String, FileInfo> entries) {
+    if (!attributes.isDirectory() && !attributes.isRegularFile()) {
+      // devices, sockets and broken links are never served
+      return;
+    }
+    String key = keyOf(path);
+    FileInfo info = new FileInfo(path, attributes.isDirectory(), attributes.size(),
+                                 attributes.lastModifiedTime().toMillis(), Files.isReadable(path));
+    FileInfo previous = this.entries.get(key);
+    if (info.isSameVersion(previous) && previous.getETag() != null) {
+      // reported again without a change, the content was hashed already
+      info = info.withETag(previous.getETag());
+    }
+    entries.put(key, info);
+    if (!info.isDirectory() && info.isReadable() && info.getETag() == null) {
+      hash(key, info);
+    }
+  }
+
+  /**
+   * Will derive the tag of the file in the background, so neither the startup nor the requests
+   * for large files wait for their content to be read
+   */
+  private void hash(String key,
+                    FileInfo info) {
+    hasher.execute(() -> {
+      synchronized (lock) {
+        // waits for a running scan, which may replace the whole index
+        if (entries.get(key) != info) {
+          // changed again before it was hashed, the newer version is hashed on its own
+          return;
+        }
+      }
+      try {
+        String etag = ContentHash.tag(info.getPath(), buffer);
+        BasicFileAttributes attributes =
+            Files.readAttributes(info.getPath(), BasicFileAttributes.class);
+        if (attributes.size() != info.getSize() ||
+            attributes.lastModifiedTime().toMillis() != info.getLastModified()) {
+          // changed while it was read, the watcher reports the change
+          return;
+        }
+        synchronized (lock) {
+          entries.computeIfPresent(key, (it, current) -> current.isSameVersion(info)
+                                                         ? current.withETag(etag) : current);
+        }
+      } catch (IOException e) {
+        // deleted or no longer readable, requests get a tag of the modification time meanwhile
+      }
+    });
+  }
+
+  /**
+   * Will read the changed path again, a new directory is read with everything below it and a
+   * deleted one is removed with everything below it
+   */
+  private void update(Path path) {
+    synchronized (lock) {
+      String key = keyOf(path);
+      try {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        FileInfo previous = entries.get(key);
+        if (attributes.isDirectory() && (previous == null || !previous.isDirectory())) {
+          // created or moved here, what is inside was never reported
+          scan(path, entries);
+        } else {
+          put(path, attributes, entries);
+        }
+      } catch (IOException e) {
+        FileInfo removed = entries.remove(key);
+        if (removed != null && removed.isDirectory()) {
+          String prefix = key + "/";
+          entries.keySet().removeIf(it -> it.startsWith(prefix));
+        }
+      }
+      // the change also modified the directory that contains the path
+      Path parent = path.getParent();
+      if (parent != null && parent.startsWith(root)) {
+        try {
+          put(parent, Files.readAttributes(parent, BasicFileAttributes.class), entries);
+        } catch (IOException e) {
+          // its own deletion is reported separately
+        }
+      }
+    }
+  }
+
+  /**
+   * Will read the whole tree into a new index, lookups use the old one until it is complete
+   */
+  private void rebuild() {
+    synchronized (lock) {
+      Map<String, FileInfo> rebuilt = new ConcurrentHashMap<>();
+      scan(root, rebuilt);
+      entries = rebuilt;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package io.github.chumper.webserver.files;
+
+import java.nio.file.Path;
+
+/**
+ * The metadata of a file or directory held by the {@link FileIndex}, so a request can be answered
+ * without asking the file system about the file.
+ */
+public class FileInfo {
+
+  /**
+   * The absolute path of the file
+   */
+  private final Path path;
+  /**
+   * Whether this is a directory instead of a regular file
+   */
+  private final boolean directory;
+  /**
+   * The number of bytes of the file
+   */
+  private final long size;
+  /**
+   * The modification time of the file in milliseconds
+   */
+  private final long lastModified;
+  /**
+   * Whether the server may read the file
+   */
+  private final boolean readable;
+  /**
+   * The content type the file is sent with, null for directories
+   */
+  private final String contentType;
+  /**
+   * The strong entity tag derived from the content, null for directories and while the content
+   * is hashed
+   */
+  private final String etag;
+
+  FileInfo(Path path,
+           boolean directory,
+           long size,
+           long lastModified,
+           boolean readable) {
+    this(path, directory, size, lastModified, readable, null);
+  }
+
+  private FileInfo(Path path,
+                   boolean directory,
+                   long size,
+                   long lastModified,
+                   boolean readable,
+                   String etag) {
+    this.path = path;
+    this.directory = directory;
+    this.size = size;
+    this.lastModified = lastModified;
+    this.readable = readable;
+    this.contentType = directory ? null : MimeTypes.of(path.getFileName().toString());
+    this.etag = etag;
+  }
+
+  /**
+   * @return the same metadata with the tag of the content
+   */
+  FileInfo withETag(String etag) {
+    return new FileInfo(path, directory, size, lastModified, readable, etag);
+  }
+
+  /**
+   * Whether the other metadata describes the same version of the file
+   */
+  boolean isSameVersion(FileInfo other) {
+    return other != null && directory == other.directory && size == other.size &&
+           lastModified == other.lastModified;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public boolean isDirectory() {
+    return directory;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  public boolean isReadable() {
+    return readable;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public String getETag() {
+    return etag;
+  }
+}
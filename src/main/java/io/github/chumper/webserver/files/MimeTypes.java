@@ -0,0 +1,62 @@
+package io.github.chumper.webserver.files;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps the extension of a file name to the content type it is sent with
+ */
+public class MimeTypes {
+
+  /**
+   * Files with an unknown extension are sent as plain bytes
+   */
+  public static final String DEFAULT = "application/octet-stream";
+
+  private static final Map<String, String> types = new HashMap<>();
+
+  static {
+    types.put("txt", "text/plain");
+    types.put("html", "text/html");
+    types.put("htm", "text/html");
+    types.put("css", "text/css");
+    types.put("csv", "text/csv");
+    types.put("md", "text/markdown");
+    types.put("js", "application/javascript");
+    types.put("mjs", "application/javascript");
+    types.put("json", "application/json");
+    types.put("xml", "application/xml");
+    types.put("pdf", "application/pdf");
+    types.put("zip", "application/zip");
+    types.put("gz", "application/gzip");
+    types.put("wasm", "application/wasm");
+    types.put("svg", "image/svg+xml");
+    types.put("png", "image/png");
+    types.put("jpg", "image/jpeg");
+    types.put("jpeg", "image/jpeg");
+    types.put("gif", "image/gif");
+    types.put("webp", "image/webp");
+    types.put("ico", "image/x-icon");
+    types.put("woff", "font/woff");
+    types.put("woff2", "font/woff2");
+    types.put("mp3", "audio/mpeg");
+    types.put("mp4", "video/mp4");
+  }
+
+  private MimeTypes() {
+  }
+
+  /**
+   * @param name The name of the file, e.g. app.js
+   * @return the content type of the file, {@link #DEFAULT} if the extension is unknown
+   */
+  public static String of(String name) {
+    int dot = name.lastIndexOf('.');
+    if (dot < 0) {
+      return DEFAULT;
+    }
+    String type = types.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    return type != null ? type : DEFAULT;
+  }
+}
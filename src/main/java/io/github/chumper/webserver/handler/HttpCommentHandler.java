@@ -1,13 +1,27 @@
 package io.github.chumper.webserver.handler;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import io.github.chumper.webserver.core.http.AsyncHttpHandler;
 import io.github.chumper.webserver.core.http.HttpBase;
-import io.github.chumper.webserver.core.http.HttpHandler;
 import io.github.chumper.webserver.core.http.HttpHeaders;
 import io.github.chumper.webserver.core.http.HttpRequest;
 import io.github.chumper.webserver.core.http.HttpResponse;
@@ -16,34 +30,119 @@ import io.github.chumper.webserver.data.CommentRepository;
 import io.github.chumper.webserver.data.MongoDbCommentRepository;
 import io.github.chumper.webserver.util.ConsoleLogger;
 import io.github.chumper.webserver.util.Logger;
+import io.github.chumper.webserver.util.XxHash64;
 
 /**
- * This handler will list all files from a directory if the requested path is a directory
+ * This handler will list the comments of the repository and add or clear them on POST. The
+ * repository is called on the given executor, so the worker threads of the server do not wait for
+ * the database.
+ *
+ * The comments are listed a page at a time, the newest first. Each page links to the next one with
+ * the time and id of its last comment, {@code ?after=&id=}, so the repository finds it with its
+ * index instead of skipping all comments before it. The id tells apart comments of the same time.
+ *
+ * The rendered first page is kept in memory as long as the version of the repository does not
+ * change, a GET is then answered by the worker thread without calling the repository. The pages
+ * have an entity tag derived from their content, so clients can revalidate them and get a 304.
  */
 public class HttpCommentHandler
-    implements HttpHandler {
+    implements AsyncHttpHandler {
 
   private static final Logger logger = new ConsoleLogger();
 
+  /**
+   * The number of comments on a page if none is given
+   */
+  public static final int DEFAULT_PAGE_SIZE = 50;
+
+  /**
+   * The ids the repositories give their comments, they are put into the links as they are
+   */
+  private static final Pattern ID = Pattern.compile("[0-9a-f]{1,24}");
+
   private final CommentRepository repo;
 
+  /**
+   * Runs the calls of the repository
+   */
+  private final Executor executor;
+
+  /**
+   * The number of comments on a page
+   */
+  private final int pageSize;
+
+  /**
+   * The last rendered first page of a versioned repository, it may be outdated
+   */
+  private volatile Page page;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  /**
+   * The time that was spent reading and rendering the comments
+   */
+  private final LongAdder renderNanos = new LongAdder();
+
+  /**
+   * Creates a handler that calls the repository on the thread of the request
+   */
   public HttpCommentHandler(CommentRepository repo) {
+    this(repo, Runnable::run);
+  }
+
+  public HttpCommentHandler(CommentRepository repo,
+                            Executor executor) {
+    this(repo, executor, DEFAULT_PAGE_SIZE);
+  }
+
+  public HttpCommentHandler(CommentRepository repo,
+                            Executor executor,
+                            int pageSize) {
     this.repo = repo;
+    this.executor = executor;
+    this.pageSize = pageSize;
   }
 
   @Override
-  public void handle(HttpRequest request,
-                     HttpResponse response) {
+  public CompletionStage<Void> handle(HttpRequest request,
+                                      HttpResponse response) {
+
+    // the body is read before the handler returns, the connection belongs to the worker
+    Map<String, String> params =
+        request.getMethod() == HttpBase.Method.POST ? splitQuery(request.getContent()) : null;
 
-    if (request.getPath().startsWith("/comments")) {
-      response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "text/html");
-      request.setPath(request.getPath().substring(9));
-      // comment endpoint called
+    // a change is answered with the first page, which shows it
+    Instant after = null;
+    String afterId = null;
+    if (params == null) {
+      try {
+        String posted = parameter(request.getQuery(), "after");
+        after = posted == null ? null : Instant.parse(posted);
+        afterId = parameter(request.getQuery(), "id");
+        if (afterId != null && !ID.matcher(afterId).matches()) {
+          throw new IllegalArgumentException("Invalid comment id " + afterId);
+        }
+      } catch (IllegalArgumentException | DateTimeParseException e) {
+        response.setStatus("400 Bad request");
+        return COMPLETED;
+      }
+    }
 
+    if (params == null && after == null) {
+      Page current = page;
+      if (current != null && current.version == repo.version()) {
+        hits.increment();
+        send(request, response, current);
+        return COMPLETED;
+      }
+    }
+
+    Instant afterPosted = after;
+    String afterCommentId = afterId;
+    return CompletableFuture.runAsync(() -> {
       // add comment
-      if (request.getMethod() == HttpBase.Method.POST) {
-        // decode params
-        Map<String, String> params = splitQuery(request.getContent());
+      if (params != null) {
         if(params.get("add") != null) {
           Comment newComment = new Comment(Instant.now(), params.get("name"), params.get("message"));
           repo.add(newComment);
@@ -51,17 +150,132 @@ public class HttpCommentHandler
           repo.clear();
         }
       }
+      send(request, response, render(afterPosted, afterCommentId));
+    }, executor);
+  }
+
+  /**
+   * @return the decoded value of the parameter, null if there is none
+   */
+  private static String parameter(String query,
+                                  String name) {
+    if (query == null) {
+      return null;
+    }
+    for (String parameter : query.split("&")) {
+      if (parameter.startsWith(name + "=")) {
+        return decode(parameter.substring(name.length() + 1));
+      }
+    }
+    return null;
+  }
 
-      if (request.getMethod() == HttpBase.Method.GET ||
-          request.getMethod() == HttpBase.Method.HEAD ||
-          request.getMethod() == HttpBase.Method.POST) {
-        // list comments
-        repo.all().forEach(comment -> response.write(comment.toString()));
-        response.write(getForm());
+  /**
+   * Will render the page of comments after the given one, the first page is only rendered if no
+   * other request already did
+   */
+  private Page render(Instant afterPosted,
+                      String afterId) {
+    // read first, a change while the comments are read leaves an outdated version in the page
+    long version = repo.version();
+    boolean cached = afterPosted == null && version != CommentRepository.UNVERSIONED;
+    Page current = page;
+    if (cached && current != null && current.version == version) {
+      hits.increment();
+      return current;
+    }
+    misses.increment();
+    long start = System.nanoTime();
+    // one more comment than shown tells whether there is a next page
+    List<Comment> comments;
+    try (Stream<Comment> stream = repo.page(afterPosted, afterId, pageSize + 1)) {
+      comments = stream.collect(Collectors.toList());
+    }
+    StringBuilder html = new StringBuilder();
+    for (int i = 0; i < Math.min(pageSize, comments.size()); i++) {
+      html.append(comments.get(i));
+    }
+    if (comments.size() > pageSize) {
+      Comment last = comments.get(pageSize - 1);
+      html.append("<a href=\"?after=").append(encode(last.posted.toString()));
+      if (last.id != null) {
+        html.append("&amp;id=").append(last.id);
       }
+      html.append("\">Older comments</a><br/>\n");
+    }
+    byte[] content = html.append(getForm()).toString().getBytes(StandardCharsets.UTF_8);
+    Page rendered = new Page(version, content);
+    renderNanos.add(System.nanoTime() - start);
+    if (cached) {
+      page = rendered;
+    }
+    return rendered;
+  }
+
+  private static String decode(String value) {
+    try {
+      return URLDecoder.decode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
     }
   }
 
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void send(HttpRequest request,
+                    HttpResponse response,
+                    Page page) {
+    response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "text/html");
+    // the page after a change is the result of the POST, not a representation to revalidate
+    if (request.getMethod() != HttpBase.Method.POST &&
+        !HttpETagHandler.validate(request, response, page.etag)) {
+      return;
+    }
+    try {
+      response.write(page.content);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @return the number of requests that were answered with the first page from memory
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the number of requests that rendered the page
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return the average time to read and render the comments in milliseconds
+   */
+  public double getRenderTime() {
+    long renders = misses.sum();
+    return renders == 0 ? 0
+                        : renderNanos.sum() / (double) renders / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  @Override
+  public String toString() {
+    long hits = getHits();
+    long misses = getMisses();
+    return String.format("CommentPage: %d hits, %d misses, %.1f%% hit rate, %.2f ms per render",
+                         hits, misses, hits + misses == 0 ? 0 : 100.0 * hits / (hits + misses),
+                         getRenderTime());
+  }
+
   private String getForm() {
     return "<form method=\"post\">\n"
            + "  <input type=\"text\" name=\"name\" value=\"Name\"><br><br>\n"
@@ -88,4 +302,24 @@ public class HttpCommentHandler
     }
     return query_pairs;
   }
+
+  /**
+   * The comments of a version rendered as HTML
+   */
+  private static class Page {
+
+    private final long version;
+    private final byte[] content;
+    /**
+     * Derived from the content, so it stays the same across restarts and servers
+     */
+    private final String etag;
+
+    private Page(long version,
+                 byte[] content) {
+      this.version = version;
+      this.content = content;
+      this.etag = String.format("%016x", XxHash64.hash(content));
+    }
+  }
 }
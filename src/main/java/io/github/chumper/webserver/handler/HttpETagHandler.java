@@ -1,20 +1,17 @@
 package io.github.chumper.webserver.handler;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.Locale;
+import java.util.List;
 
+import io.github.chumper.webserver.core.http.ByteRange;
 import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpDate;
 import io.github.chumper.webserver.core.http.HttpHandler;
 import io.github.chumper.webserver.core.http.HttpHeaders;
 import io.github.chumper.webserver.core.http.HttpRequest;
 import io.github.chumper.webserver.core.http.HttpResponse;
+import io.github.chumper.webserver.core.http.MultipartByteRanges;
+import io.github.chumper.webserver.core.http.SliceableBody;
+import io.github.chumper.webserver.core.pipeline.ResponseCompressor;
 
 /**
  * Will check the request for Etag headers according to:
@@ -32,101 +29,183 @@ public class HttpETagHandler
     if(response.getHeaders().get(HttpHeaders.ETAG) != null) {
       String etag = response.getHeaders().get(HttpHeaders.ETAG);
 
-      step1(request, response, etag);
-    }
-  }
-
-  private void step1(HttpRequest request,
-                     HttpResponse response,
-                     String etag) {
-    if(request.getHeaders().get(HttpHeaders.IF_MATCH) != null) {
-      if(doesMatch(request.getHeaders().get(HttpHeaders.IF_MATCH), etag)) {
-        step3(request, response, etag);
+      long lastModified = HttpDate.parse(response.getHeaders().get(HttpHeaders.LAST_MODIFIED));
+      String status = evaluate(request, etag, lastModified);
+      if (status != null) {
+        // the pipeline sends these responses without a body
+        response.setStatus(status);
       } else {
-        response.setStatus("412 Precondition failed");
+        step5(request, response, etag);
       }
-    } else {
-      step2(request, response, etag);
     }
   }
 
-  private void step2(HttpRequest request,
-                     HttpResponse response,
-                     String etag) {
-    if(request.getHeaders().get(HttpHeaders.IF_UNMODIFIED_SINCE) != null) {
-      try {
-        Date date1 = HttpHeaders.headerTime.parse(request.getHeaders().get(HttpHeaders.IF_UNMODIFIED_SINCE));
-        Date date2 = HttpHeaders.headerTime.parse(response.getHeaders().get(HttpHeaders.LAST_MODIFIED));
-
-        if(date2.before(date1)) {
-          step3(request, response, etag);
-        } else {
-          response.setStatus("412 Precondition failed");
-        }
-      } catch (ParseException e) {
-        // ignore this step as we can not parse the time
-        step3(request, response, etag);
-      }
-    } else {
-      step3(request, response, etag);
-    }
+  /**
+   * Lets a handler publish the validators of a representation before it produces the body. The
+   * conditions of the request are evaluated right away, so a client that has the current
+   * representation gets 304 without the body being read, rendered or queried. This handler
+   * evaluates them again later, with the same result, and answers range requests.
+   *
+   * @param etag         The entity tag of the representation
+   * @param lastModified The modification time of the representation in milliseconds
+   * @return true if the handler has to produce the body, false if the response is complete
+   *         without it
+   */
+  public static boolean validate(HttpRequest request,
+                                 HttpResponse response,
+                                 String etag,
+                                 long lastModified) {
+    response.getHeaders().add(HttpHeaders.ETAG, etag);
+    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, HttpDate.format(lastModified));
+
+    // the header only has whole seconds
+    return proceed(response, evaluate(request, etag, Math.floorDiv(lastModified, 1000)));
+  }
 
+  /**
+   * Like {@link #validate(HttpRequest, HttpResponse, String, long)} for a representation without
+   * a modification time, e.g. a generated page, only its entity tag is compared
+   */
+  public static boolean validate(HttpRequest request,
+                                 HttpResponse response,
+                                 String etag) {
+    response.getHeaders().add(HttpHeaders.ETAG, etag);
+    return proceed(response, evaluate(request, etag, HttpDate.INVALID));
   }
 
-  private void step3(HttpRequest request,
-                     HttpResponse response,
-                     String etag) {
+  /**
+   * @param status The status a condition decided or null
+   * @return true if the handler has to produce the body
+   */
+  private static boolean proceed(HttpResponse response,
+                                 String status) {
+    if (status == null) {
+      return true;
+    }
+    response.setStatus(status);
+    return false;
+  }
 
-    if(request.getHeaders().get(HttpHeaders.IF_NONE_MATCH) != null) {
-      if(!doesMatch(request.getHeaders().get(HttpHeaders.IF_NONE_MATCH), etag)) {
-        step5(request, response, etag);
-      } else if(request.getMethod() == HttpBase.Method.GET || request.getMethod() == HttpBase.Method.HEAD){
-        response.setStatus("304 Not modified");
-      } else {
-        response.setStatus("412 Precondition failed");
+  /**
+   * Evaluates the preconditions in the order of steps 1 to 4 of
+   * https://tools.ietf.org/html/rfc7232#section-6
+   *
+   * @param lastModified The modification time of the representation in seconds, {@link
+   *                     HttpDate#INVALID} if it is unknown
+   * @return the status of the response if a condition decides it, null if the request proceeds
+   */
+  private static String evaluate(HttpRequest request,
+                                 String etag,
+                                 long lastModified) {
+    // step 1 and 2, the client wants to change the representation it knows
+    String ifMatch = request.getHeaders().getCombined(HttpHeaders.IF_MATCH);
+    String ifUnmodifiedSince = request.getHeaders().get(HttpHeaders.IF_UNMODIFIED_SINCE);
+    if(ifMatch != null) {
+      if(!doesMatch(ifMatch, etag)) {
+        return "412 Precondition failed";
+      }
+    } else if(ifUnmodifiedSince != null) {
+      long date = HttpDate.parse(ifUnmodifiedSince);
+      // ignore this step if we can not parse the time
+      if(date != HttpDate.INVALID && lastModified != HttpDate.INVALID && lastModified >= date) {
+        return "412 Precondition failed";
       }
-    } else {
-     step4(request, response, etag);
     }
 
-  }
+    boolean getOrHead = request.getMethod() == HttpBase.Method.GET ||
+                        request.getMethod() == HttpBase.Method.HEAD;
 
-  private void step4(HttpRequest request,
-                     HttpResponse response,
-                     String etag) {
-    if((request.getMethod() == HttpBase.Method.GET || request.getMethod() == HttpBase.Method.HEAD) &&
-        request.getHeaders().get(HttpHeaders.IF_MODIFIED_SINCE) != null){
-
-      try {
-        Date date1 = HttpHeaders.headerTime.parse(request.getHeaders().get(HttpHeaders.IF_MODIFIED_SINCE));
-        Date date2 = HttpHeaders.headerTime.parse(response.getHeaders().get(HttpHeaders.LAST_MODIFIED));
-
-        if(date2.after(date1)) {
-          step5(request, response, etag);
-        } else {
-          response.setStatus("304 Not modified");
-        }
-      } catch (ParseException e) {
-        // ignore this header
-        step5(request, response, etag);
+    // step 3 and 4, the client has a representation and wants to know if it is current
+    String ifNoneMatch = request.getHeaders().getCombined(HttpHeaders.IF_NONE_MATCH);
+    String ifModifiedSince = request.getHeaders().get(HttpHeaders.IF_MODIFIED_SINCE);
+    if(ifNoneMatch != null) {
+      if(doesMatch(ifNoneMatch, etag)) {
+        return getOrHead ? "304 Not modified" : "412 Precondition failed";
+      }
+    } else if(getOrHead && ifModifiedSince != null) {
+      long date = HttpDate.parse(ifModifiedSince);
+      // ignore this header if we can not parse the time
+      if(date != HttpDate.INVALID && lastModified != HttpDate.INVALID && lastModified <= date) {
+        return "304 Not modified";
       }
     }
+    return null;
   }
 
   private void step5(HttpRequest request,
                      HttpResponse response,
                      String etag) {
-    // we do not support if-range and range, so do nothing here
+    // only bodies that are known in advance can be sent partially
+    String range = request.getHeaders().get(HttpHeaders.RANGE);
+    if (range == null || request.getMethod() != HttpBase.Method.GET ||
+        !"200 OK".equals(response.getStatus()) || !(response.getBody() instanceof SliceableBody)) {
+      return;
+    }
+
+    // if the client has an outdated copy it needs the complete body instead of the range
+    String ifRange = request.getHeaders().get(HttpHeaders.IF_RANGE);
+    if (ifRange != null && !isCurrent(ifRange, response, etag)) {
+      return;
+    }
+
+    SliceableBody body = (SliceableBody) response.getBody();
+    List<ByteRange> ranges = ByteRange.parse(range, body.getLength());
+    if (ranges == null) {
+      // invalid range headers are ignored
+      return;
+    }
+    if (ranges.isEmpty()) {
+      response.setStatus("416 Range not satisfiable");
+      response.getHeaders().add(HttpHeaders.CONTENT_RANGE, "bytes */" + body.getLength());
+      response.setBody(null);
+      return;
+    }
+
+    response.setStatus("206 Partial content");
+    if (ranges.size() == 1) {
+      response.getHeaders().add(HttpHeaders.CONTENT_RANGE,
+                                ranges.get(0).toContentRange(body.getLength()));
+      response.setBody(body.slice(ranges.get(0)));
+    } else {
+      MultipartByteRanges parts = new MultipartByteRanges(
+          body, response.getHeaders().get(HttpHeaders.CONTENT_TYPE), ranges);
+      response.getHeaders().add(HttpHeaders.CONTENT_TYPE, parts.getContentType());
+      response.setBody(parts);
+    }
+  }
+
+  /**
+   * Checks whether the If-Range header, an entity tag or a date, matches the current
+   * representation. Weak entity tags never match.
+   */
+  private boolean isCurrent(String ifRange,
+                            HttpResponse response,
+                            String etag) {
+    if (ifRange.startsWith("W/")) {
+      return false;
+    }
+    if (ifRange.startsWith("\"")) {
+      return ifRange.replace("\"", "").equals(etag);
+    }
+    long date = HttpDate.parse(ifRange);
+    if (date == HttpDate.INVALID) {
+      // our entity tags are sent without quotes, so clients may return them the same way
+      return ifRange.equals(etag);
+    }
+    return date == HttpDate.parse(response.getHeaders().get(HttpHeaders.LAST_MODIFIED));
   }
 
-  private boolean doesMatch(String value, String etag) {
+  private static boolean doesMatch(String value, String etag) {
     // check wild card
     if(value.replace("\"", "").equals("*")) {
       return true;
     }
     // split on ,
     for(String s : value.split(",")) {
-      if(s.replace("\"", "").trim().equals(etag)) {
+      // representations compressed by the pipeline have the coding appended to the tag of the
+      // handler
+      String tag = s.replace("\"", "").trim();
+      if(tag.equals(etag) || ResponseCompressor.stripCoding(tag).equals(etag)) {
         return true;
       }
     }
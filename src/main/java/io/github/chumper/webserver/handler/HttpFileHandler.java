@@ -2,80 +2,370 @@ package io.github.chumper.webserver.handler;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
-import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.FileRegion;
 import io.github.chumper.webserver.core.http.HttpHandler;
 import io.github.chumper.webserver.core.http.HttpHeaders;
 import io.github.chumper.webserver.core.http.HttpRequest;
 import io.github.chumper.webserver.core.http.HttpResponse;
+import io.github.chumper.webserver.core.http.SliceableBody;
+import io.github.chumper.webserver.core.pipeline.HttpRouter;
+import io.github.chumper.webserver.core.pipeline.ResponseCompressor;
+import io.github.chumper.webserver.files.CachedFile;
+import io.github.chumper.webserver.files.DirectoryListings;
+import io.github.chumper.webserver.files.FileCache;
+import io.github.chumper.webserver.files.FileIndex;
+import io.github.chumper.webserver.files.FileInfo;
+import io.github.chumper.webserver.files.MimeTypes;
 import io.github.chumper.webserver.util.ConsoleLogger;
 import io.github.chumper.webserver.util.Logger;
+import io.github.chumper.webserver.util.Precompressor;
 
 /**
- * This handler will list all files from a directory if the requested path is a directory
+ * This handler will list all files from a directory if the requested path is a directory. It is
+ * routed for GET with a pattern ending in {@code *}, e.g. {@code /files/*}, and serves the rest of
+ * the path below the root.
  */
 public class HttpFileHandler
     implements HttpHandler {
 
   private static final Logger logger = new ConsoleLogger();
 
+  /**
+   * Pages with more entries are streamed instead of being buffered
+   */
+  private static final int BUFFERED_ENTRIES = 1000;
+
   private final File root;
+  /**
+   * The absolute and normalized root, requested files must be below it
+   */
+  private final Path rootPath;
+  /**
+   * Keeps small files in memory, null if every file is read from the file system
+   */
+  private final FileCache cache;
+  /**
+   * Knows every file below the root, null if the file system is asked on each request
+   */
+  private final FileIndex index;
+  /**
+   * Keeps the sorted entries of large directories, null if directories are read for each listing
+   */
+  private final DirectoryListings listings;
 
   public HttpFileHandler(String root) {
+    this(root, null);
+  }
+
+  /**
+   * @param root  The directory the files are served from
+   * @param cache The cache for the files below the root, may be null
+   */
+  public HttpFileHandler(String root,
+                         FileCache cache) {
+    this(root, cache, null, null);
+  }
+
+  /**
+   * @param root     The directory the files are served from
+   * @param cache    The cache for the files below the root, may be null
+   * @param index    The index of the files below the root, may be null
+   * @param listings The cache for the listings of directories below the root, may be null
+   */
+  public HttpFileHandler(String root,
+                         FileCache cache,
+                         FileIndex index,
+                         DirectoryListings listings) {
     this.root = new File(root);
+    this.rootPath = this.root.toPath().toAbsolutePath().normalize();
+    this.cache = cache;
+    this.index = index;
+    this.listings = listings;
   }
 
   @Override
   public void handle(HttpRequest request,
                      HttpResponse response) {
 
-    if (request.getMethod() == HttpBase.Method.GET || request.getMethod() == HttpBase.Method.HEAD) {
-      if (request.getPath().startsWith("/files")) {
-        request.setPath(request.getPath().substring(6));
-        File file = new File(root.getAbsolutePath() + request.getPath());
-
-        //download file
-        if (file.exists() && file.isFile()) {
-          // download
-          try {
-            response.write(Files.readAllBytes(file.toPath()));
-          } catch (IOException e) {
-            logger.log("Error during file read: {}", e.getMessage());
-            response.setStatus("500 Internal server error");
-            return;
-          }
+    // the part of the path below the mount point of the route, e.g. /files/*
+    String path = request.getPathParam(HttpRouter.REST);
+    if (path == null) {
+      response.setStatus("404 Not found");
+      return;
+    }
+    String query = request.getQuery();
 
-          response.getHeaders().add(HttpHeaders.ETAG, String.valueOf(file.lastModified()));
-          response.getHeaders()
-              .add(HttpHeaders.LAST_MODIFIED, HttpHeaders.headerTime.format(file.lastModified()));
-        }
+    File file;
+    long lastModified;
+    if (index != null) {
+      // unknown paths and paths outside of the root are answered without the file system
+      FileInfo info = index.get(path);
+      if (info == null) {
+        response.setStatus("404 Not found");
+        return;
+      }
+      if (!info.isDirectory()) {
+        sendIndexedFile(request, response, info);
+        return;
+      }
+      file = info.getPath().toFile();
+      lastModified = info.getLastModified();
+    } else {
+      file = new File(root.getAbsolutePath() + path);
+      if (!file.toPath().normalize().startsWith(rootPath)) {
+        // .. must not leave the root
+        response.setStatus("404 Not found");
+        return;
+      }
+      if (sendFile(request, response, file)) {
+        return;
+      }
+      if (!file.isDirectory()) {
+        response.setStatus("404 Not found");
+        return;
+      }
+      lastModified = file.lastModified();
+    }
 
-        // list files
-        if (file.exists() && file.isDirectory()) {
-          // list files
-          Long lastModified = 0l;
-          StringBuilder builder = new StringBuilder();
-          for (File f : file.listFiles(it -> it.isFile() || it.isDirectory())) {
-            builder.append(root.toPath().toAbsolutePath().relativize(f.toPath())).append("\r\n");
-            if (f.lastModified() > lastModified) {
-              lastModified = f.lastModified();
-            }
+    list(request, response, file.toPath(), lastModified, query);
+  }
+
+  /**
+   * Will list the entries of the directory sorted by name, the query can select a page of them
+   * with offset and limit. The listing only depends on the names in the directory, so its tag and
+   * date are the modification time of the directory itself and a client with the current listing
+   * gets 304 without the directory being read.
+   */
+  private void list(HttpRequest request,
+                    HttpResponse response,
+                    Path directory,
+                    long lastModified,
+                    String query) {
+    int offset = 0;
+    int limit = Integer.MAX_VALUE;
+    if (query != null) {
+      try {
+        for (String parameter : query.split("&")) {
+          if (parameter.startsWith("offset=")) {
+            offset = Integer.parseInt(parameter.substring(7));
+          } else if (parameter.startsWith("limit=")) {
+            limit = Integer.parseInt(parameter.substring(6));
           }
+        }
+      } catch (NumberFormatException e) {
+        offset = -1;
+      }
+      if (offset < 0 || limit < 0) {
+        response.setStatus("400 Bad request");
+        return;
+      }
+    }
 
-          String content = builder.toString();
+    if (!HttpETagHandler.validate(request, response, String.valueOf(lastModified), lastModified)) {
+      return;
+    }
+    response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "text/plain");
 
-          response.getHeaders().add(HttpHeaders.ETAG, String.valueOf(Math.abs(content.hashCode())));
-          response.getHeaders()
-              .add(HttpHeaders.LAST_MODIFIED, HttpHeaders.headerTime.format(lastModified));
+    String[] entries = listings != null ? listings.get(directory, lastModified) : null;
+    if (entries == null) {
+      entries = read(directory);
+      if (listings != null) {
+        listings.put(directory, lastModified, entries);
+      }
+    }
 
-          response.write(content);
+    int first = offset;
+    int count = (int) Math.min(limit, Math.max(0L, entries.length - offset));
+    if (count <= BUFFERED_ENTRIES) {
+      for (int i = first; i < first + count; i++) {
+        response.write(entries[i] + "\r\n");
+      }
+    } else {
+      // large pages are rendered while they are sent instead of as one large string
+      String[] all = entries;
+      response.stream(outputStream -> {
+        for (int i = first; i < first + count; i++) {
+          outputStream.write((all[i] + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+      });
+    }
+  }
 
-        } else if (!file.exists()) {
-          response.setStatus("404 Not found");
+  /**
+   * Will read the files and directories in the directory, relative to the root and sorted
+   */
+  private String[] read(Path directory) {
+    List<String> entries = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path entry : stream) {
+        if (isListed(entry)) {
+          entries.add(rootPath.relativize(entry).toString());
         }
       }
+    } catch (IOException | DirectoryIteratorException e) {
+      logger.log("Error during directory read: {}", e.getMessage());
+    }
+    String[] sorted = entries.toArray(new String[0]);
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  /**
+   * Only files and directories are listed, the index knows their type without asking the file
+   * system
+   */
+  private boolean isListed(Path entry) {
+    if (index != null) {
+      return index.contains(entry);
+    }
+    File file = entry.toFile();
+    return file.isFile() || file.isDirectory();
+  }
+
+  /**
+   * Will send a file known to the index without asking the file system about it. The conditions of
+   * the request are evaluated with the tag of the index, so the cache is only asked for content
+   * that is actually sent.
+   */
+  private void sendIndexedFile(HttpRequest request,
+                               HttpResponse response,
+                               FileInfo info) {
+    if (!info.isReadable()) {
+      logger.log("Error during file read: {} is not readable", info.getPath());
+      response.setStatus("500 Internal server error");
+      return;
+    }
+    FileInfo precompressed = index.getPrecompressed(info);
+    boolean gzip = isGzip(request, response, precompressed != null);
+    String etag = info.getETag();
+    if (etag == null) {
+      // files may not be hashed yet, the cache hashes the small ones when they are loaded
+      CachedFile cached = cache != null ? cache.get(info.getPath()) : null;
+      etag = cached != null ? cached.getETag() : String.valueOf(info.getLastModified());
+    }
+    if (!HttpETagHandler.validate(request, response, tag(etag, gzip), info.getLastModified())) {
+      return;
+    }
+
+    CachedFile cached = cache != null ? cache.get(info.getPath()) : null;
+    if (cached != null && cached.getLastModified() != info.getLastModified()) {
+      // the file changed in between, the cached content does not belong to the tag
+      cached = null;
+    }
+    SliceableBody body;
+    if (gzip) {
+      body = cached != null && cached.getPrecompressed() != null
+             ? cached.getPrecompressed()
+             : new FileRegion(precompressed.getPath(), 0, precompressed.getSize());
+    } else {
+      body = cached != null
+             ? cached.getContent() : new FileRegion(info.getPath(), 0, info.getSize());
+    }
+    send(response, info.getContentType(), body, gzip);
+  }
+
+  /**
+   * Will send the file if it is a regular file
+   *
+   * @return false if the file is no regular file
+   */
+  private boolean sendFile(HttpRequest request,
+                           HttpResponse response,
+                           File file) {
+    String contentType = MimeTypes.of(file.getName());
+    CachedFile cached = cache != null ? cache.get(file.toPath()) : null;
+    if (cached != null) {
+      // served from memory without looking at the file system
+      boolean gzip = isGzip(request, response, cached.getPrecompressed() != null);
+      if (HttpETagHandler.validate(request, response, tag(cached.getETag(), gzip),
+                                   cached.getLastModified())) {
+        send(response, contentType, gzip ? cached.getPrecompressed() : cached.getContent(), gzip);
+      }
+      return true;
+    }
+    if (!file.isFile()) {
+      return false;
+    }
+    // download, the file will be transferred directly from the file system to the socket
+    if (!Files.isReadable(file.toPath())) {
+      logger.log("Error during file read: {} is not readable", file);
+      response.setStatus("500 Internal server error");
+      return true;
+    }
+    File precompressed = precompressed(file);
+    boolean gzip = isGzip(request, response, precompressed != null);
+    long lastModified = file.lastModified();
+    // without the index or the cache the content is never hashed
+    if (HttpETagHandler.validate(request, response, tag(String.valueOf(lastModified), gzip),
+                                 lastModified)) {
+      File sent = gzip ? precompressed : file;
+      send(response, contentType, new FileRegion(sent.toPath(), 0, sent.length()), gzip);
+    }
+    return true;
+  }
+
+  /**
+   * Decides which variant of the file is sent, before the conditions of the request are evaluated
+   * for it
+   *
+   * @param precompressed Whether the file has a gzip compressed variant
+   * @return true if the compressed variant is sent
+   */
+  private static boolean isGzip(HttpRequest request,
+                                HttpResponse response,
+                                boolean precompressed) {
+    if (!precompressed) {
+      return false;
+    }
+    // both variants can be sent for the same url, so caches have to keep them apart
+    response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    return ResponseCompressor.accepts(request.getHeaders().get(HttpHeaders.ACCEPT_ENCODING),
+                                      ResponseCompressor.GZIP);
+  }
+
+  /**
+   * @return the tag of the variant, the compressed variant needs its own tag
+   */
+  private static String tag(String etag,
+                            boolean gzip) {
+    return gzip ? etag + "-" + ResponseCompressor.GZIP : etag;
+  }
+
+  /**
+   * Will set the body once the conditions of the request passed
+   */
+  private static void send(HttpResponse response,
+                           String contentType,
+                           SliceableBody body,
+                           boolean gzip) {
+    response.setBody(body);
+    if (gzip) {
+      response.getHeaders().add(HttpHeaders.CONTENT_ENCODING, ResponseCompressor.GZIP);
+    }
+    response.getHeaders().add(HttpHeaders.CONTENT_TYPE, contentType);
+    // ranges of the file are answered by the HttpETagHandler
+    response.getHeaders().add(HttpHeaders.ACCEPT_RANGES, "bytes");
+  }
+
+  /**
+   * Will return the gzip compressed sibling of the file, e.g. app.js.gz for app.js, if it exists
+   * and is not older than the file
+   */
+  private File precompressed(File file) {
+    File compressed = new File(file.getPath() + Precompressor.SUFFIX);
+    if (compressed.isFile() && compressed.lastModified() >= file.lastModified() &&
+        Files.isReadable(compressed.toPath())) {
+      return compressed;
     }
+    return null;
   }
 }
@@ -1,12 +1,12 @@
 package io.github.chumper.webserver.handler;
 
-import io.github.chumper.webserver.core.http.HttpBase;
 import io.github.chumper.webserver.core.http.HttpHandler;
+import io.github.chumper.webserver.core.http.HttpHeaders;
 import io.github.chumper.webserver.core.http.HttpRequest;
 import io.github.chumper.webserver.core.http.HttpResponse;
 
 /**
- * Will return urls to the file listing and the comment listing
+ * Will return urls to the file listing and the comment listing, it is routed for GET /
  */
 public class HttpRootHandler
     implements HttpHandler {
@@ -15,11 +15,8 @@ public class HttpRootHandler
   public void handle(HttpRequest request,
                      HttpResponse response) {
 
-    if(request.getMethod() == HttpBase.Method.GET || request.getMethod() == HttpBase.Method.HEAD) {
-      if(request.getPath().equals("/")) {
-        response.write("Files   : /files\r\n");
-        response.write("Comments: /comments\r\n");
-      }
-    }
+    response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "text/plain");
+    response.write("Files   : /files\r\n");
+    response.write("Comments: /comments\r\n");
   }
 }
@@ -0,0 +1,150 @@
+package io.github.chumper.webserver.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Will create a gzip compressed sibling, e.g. app.js.gz for app.js, for each file below a
+ * directory that compresses well. The {@code HttpFileHandler} sends these files to clients that
+ * accept gzip, so static files are compressed once instead of for every request.
+ *
+ * Can be run at startup with {@code server.files.precompress} or on its own with
+ * {@code gradle precompress -Proot=<directory>}.
+ */
+public class Precompressor {
+
+  private static final Logger logger = new ConsoleLogger();
+
+  public static final String SUFFIX = ".gz";
+
+  /**
+   * Files with these extensions are compressed already
+   */
+  private static final String[] COMPRESSED_EXTENSIONS = {SUFFIX, ".zip", ".br", ".png", ".jpg",
+                                                         ".jpeg", ".gif", ".webp", ".mp3", ".mp4",
+                                                         ".woff", ".woff2"};
+
+  /**
+   * Smaller files are not worth it, the saved bytes are less than a network packet
+   */
+  private final long minSize;
+  /**
+   * The compressed file is only kept if it is at most this fraction of the original size
+   */
+  private final double maxRatio;
+
+  /**
+   * @param minSize  The minimum number of bytes of a file to be compressed
+   * @param maxRatio The maximum size of the compressed file relative to the original file
+   */
+  public Precompressor(long minSize,
+                       double maxRatio) {
+    this.minSize = minSize;
+    this.maxRatio = maxRatio;
+  }
+
+  public static void main(String... args) throws IOException {
+    Path root = Paths.get(args.length > 0 ? args[0] : "");
+    int created = new Precompressor(1024, 0.9).compress(root);
+    logger.log("Created {} compressed files below {}", created, root.toAbsolutePath());
+  }
+
+  /**
+   * Will walk the directory and create the compressed siblings of all files that are missing or
+   * outdated
+   *
+   * @return the number of created compressed files
+   */
+  public int compress(Path root) throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(root)) {
+      files = paths.filter(Files::isRegularFile)
+          .filter(path -> !isCompressed(path))
+          .collect(Collectors.toList());
+    }
+    int created = 0;
+    for (Path file : files) {
+      try {
+        if (compressFile(file)) {
+          created++;
+        }
+      } catch (IOException e) {
+        logger.log("Could not compress {}: {}", file, e.getMessage());
+      }
+    }
+    return created;
+  }
+
+  /**
+   * @return true if a new compressed file was written
+   */
+  boolean compressFile(Path file) throws IOException {
+    Path compressed = file.resolveSibling(file.getFileName() + SUFFIX);
+    long size = Files.size(file);
+    if (size < minSize) {
+      Files.deleteIfExists(compressed);
+      return false;
+    }
+    if (Files.exists(compressed) &&
+        Files.getLastModifiedTime(compressed).compareTo(Files.getLastModifiedTime(file)) >= 0) {
+      // still up to date
+      return false;
+    }
+
+    // written to a temporary file first, so the handler never sends a partial file
+    Path temp = file.resolveSibling(file.getFileName() + SUFFIX + ".tmp");
+    try {
+      try (OutputStream outputStream = new BestGZIPOutputStream(Files.newOutputStream(temp))) {
+        Files.copy(file, outputStream);
+      }
+      if (Files.size(temp) > size * maxRatio) {
+        // does not compress well, the original is sent instead
+        Files.delete(temp);
+        Files.deleteIfExists(compressed);
+        return false;
+      }
+      // the handler only sends compressed files that are not older than the original
+      Files.setLastModifiedTime(temp, Files.getLastModifiedTime(file));
+      Files.move(temp, compressed, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static boolean isCompressed(Path file) {
+    String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+    if (name.endsWith(SUFFIX + ".tmp")) {
+      return true;
+    }
+    for (String extension : COMPRESSED_EXTENSIONS) {
+      if (name.endsWith(extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The files are compressed only once, so the smallest output is worth the time
+   */
+  private static class BestGZIPOutputStream
+      extends GZIPOutputStream {
+
+    BestGZIPOutputStream(OutputStream out) throws IOException {
+      super(out, 8192);
+      def.setLevel(Deflater.BEST_COMPRESSION);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package io.github.chumper.webserver.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The 64 bit variant of the non-cryptographic xxHash, see
+ * https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md. It hashes several gigabytes per
+ * second, so content can be identified by its hash without noticeable costs. It must not be used
+ * where an attacker could profit from collisions.
+ *
+ * The content can be passed in several parts, the hash is the same as for the whole content.
+ * Instances are not thread-safe.
+ */
+public class XxHash64 {
+
+  private static final long PRIME1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME3 = 0x165667B19E3779F9L;
+  private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+  /**
+   * The content is processed in stripes of this many bytes
+   */
+  private static final int STRIPE = 32;
+
+  private final long seed;
+
+  private long v1;
+  private long v2;
+  private long v3;
+  private long v4;
+
+  /**
+   * The start of a stripe that was not complete yet
+   */
+  private final ByteBuffer stripe = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+  /**
+   * The number of bytes hashed so far
+   */
+  private long length;
+
+  public XxHash64() {
+    this(0);
+  }
+
+  public XxHash64(long seed) {
+    this.seed = seed;
+    this.v1 = seed + PRIME1 + PRIME2;
+    this.v2 = seed + PRIME2;
+    this.v3 = seed;
+    this.v4 = seed - PRIME1;
+  }
+
+  /**
+   * @return the hash of the whole array
+   */
+  public static long hash(byte[] content) {
+    XxHash64 hash = new XxHash64();
+    hash.update(ByteBuffer.wrap(content));
+    return hash.getValue();
+  }
+
+  /**
+   * Will hash the remaining bytes of the buffer, its position is moved to its limit
+   */
+  public void update(ByteBuffer content) {
+    length += content.remaining();
+    ByteOrder order = content.order();
+    content.order(ByteOrder.LITTLE_ENDIAN);
+
+    if (stripe.position() > 0) {
+      // complete the stripe of the previous part first
+      while (stripe.hasRemaining() && content.hasRemaining()) {
+        stripe.put(content.get());
+      }
+      if (stripe.hasRemaining()) {
+        content.order(order);
+        return;
+      }
+      stripe.flip();
+      process(stripe);
+      stripe.clear();
+    }
+    while (content.remaining() >= STRIPE) {
+      process(content);
+    }
+    stripe.put(content);
+    content.order(order);
+  }
+
+  /**
+   * @return the hash of everything passed so far, more content can be passed afterwards
+   */
+  public long getValue() {
+    long hash;
+    if (length >= STRIPE) {
+      hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) +
+             Long.rotateLeft(v4, 18);
+      hash = merge(hash, v1);
+      hash = merge(hash, v2);
+      hash = merge(hash, v3);
+      hash = merge(hash, v4);
+    } else {
+      hash = seed + PRIME5;
+    }
+    hash += length;
+
+    int position = 0;
+    int remaining = stripe.position();
+    for (; position + 8 <= remaining; position += 8) {
+      hash ^= round(0, stripe.getLong(position));
+      hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+    }
+    if (position + 4 <= remaining) {
+      hash ^= (stripe.getInt(position) & 0xFFFFFFFFL) * PRIME1;
+      hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+      position += 4;
+    }
+    for (; position < remaining; position++) {
+      hash ^= (stripe.get(position) & 0xFF) * PRIME5;
+      hash = Long.rotateLeft(hash, 11) * PRIME1;
+    }
+
+    hash ^= hash >>> 33;
+    hash *= PRIME2;
+    hash ^= hash >>> 29;
+    hash *= PRIME3;
+    hash ^= hash >>> 32;
+    return hash;
+  }
+
+  /**
+   * Will process the next stripe of the little endian buffer
+   */
+  private void process(ByteBuffer content) {
+    v1 = round(v1, content.getLong());
+    v2 = round(v2, content.getLong());
+    v3 = round(v3, content.getLong());
+    v4 = round(v4, content.getLong());
+  }
+
+  private static long round(long accumulator,
+                            long input) {
+    accumulator += input * PRIME2;
+    accumulator = Long.rotateLeft(accumulator, 31);
+    return accumulator * PRIME1;
+  }
+
+  private static long merge(long hash,
+                            long accumulator) {
+    hash ^= round(0, accumulator);
+    return hash * PRIME1 + PRIME4;
+  }
+}
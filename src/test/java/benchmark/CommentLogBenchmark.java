@@ -0,0 +1,57 @@
+package benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import benchmark.util.Measurement;
+import io.github.chumper.webserver.data.Comment;
+import io.github.chumper.webserver.data.LogCommentRepository;
+
+/**
+ * Measures the {@link LogCommentRepository} with a million comments: adding a comment, reading the
+ * first page and reading a page in the middle, and the recovery of all comments on startup. Run
+ * with {@code gradle benchmark -Pbench=CommentLogBenchmark}
+ */
+public class CommentLogBenchmark {
+
+  private static final int COMMENTS = 1_000_000;
+  private static final int PAGE = 50;
+
+  private static long added;
+  private static long read;
+
+  public static void main(String[] args) throws Exception {
+    Path directory =
+        Files.createTempDirectory(Files.createDirectories(Paths.get("build", "tmp")), "log");
+    try {
+      Instant start = Instant.now();
+      LogCommentRepository repository = new LogCommentRepository(directory, 64 << 20, false);
+      Measurement.run("add", 0, COMMENTS, () -> repository.add(
+          new Comment(start.plusMillis(added++), "Name", "A message of a usual length")));
+
+      Instant middle = start.plusMillis(COMMENTS / 2);
+      Measurement.run("first page of " + PAGE, 10_000, 100_000,
+                      () -> read += repository.page(null, PAGE).count());
+      Measurement.run("page in the middle", 10_000, 100_000,
+                      () -> read += repository.page(middle, PAGE).count());
+      repository.close();
+
+      long recovery = System.nanoTime();
+      LogCommentRepository recovered = new LogCommentRepository(directory, 64 << 20, false);
+      System.out.printf("recovered %,d comments in %,d ms%n", recovered.getCount(),
+                        (System.nanoTime() - recovery) / 1_000_000);
+      recovered.close();
+      if (read == 0) {
+        throw new IllegalStateException("Nothing was read");
+      }
+    } finally {
+      try (Stream<Path> paths = Files.walk(directory)) {
+        paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+}
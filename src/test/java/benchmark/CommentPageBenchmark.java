@@ -0,0 +1,56 @@
+package benchmark;
+
+import java.time.Instant;
+
+import benchmark.util.Measurement;
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.core.http.HttpRequest;
+import io.github.chumper.webserver.core.http.HttpResponse;
+import io.github.chumper.webserver.data.CachingCommentRepository;
+import io.github.chumper.webserver.data.Comment;
+import io.github.chumper.webserver.data.CommentRepository;
+import io.github.chumper.webserver.handler.HttpCommentHandler;
+import io.github.chumper.webserver.util.InMemoryRepo;
+
+/**
+ * Compares a GET of the comments page that reads and renders all comments with one that is
+ * answered with the page in memory, and with a revalidation that gets a 304. The comments are in
+ * memory here, so the database round trip that a cache hit saves as well is not part of the
+ * numbers. Run with {@code gradle benchmark -Pbench=CommentPageBenchmark}
+ */
+public class CommentPageBenchmark {
+
+  private static final int WARMUP = 20_000;
+  private static final int ITERATIONS = 50_000;
+
+  public static void main(String[] args) throws Exception {
+    CommentRepository repository = new InMemoryRepo();
+    for (int i = 0; i < 200; i++) {
+      repository.add(new Comment(Instant.now(), "Name " + i, "A message of a usual length " + i));
+    }
+    HttpCommentHandler uncached = new HttpCommentHandler(repository);
+    HttpCommentHandler cached = new HttpCommentHandler(new CachingCommentRepository(repository));
+
+    HttpRequest request = new HttpRequest();
+    request.setMethod(HttpBase.Method.GET);
+    request.setPath("/comments");
+    HttpRequest revalidation = new HttpRequest();
+    revalidation.setMethod(HttpBase.Method.GET);
+    revalidation.setPath("/comments");
+    HttpResponse first = new HttpResponse();
+    cached.handle(request, first);
+    revalidation.getHeaders().add(HttpHeaders.IF_NONE_MATCH,
+                                  "\"" + first.getHeaders().get(HttpHeaders.ETAG) + "\"");
+    System.out.println("200 comments, first page of " + HttpCommentHandler.DEFAULT_PAGE_SIZE + ", "
+                       + first.getContentLength() + " bytes");
+
+    Measurement.run("  rendered per request", WARMUP, ITERATIONS,
+                    () -> uncached.handle(request, new HttpResponse()));
+    Measurement.run("  page from memory", WARMUP, ITERATIONS,
+                    () -> cached.handle(request, new HttpResponse()));
+    Measurement.run("  revalidated, 304", WARMUP, ITERATIONS,
+                    () -> cached.handle(revalidation, new HttpResponse()));
+    System.out.println(cached);
+  }
+}
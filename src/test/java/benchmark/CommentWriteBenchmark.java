@@ -0,0 +1,85 @@
+package benchmark;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import benchmark.util.Measurement;
+import io.github.chumper.webserver.data.Comment;
+import io.github.chumper.webserver.data.CommentRepository;
+import io.github.chumper.webserver.data.WriteBehindCommentRepository;
+
+/**
+ * Compares a round trip per added comment with the {@link WriteBehindCommentRepository} in both
+ * durability modes. The 16 threads are the default comment threads of the server. The database is
+ * a stand-in that takes a round trip of 1 ms per call plus 2 us per comment, which is about what a
+ * Mongo on the same host takes for small documents. Run with
+ * {@code gradle benchmark -Pbench=CommentWriteBenchmark}
+ */
+public class CommentWriteBenchmark {
+
+  private static final int THREADS = 16;
+  private static final long DURATION = 3000;
+
+  public static void main(String[] args) throws Exception {
+    Comment comment = new Comment(Instant.now(), "John", "A message of a usual length");
+
+    StandIn direct = new StandIn();
+    Measurement.concurrent("insertOne per comment", THREADS, DURATION, () -> direct.add(comment));
+    System.out.println("  " + direct);
+
+    for (WriteBehindCommentRepository.Durability durability :
+        WriteBehindCommentRepository.Durability.values()) {
+      StandIn database = new StandIn();
+      WriteBehindCommentRepository writer =
+          new WriteBehindCommentRepository(database, 10_000, 500, 20, durability, 5000);
+      Measurement.concurrent("write-behind " + durability.name().toLowerCase(), THREADS,
+                             DURATION, () -> writer.add(comment));
+      writer.close();
+      System.out.println("  " + database);
+    }
+  }
+
+  /**
+   * Takes the time of a database without storing anything
+   */
+  private static class StandIn
+      implements CommentRepository {
+
+    private static final long ROUND_TRIP = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long PER_COMMENT = TimeUnit.MICROSECONDS.toNanos(2);
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder comments = new LongAdder();
+
+    @Override
+    public Stream<Comment> all() {
+      return Stream.empty();
+    }
+
+    @Override
+    public void add(Comment comment) {
+      addAll(Collections.singletonList(comment));
+    }
+
+    @Override
+    public void addAll(List<Comment> comments) {
+      LockSupport.parkNanos(ROUND_TRIP + PER_COMMENT * comments.size());
+      calls.increment();
+      this.comments.add(comments.size());
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%,d comments in %,d calls", comments.sum(), calls.sum());
+    }
+  }
+}
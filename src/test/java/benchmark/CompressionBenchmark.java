@@ -0,0 +1,87 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import benchmark.util.Measurement;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.core.http.HttpRequest;
+import io.github.chumper.webserver.core.http.HttpResponse;
+import io.github.chumper.webserver.core.pipeline.ResponseCompressor;
+
+/**
+ * Measures the CPU time the {@link ResponseCompressor} needs per response for the different
+ * compression levels and the bytes it saves, compared with a new {@link GZIPOutputStream} per
+ * response. Run with {@code gradle benchmark -Pbench=CompressionBenchmark}
+ */
+public class CompressionBenchmark {
+
+  private static final int WARMUP = 5_000;
+  private static final int ITERATIONS = 20_000;
+
+  public static void main(String[] args) throws Exception {
+    byte[] comments = commentsPage();
+    byte[] listing = directoryListing();
+
+    run("comments page", comments);
+    run("directory listing", listing);
+  }
+
+  private static void run(String name,
+                          byte[] content) throws Exception {
+    System.out.println(name + ", " + content.length + " bytes");
+
+    // the same work as the compressor, but with a new deflater for each response
+    Measurement.run("  GZIPOutputStream level 6", WARMUP, ITERATIONS, () -> {
+      HttpResponse response = new HttpResponse();
+      response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "text/html");
+      response.write(content);
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2);
+      try (GZIPOutputStream outputStream = new GZIPOutputStream(compressed)) {
+        outputStream.write(content);
+      }
+      response.getContent().reset();
+      compressed.writeTo(response.getContent());
+    });
+
+    HttpRequest request = new HttpRequest();
+    request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+    for (int level : new int[]{1, 6, 9}) {
+      ResponseCompressor compressor =
+          new ResponseCompressor(level, 1024, Arrays.asList("text/html", "text/plain"));
+      long[] size = new long[1];
+      Measurement measurement = Measurement.run("  pooled gzip level " + level, WARMUP, ITERATIONS,
+                                                () -> {
+        HttpResponse response = new HttpResponse();
+        response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "text/html");
+        response.write(content);
+        compressor.compress(request, response);
+        size[0] = response.getContentLength();
+      });
+      System.out.println(String.format("  %,d bytes saved (%.0f%%) for %.1f us CPU per response",
+                                       content.length - size[0],
+                                       100.0 * (content.length - size[0]) / content.length,
+                                       1e6 / measurement.getOpsPerSecond()));
+    }
+  }
+
+  private static byte[] commentsPage() {
+    StringBuilder page = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      page.append("<div class=\"comment\"><b>User ").append(i % 17).append("</b> wrote at ")
+          .append("2016-09-29T15:00:").append(i % 60).append("Z<br>")
+          .append("This is comment number ").append(i).append(" with some text.</div>\n");
+    }
+    return page.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] directoryListing() {
+    StringBuilder listing = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      listing.append("static/assets/image-").append(i).append(".png\r\n");
+    }
+    return listing.toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
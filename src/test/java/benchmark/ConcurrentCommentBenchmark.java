@@ -0,0 +1,54 @@
+package benchmark;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import benchmark.util.Measurement;
+import io.github.chumper.webserver.data.Comment;
+import io.github.chumper.webserver.data.ConcurrentCommentRepository;
+
+/**
+ * Measures the {@link ConcurrentCommentRepository} with 1 to 64 threads that add comments, read
+ * the first page or do both with one add for nine reads. The repository keeps the newest 100,000
+ * comments and is filled before. Run with {@code gradle benchmark -Pbench=ConcurrentCommentBenchmark}
+ */
+public class ConcurrentCommentBenchmark {
+
+  private static final int COMMENTS = 100_000;
+  private static final int PAGE = 50;
+  private static final long DURATION = 1000;
+
+  private static final LongAdder read = new LongAdder();
+
+  public static void main(String[] args) throws Exception {
+    ConcurrentCommentRepository repository =
+        new ConcurrentCommentRepository(COMMENTS, Duration.ZERO);
+    for (int i = 0; i < COMMENTS; i++) {
+      repository.add(comment());
+    }
+
+    for (int threads = 1; threads <= 64; threads *= 2) {
+      Measurement.concurrent("add, " + threads + " threads", threads, DURATION,
+                             () -> repository.add(comment()));
+      Measurement.concurrent("first page, " + threads + " threads", threads, DURATION,
+                             () -> read.add(repository.page(null, PAGE).count()));
+      Measurement.concurrent("9 pages per add, " + threads + " threads", threads, DURATION, () -> {
+        if (ThreadLocalRandom.current().nextInt(10) == 0) {
+          repository.add(comment());
+        } else {
+          read.add(repository.page(null, PAGE).count());
+        }
+      });
+    }
+    System.out.println(repository);
+    if (read.sum() == 0) {
+      throw new IllegalStateException("Nothing was read");
+    }
+  }
+
+  private static Comment comment() {
+    return new Comment(Instant.now(), "Name", "A message of a usual length");
+  }
+}
@@ -0,0 +1,83 @@
+package benchmark;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import benchmark.util.Measurement;
+import io.github.chumper.webserver.core.http.HttpDate;
+
+/**
+ * Compares {@link HttpDate} with the shared SimpleDateFormat that was used for the Last-Modified
+ * and conditional headers before. The format is not thread-safe, so for the concurrent runs it is
+ * synchronized, which is the cheapest correct way to share it. Run with
+ * {@code gradle benchmark -Pbench=HttpDateBenchmark}
+ */
+public class HttpDateBenchmark {
+
+  private static final String DATE = "Sun, 06 Nov 1994 08:49:37 GMT";
+
+  /**
+   * A few files with different modification times
+   */
+  private static final long[] TIMES = {784111777000L, 1475161256000L, 1600000000000L,
+                                       1600000001000L, 1700000000000L, 1710000000000L};
+
+  private static final int WARMUP = 200_000;
+  private static final int ITERATIONS = 1_000_000;
+
+  private static final SimpleDateFormat format = createFormat();
+
+  private static int next;
+
+  public static void main(String[] args) throws Exception {
+    Measurement.run("SimpleDateFormat format", WARMUP, ITERATIONS,
+                    () -> check(format.format(new Date(nextTime()))));
+    Measurement.run("HttpDate format", WARMUP, ITERATIONS,
+                    () -> check(HttpDate.format(nextTime())));
+
+    Measurement.run("SimpleDateFormat parse", WARMUP, ITERATIONS,
+                    () -> check(format.parse(DATE).getTime()));
+    Measurement.run("HttpDate parse", WARMUP, ITERATIONS,
+                    () -> check(HttpDate.parse(DATE) * 1000));
+
+    // a conditional request: the Last-Modified header is formatted and a date is parsed
+    for (int threads : new int[]{1, 4, 16}) {
+      System.out.println(threads + " threads");
+      Measurement.concurrent("  synchronized SimpleDateFormat", threads, 3000, () -> {
+        synchronized (format) {
+          check(format.format(new Date(TIMES[2])));
+          check(format.parse(DATE).getTime());
+        }
+      });
+      Measurement.concurrent("  HttpDate", threads, 3000, () -> {
+        check(HttpDate.format(TIMES[2]));
+        check(HttpDate.parse(DATE) * 1000);
+      });
+    }
+  }
+
+  private static long nextTime() {
+    next = (next + 1) % TIMES.length;
+    return TIMES[next];
+  }
+
+  private static void check(String date) {
+    if (date.length() != DATE.length()) {
+      throw new IllegalStateException("Unexpected date " + date);
+    }
+  }
+
+  private static void check(long time) {
+    if (time != TIMES[0]) {
+      throw new IllegalStateException("Unexpected time " + time);
+    }
+  }
+
+  private static SimpleDateFormat createFormat() {
+    SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    return format;
+  }
+}
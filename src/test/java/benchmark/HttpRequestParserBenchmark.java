@@ -0,0 +1,95 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import benchmark.util.Measurement;
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.core.http.HttpRequest;
+import io.github.chumper.webserver.core.pipeline.HttpRequestParser;
+
+/**
+ * Compares the {@link HttpRequestParser} with the reader based parsing the pipeline used before.
+ * Run with {@code gradle benchmark -Pbench=HttpRequestParserBenchmark}
+ */
+public class HttpRequestParserBenchmark {
+
+  private static final byte[] REQUEST = ("GET /files/index.html HTTP/1.1\r\n" +
+                                         "Host: localhost:8080\r\n" +
+                                         "Connection: keep-alive\r\n" +
+                                         "User-Agent: Mozilla/5.0 (X11; Linux x86_64)\r\n" +
+                                         "Accept: text/html,application/xhtml+xml\r\n" +
+                                         "Accept-Encoding: gzip, deflate\r\n" +
+                                         "Accept-Language: en-US,en;q=0.9\r\n" +
+                                         "If-None-Match: \"5d8c72a5edda8\"\r\n" +
+                                         "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+  private static final int WARMUP = 200_000;
+  private static final int ITERATIONS = 1_000_000;
+
+  public static void main(String[] args) throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocate(8192);
+    HttpRequestParser parser = new HttpRequestParser(8192, 16384, 100);
+
+    Measurement.run("reader (previous)", WARMUP, ITERATIONS, () -> {
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new ByteArrayInputStream(REQUEST)));
+      check(readerParse(reader));
+    });
+
+    Measurement.run("HttpRequestParser", WARMUP, ITERATIONS, () -> {
+      // the connection keeps its buffer, so only the request bytes are copied in
+      buffer.clear();
+      buffer.put(REQUEST);
+      buffer.flip();
+      parser.parse(buffer);
+      check(parser.getRequest());
+      parser.reset();
+    });
+  }
+
+  private static void check(HttpRequest request) {
+    if (request == null || request.getHeaders().get(HttpHeaders.HOST) == null) {
+      throw new IllegalStateException("Request was not parsed");
+    }
+  }
+
+  /**
+   * The request parsing of the pipeline before the byte based parser was introduced
+   */
+  private static HttpRequest readerParse(BufferedReader reader) throws IOException {
+    HttpRequest request = new HttpRequest();
+    List<String> headers = new ArrayList<>();
+
+    String line = reader.readLine();
+    if (line == null || !line.matches("\\w+ /.* HTTP/.*")) {
+      return null;
+    }
+    while (reader.ready()) {
+      if (line.equals("")) { break; }
+      headers.add(line);
+      line = reader.readLine();
+    }
+
+    String[] methodAndPath = headers.remove(0).split(" ");
+    request.setMethod(HttpBase.Method.valueOf(methodAndPath[0]));
+    request.setPath(methodAndPath[1]);
+    switch (methodAndPath[2]) {
+      case "HTTP/1.1":
+        request.setProtocol(HttpBase.Version.HTTP_1_1);
+        break;
+      case "HTTP/1.0":
+        request.setProtocol(HttpBase.Version.HTTP_1_0);
+        break;
+    }
+    headers.forEach(it -> request.getHeaders().add(it));
+    return request;
+  }
+}
@@ -0,0 +1,57 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import benchmark.util.Measurement;
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpHandler;
+import io.github.chumper.webserver.core.http.HttpRequest;
+import io.github.chumper.webserver.core.http.HttpResponse;
+import io.github.chumper.webserver.core.pipeline.HttpRouter;
+
+/**
+ * Compares the {@link HttpRouter} with the list of handlers that was used before, where every
+ * handler checked the path of every request with startsWith. The requests go to the last
+ * registered route, which is the worst case for the list. Run with
+ * {@code gradle benchmark -Pbench=RouterBenchmark}
+ */
+public class RouterBenchmark {
+
+  private static final int WARMUP = 1_000_000;
+  private static final int ITERATIONS = 2_000_000;
+
+  private static int answered;
+
+  public static void main(String[] args) throws Exception {
+    for (int routes : new int[]{3, 12, 48}) {
+      List<HttpHandler> handlers = new ArrayList<>();
+      HttpRouter router = new HttpRouter();
+      for (int i = 0; i < routes; i++) {
+        String prefix = "/section" + i + "/";
+        handlers.add((request, response) -> {
+          if (request.getPath().startsWith(prefix)) {
+            answered++;
+          }
+        });
+        router.route(HttpBase.Method.GET, prefix + "items/{id}", (request, response) -> answered++);
+      }
+
+      HttpRequest request = new HttpRequest();
+      request.setMethod(HttpBase.Method.GET);
+      request.setPath("/section" + (routes - 1) + "/items/42");
+      HttpResponse response = new HttpResponse();
+
+      System.out.println(routes + " routes");
+      Measurement.run("  handler list", WARMUP, ITERATIONS, () -> {
+        for (HttpHandler handler : handlers) {
+          handler.handle(request, response);
+        }
+      });
+      Measurement.run("  router", WARMUP, ITERATIONS, () -> router.handle(request, response));
+    }
+    if (answered == 0) {
+      throw new IllegalStateException("No request was answered");
+    }
+  }
+}
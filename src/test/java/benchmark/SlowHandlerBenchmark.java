@@ -0,0 +1,78 @@
+package benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import benchmark.util.Client;
+import benchmark.util.Measurement;
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.Server;
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.handler.HttpKeepAliveHandler;
+
+/**
+ * Measures a handler that waits 20 ms for a database with more clients than worker threads, once
+ * as a synchronous handler that waits on the worker and once as an asynchronous handler that waits
+ * on the threads of the database. The NIO transport is used, the blocking transport occupies a
+ * worker for each connection anyway. Run with {@code gradle benchmark -Pbench=SlowHandlerBenchmark}
+ */
+public class SlowHandlerBenchmark {
+
+  private static final int PORT = 8891;
+  private static final int WORKERS = 4;
+  private static final int CONNECTIONS = 64;
+  private static final long LATENCY = 20;
+  private static final long DURATION = 5000;
+
+  public static void main(String[] args) throws Exception {
+    ExecutorService database = Executors.newFixedThreadPool(CONNECTIONS);
+    try {
+      HttpServer server = new HttpServer(PORT, WORKERS);
+      server.route(HttpBase.Method.GET, "/sync", (request, response) -> {
+        query();
+        response.write("sync");
+      });
+      server.routeAsync(HttpBase.Method.GET, "/async", (request, response) ->
+          CompletableFuture.runAsync(SlowHandlerBenchmark::query, database)
+              .thenRun(() -> response.write("async")));
+      server.addFilter(new HttpKeepAliveHandler());
+      server.setTransport(Server.Transport.NIO, 2);
+      server.start().get();
+      try {
+        run("sync", "/sync");
+        run("async", "/async");
+      } finally {
+        server.stop();
+      }
+    } finally {
+      database.shutdown();
+    }
+  }
+
+  private static void run(String name,
+                          String path) throws Exception {
+    byte[] request = ("GET " + path + " HTTP/1.1\r\n" +
+                      "Host: localhost\r\n" +
+                      "Connection: keep-alive\r\n" +
+                      "\r\n").getBytes(StandardCharsets.US_ASCII);
+    ThreadLocal<Client> clients = ThreadLocal.withInitial(() -> new Client(PORT));
+    Measurement.concurrent(name, CONNECTIONS, DURATION, () -> {
+      Client client = clients.get();
+      client.send(request);
+      client.readResponse();
+    });
+  }
+
+  /**
+   * The round trip to the database
+   */
+  private static void query() {
+    try {
+      Thread.sleep(LATENCY);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package benchmark;
+
+import java.nio.charset.StandardCharsets;
+
+import benchmark.util.Client;
+import benchmark.util.Measurement;
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.Server;
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.handler.HttpKeepAliveHandler;
+import io.github.chumper.webserver.handler.HttpRootHandler;
+
+/**
+ * Measures the throughput of small responses over keep alive connections, once with one request
+ * at a time per connection and once with pipelined requests.
+ * Run with {@code gradle benchmark -Pbench=SmallResponseBenchmark}
+ */
+public class SmallResponseBenchmark {
+
+  private static final int PORT = 8890;
+  private static final int CONNECTIONS = 16;
+  private static final int PIPELINE_DEPTH = 16;
+  private static final long DURATION = 5000;
+
+  private static final byte[] REQUEST = ("GET / HTTP/1.1\r\n" +
+                                         "Host: localhost\r\n" +
+                                         "Connection: keep-alive\r\n" +
+                                         "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+  public static void main(String[] args) throws Exception {
+    for (Server.Transport transport : Server.Transport.values()) {
+      HttpServer server = new HttpServer(PORT, CONNECTIONS);
+      server.route(HttpBase.Method.GET, "/", new HttpRootHandler());
+      server.addFilter(new HttpKeepAliveHandler());
+      server.setTransport(transport, 2);
+      server.start().get();
+      try {
+        run(transport + " sequential", 1);
+        run(transport + " pipelined (" + PIPELINE_DEPTH + " requests/op)", PIPELINE_DEPTH);
+      } finally {
+        server.stop();
+      }
+    }
+  }
+
+  private static void run(String name,
+                          int depth) throws Exception {
+    byte[] requests = new byte[REQUEST.length * depth];
+    for (int i = 0; i < depth; i++) {
+      System.arraycopy(REQUEST, 0, requests, i * REQUEST.length, REQUEST.length);
+    }
+    ThreadLocal<Client> clients = ThreadLocal.withInitial(() -> new Client(PORT));
+    Measurement.concurrent(name, CONNECTIONS, DURATION, () -> {
+      Client client = clients.get();
+      client.send(requests);
+      for (int i = 0; i < depth; i++) {
+        client.readResponse();
+      }
+    });
+  }
+}
@@ -0,0 +1,67 @@
+package benchmark.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+
+/**
+ * A keep alive connection of one benchmark thread to a server on localhost
+ */
+public class Client {
+
+  private final InputStream inputStream;
+  private final OutputStream outputStream;
+
+  public Client(int port) {
+    try {
+      Socket socket = new Socket("localhost", port);
+      socket.setTcpNoDelay(true);
+      inputStream = new BufferedInputStream(socket.getInputStream());
+      outputStream = socket.getOutputStream();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Sends the requests right away
+   */
+  public void send(byte[] requests) throws IOException {
+    outputStream.write(requests);
+    outputStream.flush();
+  }
+
+  /**
+   * Reads the head up to the empty line and skips the body
+   */
+  public void readResponse() throws IOException {
+    int contentLength = 0;
+    StringBuilder line = new StringBuilder();
+    while (true) {
+      int b = inputStream.read();
+      if (b == -1) {
+        throw new EOFException("Server closed the connection");
+      }
+      if (b != '\n') {
+        if (b != '\r') { line.append((char) b); }
+        continue;
+      }
+      if (line.length() == 0) {
+        break;
+      }
+      if (line.toString().startsWith("Content-Length: ")) {
+        contentLength = Integer.parseInt(line.substring(16));
+      }
+      line.setLength(0);
+    }
+    for (int i = 0; i < contentLength; i++) {
+      if (inputStream.read() == -1) {
+        throw new EOFException("Server closed the connection");
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package benchmark.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small helper for the benchmarks in this package, it runs a task a number of times on the
+ * current thread and reports the operations per second and the bytes allocated per operation, or
+ * runs it on several threads for a fixed time and reports the operations per second.
+ * The numbers are only meant to compare two implementations on the same machine.
+ */
+public class Measurement {
+
+  /**
+   * A single operation of a benchmark
+   */
+  @FunctionalInterface
+  public interface Task {
+    void run() throws Exception;
+  }
+
+  private final String name;
+  private final double opsPerSecond;
+  private final double bytesPerOp;
+
+  private Measurement(String name,
+                      double opsPerSecond,
+                      double bytesPerOp) {
+    this.name = name;
+    this.opsPerSecond = opsPerSecond;
+    this.bytesPerOp = bytesPerOp;
+  }
+
+  /**
+   * Will run the task for the given number of warmup iterations and then measure the given number
+   * of iterations
+   */
+  public static Measurement run(String name,
+                                int warmup,
+                                int iterations,
+                                Task task) throws Exception {
+    for (int i = 0; i < warmup; i++) {
+      task.run();
+    }
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      task.run();
+    }
+    long duration = System.nanoTime() - start;
+    long allocated = allocatedBytes() - allocatedBefore;
+
+    Measurement measurement = new Measurement(name, iterations * 1e9 / duration,
+                                              allocated < 0 ? -1 : (double) allocated / iterations);
+    System.out.println(measurement);
+    return measurement;
+  }
+
+  /**
+   * Will run the task on the given number of threads, each thread calls it as often as possible.
+   * The first second is used as warmup and is not measured.
+   */
+  public static Measurement concurrent(String name,
+                                       int threads,
+                                       long durationMillis,
+                                       Task task) throws Exception {
+    AtomicLong operations = new AtomicLong();
+    long warmupEnd = System.currentTimeMillis() + 1000;
+    long end = warmupEnd + durationMillis;
+    List<Thread> workers = new ArrayList<>();
+    List<Exception> errors = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread(() -> {
+        try {
+          long count = 0;
+          long now;
+          while ((now = System.currentTimeMillis()) < end) {
+            task.run();
+            if (now >= warmupEnd) {
+              count++;
+            }
+          }
+          operations.addAndGet(count);
+        } catch (Exception e) {
+          synchronized (errors) {
+            errors.add(e);
+          }
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    if (!errors.isEmpty()) {
+      throw errors.get(0);
+    }
+
+    Measurement measurement =
+        new Measurement(name, operations.get() * 1000.0 / durationMillis, -1);
+    System.out.println(measurement);
+    return measurement;
+  }
+
+  public double getOpsPerSecond() {
+    return opsPerSecond;
+  }
+
+  public double getBytesPerOp() {
+    return bytesPerOp;
+  }
+
+  @Override
+  public String toString() {
+    if (bytesPerOp < 0) {
+      return String.format("%-40s %,14.0f ops/s", name, opsPerSecond);
+    }
+    return String.format("%-40s %,14.0f ops/s %,12.0f bytes/op", name, opsPerSecond, bytesPerOp);
+  }
+
+  /**
+   * The bytes allocated by the current thread, -1 if the JVM can not tell
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,161 @@
+package integration;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import integration.util.ServerTest;
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.http.HttpBase;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Will test handlers that answer after they returned
+ */
+public class AsyncHandlerTest
+    extends ServerTest {
+
+  @Override
+  protected void configure(HttpServer server) {
+    server.setHandlerTimeout(300);
+    server.routeAsync(HttpBase.Method.GET, "/later", (request, response) ->
+        later(100).thenRun(() -> response.write("later")));
+    server.route(HttpBase.Method.GET, "/now", (request, response) -> response.write("now"));
+    server.routeAsync(HttpBase.Method.GET, "/never", (request, response) ->
+        new CompletableFuture<>());
+    server.routeAsync(HttpBase.Method.GET, "/fail", (request, response) ->
+        later(10).thenRun(() -> {
+          throw new IllegalStateException("failed");
+        }));
+  }
+
+  @Test
+  public void asyncResponse() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, get("/later") + get("/now"));
+
+      assertEquals("HTTP/1.1 200 OK|later", readResponse(socket.getInputStream()));
+      assertEquals("HTTP/1.1 200 OK|now", readResponse(socket.getInputStream()));
+    }
+  }
+
+  /**
+   * The responses of pipelined requests are sent in the order of the requests, even if a later
+   * request could be answered first
+   */
+  @Test
+  public void pipelinedRequestsStayInOrder() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, get("/now") + get("/later") + get("/now") + get("/later"));
+
+      InputStream inputStream = socket.getInputStream();
+      assertEquals("HTTP/1.1 200 OK|now", readResponse(inputStream));
+      assertEquals("HTTP/1.1 200 OK|later", readResponse(inputStream));
+      assertEquals("HTTP/1.1 200 OK|now", readResponse(inputStream));
+      assertEquals("HTTP/1.1 200 OK|later", readResponse(inputStream));
+    }
+  }
+
+  /**
+   * The handler may still use the request, so the connection is closed after the 503
+   */
+  @Test
+  public void timeout() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, get("/never") + get("/now"));
+
+      assertEquals("HTTP/1.1 503 Service unavailable|", readResponse(socket.getInputStream()));
+      assertEquals(-1, socket.getInputStream().read());
+    }
+  }
+
+  @Test
+  public void failedHandler() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, get("/fail"));
+
+      assertEquals("HTTP/1.1 500 Internal server error|", readResponse(socket.getInputStream()));
+      assertEquals(-1, socket.getInputStream().read());
+    }
+  }
+
+  /**
+   * Completes on another thread after the given milliseconds
+   */
+  protected static CompletableFuture<Void> later(long millis) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    Thread thread = new Thread(() -> {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      future.complete(null);
+    });
+    thread.setDaemon(true);
+    thread.start();
+    return future;
+  }
+
+  protected Socket connect() throws IOException {
+    Socket socket = new Socket("localhost", serverPort);
+    socket.setSoTimeout(5000);
+    return socket;
+  }
+
+  protected static String get(String path) {
+    return "GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n";
+  }
+
+  protected static void send(Socket socket,
+                             String data) throws IOException {
+    OutputStream outputStream = socket.getOutputStream();
+    outputStream.write(data.getBytes(StandardCharsets.US_ASCII));
+    outputStream.flush();
+  }
+
+  /**
+   * Reads one response with a Content-Length body
+   *
+   * @return The status line and the body separated by |
+   */
+  protected static String readResponse(InputStream inputStream) throws IOException {
+    String statusLine = readLine(inputStream);
+    int contentLength = 0;
+    String line;
+    while (!(line = readLine(inputStream)).isEmpty()) {
+      if (line.startsWith("Content-Length: ")) {
+        contentLength = Integer.parseInt(line.substring(16));
+      }
+    }
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < contentLength; i++) {
+      int b = inputStream.read();
+      if (b == -1) {
+        throw new IOException("Connection was closed");
+      }
+      body.append((char) b);
+    }
+    return statusLine + "|" + body;
+  }
+
+  private static String readLine(InputStream inputStream) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int b;
+    while ((b = inputStream.read()) != '\n') {
+      if (b == -1) {
+        throw new IOException("Connection was closed");
+      }
+      if (b != '\r') {
+        line.append((char) b);
+      }
+    }
+    return line.toString();
+  }
+}
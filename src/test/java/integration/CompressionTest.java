@@ -0,0 +1,178 @@
+package integration;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import integration.util.ServerTest;
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Will test that responses are compressed for clients that accept it
+ */
+public class CompressionTest
+    extends ServerTest {
+
+  private static final String TEXT;
+
+  static {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      text.append("line ").append(i).append('\n');
+    }
+    TEXT = text.toString();
+  }
+
+  @Override
+  protected void configure(HttpServer server) {
+    server.setCompression(6, 1024, Arrays.asList("text/*"));
+    // the ETag filter of the base class sees the response of the route
+    server.route(HttpBase.Method.GET, "/text", (request, response) -> {
+      response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "text/plain");
+      response.getHeaders().add(HttpHeaders.ETAG, "42");
+      response.write(TEXT);
+    });
+    server.route(HttpBase.Method.GET, "/stream", (request, response) -> {
+      response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "text/html");
+      response.stream(outputStream -> outputStream.write(TEXT.getBytes(StandardCharsets.UTF_8)));
+    });
+  }
+
+  @Test
+  public void compressedForGzipClients() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, "/text", "Accept-Encoding: gzip, deflate\r\n");
+
+      String head = readHead(socket.getInputStream());
+      assertTrue(head.contains("Content-Encoding: gzip\r\n"));
+      assertTrue(head.contains("Vary: Accept-Encoding\r\n"));
+      assertTrue(head.contains("ETag: 42-gzip\r\n"));
+      int length = contentLength(head);
+      assertTrue(length < TEXT.length() / 2);
+      assertEquals(TEXT, gunzip(read(socket.getInputStream(), length)));
+
+      // the cached compressed representation is still valid
+      send(socket, "/text", "Accept-Encoding: gzip\r\nIf-None-Match: \"42-gzip\"\r\n");
+      head = readHead(socket.getInputStream());
+      assertTrue(head.startsWith("HTTP/1.1 304 Not modified\r\n"));
+      assertTrue(head.contains("ETag: 42-gzip\r\n"));
+    }
+  }
+
+  @Test
+  public void uncompressedForOtherClients() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, "/text", "");
+
+      String head = readHead(socket.getInputStream());
+      assertFalse(head.contains("Content-Encoding"));
+      assertTrue(head.contains("Vary: Accept-Encoding\r\n"));
+      assertEquals(TEXT.length(), contentLength(head));
+    }
+  }
+
+  /**
+   * A streamed body is compressed while it is sent
+   */
+  @Test
+  public void streamedResponse() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, "/stream", "Accept-Encoding: gzip\r\n");
+
+      String head = readHead(socket.getInputStream());
+      assertTrue(head.contains("Transfer-Encoding: chunked\r\n"));
+      assertTrue(head.contains("Content-Encoding: gzip\r\n"));
+      assertEquals(TEXT, gunzip(readChunked(socket.getInputStream())));
+    }
+  }
+
+  private Socket connect() throws IOException {
+    Socket socket = new Socket("localhost", serverPort);
+    socket.setSoTimeout(5000);
+    return socket;
+  }
+
+  private static void send(Socket socket,
+                           String path,
+                           String headers) throws IOException {
+    socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\n" + headers + "\r\n")
+                                       .getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static int contentLength(String head) {
+    return Integer.parseInt(head.substring(head.indexOf("Content-Length: ") + 16).split("\r\n")[0]);
+  }
+
+  private static String gunzip(byte[] data) throws IOException {
+    InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(data));
+    return new String(read(inputStream, -1), StandardCharsets.UTF_8);
+  }
+
+  private static byte[] readChunked(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    int size;
+    while ((size = Integer.parseInt(readLine(inputStream), 16)) > 0) {
+      body.write(read(inputStream, size));
+      readLine(inputStream);
+    }
+    readLine(inputStream);
+    return body.toByteArray();
+  }
+
+  private static String readHead(InputStream inputStream) throws IOException {
+    StringBuilder head = new StringBuilder();
+    String line;
+    while (!(line = readLine(inputStream)).isEmpty()) {
+      head.append(line).append("\r\n");
+    }
+    return head.toString();
+  }
+
+  private static String readLine(InputStream inputStream) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int b;
+    while ((b = inputStream.read()) != '\n') {
+      if (b == -1) {
+        throw new IOException("Connection was closed");
+      }
+      if (b != '\r') {
+        line.append((char) b);
+      }
+    }
+    return line.toString();
+  }
+
+  /**
+   * Reads the given number of bytes, or everything if the length is negative
+   */
+  private static byte[] read(InputStream inputStream,
+                             int length) throws IOException {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    while (length < 0 || data.size() < length) {
+      int max = length < 0 ? buffer.length : Math.min(buffer.length, length - data.size());
+      int read = inputStream.read(buffer, 0, max);
+      if (read == -1) {
+        if (length < 0) {
+          break;
+        }
+        throw new IOException("Connection was closed");
+      }
+      data.write(buffer, 0, read);
+    }
+    return data.toByteArray();
+  }
+}
@@ -0,0 +1,45 @@
+package integration;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import integration.util.ServerTest;
+import io.github.chumper.webserver.core.HttpServer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A handler that is added without a route still answers the requests it checks for itself
+ */
+public class DeprecatedHandlerTest extends ServerTest {
+
+  @Override
+  @SuppressWarnings("deprecation")
+  protected void configure(HttpServer server) {
+    server.addHttpHandler((request, response) -> {
+      if (request.getPath().startsWith("/legacy")) {
+        response.setStatus("200 OK");
+        response.write("legacy");
+      }
+    });
+  }
+
+  @Test
+  public void handlerAnswersPathWithoutRoute() throws IOException {
+    HttpResponse response = Request.Get(serverUrl + "legacy").execute().returnResponse();
+
+    assertEquals(200, response.getStatusLine().getStatusCode());
+    assertEquals("legacy", EntityUtils.toString(response.getEntity(), "UTF-8"));
+  }
+
+  @Test
+  public void otherPathsStayNotFound() throws IOException {
+    HttpResponse response = Request.Get(serverUrl + "other").execute().returnResponse();
+
+    assertEquals(404, response.getStatusLine().getStatusCode());
+  }
+}
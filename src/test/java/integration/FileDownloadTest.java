@@ -0,0 +1,54 @@
+package integration;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import integration.util.ServerTest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Will test that files are transferred completely to the client
+ */
+public class FileDownloadTest
+    extends ServerTest {
+
+  @Test
+  public void smallFile() throws IOException {
+    HttpResponse resp = Request.Get(serverUrl + "files/src/test/resources/a/b.txt")
+        .execute()
+        .returnResponse();
+
+    assertEquals(200, resp.getStatusLine().getStatusCode());
+    assertEquals("abc", EntityUtils.toString(resp.getEntity(), "UTF-8"));
+  }
+
+  @Test
+  public void largeFile() throws IOException {
+    Path dir = Files.createDirectories(Paths.get("build", "tmp"));
+    Path file = Files.createTempFile(dir, "large", ".bin");
+    try {
+      byte[] data = new byte[8 * 1024 * 1024 + 17];
+      new Random(42).nextBytes(data);
+      Files.write(file, data);
+
+      HttpResponse resp = Request.Get(serverUrl + "files/" + file.toString().replace('\\', '/'))
+          .execute()
+          .returnResponse();
+
+      assertEquals(200, resp.getStatusLine().getStatusCode());
+      assertArrayEquals(data, EntityUtils.toByteArray(resp.getEntity()));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package integration;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.Server;
+import io.github.chumper.webserver.core.http.HttpBase;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the asynchronous handler tests with the NIO transport, which releases the worker thread
+ * while a handler waits
+ */
+public class NioAsyncHandlerTest
+    extends AsyncHandlerTest {
+
+  /**
+   * Completed by the test
+   */
+  private final CompletableFuture<Void> released = new CompletableFuture<>();
+
+  @Override
+  protected void configure(HttpServer server) {
+    super.configure(server);
+    server.setTransport(Server.Transport.NIO, 2);
+    server.routeAsync(HttpBase.Method.GET, "/wait", (request, response) ->
+        released.thenRun(() -> response.write("released")));
+  }
+
+  /**
+   * The server has a single worker, it answers other connections while the handler waits
+   */
+  @Test
+  public void workerIsNotOccupied() throws IOException {
+    try (Socket waiting = connect(); Socket other = connect()) {
+      send(waiting, get("/wait"));
+      send(other, get("/now"));
+
+      assertEquals("HTTP/1.1 200 OK|now", readResponse(other.getInputStream()));
+
+      released.complete(null);
+      assertEquals("HTTP/1.1 200 OK|released", readResponse(waiting.getInputStream()));
+    }
+  }
+}
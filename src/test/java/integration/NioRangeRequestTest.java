@@ -0,0 +1,16 @@
+package integration;
+
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.Server;
+
+/**
+ * Runs the range request tests with the NIO transport
+ */
+public class NioRangeRequestTest
+    extends RangeRequestTest {
+
+  @Override
+  protected void configure(HttpServer server) {
+    server.setTransport(Server.Transport.NIO, 2);
+  }
+}
@@ -0,0 +1,17 @@
+package integration;
+
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.Server;
+
+/**
+ * Runs the request body tests with the NIO transport
+ */
+public class NioRequestBodyTest
+    extends RequestBodyTest {
+
+  @Override
+  protected void configure(HttpServer server) {
+    super.configure(server);
+    server.setTransport(Server.Transport.NIO, 2);
+  }
+}
@@ -0,0 +1,108 @@
+package integration;
+
+import org.apache.http.HttpHeaders;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+import integration.util.ServerTest;
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.Server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Will test that the server handles connections correctly when the NIO transport is used
+ */
+public class NioTransportTest
+    extends ServerTest {
+
+  @Override
+  protected void configure(HttpServer server) {
+    server.setTransport(Server.Transport.NIO, 2);
+  }
+
+  /**
+   * The test server only has a single worker thread, an idle keep alive connection must not block
+   * other connections
+   */
+  @Test
+  public void idleConnectionDoesNotBlockWorker() throws IOException {
+    try (Socket idle = new Socket("localhost", serverPort);
+         Socket other = new Socket("localhost", serverPort)) {
+
+      idle.getOutputStream().write(get().getBytes(Charset.defaultCharset()));
+      idle.getOutputStream().flush();
+
+      TestResponse response = readResponse(idle);
+      assertEquals(200, response.getStatusCode());
+      assertEquals("keep-alive", response.getHeaders().get(HttpHeaders.CONNECTION).toLowerCase());
+
+      // the blocking transport would wait for the idle connection to time out
+      other.setSoTimeout(1000);
+      other.getOutputStream().write(get().getBytes(Charset.defaultCharset()));
+      other.getOutputStream().flush();
+
+      assertEquals(200, readResponse(other).getStatusCode());
+    }
+  }
+
+  /**
+   * A request whose body arrives in several packets should only be processed when complete
+   */
+  @Test
+  public void splitRequest() throws IOException, InterruptedException {
+    try (Socket socket = new Socket("localhost", serverPort)) {
+      String body = "name=John&message=Doe&add=Submit";
+      OutputStream out = socket.getOutputStream();
+
+      out.write(("POST /comments HTTP/1.1\r\n"
+                 + "Content-Length: " + body.length() + "\r\n").getBytes(Charset.defaultCharset()));
+      out.flush();
+      Thread.sleep(100);
+      out.write(("\r\n" + body.substring(0, 10)).getBytes(Charset.defaultCharset()));
+      out.flush();
+      Thread.sleep(100);
+      out.write(body.substring(10).getBytes(Charset.defaultCharset()));
+      out.flush();
+
+      assertEquals(200, readResponse(socket).getStatusCode());
+    }
+  }
+
+  /**
+   * Idle connections will be closed by the event loop after 3 seconds
+   */
+  @Test
+  public void testTimeOutConnection() throws IOException, InterruptedException {
+    try (Socket socket = new Socket("localhost", serverPort)) {
+      assertFalse(socket.isClosed());
+      Thread.sleep(4000);
+
+      assertEquals(-1, socket.getInputStream().read());
+    }
+  }
+
+  /**
+   * A connection that does not send a HTTP request will be closed
+   */
+  @Test
+  public void testCloseInformalHttpRequest() throws IOException {
+    try (Socket socket = new Socket("localhost", serverPort)) {
+      socket.setSoTimeout(1000);
+      socket.getOutputStream().write("FoBaR\r\n".getBytes(Charset.defaultCharset()));
+      socket.getOutputStream().flush();
+
+      assertEquals(-1, socket.getInputStream().read());
+    }
+  }
+
+  private String get() {
+    return "GET / HTTP/1.1\r\n"
+           + "\r\n";
+  }
+}
@@ -0,0 +1,173 @@
+package integration;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import integration.util.ServerTest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Will test that clients can send several requests without waiting for the responses
+ *
+ * @see https://tools.ietf.org/html/rfc7230#section-6.3.2
+ */
+public class PipeliningTest
+    extends ServerTest {
+
+  /**
+   * All requests are sent in one packet and the responses need to arrive in the same order
+   */
+  @Test
+  public void pipelinedRequests() throws IOException {
+    try (Socket socket = new Socket("localhost", serverPort)) {
+      socket.setSoTimeout(5000);
+      StringBuilder requests = new StringBuilder();
+      for (int i = 0; i < 20; i++) {
+        requests.append(get(i % 2 == 0 ? "/" : "/files/does-not-exist", "keep-alive"));
+      }
+      send(socket.getOutputStream(), requests.toString());
+
+      InputStream inputStream = socket.getInputStream();
+      for (int i = 0; i < 20; i++) {
+        assertEquals(i % 2 == 0 ? "HTTP/1.1 200 OK" : "HTTP/1.1 404 Not found",
+                     readResponse(inputStream));
+      }
+    }
+  }
+
+  /**
+   * The requests are split at arbitrary positions, even in the middle of a header
+   */
+  @Test
+  public void splitPipelinedRequests() throws IOException, InterruptedException {
+    try (Socket socket = new Socket("localhost", serverPort)) {
+      socket.setSoTimeout(5000);
+      socket.setTcpNoDelay(true);
+      String requests = get("/", "keep-alive") + get("/files/does-not-exist", "keep-alive") +
+                        get("/", "close");
+      int split = requests.length() / 3;
+      send(socket.getOutputStream(), requests.substring(0, split));
+      Thread.sleep(100);
+      send(socket.getOutputStream(), requests.substring(split, split * 2 + 7));
+      Thread.sleep(100);
+      send(socket.getOutputStream(), requests.substring(split * 2 + 7));
+
+      InputStream inputStream = socket.getInputStream();
+      assertEquals("HTTP/1.1 200 OK", readResponse(inputStream));
+      assertEquals("HTTP/1.1 404 Not found", readResponse(inputStream));
+      assertEquals("HTTP/1.1 200 OK", readResponse(inputStream));
+      // the last request asked to close the connection
+      assertEquals(-1, inputStream.read());
+    }
+  }
+
+  /**
+   * A request with a body followed by a request without one
+   */
+  @Test
+  public void pipelinedPost() throws IOException {
+    try (Socket socket = new Socket("localhost", serverPort)) {
+      socket.setSoTimeout(5000);
+      String body = "name=John&message=Doe&add=Submit";
+      send(socket.getOutputStream(),
+           "POST /comments HTTP/1.1\r\n" +
+           "Host: localhost\r\n" +
+           "Content-Type: application/x-www-form-urlencoded\r\n" +
+           "Content-Length: " + body.length() + "\r\n" +
+           "\r\n" +
+           body +
+           get("/", "close"));
+
+      InputStream inputStream = socket.getInputStream();
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      assertEquals("HTTP/1.1 200 OK", readResponse(inputStream, content));
+      assertTrue(content.toString("UTF-8").contains("name: John"));
+      assertEquals("HTTP/1.1 200 OK", readResponse(inputStream));
+    }
+  }
+
+  private static String get(String path,
+                            String connection) {
+    return "GET " + path + " HTTP/1.1\r\n" +
+           "Host: localhost\r\n" +
+           "Connection: " + connection + "\r\n" +
+           "\r\n";
+  }
+
+  private static void send(OutputStream outputStream,
+                           String data) throws IOException {
+    outputStream.write(data.getBytes(StandardCharsets.US_ASCII));
+    outputStream.flush();
+  }
+
+  private static String readResponse(InputStream inputStream) throws IOException {
+    return readResponse(inputStream, new ByteArrayOutputStream());
+  }
+
+  /**
+   * Reads exactly one response from the stream so that the following responses stay unread
+   *
+   * @return The status line of the response
+   */
+  private static String readResponse(InputStream inputStream,
+                                     ByteArrayOutputStream content) throws IOException {
+    String statusLine = readLine(inputStream);
+    int contentLength = 0;
+    boolean chunked = false;
+    String line;
+    while (!(line = readLine(inputStream)).isEmpty()) {
+      if (line.toLowerCase().startsWith("content-length:")) {
+        contentLength = Integer.parseInt(line.substring(15).trim());
+      }
+      if (line.toLowerCase().equals("transfer-encoding: chunked")) {
+        chunked = true;
+      }
+    }
+    if (chunked) {
+      int size;
+      while ((size = Integer.parseInt(readLine(inputStream), 16)) > 0) {
+        readContent(inputStream, size, content);
+        readLine(inputStream);
+      }
+      readLine(inputStream);
+    } else {
+      readContent(inputStream, contentLength, content);
+    }
+    return statusLine;
+  }
+
+  private static void readContent(InputStream inputStream,
+                                  int contentLength,
+                                  ByteArrayOutputStream content) throws IOException {
+    for (int i = 0; i < contentLength; i++) {
+      int b = inputStream.read();
+      if (b == -1) {
+        throw new EOFException("Response body is incomplete");
+      }
+      content.write(b);
+    }
+  }
+
+  private static String readLine(InputStream inputStream) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int b;
+    while ((b = inputStream.read()) != '\n') {
+      if (b == -1) {
+        throw new EOFException("Connection was closed");
+      }
+      if (b != '\r') {
+        line.append((char) b);
+      }
+    }
+    return line.toString();
+  }
+}
@@ -0,0 +1,196 @@
+package integration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import integration.util.ServerTest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Will test that ranges of files are sent as partial content
+ */
+public class RangeRequestTest
+    extends ServerTest {
+
+  private Path file;
+  private byte[] data;
+
+  @Before
+  public void createFile() throws IOException {
+    Path dir = Files.createDirectories(Paths.get("build", "tmp"));
+    file = Files.createTempFile(dir, "range", ".bin");
+    data = new byte[1024 * 1024];
+    new Random(42).nextBytes(data);
+    Files.write(file, data);
+  }
+
+  @After
+  public void deleteFile() throws IOException {
+    Files.delete(file);
+  }
+
+  @Test
+  public void completeFileAdvertisesRanges() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, "");
+
+      String head = readHead(socket.getInputStream());
+      assertTrue(head.startsWith("HTTP/1.1 200 OK\r\n"));
+      assertTrue(head.contains("Accept-Ranges: bytes\r\n"));
+      assertArrayEquals(data, read(socket.getInputStream(), data.length));
+    }
+  }
+
+  @Test
+  public void singleRange() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, "Range: bytes=1000-1999\r\n");
+
+      String head = readHead(socket.getInputStream());
+      assertTrue(head.startsWith("HTTP/1.1 206 Partial content\r\n"));
+      assertTrue(head.contains("Content-Range: bytes 1000-1999/" + data.length + "\r\n"));
+      assertTrue(head.contains("Content-Length: 1000\r\n"));
+      assertArrayEquals(Arrays.copyOfRange(data, 1000, 2000), read(socket.getInputStream(), 1000));
+
+      // the connection can be used for the next request
+      send(socket, "Range: bytes=-10\r\n");
+      assertTrue(readHead(socket.getInputStream()).contains("Content-Length: 10\r\n"));
+      assertArrayEquals(Arrays.copyOfRange(data, data.length - 10, data.length),
+                        read(socket.getInputStream(), 10));
+    }
+  }
+
+  @Test
+  public void multipleRanges() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, "Range: bytes=0-9,500000-500099\r\n");
+
+      String head = readHead(socket.getInputStream());
+      assertTrue(head.startsWith("HTTP/1.1 206 Partial content\r\n"));
+      String boundary = head.substring(head.indexOf("boundary=") + 9);
+      boundary = boundary.substring(0, boundary.indexOf('\r'));
+      int length = Integer.parseInt(
+          head.substring(head.indexOf("Content-Length: ") + 16).split("\r\n")[0]);
+
+      InputStream body = socket.getInputStream();
+      String type = "Content-Type: application/octet-stream\r\n";
+      String first = "--" + boundary + "\r\n" + type + "Content-Range: bytes 0-9/" + data.length +
+                     "\r\n\r\n";
+      assertEquals(first, readHead(body));
+      assertArrayEquals(Arrays.copyOfRange(data, 0, 10), read(body, 10));
+      String part = "\r\n--" + boundary + "\r\n" + type + "Content-Range: bytes 500000-500099/" +
+                    data.length + "\r\n\r\n";
+      assertEquals(part, new String(read(body, part.length()), StandardCharsets.ISO_8859_1));
+      assertArrayEquals(Arrays.copyOfRange(data, 500000, 500100), read(body, 100));
+      String end = "\r\n--" + boundary + "--\r\n";
+      assertEquals(end, new String(read(body, end.length()), StandardCharsets.ISO_8859_1));
+
+      assertEquals(first.length() + 10 + part.length() + 100 + end.length(), length);
+    }
+  }
+
+  @Test
+  public void unsatisfiableRange() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, "Range: bytes=" + data.length + "-\r\n");
+
+      String head = readHead(socket.getInputStream());
+      assertTrue(head.startsWith("HTTP/1.1 416 Range not satisfiable\r\n"));
+      assertTrue(head.contains("Content-Range: bytes */" + data.length + "\r\n"));
+      assertTrue(head.contains("Content-Length: 0\r\n"));
+    }
+  }
+
+  @Test
+  public void outdatedIfRange() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, "Range: bytes=0-9\r\nIf-Range: \"0\"\r\n");
+
+      String head = readHead(socket.getInputStream());
+      assertTrue(head.startsWith("HTTP/1.1 200 OK\r\n"));
+      assertArrayEquals(data, read(socket.getInputStream(), data.length));
+    }
+  }
+
+  @Test
+  public void notModifiedHasNoBody() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, "Range: bytes=0-0\r\n");
+      String head = readHead(socket.getInputStream());
+      read(socket.getInputStream(), 1);
+      String etag = head.substring(head.indexOf("ETag: ") + 6).split("\r\n")[0];
+
+      send(socket, "If-None-Match: \"" + etag + "\"\r\n");
+      head = readHead(socket.getInputStream());
+      assertTrue(head.startsWith("HTTP/1.1 304 Not modified\r\n"));
+      assertTrue(head.contains("ETag: " + etag + "\r\n"));
+      assertFalse(head.contains("Content-Length"));
+
+      // nothing follows the head, so the next response starts right after it
+      send(socket, "If-Match: \"other\"\r\n");
+      head = readHead(socket.getInputStream());
+      assertTrue(head.startsWith("HTTP/1.1 412 Precondition failed\r\n"));
+      assertTrue(head.contains("Content-Length: 0\r\n"));
+
+      send(socket, "Range: bytes=-10\r\n");
+      assertTrue(readHead(socket.getInputStream()).startsWith("HTTP/1.1 206 Partial content\r\n"));
+      assertArrayEquals(Arrays.copyOfRange(data, data.length - 10, data.length),
+                        read(socket.getInputStream(), 10));
+    }
+  }
+
+  private Socket connect() throws IOException {
+    Socket socket = new Socket("localhost", serverPort);
+    socket.setSoTimeout(5000);
+    return socket;
+  }
+
+  private void send(Socket socket,
+                    String headers) throws IOException {
+    String request = "GET /files/" + file.toString().replace('\\', '/') + " HTTP/1.1\r\n" +
+                     headers + "\r\n";
+    socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static String readHead(InputStream inputStream) throws IOException {
+    StringBuilder head = new StringBuilder();
+    while (!head.toString().endsWith("\r\n\r\n")) {
+      int b = inputStream.read();
+      if (b == -1) {
+        throw new IOException("Connection was closed");
+      }
+      head.append((char) b);
+    }
+    return head.toString();
+  }
+
+  private static byte[] read(InputStream inputStream,
+                             int length) throws IOException {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    while (data.size() < length) {
+      int read = inputStream.read(buffer, 0, Math.min(buffer.length, length - data.size()));
+      if (read == -1) {
+        throw new IOException("Connection was closed");
+      }
+      data.write(buffer, 0, read);
+    }
+    return data.toByteArray();
+  }
+}
@@ -0,0 +1,212 @@
+package integration;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import integration.util.ServerTest;
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.http.HttpBase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Will test that request bodies are read while the handlers consume them
+ */
+public class RequestBodyTest
+    extends ServerTest {
+
+  private static final int MAX_BODY_SIZE = 64 * 1024;
+
+  @Override
+  protected void configure(HttpServer server) {
+    server.setMaxBodySize(MAX_BODY_SIZE);
+    // counts the bytes of the body without keeping them
+    server.route(HttpBase.Method.POST, "/count", (request, response) -> {
+      try (InputStream body = request.getBody()) {
+        long count = 0;
+        byte[] buffer = new byte[1000];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+          count += read;
+        }
+        response.write(String.valueOf(count));
+      } catch (IOException e) {
+        response.setStatus("500 Internal server error");
+      }
+    });
+  }
+
+  @Test
+  public void contentLengthBody() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, post("/count", "Content-Length: 20000\r\n") + repeat('a', 20000));
+
+      assertEquals("HTTP/1.1 200 OK|20000", readResponse(socket.getInputStream()));
+    }
+  }
+
+  @Test
+  public void chunkedBody() throws IOException {
+    try (Socket socket = connect()) {
+      String body = "name=John&message=Doe&add=Submit";
+      send(socket, post("/comments", "Transfer-Encoding: chunked\r\n") +
+                   "a;extension=1\r\n" + body.substring(0, 10) + "\r\n" +
+                   Integer.toHexString(body.length() - 10) + "\r\n" + body.substring(10) + "\r\n" +
+                   "0\r\nTrailer: ignored\r\n\r\n");
+
+      String response = readResponse(socket.getInputStream());
+      assertTrue(response.startsWith("HTTP/1.1 200 OK|"));
+      assertTrue(response.contains("name: John"));
+
+      // the connection can be used for the next request
+      send(socket, post("/count", "Content-Length: 3\r\n") + "abc");
+      assertEquals("HTTP/1.1 200 OK|3", readResponse(socket.getInputStream()));
+    }
+  }
+
+  /**
+   * The announced length is too large, so the request is rejected without reading the body
+   */
+  @Test
+  public void contentLengthTooLarge() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, post("/count", "Content-Length: " + (MAX_BODY_SIZE + 1) + "\r\n"));
+
+      assertEquals("HTTP/1.1 413 Payload too large|", readResponse(socket.getInputStream()));
+      assertEquals(-1, socket.getInputStream().read());
+    }
+  }
+
+  @Test
+  public void chunkedBodyTooLarge() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, post("/count", "Transfer-Encoding: chunked\r\n") +
+                   Integer.toHexString(MAX_BODY_SIZE / 2) + "\r\n" + repeat('a', MAX_BODY_SIZE / 2) +
+                   "\r\n" +
+                   Integer.toHexString(MAX_BODY_SIZE) + "\r\n");
+
+      assertEquals("HTTP/1.1 413 Payload too large|", readResponse(socket.getInputStream()));
+    }
+  }
+
+  /**
+   * The client only sends the body after the server asked for it
+   */
+  @Test
+  public void expectContinue() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, post("/count", "Content-Length: 5\r\nExpect: 100-continue\r\n"));
+
+      assertEquals("HTTP/1.1 100 Continue|", readResponse(socket.getInputStream()));
+      send(socket, "12345");
+      assertEquals("HTTP/1.1 200 OK|5", readResponse(socket.getInputStream()));
+    }
+  }
+
+  /**
+   * Bodies that no handler reads are skipped so the next request can be parsed
+   */
+  @Test
+  public void unreadBodyIsSkipped() throws IOException {
+    try (Socket socket = connect()) {
+      send(socket, post("/", "Content-Length: 5000\r\n") + repeat('a', 5000) +
+                   post("/count", "Content-Length: 1\r\n") + "a");
+
+      // / only answers GET
+      assertTrue(readResponse(socket.getInputStream())
+                     .startsWith("HTTP/1.1 405 Method not allowed|"));
+      assertEquals("HTTP/1.1 200 OK|1", readResponse(socket.getInputStream()));
+    }
+  }
+
+  private Socket connect() throws IOException {
+    Socket socket = new Socket("localhost", serverPort);
+    socket.setSoTimeout(5000);
+    return socket;
+  }
+
+  private static String post(String path,
+                             String headers) {
+    return "POST " + path + " HTTP/1.1\r\n" + headers + "\r\n";
+  }
+
+  private static void send(Socket socket,
+                           String data) throws IOException {
+    OutputStream outputStream = socket.getOutputStream();
+    outputStream.write(data.getBytes(StandardCharsets.US_ASCII));
+    outputStream.flush();
+  }
+
+  private static String repeat(char c,
+                               int count) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Reads one response with a Content-Length or chunked body
+   *
+   * @return The status line and the body separated by |
+   */
+  private static String readResponse(InputStream inputStream) throws IOException {
+    String statusLine = readLine(inputStream);
+    int contentLength = 0;
+    boolean chunked = false;
+    String line;
+    while (!(line = readLine(inputStream)).isEmpty()) {
+      if (line.startsWith("Content-Length: ")) {
+        contentLength = Integer.parseInt(line.substring(16));
+      }
+      if (line.equals("Transfer-Encoding: chunked")) {
+        chunked = true;
+      }
+    }
+    StringBuilder body = new StringBuilder();
+    if (chunked) {
+      int size;
+      while ((size = Integer.parseInt(readLine(inputStream), 16)) > 0) {
+        read(inputStream, size, body);
+        readLine(inputStream);
+      }
+      readLine(inputStream);
+    } else {
+      read(inputStream, contentLength, body);
+    }
+    return statusLine + "|" + body;
+  }
+
+  private static void read(InputStream inputStream,
+                           int length,
+                           StringBuilder body) throws IOException {
+    for (int i = 0; i < length; i++) {
+      int b = inputStream.read();
+      if (b == -1) {
+        throw new IOException("Connection was closed");
+      }
+      body.append((char) b);
+    }
+  }
+
+  private static String readLine(InputStream inputStream) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int b;
+    while ((b = inputStream.read()) != '\n') {
+      if (b == -1) {
+        throw new IOException("Connection was closed");
+      }
+      if (b != '\r') {
+        line.append((char) b);
+      }
+    }
+    return line.toString();
+  }
+}
@@ -0,0 +1,169 @@
+package integration;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import integration.util.ServerTest;
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.http.HttpBase;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Will test that streamed responses are sent chunked to HTTP/1.1 clients and close delimited to
+ * HTTP/1.0 clients
+ */
+public class StreamingResponseTest
+    extends ServerTest {
+
+  private static final int SIZE = 1024 * 1024 + 3;
+
+  /**
+   * Released by the test when the first part of the /slow response arrived
+   */
+  private final CountDownLatch firstPartReceived = new CountDownLatch(1);
+
+  @Override
+  protected void configure(HttpServer server) {
+    server.route(HttpBase.Method.GET, "/large", (request, response) -> {
+      response.stream(outputStream -> {
+        for (int i = 0; i < SIZE; i++) {
+          outputStream.write(i % 251);
+        }
+      });
+    });
+    server.route(HttpBase.Method.GET, "/slow", (request, response) -> {
+      response.stream(outputStream -> {
+        outputStream.write("first".getBytes(StandardCharsets.US_ASCII));
+        outputStream.flush();
+        try {
+          firstPartReceived.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        outputStream.write("second".getBytes(StandardCharsets.US_ASCII));
+      });
+    });
+  }
+
+  @Test
+  public void largeStreamedResponse() throws IOException {
+    HttpResponse resp = Request.Get(serverUrl + "large").execute().returnResponse();
+
+    assertEquals(200, resp.getStatusLine().getStatusCode());
+    byte[] expected = new byte[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      expected[i] = (byte) (i % 251);
+    }
+    assertArrayEquals(expected, EntityUtils.toByteArray(resp.getEntity()));
+  }
+
+  /**
+   * The first part needs to arrive before the handler finished writing
+   */
+  @Test
+  public void flushedPartArrivesEarly() throws IOException {
+    try (Socket socket = new Socket("localhost", serverPort)) {
+      socket.setSoTimeout(5000);
+      socket.getOutputStream().write(request("/slow", "1.1").getBytes(StandardCharsets.US_ASCII));
+
+      InputStream inputStream = socket.getInputStream();
+      String head = readHead(inputStream);
+      assertTrue(head.contains("Transfer-Encoding: chunked\r\n"));
+      assertFalse(head.contains("Content-Length"));
+
+      assertEquals("5\r\nfirst\r\n", read(inputStream, 10));
+      firstPartReceived.countDown();
+      assertEquals("6\r\nsecond\r\n0\r\n\r\n", read(inputStream, 16));
+
+      // the connection can be used for the next request
+      socket.getOutputStream().write(request("/", "1.1").getBytes(StandardCharsets.US_ASCII));
+      assertTrue(readHead(inputStream).startsWith("HTTP/1.1 200 OK"));
+    }
+  }
+
+  /**
+   * HTTP/1.0 does not know chunks, so the end of the body is signaled by closing the connection
+   */
+  @Test
+  public void http10CloseDelimited() throws IOException {
+    firstPartReceived.countDown();
+    try (Socket socket = new Socket("localhost", serverPort)) {
+      socket.setSoTimeout(5000);
+      socket.getOutputStream().write(request("/slow", "1.0").getBytes(StandardCharsets.US_ASCII));
+
+      InputStream inputStream = socket.getInputStream();
+      String head = readHead(inputStream);
+      assertTrue(head.contains("Connection: close\r\n"));
+      assertFalse(head.contains("Transfer-Encoding"));
+      assertFalse(head.contains("Content-Length"));
+
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      int b;
+      while ((b = inputStream.read()) != -1) {
+        body.write(b);
+      }
+      assertEquals("firstsecond", body.toString("US-ASCII"));
+    }
+  }
+
+  @Test
+  public void headHasNoBody() throws IOException {
+    try (Socket socket = new Socket("localhost", serverPort)) {
+      socket.setSoTimeout(5000);
+      socket.getOutputStream().write(("HEAD /large HTTP/1.1\r\n\r\n" + request("/", "1.1"))
+                                         .getBytes(StandardCharsets.US_ASCII));
+
+      InputStream inputStream = socket.getInputStream();
+      assertTrue(readHead(inputStream).contains("Transfer-Encoding: chunked\r\n"));
+      // the next response follows the head directly
+      assertTrue(readHead(inputStream).startsWith("HTTP/1.1 200 OK"));
+    }
+  }
+
+  private static String request(String path,
+                                String version) {
+    return "GET " + path + " HTTP/" + version + "\r\n" +
+           "Connection: keep-alive\r\n" +
+           "\r\n";
+  }
+
+  private static String readHead(InputStream inputStream) throws IOException {
+    StringBuilder head = new StringBuilder();
+    while (!head.toString().endsWith("\r\n\r\n")) {
+      int b = inputStream.read();
+      if (b == -1) {
+        throw new IOException("Connection was closed");
+      }
+      head.append((char) b);
+    }
+    return head.toString();
+  }
+
+  private static String read(InputStream inputStream,
+                             int length) throws IOException {
+    byte[] data = new byte[length];
+    int offset = 0;
+    while (offset < length) {
+      int read = inputStream.read(data, offset, length - offset);
+      if (read == -1) {
+        throw new IOException("Connection was closed");
+      }
+      offset += read;
+    }
+    return new String(data, StandardCharsets.US_ASCII);
+  }
+}
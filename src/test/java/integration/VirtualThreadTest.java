@@ -0,0 +1,87 @@
+package integration;
+
+import org.apache.http.client.fluent.Request;
+import org.apache.http.client.fluent.Response;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import integration.util.ServerTest;
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.Server;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Will test that the server works with virtual threads, or with the fallback to the thread pool
+ * on JVMs that do not support them
+ */
+public class VirtualThreadTest
+    extends ServerTest {
+
+  /**
+   * The number of keep-alive connections that are open at the same time, more than the workers
+   */
+  private static final int CONNECTIONS = 8;
+
+  @Override
+  protected void configure(HttpServer server) {
+    server.setExecutorType(Server.ExecutorType.VIRTUAL);
+  }
+
+  @Test
+  public void validRequest() throws IOException {
+
+    Response resp = Request.Get(serverUrl).execute();
+
+    assertEquals(200, resp.returnResponse().getStatusLine().getStatusCode());
+  }
+
+  /**
+   * The server has a single worker thread, which a keep-alive connection of the blocking
+   * transport occupies until it is closed. With virtual threads every connection gets its own
+   * thread, so all of them are served while they are open at the same time.
+   */
+  @Test
+  public void moreConnectionsThanWorkers() throws Exception {
+    Assume.assumeTrue("Virtual threads are not supported by this JVM", virtualThreadsSupported());
+
+    List<Socket> sockets = new ArrayList<>();
+    try {
+      for (int i = 0; i < CONNECTIONS; i++) {
+        Socket socket = new Socket("localhost", serverPort);
+        // a connection that is not served fails the test. The timeout is shorter than the idle
+        // timeout of the server, after which a single worker would serve the next connection
+        socket.setSoTimeout(2000);
+        sockets.add(socket);
+        socket.getOutputStream().write(("GET / HTTP/1.1\r\n"
+                                        + "Connection: keep-alive\r\n"
+                                        + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().flush();
+      }
+
+      for (Socket socket : sockets) {
+        assertEquals(200, readResponse(socket).getStatusCode());
+      }
+    } finally {
+      for (Socket socket : sockets) {
+        socket.close();
+      }
+    }
+  }
+
+  private static boolean virtualThreadsSupported() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+}
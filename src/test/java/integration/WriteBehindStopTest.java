@@ -0,0 +1,58 @@
+package integration;
+
+import org.apache.http.client.fluent.Request;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import integration.util.ServerTest;
+import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.data.ConcurrentCommentRepository;
+import io.github.chumper.webserver.data.WriteBehindCommentRepository;
+import io.github.chumper.webserver.handler.HttpCommentHandler;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Comments that are still queued when the server stops are written by the server
+ */
+public class WriteBehindStopTest extends ServerTest {
+
+  private final ConcurrentCommentRepository repository = new ConcurrentCommentRepository();
+  private HttpServer server;
+
+  @Override
+  protected void configure(HttpServer server) {
+    this.server = server;
+    // the window is long enough that the comment is still queued when the server stops
+    WriteBehindCommentRepository writer = new WriteBehindCommentRepository(
+        repository, 100, 100, 60000, WriteBehindCommentRepository.Durability.ENQUEUED, 1000);
+    server.addCloseable(writer);
+    server.routeAsync(HttpBase.Method.POST, "/queued", new HttpCommentHandler(writer));
+  }
+
+  @Test
+  public void stopWritesQueuedComments() throws IOException {
+    // a fresh connection, the client does not retry a POST on a pooled one that was closed
+    int status = Request.Post(serverUrl + "queued")
+        .addHeader("Connection", "close")
+        .bodyForm(Arrays.asList(
+            new BasicNameValuePair("name", "John"),
+            new BasicNameValuePair("message", "Doe"),
+            new BasicNameValuePair("add", "Submit")
+        ))
+        .execute()
+        .returnResponse()
+        .getStatusLine()
+        .getStatusCode();
+    assertEquals(200, status);
+    assertEquals(0, repository.all().count());
+
+    server.stop();
+
+    assertEquals(1, repository.all().count());
+  }
+}
@@ -1,5 +1,6 @@
 package integration.util;
 
+import org.apache.http.client.fluent.Executor;
 import org.junit.After;
 import org.junit.Before;
 
@@ -11,14 +12,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 import io.github.chumper.webserver.core.HttpServer;
+import io.github.chumper.webserver.core.http.HttpBase;
 import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.data.ConcurrentCommentRepository;
 import io.github.chumper.webserver.handler.HttpCommentHandler;
 import io.github.chumper.webserver.handler.HttpETagHandler;
 import io.github.chumper.webserver.handler.HttpFileHandler;
 import io.github.chumper.webserver.handler.HttpKeepAliveHandler;
 import io.github.chumper.webserver.handler.HttpRequestLogHandler;
 import io.github.chumper.webserver.handler.HttpRootHandler;
-import io.github.chumper.webserver.util.InMemoryRepo;
 
 /**
  * Base class for the integration tests, will start a new server and tear it down afterwards
@@ -35,23 +37,36 @@ public class ServerTest {
   public void setUp() throws Exception {
     this.server = new HttpServer(8888, 1);
 
-    this.server.addHttpHandler(new HttpRootHandler());
+    this.server.route(HttpBase.Method.GET, "/", new HttpRootHandler());
 
-    this.server.addHttpHandler(new HttpCommentHandler(new InMemoryRepo()));
+    HttpCommentHandler comments = new HttpCommentHandler(new ConcurrentCommentRepository());
+    this.server.routeAsync(HttpBase.Method.GET, "/comments", comments);
+    this.server.routeAsync(HttpBase.Method.POST, "/comments", comments);
 
-    this.server.addHttpHandler(new HttpFileHandler(""));
-    this.server.addHttpHandler(new HttpETagHandler());
+    this.server.route(HttpBase.Method.GET, "/files/*", new HttpFileHandler(""));
+    this.server.addFilter(new HttpETagHandler());
 
-    this.server.addHttpHandler(new HttpKeepAliveHandler());
-    this.server.addHttpHandler(new HttpRequestLogHandler());
+    this.server.addFilter(new HttpKeepAliveHandler());
+    this.server.addFilter(new HttpRequestLogHandler());
+
+    configure(this.server);
 
     // start the server and wait until it is started
     this.server.start().get();
   }
 
+  /**
+   * Can be overridden by tests that need a differently configured server
+   */
+  protected void configure(HttpServer server) {
+  }
+
   @After
   public void tearDown() throws Exception {
     this.server.stop();
+    // the fluent client shares a pool between the tests, the stopped server closed its
+    // keep-alive connections and the next test would get one of them
+    Executor.closeIdleConnections();
   }
 
   protected TestResponse readResponse(Socket s) throws IOException {
@@ -80,6 +95,17 @@ public class ServerTest {
 
     headers.forEach(testResponse::addHeader);
 
+    // read chunked content and discard it
+    if ("chunked".equals(testResponse.getHeaders().get("Transfer-Encoding"))) {
+      int size;
+      while ((size = Integer.parseInt(reader.readLine(), 16)) > 0) {
+        reader.skip(size);
+        reader.readLine();
+      }
+      reader.readLine();
+      return testResponse;
+    }
+
     // read content as stated in the header and discard it :)
     if(Integer.parseInt(testResponse.getHeaders().get("Content-Length")) > 0) {
       char[] content = new char[Integer.parseInt(testResponse.getHeaders().get("Content-Length"))];
@@ -0,0 +1,70 @@
+package io.github.chumper.webserver.core.http;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ByteRangeTest {
+
+  @Test
+  public void testSingleRange() {
+    List<ByteRange> ranges = ByteRange.parse("bytes=0-499", 1000);
+
+    assertEquals(1, ranges.size());
+    assertEquals(0, ranges.get(0).getFirst());
+    assertEquals(499, ranges.get(0).getLast());
+    assertEquals(500, ranges.get(0).getLength());
+    assertEquals("bytes 0-499/1000", ranges.get(0).toContentRange(1000));
+  }
+
+  @Test
+  public void testOpenAndSuffixRanges() {
+    assertEquals("[900-999]", ByteRange.parse("bytes=900-", 1000).toString());
+    assertEquals("[900-999]", ByteRange.parse("bytes=-100", 1000).toString());
+    assertEquals("[0-999]", ByteRange.parse("bytes=-2000", 1000).toString());
+  }
+
+  @Test
+  public void testLastIsLimitedToLength() {
+    assertEquals("[500-999]", ByteRange.parse("bytes=500-5000", 1000).toString());
+  }
+
+  @Test
+  public void testRangesAreSortedAndMerged() {
+    assertEquals("[0-20, 50-59]",
+                 ByteRange.parse("BYTES=50-59, 10-20,0-5,6-9", 1000).toString());
+    assertEquals("[0-999]", ByteRange.parse("bytes=0-,10-20", 1000).toString());
+  }
+
+  @Test
+  public void testUnsatisfiable() {
+    assertTrue(ByteRange.parse("bytes=1000-", 1000).isEmpty());
+    assertTrue(ByteRange.parse("bytes=-0", 1000).isEmpty());
+    assertTrue(ByteRange.parse("bytes=0-", 0).isEmpty());
+    // satisfiable ranges are kept
+    assertEquals("[0-0]", ByteRange.parse("bytes=2000-3000,0-0", 1000).toString());
+  }
+
+  @Test
+  public void testInvalid() {
+    assertNull(ByteRange.parse("items=0-1", 1000));
+    assertNull(ByteRange.parse("bytes=1", 1000));
+    assertNull(ByteRange.parse("bytes=5-1", 1000));
+    assertNull(ByteRange.parse("bytes=a-b", 1000));
+    assertNull(ByteRange.parse("bytes=--1", 1000));
+  }
+
+  @Test
+  public void testTooManyRanges() {
+    StringBuilder header = new StringBuilder("bytes=0-0");
+    for (int i = 1; i <= ByteRange.MAX_RANGES; i++) {
+      header.append(',').append(i * 2).append('-').append(i * 2);
+    }
+
+    assertNull(ByteRange.parse(header.toString(), 1000));
+  }
+}
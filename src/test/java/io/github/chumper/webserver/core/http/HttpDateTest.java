@@ -0,0 +1,114 @@
+package io.github.chumper.webserver.core.http;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class HttpDateTest {
+
+  private static final DateTimeFormatter REFERENCE = DateTimeFormatter
+      .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+  /**
+   * The example of https://tools.ietf.org/html/rfc7231#section-7.1.1.1
+   */
+  private static final long EXAMPLE = 784111777;
+
+  @Test
+  public void testFormat() {
+    assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpDate.format(EXAMPLE * 1000));
+    assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpDate.format(EXAMPLE * 1000 + 999));
+    assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", HttpDate.format(0));
+    assertEquals("Tue, 29 Feb 2000 23:59:59 GMT", HttpDate.format(951868799000L));
+    // the formatted date of a recent timestamp is kept
+    assertEquals(HttpDate.format(951868799000L), HttpDate.format(951868799000L));
+  }
+
+  @Test
+  public void testParse() {
+    assertEquals(EXAMPLE, HttpDate.parse("Sun, 06 Nov 1994 08:49:37 GMT"));
+    assertEquals(EXAMPLE, HttpDate.parse("Sunday, 06-Nov-94 08:49:37 GMT"));
+    assertEquals(EXAMPLE, HttpDate.parse("Sun Nov  6 08:49:37 1994"));
+    assertEquals(EXAMPLE + 3 * 86400, HttpDate.parse("Wednesday, 09-Nov-94 08:49:37 GMT"));
+    assertEquals(951868799, HttpDate.parse("Tue Feb 29 23:59:59 2000"));
+    assertEquals(0, HttpDate.parse("Thu, 01 Jan 1970 00:00:00 GMT"));
+  }
+
+  @Test
+  public void testTwoDigitYears() {
+    int year = Instant.now().atZone(ZoneOffset.UTC).getYear();
+    // a year more than 50 years in the future is in the past
+    String past = String.format("%02d", (year + 51) % 100);
+    assertEquals(year - 49, yearOf(HttpDate.parse("Monday, 01-Jan-" + past + " 00:00:00 GMT")));
+    String future = String.format("%02d", (year + 49) % 100);
+    assertEquals(year + 49, yearOf(HttpDate.parse("Monday, 01-Jan-" + future + " 00:00:00 GMT")));
+  }
+
+  @Test
+  public void testInvalidDates() {
+    String[] values = {null, "", "yesterday", "Sun, 06 Nov 1994 08:49:37 CET",
+                       "Sun, 06 Nov 1994 08:49:37 GMT ", "Sun, 6 Nov 1994 08:49:37 GMT",
+                       "Sun, 31 Nov 1994 08:49:37 GMT", "Sun, 06 Foo 1994 08:49:37 GMT",
+                       "Sun, 06 Nov 1994 24:49:37 GMT", "Sun, 06 Nov 1994 08-49-37 GMT",
+                       "Sun, 29 Feb 1900 08:49:37 GMT", "Sunday, 06 Nov 94 08:49:37 GMT",
+                       "Sun Nov 6 08:49:37 1994", "Sun Nov  x 08:49:37 1994"};
+    for (String value : values) {
+      assertEquals(value, HttpDate.INVALID, HttpDate.parse(value));
+    }
+  }
+
+  @Test
+  public void testRandomDates() {
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      long millis = (long) (random.nextDouble() * 253402300799000L);
+      check(millis);
+    }
+  }
+
+  @Test
+  public void testConcurrentUse() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        long seed = thread;
+        results.add(executor.submit(() -> {
+          Random random = new Random(seed);
+          for (int i = 0; i < 50000; i++) {
+            // few distinct timestamps, so the threads share the formatted dates
+            check((random.nextInt(512) + 1_600_000_000L) * 1000);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static void check(long millis) {
+    String expected = REFERENCE.format(Instant.ofEpochMilli(millis));
+    String formatted = HttpDate.format(millis);
+    assertEquals(expected, formatted);
+    assertEquals(formatted, Math.floorDiv(millis, 1000), HttpDate.parse(formatted));
+  }
+
+  private static int yearOf(long seconds) {
+    return Instant.ofEpochSecond(seconds).atZone(ZoneOffset.UTC).getYear();
+  }
+}
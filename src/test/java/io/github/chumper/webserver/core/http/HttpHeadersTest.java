@@ -0,0 +1,105 @@
+package io.github.chumper.webserver.core.http;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class HttpHeadersTest {
+
+  private HttpHeaders headers;
+
+  @Before
+  public void setUp() {
+    headers = new HttpHeaders();
+  }
+
+  @Test
+  public void testNamesAreCaseInsensitive() {
+    headers.add("content-length", "5");
+    headers.add("X-Custom", "a");
+
+    assertEquals("5", headers.get(HttpHeaders.CONTENT_LENGTH));
+    assertEquals("5", headers.get("CONTENT-LENGTH"));
+    assertEquals("a", headers.get("x-custom"));
+    assertNull(headers.get("Content-Type"));
+    assertNull(headers.get(null));
+    // well known names are stored as the constant
+    assertSame(HttpHeaders.CONTENT_LENGTH, headers.getName(0));
+    assertEquals("X-Custom", headers.getName(1));
+  }
+
+  @Test
+  public void testAddReplacesAllValues() {
+    headers.append(HttpHeaders.VARY, "Accept-Encoding");
+    headers.append("X-Custom", "1");
+    headers.append("vary", "Cookie");
+    headers.append(HttpHeaders.ETAG, "a");
+
+    headers.add("Vary", "Accept");
+
+    assertEquals(Collections.singletonList("Accept"), headers.getAll(HttpHeaders.VARY));
+    assertEquals(3, headers.size());
+    // the positions of the other headers moved
+    assertEquals("a", headers.get(HttpHeaders.ETAG));
+    assertEquals("1", headers.get("X-Custom"));
+  }
+
+  @Test
+  public void testMultipleValues() {
+    headers.add("If-None-Match: \"a\"");
+    headers.add("if-none-match:\"b\" ");
+    headers.add("no header");
+
+    assertEquals("\"a\"", headers.get(HttpHeaders.IF_NONE_MATCH));
+    assertEquals(Arrays.asList("\"a\"", "\"b\""), headers.getAll(HttpHeaders.IF_NONE_MATCH));
+    assertEquals("\"a\", \"b\"", headers.getCombined(HttpHeaders.IF_NONE_MATCH));
+    assertEquals(Collections.emptyList(), headers.getAll(HttpHeaders.IF_MATCH));
+    assertNull(headers.getCombined(HttpHeaders.IF_MATCH));
+    assertEquals(2, headers.size());
+  }
+
+  @Test
+  public void testRemove() {
+    headers.add(HttpHeaders.HOST, "localhost");
+    headers.append("X-A", "1");
+    headers.append(HttpHeaders.ETAG, "a");
+    headers.append("x-a", "2");
+
+    headers.remove("X-A");
+    assertEquals(2, headers.size());
+    assertNull(headers.get("X-A"));
+    assertEquals("a", headers.get(HttpHeaders.ETAG));
+  }
+
+  @Test
+  public void testManyHeaders() {
+    for (int i = 0; i < 100; i++) {
+      headers.append("X-" + i, String.valueOf(i));
+    }
+    headers.append(HttpHeaders.ACCEPT, "*/*");
+
+    assertEquals(101, headers.size());
+    assertEquals("99", headers.get("x-99"));
+    assertEquals("*/*", headers.get(HttpHeaders.ACCEPT));
+  }
+
+  @Test
+  public void testKnownName() {
+    byte[] data = "xxIf-Modified-Sincexx".getBytes(StandardCharsets.US_ASCII);
+    assertSame(HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.knownName(data, 2, 19));
+    data = "accept-encoding".getBytes(StandardCharsets.US_ASCII);
+    assertSame(HttpHeaders.ACCEPT_ENCODING, HttpHeaders.knownName(data, 0, data.length));
+    // only the letters are case-insensitive
+    data = "accept\rencoding".getBytes(StandardCharsets.US_ASCII);
+    assertNull(HttpHeaders.knownName(data, 0, data.length));
+    data = "X-Accept".getBytes(StandardCharsets.US_ASCII);
+    assertNull(HttpHeaders.knownName(data, 0, data.length));
+  }
+}
@@ -0,0 +1,68 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkedOutputStreamTest {
+
+  private ByteArrayOutputStream connection;
+  private ChunkedOutputStream outputStream;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = new ByteArrayOutputStream();
+    outputStream = new ChunkedOutputStream(connection);
+  }
+
+  @Test
+  public void testSmallWritesAreCollected() throws IOException {
+    outputStream.write('a');
+    outputStream.write("bc".getBytes(StandardCharsets.US_ASCII));
+    outputStream.close();
+
+    assertEquals("3\r\nabc\r\n0\r\n\r\n", connection.toString("US-ASCII"));
+  }
+
+  @Test
+  public void testFlushSendsChunk() throws IOException {
+    outputStream.write("abc".getBytes(StandardCharsets.US_ASCII));
+    outputStream.flush();
+
+    assertEquals("3\r\nabc\r\n", connection.toString("US-ASCII"));
+
+    // nothing was written, so no empty chunk may be sent
+    outputStream.flush();
+    assertEquals("3\r\nabc\r\n", connection.toString("US-ASCII"));
+  }
+
+  @Test
+  public void testLargeWritesAreSplit() throws IOException {
+    outputStream.write(new byte[ChunkedOutputStream.CHUNK_SIZE + 10]);
+    outputStream.close();
+
+    String encoded = connection.toString("US-ASCII");
+    assertTrue(encoded.startsWith("2000\r\n"));
+    assertTrue(encoded.endsWith("\r\na\r\n\0\0\0\0\0\0\0\0\0\0\r\n0\r\n\r\n"));
+  }
+
+  @Test
+  public void testEmptyBody() throws IOException {
+    outputStream.close();
+    outputStream.close();
+
+    assertEquals("0\r\n\r\n", connection.toString("US-ASCII"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testWriteAfterClose() throws IOException {
+    outputStream.close();
+    outputStream.write('a');
+  }
+}
@@ -0,0 +1,216 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.core.http.HttpRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpRequestParserTest {
+
+  private HttpRequestParser parser;
+
+  @Before
+  public void setUp() throws Exception {
+    parser = new HttpRequestParser(64, 256, 4);
+  }
+
+  @Test
+  public void testCompleteRequest() {
+    ByteBuffer buffer = buffer("GET /index.html HTTP/1.1\r\nHost: localhost\r\nX-Custom: a b \r\n\r\n");
+
+    assertEquals(HttpRequestParser.Result.COMPLETE, parser.parse(buffer));
+
+    HttpRequest request = parser.getRequest();
+    assertEquals(HttpBase.Method.GET, request.getMethod());
+    assertEquals("/index.html", request.getPath());
+    assertEquals(HttpBase.Version.HTTP_1_1, request.getProtocol());
+    assertEquals("localhost", request.getHeaders().get(HttpHeaders.HOST));
+    assertEquals("a b", request.getHeaders().get("X-Custom"));
+    assertEquals(0, buffer.remaining());
+  }
+
+  @Test
+  public void testHeaderNamesAreCaseInsensitive() {
+    ByteBuffer buffer = buffer("GET / HTTP/1.1\r\nif-none-match: \"a\"\r\nIF-NONE-MATCH: \"b\"\r\n" +
+                               "x-custom: c\r\n\r\n");
+
+    assertEquals(HttpRequestParser.Result.COMPLETE, parser.parse(buffer));
+
+    HttpHeaders headers = parser.getRequest().getHeaders();
+    // well known names are stored as the constants, each line adds a value
+    assertSame(HttpHeaders.IF_NONE_MATCH, headers.getName(0));
+    assertEquals("\"a\"", headers.get(HttpHeaders.IF_NONE_MATCH));
+    assertEquals(Arrays.asList("\"a\"", "\"b\""), headers.getAll("If-None-Match"));
+    assertEquals("c", headers.get("X-Custom"));
+    assertEquals("x-custom", headers.getName(2));
+  }
+
+  @Test
+  public void testPartialRequest() {
+    String head = "POST /comments HTTP/1.0\r\nContent-Length: 4\r\n\r\n";
+    ByteBuffer buffer = ByteBuffer.allocate(128);
+    buffer.flip();
+
+    for (int i = 0; i < head.length() - 1; i++) {
+      append(buffer, head.substring(i, i + 1));
+      assertEquals(HttpRequestParser.Result.INCOMPLETE, parser.parse(buffer));
+    }
+    append(buffer, "\nbody");
+
+    assertEquals(HttpRequestParser.Result.COMPLETE, parser.parse(buffer));
+    assertEquals(HttpBase.Method.POST, parser.getRequest().getMethod());
+    assertEquals(HttpBase.Version.HTTP_1_0, parser.getRequest().getProtocol());
+    assertEquals(4, parser.getContentLength());
+    assertEquals("body", StandardCharsets.US_ASCII.decode(buffer).toString());
+  }
+
+  @Test
+  public void testKnownHeadersAreCaseInsensitive() {
+    ByteBuffer buffer = buffer("GET / HTTP/1.1\r\ncontent-LENGTH: 12\r\nconnection: close\r\n\r\n");
+
+    assertEquals(HttpRequestParser.Result.COMPLETE, parser.parse(buffer));
+    assertEquals(12, parser.getContentLength());
+    assertEquals("close", parser.getRequest().getHeaders().get(HttpHeaders.CONNECTION));
+  }
+
+  @Test
+  public void testLeadingEmptyLines() {
+    ByteBuffer buffer = buffer("\r\n\r\nHEAD / HTTP/1.1\r\n\r\n");
+
+    assertEquals(HttpRequestParser.Result.COMPLETE, parser.parse(buffer));
+    assertEquals(HttpBase.Method.HEAD, parser.getRequest().getMethod());
+  }
+
+  @Test
+  public void testPipelinedRequests() {
+    ByteBuffer buffer = buffer("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\n\r\n");
+
+    assertEquals(HttpRequestParser.Result.COMPLETE, parser.parse(buffer));
+    assertEquals("/a", parser.getRequest().getPath());
+    parser.reset();
+
+    assertEquals(HttpRequestParser.Result.COMPLETE, parser.parse(buffer));
+    assertEquals("/b", parser.getRequest().getPath());
+    assertEquals(0, buffer.remaining());
+  }
+
+  @Test
+  public void testResultIsKeptUntilReset() {
+    ByteBuffer buffer = buffer("GET / HTTP/1.1\r\n\r\n");
+
+    assertEquals(HttpRequestParser.Result.COMPLETE, parser.parse(buffer));
+    HttpRequest request = parser.getRequest();
+    assertEquals(HttpRequestParser.Result.COMPLETE, parser.parse(buffer));
+    assertSame(request, parser.getRequest());
+  }
+
+  @Test
+  public void testRequestLineTooLong() {
+    ByteBuffer buffer = buffer("GET /" + repeat('a', 100));
+
+    assertEquals(HttpRequestParser.Result.ERROR, parser.parse(buffer));
+    assertEquals("414 URI too long", parser.getError());
+  }
+
+  @Test
+  public void testTooManyHeaders() {
+    ByteBuffer buffer = buffer("GET / HTTP/1.1\r\nA: 1\r\nB: 2\r\nC: 3\r\nD: 4\r\nE: 5\r\n\r\n");
+
+    assertEquals(HttpRequestParser.Result.ERROR, parser.parse(buffer));
+    assertEquals("431 Request header fields too large", parser.getError());
+  }
+
+  @Test
+  public void testHeadersTooLarge() {
+    ByteBuffer buffer = buffer("GET / HTTP/1.1\r\nA: " + repeat('a', 300));
+
+    assertEquals(HttpRequestParser.Result.ERROR, parser.parse(buffer));
+    assertEquals("431 Request header fields too large", parser.getError());
+  }
+
+  @Test
+  public void testUnknownMethod() {
+    assertEquals(HttpRequestParser.Result.ERROR, parser.parse(buffer("PATCH / HTTP/1.1\r\n\r\n")));
+    assertEquals("501 Not implemented", parser.getError());
+  }
+
+  @Test
+  public void testUnknownVersion() {
+    assertEquals(HttpRequestParser.Result.ERROR, parser.parse(buffer("GET / HTTP/1.2\r\n\r\n")));
+    assertEquals("505 HTTP version not supported", parser.getError());
+  }
+
+  @Test
+  public void testInvalidContentLength() {
+    ByteBuffer buffer = buffer("POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+
+    assertEquals(HttpRequestParser.Result.ERROR, parser.parse(buffer));
+    assertEquals("400 Bad request", parser.getError());
+  }
+
+  @Test
+  public void testChunkedBody() {
+    ByteBuffer buffer = buffer("POST / HTTP/1.1\r\nTransfer-Encoding: Chunked\r\n" +
+                               "Expect: 100-continue\r\n\r\n");
+
+    assertEquals(HttpRequestParser.Result.COMPLETE, parser.parse(buffer));
+    assertTrue(parser.isChunked());
+    assertTrue(parser.isExpectContinue());
+
+    parser.reset();
+    assertFalse(parser.isChunked());
+    assertFalse(parser.isExpectContinue());
+  }
+
+  @Test
+  public void testUnknownTransferEncoding() {
+    ByteBuffer buffer = buffer("POST / HTTP/1.1\r\nTransfer-Encoding: gzip, chunked\r\n\r\n");
+
+    assertEquals(HttpRequestParser.Result.ERROR, parser.parse(buffer));
+    assertEquals("501 Not implemented", parser.getError());
+  }
+
+  @Test
+  public void testUnknownExpectation() {
+    ByteBuffer buffer = buffer("POST / HTTP/1.1\r\nExpect: something\r\n\r\n");
+
+    assertEquals(HttpRequestParser.Result.ERROR, parser.parse(buffer));
+    assertEquals("417 Expectation failed", parser.getError());
+  }
+
+  @Test
+  public void testNoHttpRequest() {
+    assertEquals(HttpRequestParser.Result.INVALID, parser.parse(buffer("HELLO\r\n")));
+  }
+
+  private static ByteBuffer buffer(String data) {
+    return ByteBuffer.wrap(data.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static void append(ByteBuffer buffer,
+                             String data) {
+    buffer.compact();
+    buffer.put(data.getBytes(StandardCharsets.US_ASCII));
+    buffer.flip();
+  }
+
+  private static String repeat(char c,
+                               int count) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,67 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.core.http.HttpResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpResponseEncoderTest {
+
+  private HttpResponse response;
+
+  @Before
+  public void setUp() throws Exception {
+    this.response = new HttpResponse();
+  }
+
+  @Test
+  public void testHead() throws IOException {
+    response.write("content");
+    response.getHeaders().add(HttpHeaders.ETAG, "\"123\"");
+
+    String[] lines = encode().split("\r\n", -1);
+
+    assertEquals("HTTP/1.1 200 OK", lines[0]);
+    assertTrue(lines[1].matches("Date: \\w{3}, \\d{2} \\w{3} \\d{4} \\d{2}:\\d{2}:\\d{2} GMT"));
+    assertEquals("Server: SimpleHttpServer", lines[2]);
+    assertEquals("Content-Length: 7", lines[3]);
+    assertEquals("ETag: \"123\"", lines[4]);
+    assertEquals("", lines[5]);
+    assertEquals("", lines[6]);
+    assertEquals(7, lines.length);
+  }
+
+  @Test
+  public void testUncommonStatus() throws IOException {
+    response.setProtocol(HttpBase.Version.HTTP_1_0);
+    response.setStatus("418 I'm a teapot");
+
+    assertTrue(encode().startsWith("HTTP/1.0 418 I'm a teapot\r\n"));
+  }
+
+  @Test
+  public void testEmptyContent() throws IOException {
+    assertTrue(encode().contains("\r\nContent-Length: 0\r\n"));
+  }
+
+  @Test
+  public void testLargeContentLength() throws IOException {
+    response.write(new byte[1000]);
+
+    assertTrue(encode().contains("\r\nContent-Length: 1000\r\n"));
+  }
+
+  private String encode() throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    HttpResponseEncoder.writeHead(response, outputStream);
+    return outputStream.toString("ISO-8859-1");
+  }
+}
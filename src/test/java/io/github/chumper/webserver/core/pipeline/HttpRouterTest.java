@@ -0,0 +1,151 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpHandler;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.core.http.HttpRequest;
+import io.github.chumper.webserver.core.http.HttpResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HttpRouterTest {
+
+  private HttpRouter router;
+
+  @Before
+  public void setUp() {
+    router = new HttpRouter();
+    router.route(HttpBase.Method.GET, "/", answer("root"));
+    router.route(HttpBase.Method.GET, "/comments", answer("comments"));
+    router.route(HttpBase.Method.POST, "/comments", answer("add"));
+    router.route(HttpBase.Method.GET, "/comments/latest", answer("latest"));
+    router.route(HttpBase.Method.GET, "/comments/{id}", answer("comment"));
+    router.route(HttpBase.Method.GET, "/comments/{id}/replies/{reply}", answer("reply"));
+    router.route(HttpBase.Method.GET, "/files/*", answer("files"));
+  }
+
+  @Test
+  public void testLiteralRoutes() {
+    assertEquals("root", get("/").getContent().toString());
+    assertEquals("comments", get("/comments").getContent().toString());
+    assertEquals("add", send(HttpBase.Method.POST, "/comments").getContent().toString());
+  }
+
+  @Test
+  public void testParameters() {
+    HttpRequest request = request(HttpBase.Method.GET, "/comments/42/replies/7");
+    assertEquals("reply", handle(request).getContent().toString());
+    assertEquals("42", request.getPathParam("id"));
+    assertEquals("7", request.getPathParam("reply"));
+    // the path is not changed
+    assertEquals("/comments/42/replies/7", request.getPath());
+  }
+
+  @Test
+  public void testLiteralsBeforeParameters() {
+    HttpRequest request = request(HttpBase.Method.GET, "/comments/latest");
+    assertEquals("latest", handle(request).getContent().toString());
+    assertNull(request.getPathParam("id"));
+    assertEquals("comment", get("/comments/first").getContent().toString());
+  }
+
+  @Test
+  public void testRest() {
+    assertRest("/files/a/b.txt", "/a/b.txt");
+    assertRest("/files//a/b.txt", "//a/b.txt");
+    assertRest("/files/", "/");
+    assertRest("/files", "");
+    assertEquals("404 Not found", get("/filesystem").getStatus());
+  }
+
+  @Test
+  public void testQueryIsIgnored() {
+    assertEquals("comments", get("/comments?page=2").getContent().toString());
+    HttpRequest request = request(HttpBase.Method.GET, "/files/a?offset=1");
+    handle(request);
+    assertEquals("/a", request.getPathParam(HttpRouter.REST));
+    assertEquals("offset=1", request.getQuery());
+  }
+
+  @Test
+  public void testNotFound() {
+    assertEquals("404 Not found", get("/unknown").getStatus());
+    assertEquals("404 Not found", get("/comments/42/replies").getStatus());
+    assertEquals("404 Not found", get("/comments//replies/7").getStatus());
+    assertEquals("404 Not found", get("").getStatus());
+    assertEquals("", get("/unknown").getContent().toString());
+  }
+
+  @Test
+  public void testMethodNotAllowed() {
+    router.route(HttpBase.Method.POST, "/upload", answer("upload"));
+    HttpResponse response = get("/upload");
+    assertEquals("405 Method not allowed", response.getStatus());
+    assertEquals("POST", response.getHeaders().get(HttpHeaders.ALLOW));
+
+    response = send(HttpBase.Method.POST, "/files/a.txt");
+    assertEquals("405 Method not allowed", response.getStatus());
+    assertEquals("GET, HEAD", response.getHeaders().get(HttpHeaders.ALLOW));
+  }
+
+  @Test
+  public void testHeadUsesGet() {
+    assertEquals("comments", send(HttpBase.Method.HEAD, "/comments").getContent().toString());
+
+    router.route(HttpBase.Method.HEAD, "/comments", answer("head"));
+    assertEquals("head", send(HttpBase.Method.HEAD, "/comments").getContent().toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateRoute() {
+    router.route(HttpBase.Method.GET, "/comments", answer("again"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParametersNeedTheSameName() {
+    router.route(HttpBase.Method.POST, "/comments/{name}", answer("other"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRestIsLast() {
+    router.route(HttpBase.Method.GET, "/a/*/b", answer("invalid"));
+  }
+
+  private void assertRest(String path,
+                          String rest) {
+    HttpRequest request = request(HttpBase.Method.GET, path);
+    assertEquals(path, "files", handle(request).getContent().toString());
+    assertEquals(path, rest, request.getPathParam(HttpRouter.REST));
+  }
+
+  private HttpResponse get(String path) {
+    return send(HttpBase.Method.GET, path);
+  }
+
+  private HttpResponse send(HttpBase.Method method,
+                            String path) {
+    return handle(request(method, path));
+  }
+
+  private HttpResponse handle(HttpRequest request) {
+    HttpResponse response = new HttpResponse();
+    router.handle(request, response);
+    return response;
+  }
+
+  private static HttpRequest request(HttpBase.Method method,
+                                     String path) {
+    HttpRequest request = new HttpRequest();
+    request.setMethod(method);
+    request.setPath(path);
+    return request;
+  }
+
+  private static HttpHandler answer(String name) {
+    return (request, response) -> response.write(name);
+  }
+}
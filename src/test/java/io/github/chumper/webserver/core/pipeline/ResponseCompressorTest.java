@@ -0,0 +1,206 @@
+package io.github.chumper.webserver.core.pipeline;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import io.github.chumper.webserver.core.http.FileRegion;
+import io.github.chumper.webserver.core.http.HttpHeaders;
+import io.github.chumper.webserver.core.http.HttpRequest;
+import io.github.chumper.webserver.core.http.HttpResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCompressorTest {
+
+  private static final String TEXT = repeat("<p>Some comment that repeats</p>\n", 100);
+
+  private ResponseCompressor compressor;
+  private HttpRequest request;
+  private HttpResponse response;
+
+  @Before
+  public void setUp() throws Exception {
+    compressor = new ResponseCompressor(6, 1024, Arrays.asList("text/*", "application/json"));
+    request = new HttpRequest();
+    response = new HttpResponse();
+    response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "text/html; charset=utf-8");
+  }
+
+  @Test
+  public void testNegotiate() {
+    assertEquals("gzip", ResponseCompressor.negotiate("gzip, deflate, br"));
+    assertEquals("deflate", ResponseCompressor.negotiate("gzip;q=0.5, deflate"));
+    assertEquals("gzip", ResponseCompressor.negotiate("*"));
+    assertEquals("deflate", ResponseCompressor.negotiate("*, gzip;q=0"));
+    assertEquals("gzip", ResponseCompressor.negotiate("x-gzip"));
+    assertNull(ResponseCompressor.negotiate("br, identity"));
+    assertNull(ResponseCompressor.negotiate("gzip;q=0"));
+    assertNull(ResponseCompressor.negotiate(null));
+  }
+
+  @Test
+  public void testAccepts() {
+    assertTrue(ResponseCompressor.accepts("deflate, gzip;q=0.1", "gzip"));
+    assertTrue(ResponseCompressor.accepts("*", "gzip"));
+    assertFalse(ResponseCompressor.accepts("gzip;q=0, *", "gzip"));
+    assertFalse(ResponseCompressor.accepts("deflate", "gzip"));
+  }
+
+  @Test
+  public void testGzipContent() throws IOException {
+    request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    response.getHeaders().add(HttpHeaders.ETAG, "123");
+    response.write(TEXT);
+
+    compressor.compress(request, response);
+
+    assertEquals("gzip", response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+    assertEquals("Accept-Encoding", response.getHeaders().get(HttpHeaders.VARY));
+    assertEquals("123-gzip", response.getHeaders().get(HttpHeaders.ETAG));
+    assertEquals(TEXT, decode(new GZIPInputStream(content())));
+  }
+
+  @Test
+  public void testDeflateContent() throws IOException {
+    request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "deflate");
+    response.write(TEXT);
+
+    compressor.compress(request, response);
+
+    assertEquals("deflate", response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+    assertEquals(TEXT, decode(new InflaterInputStream(content())));
+  }
+
+  @Test
+  public void testDeflatersAreReused() throws IOException {
+    request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    for (int i = 0; i < 3; i++) {
+      response = new HttpResponse();
+      response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "text/plain");
+      response.write(TEXT + i);
+
+      compressor.compress(request, response);
+
+      assertEquals(TEXT + i, decode(new GZIPInputStream(content())));
+    }
+  }
+
+  @Test
+  public void testStreamedBody() throws IOException {
+    request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    response.stream(outputStream -> {
+      outputStream.write(TEXT.getBytes(StandardCharsets.UTF_8));
+      outputStream.flush();
+      outputStream.write(TEXT.getBytes(StandardCharsets.UTF_8));
+    });
+
+    compressor.compress(request, response);
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    response.getBodyWriter().writeTo(body);
+    assertEquals("gzip", response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+    assertEquals(TEXT + TEXT,
+                 decode(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))));
+  }
+
+  @Test
+  public void testClientDoesNotAccept() throws IOException {
+    response.write(TEXT);
+
+    compressor.compress(request, response);
+
+    assertNull(response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+    // caches need to know that other clients can get a different representation
+    assertEquals("Accept-Encoding", response.getHeaders().get(HttpHeaders.VARY));
+    assertEquals(TEXT.length(), response.getContentLength());
+  }
+
+  @Test
+  public void testSmallContent() throws IOException {
+    request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    response.write("small");
+
+    compressor.compress(request, response);
+
+    assertNull(response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+    assertNull(response.getHeaders().get(HttpHeaders.VARY));
+  }
+
+  @Test
+  public void testTypeNotAllowed() throws IOException {
+    request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    response.getHeaders().add(HttpHeaders.CONTENT_TYPE, "image/png");
+    response.write(TEXT);
+
+    compressor.compress(request, response);
+
+    assertNull(response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+  }
+
+  @Test
+  public void testFileRegionIsNotCompressed() throws IOException {
+    request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    response.setBody(new FileRegion(Paths.get("file"), 0, 5000));
+
+    compressor.compress(request, response);
+
+    assertNull(response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+    assertEquals(5000, response.getContentLength());
+  }
+
+  @Test
+  public void testNotModifiedGetsCompressedTag() throws IOException {
+    request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    response.getHeaders().add(HttpHeaders.ETAG, "123");
+    response.setStatus("304 Not modified");
+    response.write(TEXT);
+
+    compressor.compress(request, response);
+
+    assertEquals("123-gzip", response.getHeaders().get(HttpHeaders.ETAG));
+    assertNull(response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+  }
+
+  @Test
+  public void testStripCoding() {
+    assertEquals("123", ResponseCompressor.stripCoding("123-gzip"));
+    assertEquals("123", ResponseCompressor.stripCoding("123-deflate"));
+    assertEquals("123", ResponseCompressor.stripCoding("123"));
+  }
+
+  private InputStream content() {
+    return new ByteArrayInputStream(response.getContent().toByteArray());
+  }
+
+  private static String decode(InputStream inputStream) throws IOException {
+    ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int read;
+    while ((read = inputStream.read(buffer)) != -1) {
+      decoded.write(buffer, 0, read);
+    }
+    return decoded.toString("UTF-8");
+  }
+
+  private static String repeat(String value,
+                               int count) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      builder.append(value);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,105 @@
+package io.github.chumper.webserver.data;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import io.github.chumper.webserver.util.InMemoryRepo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CachingCommentRepositoryTest {
+
+  private final InMemoryRepo repository = new InMemoryRepo();
+  private final CachingCommentRepository cache = new CachingCommentRepository(repository);
+
+  @Test
+  public void firstPageIsAnsweredFromMemory() {
+    cache.add(new Comment(Instant.now(), "John", "Doe"));
+
+    assertEquals(1, cache.page(null, 10).count());
+    assertEquals(1, cache.page(null, 10).count());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getHits());
+  }
+
+  @Test
+  public void changesInvalidate() {
+    assertEquals(0, cache.page(null, 10).count());
+    long version = cache.version();
+
+    cache.add(new Comment(Instant.now(), "John", "Doe"));
+    assertNotEquals(version, cache.version());
+    assertEquals(1, cache.page(null, 10).count());
+
+    version = cache.version();
+    cache.clear();
+    assertNotEquals(version, cache.version());
+    assertEquals(0, cache.page(null, 10).count());
+    assertEquals(3, cache.getMisses());
+  }
+
+  /**
+   * Only the first page is kept, older pages are read from the repository
+   */
+  @Test
+  public void pages() {
+    Instant start = Instant.parse("2020-01-01T00:00:00Z");
+    for (int i = 0; i < 10; i++) {
+      cache.add(new Comment(start.plusSeconds(i), "name" + i, "message"));
+    }
+
+    List<String> first = names(cache.page(null, 4));
+    List<String> second = names(cache.page(start.plusSeconds(6), 4));
+    List<String> last = names(cache.page(start.plusSeconds(2), 4));
+
+    assertEquals(Arrays.asList("name9", "name8", "name7", "name6"), first);
+    assertEquals(Arrays.asList("name5", "name4", "name3", "name2"), second);
+    assertEquals(Arrays.asList("name1", "name0"), last);
+    assertEquals(1, cache.getMisses());
+  }
+
+  /**
+   * A comment that is added while the comments are loaded is not lost in the copy
+   */
+  @Test
+  public void changeDuringLoad() throws InterruptedException {
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch added = new CountDownLatch(1);
+    CachingCommentRepository cache = new CachingCommentRepository(new InMemoryRepo() {
+      @Override
+      public Stream<Comment> all() {
+        Stream<Comment> all = super.all().collect(Collectors.toList()).stream();
+        if (loading.getCount() > 0) {
+          loading.countDown();
+          try {
+            added.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return all;
+      }
+    });
+
+    Thread reader = new Thread(() -> cache.page(null, 10).count());
+    reader.start();
+    loading.await();
+    cache.add(new Comment(Instant.now(), "John", "Doe"));
+    added.countDown();
+    reader.join();
+
+    assertTrue(cache.page(null, 10).anyMatch(comment -> comment.name.equals("John")));
+  }
+
+  private static List<String> names(Stream<Comment> comments) {
+    return comments.map(comment -> comment.name).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,242 @@
+package io.github.chumper.webserver.data;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentCommentRepositoryTest {
+
+  private static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+
+  @Test
+  public void pagesAreNewestFirst() {
+    ConcurrentCommentRepository repository = new ConcurrentCommentRepository();
+    // out of order over several chunks
+    List<Integer> order = IntStream.range(0, 5000).boxed().collect(Collectors.toList());
+    Collections.shuffle(order, new Random(42));
+    order.forEach(i -> repository.add(comment(i)));
+
+    assertEquals(order, repository.all().map(ConcurrentCommentRepositoryTest::number)
+        .collect(Collectors.toList()));
+    Instant after = null;
+    for (int newest = 4999; newest >= 0; newest -= 50) {
+      List<Comment> page = repository.page(after, 50).collect(Collectors.toList());
+      assertEquals(Math.min(50, newest + 1), page.size());
+      for (int i = 0; i < page.size(); i++) {
+        assertEquals(newest - i, number(page.get(i)));
+      }
+      after = page.get(page.size() - 1).posted;
+    }
+    assertEquals(0, repository.page(after, 50).count());
+  }
+
+  /**
+   * Comments of the same time are told apart by their id, also across chunks
+   */
+  @Test
+  public void pagesWithCommentsOfTheSameTime() {
+    ConcurrentCommentRepository repository = new ConcurrentCommentRepository();
+    for (int i = 0; i < 1000; i++) {
+      repository.add(new Comment(START, "name" + i, "message"));
+    }
+
+    int newest = 999;
+    Comment last = null;
+    while (newest >= 0) {
+      List<Comment> page = repository.page(last == null ? null : last.posted,
+                                           last == null ? null : last.id, 60)
+          .collect(Collectors.toList());
+      assertEquals(Math.min(60, newest + 1), page.size());
+      for (Comment comment : page) {
+        assertEquals(newest--, number(comment));
+      }
+      last = page.get(page.size() - 1);
+    }
+    assertEquals(0, repository.page(last.posted, last.id, 60).count());
+  }
+
+  @Test
+  public void oldestCommentsAreDroppedAboveMaxCount() {
+    ConcurrentCommentRepository repository = new ConcurrentCommentRepository(2000, Duration.ZERO);
+    for (int i = 0; i < 5000; i++) {
+      repository.add(comment(i));
+    }
+
+    assertEquals(2000, repository.getCount());
+    assertEquals(IntStream.range(3000, 5000).boxed().collect(Collectors.toList()),
+                 repository.all().map(ConcurrentCommentRepositoryTest::number)
+                     .collect(Collectors.toList()));
+    assertEquals(3000, number(repository.page(START.plusSeconds(3001), 50)
+                                  .reduce((first, second) -> second).get()));
+  }
+
+  @Test
+  public void oldCommentsAreNotReturned() {
+    ConcurrentCommentRepository repository =
+        new ConcurrentCommentRepository(0, Duration.ofHours(1));
+    Instant now = Instant.now();
+    repository.add(new Comment(now.minus(Duration.ofHours(3)), "old", "message"));
+    repository.add(new Comment(now, "new", "message"));
+    // older than the maximum age but behind a newer one, so not dropped yet
+    repository.add(new Comment(now.minus(Duration.ofHours(2)), "late", "message"));
+
+    assertEquals(2, repository.getCount());
+    assertEquals(Collections.singletonList("new"), names(repository.all()));
+    assertEquals(Collections.singletonList("new"), names(repository.page(null, 10)));
+  }
+
+  @Test
+  public void clearDropsEverything() {
+    ConcurrentCommentRepository repository = new ConcurrentCommentRepository();
+    for (int i = 0; i < 3000; i++) {
+      repository.add(comment(i));
+    }
+    long version = repository.version();
+
+    repository.clear();
+
+    assertNotEquals(version, repository.version());
+    assertEquals(0, repository.all().count());
+    assertEquals(0, repository.page(null, 10).count());
+    repository.add(comment(1));
+    assertEquals(Collections.singletonList("name1"), names(repository.page(null, 10)));
+  }
+
+  /**
+   * A stream only has the comments that were added before it was created
+   */
+  @Test
+  public void allIsSnapshot() {
+    ConcurrentCommentRepository repository = new ConcurrentCommentRepository();
+    repository.add(comment(0));
+    long version = repository.version();
+    Stream<Comment> all = repository.all();
+
+    repository.add(comment(1));
+
+    assertNotEquals(version, repository.version());
+    assertEquals(1, all.count());
+  }
+
+  /**
+   * Writers add their comments in order while readers check that they always see all comments of
+   * a writer up to some point and nothing lost or twice
+   */
+  @Test
+  public void concurrentWritersAndReaders() throws InterruptedException {
+    int writers = 8;
+    int comments = 20_000;
+    ConcurrentCommentRepository repository = new ConcurrentCommentRepository();
+    AtomicBoolean writing = new AtomicBoolean(true);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    CountDownLatch start = new CountDownLatch(1);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int w = 0; w < writers; w++) {
+      int writer = w;
+      threads.add(new Thread(() -> {
+        await(start);
+        for (int i = 0; i < comments; i++) {
+          repository.add(new Comment(START.plusNanos(i * writers + writer),
+                                     "writer" + writer, String.valueOf(i)));
+        }
+      }));
+    }
+    List<Thread> readers = new ArrayList<>();
+    for (int r = 0; r < 2; r++) {
+      readers.add(new Thread(() -> {
+        await(start);
+        long seen = 0;
+        try {
+          while (writing.get()) {
+            long count = checkAll(repository, writers);
+            assertTrue(count >= seen);
+            seen = count;
+            checkPage(repository.page(null, 50).collect(Collectors.toList()));
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    readers.forEach(Thread::start);
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    writing.set(false);
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    assertNull(failure.get());
+    assertEquals(writers * comments, checkAll(repository, writers));
+    assertEquals(writers * comments, repository.getCount());
+    List<Comment> page = repository.page(null, 50).collect(Collectors.toList());
+    checkPage(page);
+    assertEquals(START.plusNanos(writers * comments - 1), page.get(0).posted);
+  }
+
+  /**
+   * Checks that the comments of every writer are in the order they were added without a gap
+   *
+   * @return the number of comments
+   */
+  private static long checkAll(ConcurrentCommentRepository repository,
+                               int writers) {
+    int[] next = new int[writers];
+    repository.all().forEach(comment -> {
+      int writer = Integer.parseInt(comment.name.substring("writer".length()));
+      assertEquals(next[writer]++, Integer.parseInt(comment.message));
+    });
+    return IntStream.of(next).sum();
+  }
+
+  private static void checkPage(List<Comment> page) {
+    Set<Instant> unique = new HashSet<>();
+    page.forEach(comment -> assertTrue(unique.add(comment.posted)));
+    List<Comment> sorted = new ArrayList<>(page);
+    sorted.sort(Comparator.comparing((Comment comment) -> comment.posted).reversed());
+    assertEquals(sorted, page);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Comment comment(int i) {
+    return new Comment(START.plusSeconds(i), "name" + i, "message");
+  }
+
+  private static int number(Comment comment) {
+    return Integer.parseInt(comment.name.substring("name".length()));
+  }
+
+  private static List<String> names(Stream<Comment> comments) {
+    return comments.map(comment -> comment.name).collect(Collectors.toList());
+  }
+}
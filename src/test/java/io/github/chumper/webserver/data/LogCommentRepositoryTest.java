@@ -0,0 +1,246 @@
+package io.github.chumper.webserver.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class LogCommentRepositoryTest {
+
+  private static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+
+  private Path directory;
+  private LogCommentRepository repository;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory(Files.createDirectories(Paths.get("build", "tmp")), "log");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (repository != null) {
+      repository.close();
+    }
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void commentsAreReadBack() throws IOException {
+    repository = open(1024 * 1024);
+    repository.add(new Comment(START.plusNanos(123), "John", "Doe \u00e4\u00f6\u00fc"));
+    repository.add(new Comment(START.plusSeconds(1), null, null));
+
+    List<Comment> comments = repository.all().collect(Collectors.toList());
+
+    assertEquals(2, comments.size());
+    assertNull(comments.get(0).name);
+    assertNull(comments.get(0).message);
+    assertEquals(START.plusNanos(123), comments.get(1).posted);
+    assertEquals("John", comments.get(1).name);
+    assertEquals("Doe \u00e4\u00f6\u00fc", comments.get(1).message);
+  }
+
+  @Test
+  public void pagesAreNewestFirst() throws IOException {
+    repository = open(1024 * 1024);
+    // out of order, the index sorts them by time
+    for (int i : new int[]{3, 0, 4, 1, 2}) {
+      repository.add(comment(i));
+    }
+
+    assertEquals(Arrays.asList("name4", "name3"), names(repository.page(null, 2)));
+    assertEquals(Arrays.asList("name2", "name1"), names(repository.page(START.plusSeconds(3), 2)));
+    assertEquals(Arrays.asList("name0"), names(repository.page(START.plusSeconds(1), 2)));
+  }
+
+  /**
+   * Comments of the same time are told apart by their id, also across segments and restarts
+   */
+  @Test
+  public void pagesWithCommentsOfTheSameTime() throws IOException {
+    repository = open(1024);
+    int added = 0;
+    while (segments().size() < 3) {
+      repository.add(new Comment(START, "name" + added++, "message"));
+    }
+    repository.close();
+    repository = open(1024);
+
+    List<String> names = new ArrayList<>();
+    Comment last = null;
+    while (true) {
+      List<Comment> page = repository.page(last == null ? null : last.posted,
+                                           last == null ? null : last.id, 3)
+          .collect(Collectors.toList());
+      if (page.isEmpty()) {
+        break;
+      }
+      page.forEach(comment -> names.add(comment.name));
+      last = page.get(page.size() - 1);
+    }
+
+    List<String> expected = new ArrayList<>();
+    for (int i = added - 1; i >= 0; i--) {
+      expected.add("name" + i);
+    }
+    assertEquals(expected, names);
+  }
+
+  @Test
+  public void commentsAreRecovered() throws IOException {
+    repository = open(1024);
+    for (int i = 0; i < 100; i++) {
+      repository.add(comment(i));
+    }
+    repository.close();
+
+    repository = open(1024);
+
+    assertEquals(100, repository.getCount());
+    assertEquals(Arrays.asList("name99", "name98"), names(repository.page(null, 2)));
+    // the next comment is appended after the recovered ones
+    repository.add(comment(100));
+    repository.close();
+    repository = open(1024);
+    assertEquals(101, repository.getCount());
+  }
+
+  /**
+   * A record that was not written completely is dropped and overwritten
+   */
+  @Test
+  public void incompleteRecordIsDropped() throws IOException {
+    repository = open(1024 * 1024);
+    repository.add(comment(0));
+    repository.add(comment(1));
+    repository.close();
+
+    // break the checksum of the second record
+    Path segment = segments().get(0);
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+      ByteBuffer length = ByteBuffer.allocate(4);
+      channel.read(length, 8);
+      channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), 8 + 8 + length.getInt(0) + 4);
+    }
+
+    repository = open(1024 * 1024);
+    assertEquals(Arrays.asList("name0"), names(repository.all()));
+    repository.add(comment(2));
+    repository.close();
+    repository = open(1024 * 1024);
+    assertEquals(Arrays.asList("name2", "name0"), names(repository.all()));
+  }
+
+  @Test
+  public void clearDeletesSegments() throws IOException {
+    repository = open(1024);
+    for (int i = 0; i < 100; i++) {
+      repository.add(comment(i));
+    }
+    long version = repository.version();
+    assertNotEquals(1, segments().size());
+
+    repository.clear();
+
+    assertNotEquals(version, repository.version());
+    assertEquals(0, repository.all().count());
+    assertEquals(1, segments().size());
+    repository.add(comment(0));
+    repository.close();
+    repository = open(1024);
+    assertEquals(1, repository.getCount());
+  }
+
+  /**
+   * The segments before a cleared segment are ignored if the clear could not delete them
+   */
+  @Test
+  public void interruptedClear() throws IOException {
+    repository = open(1024);
+    for (int i = 0; i < 10; i++) {
+      repository.add(comment(i));
+    }
+    repository.close();
+    Path old = segments().get(0);
+    byte[] content = Files.readAllBytes(old);
+
+    repository = open(1024);
+    repository.clear();
+    repository.add(comment(42));
+    repository.close();
+    Files.write(old, content);
+
+    repository = open(1024);
+    assertEquals(Arrays.asList("name42"), names(repository.all()));
+    assertEquals(1, segments().size());
+  }
+
+  /**
+   * A crash while a segment is created leaves a last segment without a header or a temporary
+   * file, both hold no comments and are deleted
+   */
+  @Test
+  public void segmentWithoutHeaderIsDropped() throws IOException {
+    repository = open(1024);
+    // the comment that starts the second segment is the only one in it
+    int added = 0;
+    while (segments().size() < 2) {
+      repository.add(comment(added++));
+    }
+    repository.close();
+    Path last = segments().get(1);
+    Files.write(last, new byte[0]);
+    Path temporary = directory.resolve(last.getFileName() + ".tmp");
+    Files.write(temporary, new byte[1024]);
+
+    repository = open(1024);
+
+    assertEquals(added - 1, repository.getCount());
+    assertEquals(Arrays.asList(segments().get(0)), segments());
+    repository.add(comment(added));
+    repository.close();
+    repository = open(1024);
+    assertEquals(added, repository.getCount());
+    assertEquals("name" + added, names(repository.page(null, 1)).get(0));
+  }
+
+  private LogCommentRepository open(int segmentSize) throws IOException {
+    return new LogCommentRepository(directory, segmentSize, false);
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static Comment comment(int i) {
+    return new Comment(START.plusSeconds(i), "name" + i, "message");
+  }
+
+  private static List<String> names(Stream<Comment> comments) {
+    return comments.map(comment -> comment.name).collect(Collectors.toList());
+  }
+}
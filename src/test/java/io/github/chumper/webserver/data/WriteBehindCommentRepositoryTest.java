@@ -0,0 +1,309 @@
+package io.github.chumper.webserver.data;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.github.chumper.webserver.util.InMemoryRepo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WriteBehindCommentRepositoryTest {
+
+  /**
+   * Records the size of every batch
+   */
+  private final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+  private final InMemoryRepo repository = new InMemoryRepo() {
+    @Override
+    public void addAll(List<Comment> comments) {
+      batches.add(comments.size());
+      super.addAll(comments);
+    }
+  };
+
+  private WriteBehindCommentRepository writer;
+
+  @After
+  public void tearDown() {
+    if (writer != null) {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void commentsAreWrittenInBatches() {
+    writer = new WriteBehindCommentRepository(
+        repository, 100, 10, 1000, WriteBehindCommentRepository.Durability.ENQUEUED, 1000);
+
+    for (int i = 0; i < 25; i++) {
+      writer.add(comment("name" + i));
+    }
+    writer.flush();
+
+    assertEquals(25, writer.all().count());
+    assertEquals(10, (int) batches.get(0));
+    assertEquals(10, (int) batches.get(1));
+    assertEquals(25, writer.getWritten());
+  }
+
+  /**
+   * A batch is written once the window of its first comment passed, even if it is not full
+   */
+  @Test
+  public void windowEndsBatch() throws InterruptedException {
+    writer = new WriteBehindCommentRepository(
+        repository, 100, 10, 20, WriteBehindCommentRepository.Durability.ENQUEUED, 1000);
+
+    writer.add(comment("John"));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (writer.getWritten() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+
+    assertEquals(1, writer.getWritten());
+  }
+
+  /**
+   * Adds that wait for their batch are not delayed by the window, the adds that arrive while a
+   * batch is written form the next one
+   */
+  @Test
+  public void flushedAddsShareBatches() throws InterruptedException {
+    writer = new WriteBehindCommentRepository(new InMemoryRepo() {
+      @Override
+      public void addAll(List<Comment> comments) {
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.addAll(comments);
+      }
+    }, 100, 100, 60000, WriteBehindCommentRepository.Durability.FLUSHED, 1000);
+
+    List<Thread> adds = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      String name = "name" + i;
+      Thread add = new Thread(() -> writer.add(comment(name)));
+      add.start();
+      adds.add(add);
+    }
+    for (Thread add : adds) {
+      add.join();
+    }
+
+    assertEquals(8, writer.all().count());
+    assertTrue(writer.getBatches() < 8);
+  }
+
+  @Test
+  public void flushedAddFailsWithItsBatch() {
+    writer = new WriteBehindCommentRepository(new InMemoryRepo() {
+      @Override
+      public void addAll(List<Comment> comments) {
+        throw new IllegalStateException("Database is down");
+      }
+    }, 100, 10, 0, WriteBehindCommentRepository.Durability.FLUSHED, 1000);
+
+    try {
+      writer.add(comment("John"));
+      fail();
+    } catch (CompletionException e) {
+      assertEquals("Database is down", e.getCause().getMessage());
+    }
+    assertEquals(1, writer.getFailed());
+  }
+
+  /**
+   * An add waits for space in the queue and is rejected after the timeout
+   */
+  @Test
+  public void fullQueueRejects() throws InterruptedException {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    writer = new WriteBehindCommentRepository(new InMemoryRepo() {
+      @Override
+      public void addAll(List<Comment> comments) {
+        writing.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }, 1, 1, 0, WriteBehindCommentRepository.Durability.ENQUEUED, 50);
+
+    // the first comment is taken by the writer, the second fills the queue
+    writer.add(comment("first"));
+    writing.await();
+    writer.add(comment("second"));
+    try {
+      writer.add(comment("third"));
+      fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    } finally {
+      release.countDown();
+    }
+  }
+
+  /**
+   * Comments that are still queued are written when the repository is closed
+   */
+  @Test
+  public void closeWritesQueuedComments() {
+    writer = new WriteBehindCommentRepository(
+        repository, 100, 100, 60000, WriteBehindCommentRepository.Durability.ENQUEUED, 1000);
+    for (int i = 0; i < 5; i++) {
+      writer.add(comment("name" + i));
+    }
+
+    writer.close();
+
+    assertEquals(5, repository.all().count());
+    try {
+      writer.add(comment("late"));
+      fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Adds that run concurrently with a close are either written or rejected, none of them waits
+   * forever for a queue that nobody writes anymore
+   */
+  @Test
+  public void addsDuringCloseDoNotHang() throws InterruptedException {
+    for (int round = 0; round < 20; round++) {
+      InMemoryRepo repository = new InMemoryRepo() {
+        @Override
+        public synchronized void addAll(List<Comment> comments) {
+          super.addAll(comments);
+        }
+      };
+      writer = new WriteBehindCommentRepository(
+          repository, 4, 2, 0, WriteBehindCommentRepository.Durability.FLUSHED, 1000);
+      AtomicInteger added = new AtomicInteger();
+      List<Thread> adds = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        Thread add = new Thread(() -> {
+          try {
+            while (true) {
+              writer.add(comment("name"));
+              added.incrementAndGet();
+            }
+          } catch (RejectedExecutionException e) {
+            // closed
+          }
+        });
+        add.start();
+        adds.add(add);
+      }
+      Thread.sleep(5);
+
+      writer.close();
+
+      for (Thread add : adds) {
+        add.join(5000);
+        assertFalse(add.isAlive());
+      }
+      assertEquals(added.get(), repository.all().count());
+    }
+  }
+
+  /**
+   * If the writer is interrupted, the comments that wait for it fail and later adds are rejected
+   */
+  @Test
+  public void interruptedWriterFailsWaitingAdds() throws InterruptedException {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    writer = new WriteBehindCommentRepository(new InMemoryRepo() {
+      @Override
+      public void addAll(List<Comment> comments) {
+        writing.countDown();
+        boolean interrupted = false;
+        while (release.getCount() > 0) {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+        super.addAll(comments);
+      }
+    }, 10, 1, 0, WriteBehindCommentRepository.Durability.FLUSHED, 1000);
+    Thread first = new Thread(() -> writer.add(comment("first")));
+    first.start();
+    writing.await();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    Thread second = new Thread(() -> {
+      try {
+        writer.add(comment("second"));
+      } catch (RuntimeException e) {
+        error.set(e);
+      }
+    });
+    second.start();
+    Thread.sleep(50);
+
+    writerThread().interrupt();
+    release.countDown();
+
+    first.join(5000);
+    second.join(5000);
+    assertFalse(second.isAlive());
+    Throwable cause = error.get() instanceof CompletionException ? error.get().getCause()
+                                                                 : error.get();
+    assertTrue(cause instanceof RejectedExecutionException);
+    try {
+      writer.add(comment("late"));
+      fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+  }
+
+  /**
+   * A clear also removes the comments that were added before it but not written yet
+   */
+  @Test
+  public void clearIncludesQueuedComments() {
+    writer = new WriteBehindCommentRepository(
+        repository, 100, 100, 60000, WriteBehindCommentRepository.Durability.ENQUEUED, 1000);
+    writer.add(comment("John"));
+
+    writer.clear();
+    writer.flush();
+
+    assertEquals(0, repository.all().count());
+  }
+
+  private static Thread writerThread() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.getName().equals("CommentWriter") && thread.isAlive())
+        .findFirst()
+        .orElseThrow(IllegalStateException::new);
+  }
+
+  private static Comment comment(String name) {
+    return new Comment(Instant.now(), name, "message");
+  }
+}
@@ -0,0 +1,50 @@
+package io.github.chumper.webserver.files;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class DirectoryListingsTest {
+
+  private DirectoryListings listings = new DirectoryListings(5);
+
+  private Path a = Paths.get("a");
+  private Path b = Paths.get("b");
+
+  @Test
+  public void testListingBelongsToModificationTime() {
+    String[] entries = {"a/1", "a/2"};
+    listings.put(a, 1000, entries);
+
+    assertArrayEquals(entries, listings.get(a, 1000));
+    assertNull(listings.get(a, 2000));
+    assertNull(listings.get(b, 1000));
+  }
+
+  @Test
+  public void testRecentlyModifiedDirectoryIsNotCached() {
+    long now = System.currentTimeMillis();
+    listings.put(a, now, new String[]{"a/1"});
+
+    assertNull(listings.get(a, now));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedListingIsEvicted() {
+    listings.put(a, 1000, new String[]{"a/1", "a/2"});
+    listings.put(b, 1000, new String[]{"b/1", "b/2"});
+    listings.get(a, 1000);
+    listings.put(Paths.get("c"), 1000, new String[]{"c/1", "c/2"});
+
+    assertNull(listings.get(b, 1000));
+    assertArrayEquals(new String[]{"a/1", "a/2"}, listings.get(a, 1000));
+
+    // listings larger than the whole cache are not kept
+    listings.put(b, 1000, new String[]{"1", "2", "3", "4", "5", "6"});
+    assertNull(listings.get(b, 1000));
+  }
+}
@@ -0,0 +1,220 @@
+package io.github.chumper.webserver.files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import io.github.chumper.webserver.core.http.BufferRegion;
+import io.github.chumper.webserver.core.http.ByteRange;
+import io.github.chumper.webserver.util.XxHash64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FileCacheTest {
+
+  private Path root;
+  private FileCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    root = Files.createTempDirectory(Files.createDirectories(Paths.get("build", "tmp")), "cache");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cache != null) {
+      cache.close();
+    }
+    try (Stream<Path> paths = Files.walk(root)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void testHitsAndMisses() throws IOException {
+    Path file = write("a.txt", "content");
+
+    cache = cache();
+    CachedFile cached = cache.get(file);
+    assertNotNull(cached);
+    assertEquals("content", read(cached.getContent()));
+    assertEquals(Files.getLastModifiedTime(file).toMillis(), cached.getLastModified());
+    assertNull(cached.getPrecompressed());
+    assertEquals(String.format("%016x", XxHash64.hash("content".getBytes(StandardCharsets.UTF_8))),
+                 cached.getETag());
+
+    assertSame(cached, cache.get(file));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(7, cache.getSize());
+  }
+
+  @Test
+  public void testOnlyRegularFilesBelowTheRoot() throws IOException {
+    write("a/b.txt", "content");
+
+    cache = cache();
+    assertNull(cache.get(root.resolve("a")));
+    assertNull(cache.get(root.resolve("missing.txt")));
+    assertNull(cache.get(Paths.get("src/test/resources/c.txt")));
+    assertNull(cache.get(root.resolve("a/../../c.txt")));
+    assertEquals(0, cache.getCount());
+  }
+
+  @Test
+  public void testLargeFilesAreNotCached() throws IOException {
+    Path file = write("large.txt", repeat('l', 51));
+
+    cache = cache();
+    assertNull(cache.get(file));
+    assertEquals(0, cache.getCount());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedFileIsEvicted() throws IOException {
+    Path a = write("a.txt", repeat('a', 40));
+    Path b = write("b.txt", repeat('b', 40));
+    Path c = write("c.txt", repeat('c', 40));
+
+    cache = cache();
+    cache.get(a);
+    cache.get(b);
+    // a is used again, so b is the eldest
+    cache.get(a);
+    cache.get(c);
+
+    assertEquals(1, cache.getEvictions());
+    assertEquals(2, cache.getCount());
+    assertEquals(80, cache.getSize());
+
+    long misses = cache.getMisses();
+    cache.get(a);
+    cache.get(c);
+    assertEquals(misses, cache.getMisses());
+    cache.get(b);
+    assertEquals(misses + 1, cache.getMisses());
+  }
+
+  @Test
+  public void testPrecompressedSibling() throws IOException {
+    Path file = write("app.js", "app");
+    write("app.js.gz", "gz");
+
+    cache = cache();
+    CachedFile cached = cache.get(file);
+
+    assertEquals("gz", read(cached.getPrecompressed()));
+    assertEquals(5, cache.getSize());
+  }
+
+  @Test
+  public void testChangedFileIsInvalidated() throws Exception {
+    Path file = write("a/b.txt", "before");
+    cache = cache();
+    cache.get(file);
+
+    write("a/b.txt", "after!");
+
+    assertEquals("after!", awaitContent(file, "after!"));
+  }
+
+  @Test
+  public void testChangedSiblingInvalidatesFile() throws Exception {
+    Path file = write("app.js", "app");
+    cache = cache();
+    cache.get(file);
+
+    write("app.js.gz", "gz");
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (cache.get(file).getPrecompressed() == null) {
+      assertTrue("the change was not noticed", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testFileInNewDirectoryIsInvalidated() throws Exception {
+    cache = cache();
+    Files.createDirectories(root.resolve("new"));
+    // wait until the new directory is watched
+    Thread.sleep(200);
+    Path file = write("new/b.txt", "before");
+    assertEquals("before", awaitContent(file, "before"));
+
+    write("new/b.txt", "after!");
+
+    assertEquals("after!", awaitContent(file, "after!"));
+  }
+
+  @Test
+  public void testSlice() {
+    BufferRegion region = new BufferRegion(
+        ByteBuffer.wrap("0123456789".getBytes(StandardCharsets.UTF_8)));
+
+    BufferRegion slice = region.slice(new ByteRange(2, 5));
+    assertEquals(4, slice.getLength());
+    assertEquals("2345", read(slice));
+    assertEquals("34", read(slice.slice(new ByteRange(1, 2))));
+    assertEquals(10, region.getLength());
+  }
+
+  /**
+   * Created after the files of a test were written, so the watcher does not report these writes
+   * while the test looks at the cache
+   */
+  private FileCache cache() throws IOException {
+    return new FileCache(root, 100, 50, true);
+  }
+
+  /**
+   * The watch service reports changes asynchronously, so the cache is asked until the change
+   * arrived
+   */
+  private String awaitContent(Path file,
+                              String expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    String content = read(cache.get(file).getContent());
+    while (!content.equals(expected) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      content = read(cache.get(file).getContent());
+    }
+    return content;
+  }
+
+  private Path write(String name,
+                     String content) throws IOException {
+    Path file = root.resolve(name);
+    Files.createDirectories(file.getParent());
+    return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String repeat(char c,
+                               int count) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+
+  private static String read(BufferRegion region) {
+    ByteBuffer content = region.getContent();
+    byte[] bytes = new byte[content.remaining()];
+    content.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,174 @@
+package io.github.chumper.webserver.files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import io.github.chumper.webserver.util.XxHash64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileIndexTest {
+
+  private Path root;
+  private FileIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    root = Files.createTempDirectory(Files.createDirectories(Paths.get("build", "tmp")), "index");
+    write("a/b.txt", "abc");
+    write("c.js", "c");
+    index = new FileIndex(root);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+    try (Stream<Path> paths = Files.walk(root)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void testKey() {
+    assertEquals("", FileIndex.key(""));
+    assertEquals("", FileIndex.key("/"));
+    assertEquals("a/b.txt", FileIndex.key("/a/b.txt"));
+    assertEquals("a/b.txt", FileIndex.key("//a/./b.txt/"));
+    assertEquals("a/..b", FileIndex.key("/a/..b"));
+    assertNull(FileIndex.key("/a/../b.txt"));
+    assertNull(FileIndex.key("/.."));
+    assertNull(FileIndex.key("/../index/a/b.txt"));
+  }
+
+  @Test
+  public void testLookup() throws IOException {
+    FileInfo file = index.get("/a/b.txt");
+    assertNotNull(file);
+    assertFalse(file.isDirectory());
+    assertEquals(3, file.getSize());
+    assertEquals(Files.getLastModifiedTime(root.resolve("a/b.txt")).toMillis(),
+                 file.getLastModified());
+    assertEquals("text/plain", file.getContentType());
+    assertTrue(file.isReadable());
+    assertEquals(root.resolve("a/b.txt").toAbsolutePath(), file.getPath());
+
+    assertEquals("application/javascript", index.get("/c.js").getContentType());
+    assertTrue(index.get("/a").isDirectory());
+    assertTrue(index.get("").isDirectory());
+    assertEquals(4, index.getCount());
+    assertEquals(4, index.getHits());
+  }
+
+  @Test
+  public void testContentTags() throws Exception {
+    String tag = String.format("%016x", XxHash64.hash("abc".getBytes(StandardCharsets.UTF_8)));
+    await(() -> tag.equals(index.get("/a/b.txt").getETag()));
+    assertNull(index.get("/a").getETag());
+
+    // the same content has the same tag, even if it was touched
+    write("d.txt", "abc");
+    await(() -> index.get("/d.txt") != null && tag.equals(index.get("/d.txt").getETag()));
+    Files.setLastModifiedTime(root.resolve("d.txt"), FileTime.fromMillis(1000));
+    await(() -> index.get("/d.txt").getLastModified() == 1000 &&
+                tag.equals(index.get("/d.txt").getETag()));
+
+    write("d.txt", "abcd");
+    await(() -> index.get("/d.txt").getSize() == 4 && index.get("/d.txt").getETag() != null);
+    assertNotEquals(tag, index.get("/d.txt").getETag());
+  }
+
+  @Test
+  public void testMissingPaths() {
+    assertNull(index.get("/missing.txt"));
+    assertNull(index.get("/a/b.txt/c"));
+    assertNull(index.get("/a/../c.js"));
+    assertNull(index.get("/../" + root.getFileName() + "/c.js"));
+    assertEquals(4, index.getMisses());
+  }
+
+  @Test
+  public void testPrecompressed() throws IOException {
+    Path compressed = write("c.js.gz", "gz");
+    FileIndex index = new FileIndex(root);
+    try {
+      assertEquals(compressed.toAbsolutePath(),
+                   index.getPrecompressed(index.get("/c.js")).getPath());
+      assertNull(index.getPrecompressed(index.get("/a/b.txt")));
+    } finally {
+      index.close();
+    }
+
+    Files.setLastModifiedTime(compressed, FileTime.fromMillis(0));
+    index = new FileIndex(root);
+    try {
+      assertNull(index.getPrecompressed(index.get("/c.js")));
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void testCreatedAndModifiedFiles() throws Exception {
+    write("new.txt", "new");
+    await(() -> index.get("/new.txt") != null);
+
+    write("new.txt", "changed");
+    await(() -> index.get("/new.txt").getSize() == 7);
+  }
+
+  @Test
+  public void testCreatedDirectory() throws Exception {
+    // the file exists before the directory is reported, it is found by reading the directory
+    write("d/e/f.txt", "f");
+    await(() -> index.get("/d/e/f.txt") != null);
+    assertTrue(index.get("/d/e").isDirectory());
+
+    write("d/e/g.txt", "g");
+    await(() -> index.get("/d/e/g.txt") != null);
+  }
+
+  @Test
+  public void testDeletedDirectory() throws Exception {
+    Files.delete(root.resolve("a/b.txt"));
+    Files.delete(root.resolve("a"));
+
+    await(() -> index.get("/a") == null);
+    assertNull(index.get("/a/b.txt"));
+    assertEquals(2, index.getCount());
+  }
+
+  /**
+   * The watch service reports changes asynchronously, so the index is asked until the change
+   * arrived
+   */
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!condition.getAsBoolean()) {
+      assertTrue("the change was not noticed", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private Path write(String name,
+                     String content) throws IOException {
+    Path file = root.resolve(name);
+    Files.createDirectories(file.getParent());
+    return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
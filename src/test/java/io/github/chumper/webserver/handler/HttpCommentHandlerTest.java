@@ -3,13 +3,22 @@ package io.github.chumper.webserver.handler;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import io.github.chumper.webserver.core.http.AsyncHttpHandler;
 import io.github.chumper.webserver.core.http.HttpBase;
-import io.github.chumper.webserver.core.http.HttpHandler;
+import io.github.chumper.webserver.core.http.HttpHeaders;
 import io.github.chumper.webserver.core.http.HttpRequest;
 import io.github.chumper.webserver.core.http.HttpResponse;
+import io.github.chumper.webserver.data.CachingCommentRepository;
 import io.github.chumper.webserver.data.Comment;
+import io.github.chumper.webserver.data.ConcurrentCommentRepository;
 import io.github.chumper.webserver.data.CommentRepository;
 import io.github.chumper.webserver.util.InMemoryRepo;
 
@@ -18,7 +27,7 @@ import static org.junit.Assert.*;
 public class HttpCommentHandlerTest {
 
   private CommentRepository repo = new InMemoryRepo();
-  private HttpHandler handler = new HttpCommentHandler(repo);
+  private AsyncHttpHandler handler = new HttpCommentHandler(repo);
 
   private HttpResponse response;
   private HttpRequest request;
@@ -26,6 +35,7 @@ public class HttpCommentHandlerTest {
   @Before
   public void setUp() throws Exception {
     this.request = new HttpRequest();
+    this.request.setPath("/comments");
     this.response = new HttpResponse();
     this.repo.clear();
   }
@@ -34,21 +44,21 @@ public class HttpCommentHandlerTest {
    * Will test if comments will be listed correctly
    */
   @Test
-  public void listNoComments() {
+  public void listNoComments() throws IOException {
 
     request.setPath("/comments");
     request.setMethod(HttpBase.Method.GET);
 
     handler.handle(request, response);
 
-    assertTrue(response.getContent().toString().contains("<form method=\"post\">"));
+    assertTrue(content().contains("<form method=\"post\">"));
   }
 
   /**
    * Will test if comments will be listed correctly
    */
   @Test
-  public void listComments() {
+  public void listComments() throws IOException {
 
     repo.add(new Comment(Instant.now(), "John", "Doe"));
 
@@ -57,13 +67,13 @@ public class HttpCommentHandlerTest {
 
     handler.handle(request, response);
 
-    assertTrue(response.getContent().toString().contains("<form method=\"post\">"));
-    assertTrue(response.getContent().toString().contains("name: John"));
-    assertTrue(response.getContent().toString().contains("message: Doe"));
+    assertTrue(content().contains("<form method=\"post\">"));
+    assertTrue(content().contains("name: John"));
+    assertTrue(content().contains("message: Doe"));
   }
 
   @Test
-  public void addComments() {
+  public void addComments() throws IOException {
 
     request.setPath("/comments");
     request.setMethod(HttpBase.Method.POST);
@@ -71,14 +81,14 @@ public class HttpCommentHandlerTest {
 
     handler.handle(request, response);
 
-    assertTrue(response.getContent().toString().contains("<form method=\"post\">"));
-    assertTrue(response.getContent().toString().contains("name: John"));
-    assertTrue(response.getContent().toString().contains("message: Doe"));
+    assertTrue(content().contains("<form method=\"post\">"));
+    assertTrue(content().contains("name: John"));
+    assertTrue(content().contains("message: Doe"));
 
   }
 
   @Test
-  public void deleteComments() {
+  public void deleteComments() throws IOException {
     repo.add(new Comment(Instant.now(), "John", "Doe"));
 
     request.setPath("/comments");
@@ -87,9 +97,172 @@ public class HttpCommentHandlerTest {
 
     handler.handle(request, response);
 
-    assertTrue(response.getContent().toString().contains("<form method=\"post\">"));
-    assertFalse(response.getContent().toString().contains("name: John"));
-    assertFalse(response.getContent().toString().contains("message: Doe"));
+    assertTrue(content().contains("<form method=\"post\">"));
+    assertFalse(content().contains("name: John"));
+    assertFalse(content().contains("message: Doe"));
   }
 
-}
\ No newline at end of file
+  /**
+   * The page of a versioned repository is rendered once and then answered from memory
+   */
+  @Test
+  public void cachedPage() throws IOException {
+    CachingCommentRepository cache = new CachingCommentRepository(repo);
+    HttpCommentHandler handler = new HttpCommentHandler(cache);
+    request.setMethod(HttpBase.Method.GET);
+
+    handler.handle(request, response);
+    String first = content();
+    response = new HttpResponse();
+    handler.handle(request, response);
+
+    assertEquals(first, content());
+    assertEquals(1, handler.getMisses());
+    assertEquals(1, handler.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  /**
+   * A change through the repository replaces the page
+   */
+  @Test
+  public void changeInvalidatesPage() throws IOException {
+    CachingCommentRepository cache = new CachingCommentRepository(repo);
+    HttpCommentHandler handler = new HttpCommentHandler(cache);
+    request.setMethod(HttpBase.Method.GET);
+    handler.handle(request, response);
+    String etag = response.getHeaders().get(HttpHeaders.ETAG);
+
+    cache.add(new Comment(Instant.now(), "John", "Doe"));
+    response = new HttpResponse();
+    handler.handle(request, response);
+
+    assertTrue(content().contains("name: John"));
+    assertNotEquals(etag, response.getHeaders().get(HttpHeaders.ETAG));
+    assertEquals(2, handler.getMisses());
+  }
+
+  /**
+   * A client that has the current page gets a 304 without a body
+   */
+  @Test
+  public void notModified() throws IOException {
+    repo.add(new Comment(Instant.now(), "John", "Doe"));
+    request.setMethod(HttpBase.Method.GET);
+    handler.handle(request, response);
+    String etag = response.getHeaders().get(HttpHeaders.ETAG);
+    assertNotNull(etag);
+
+    request.getHeaders().add(HttpHeaders.IF_NONE_MATCH, "\"" + etag + "\"");
+    response = new HttpResponse();
+    handler.handle(request, response);
+
+    assertEquals("304 Not modified", response.getStatus());
+    assertEquals("", content());
+  }
+
+  /**
+   * The page is the same for the same comments, so its tag does not depend on the server
+   */
+  @Test
+  public void etagDependsOnContent() {
+    repo.add(new Comment(Instant.EPOCH, "John", "Doe"));
+    request.setMethod(HttpBase.Method.GET);
+    handler.handle(request, response);
+    HttpResponse other = new HttpResponse();
+    new HttpCommentHandler(repo).handle(request, other);
+
+    assertEquals(response.getHeaders().get(HttpHeaders.ETAG),
+                 other.getHeaders().get(HttpHeaders.ETAG));
+  }
+
+  /**
+   * Each page links to the next one with the time of its last comment
+   */
+  @Test
+  public void pages() throws IOException {
+    Instant start = Instant.parse("2020-01-01T00:00:00Z");
+    for (int i = 0; i < 5; i++) {
+      repo.add(new Comment(start.plusSeconds(i), "name" + i, "message"));
+    }
+    HttpCommentHandler handler = new HttpCommentHandler(repo, Runnable::run, 2);
+    request.setMethod(HttpBase.Method.GET);
+
+    handler.handle(request, response);
+    String first = content();
+    assertTrue(first.indexOf("name: name4") < first.indexOf("name: name3"));
+    assertFalse(first.contains("name: name2"));
+    assertTrue(first.contains("<a href=\"?after=2020-01-01T00%3A00%3A03Z\">"));
+
+    request.setPath("/comments?after=2020-01-01T00%3A00%3A03Z");
+    response = new HttpResponse();
+    handler.handle(request, response);
+    String second = content();
+    assertTrue(second.contains("name: name2"));
+    assertTrue(second.contains("name: name1"));
+    assertFalse(second.contains("name: name3"));
+    assertTrue(second.contains("?after=2020-01-01T00%3A00%3A01Z"));
+
+    request.setPath("/comments?after=2020-01-01T00:00:01Z");
+    response = new HttpResponse();
+    handler.handle(request, response);
+    String last = content();
+    assertTrue(last.contains("name: name0"));
+    assertFalse(last.contains("?after="));
+  }
+
+  /**
+   * Comments of the same time on both sides of a page boundary are all listed once
+   */
+  @Test
+  public void pagesWithCommentsOfTheSameTime() throws IOException {
+    ConcurrentCommentRepository concurrent = new ConcurrentCommentRepository();
+    Instant posted = Instant.parse("2020-01-01T00:00:00Z");
+    for (int i = 0; i < 5; i++) {
+      concurrent.add(new Comment(posted, "name" + i, "message"));
+    }
+    HttpCommentHandler handler = new HttpCommentHandler(concurrent, Runnable::run, 2);
+    request.setMethod(HttpBase.Method.GET);
+
+    List<String> names = new ArrayList<>();
+    String link = "";
+    do {
+      request.setPath("/comments" + link.replace("&amp;", "&"));
+      response = new HttpResponse();
+      handler.handle(request, response);
+      String page = content();
+      Matcher name = Pattern.compile("name: (name\\d)").matcher(page);
+      while (name.find()) {
+        names.add(name.group(1));
+      }
+      Matcher next = Pattern.compile("<a href=\"([^\"]*)\">").matcher(page);
+      link = next.find() ? next.group(1) : null;
+    } while (link != null);
+
+    assertEquals(Arrays.asList("name4", "name3", "name2", "name1", "name0"), names);
+  }
+
+  @Test
+  public void invalidCommentId() {
+    request.setPath("/comments?after=2020-01-01T00:00:01Z&id=%3Cscript%3E");
+    request.setMethod(HttpBase.Method.GET);
+
+    handler.handle(request, response);
+
+    assertEquals("400 Bad request", response.getStatus());
+  }
+
+  @Test
+  public void invalidCursor() {
+    request.setPath("/comments?after=yesterday");
+    request.setMethod(HttpBase.Method.GET);
+
+    handler.handle(request, response);
+
+    assertEquals("400 Bad request", response.getStatus());
+  }
+
+  private String content() throws IOException {
+    return response.getContent().toString("UTF-8");
+  }
+}
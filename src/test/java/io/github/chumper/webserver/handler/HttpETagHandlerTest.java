@@ -3,13 +3,18 @@ package io.github.chumper.webserver.handler;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.file.Paths;
+
+import io.github.chumper.webserver.core.http.FileRegion;
 import io.github.chumper.webserver.core.http.HttpBase;
 import io.github.chumper.webserver.core.http.HttpHeaders;
 import io.github.chumper.webserver.core.http.HttpRequest;
 import io.github.chumper.webserver.core.http.HttpResponse;
+import io.github.chumper.webserver.core.http.MultipartByteRanges;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class HttpETagHandlerTest {
 
@@ -156,9 +161,9 @@ public class HttpETagHandlerTest {
   @Test
   public void IfUnmodifiedSinceFalse() {
 
-    request.getHeaders().add(HttpHeaders.IF_UNMODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 CEST");
+    request.getHeaders().add(HttpHeaders.IF_UNMODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 GMT");
 
-    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:58 CEST");
+    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:58 GMT");
     response.getHeaders().add(HttpHeaders.ETAG, "123");
 
     handler.handle(request, response);
@@ -173,10 +178,10 @@ public class HttpETagHandlerTest {
   public void IfUnmodifiedSinceTrueIfNoneMatchFalseGet() {
 
     request.setMethod(HttpBase.Method.GET);
-    request.getHeaders().add(HttpHeaders.IF_UNMODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 CEST");
+    request.getHeaders().add(HttpHeaders.IF_UNMODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 GMT");
     request.getHeaders().add(HttpHeaders.IF_NONE_MATCH, "123");
 
-    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 CEST");
+    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 GMT");
     response.getHeaders().add(HttpHeaders.ETAG, "123");
 
     handler.handle(request, response);
@@ -191,10 +196,10 @@ public class HttpETagHandlerTest {
   public void IfUnmodifiedSinceTrueIfNoneMatchFalseHead() {
 
     request.setMethod(HttpBase.Method.HEAD);
-    request.getHeaders().add(HttpHeaders.IF_UNMODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 CEST");
+    request.getHeaders().add(HttpHeaders.IF_UNMODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 GMT");
     request.getHeaders().add(HttpHeaders.IF_NONE_MATCH, "123");
 
-    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 CEST");
+    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 GMT");
     response.getHeaders().add(HttpHeaders.ETAG, "123");
 
     handler.handle(request, response);
@@ -209,10 +214,10 @@ public class HttpETagHandlerTest {
   public void IfUnmodifiedSinceTrueIfNoneMatchFalsePOS() {
 
     request.setMethod(HttpBase.Method.POST);
-    request.getHeaders().add(HttpHeaders.IF_UNMODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 CEST");
+    request.getHeaders().add(HttpHeaders.IF_UNMODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 GMT");
     request.getHeaders().add(HttpHeaders.IF_NONE_MATCH, "123");
 
-    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 CEST");
+    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 GMT");
     response.getHeaders().add(HttpHeaders.ETAG, "123");
 
     handler.handle(request, response);
@@ -226,10 +231,10 @@ public class HttpETagHandlerTest {
   @Test
   public void IfUnmodifiedSinceTrueIfNoneMatchTrue() {
 
-    request.getHeaders().add(HttpHeaders.IF_UNMODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 CEST");
+    request.getHeaders().add(HttpHeaders.IF_UNMODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 GMT");
     request.getHeaders().add(HttpHeaders.IF_NONE_MATCH, "1231");
 
-    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 CEST");
+    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 GMT");
     response.getHeaders().add(HttpHeaders.ETAG, "123");
 
     handler.handle(request, response);
@@ -336,10 +341,10 @@ public class HttpETagHandlerTest {
   public void GetIfModifiedSinceTrue() {
 
     request.setMethod(HttpBase.Method.GET);
-    request.getHeaders().add(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 CEST");
+    request.getHeaders().add(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 GMT");
 
     response.getHeaders().add(HttpHeaders.ETAG, "123");
-    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:58 CEST");
+    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:58 GMT");
 
     handler.handle(request, response);
 
@@ -353,10 +358,10 @@ public class HttpETagHandlerTest {
   public void GetIfModifiedSinceFalse() {
 
     request.setMethod(HttpBase.Method.GET);
-    request.getHeaders().add(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 CEST");
+    request.getHeaders().add(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 GMT");
 
     response.getHeaders().add(HttpHeaders.ETAG, "123");
-    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 CEST");
+    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 GMT");
 
     handler.handle(request, response);
 
@@ -370,10 +375,10 @@ public class HttpETagHandlerTest {
   public void HeadIfModifiedSinceTrue() {
 
     request.setMethod(HttpBase.Method.HEAD);
-    request.getHeaders().add(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 CEST");
+    request.getHeaders().add(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 GMT");
 
     response.getHeaders().add(HttpHeaders.ETAG, "123");
-    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:58 CEST");
+    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:58 GMT");
 
     handler.handle(request, response);
 
@@ -387,10 +392,10 @@ public class HttpETagHandlerTest {
   public void HeadIfModifiedSinceFalse() {
 
     request.setMethod(HttpBase.Method.HEAD);
-    request.getHeaders().add(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 CEST");
+    request.getHeaders().add(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 29 Sep 2016 15:00:57 GMT");
 
     response.getHeaders().add(HttpHeaders.ETAG, "123");
-    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 CEST");
+    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 GMT");
 
     handler.handle(request, response);
 
@@ -399,6 +404,128 @@ public class HttpETagHandlerTest {
     assertEquals("304 Not modified", response.getStatus());
   }
 
+  // if none match with the tag of a compressed variant -> 304
+  @Test
+  public void GetIfNoneMatchCompressed() {
+
+    request.setMethod(HttpBase.Method.GET);
+    request.getHeaders().add(HttpHeaders.IF_NONE_MATCH, "\"123-gzip\"");
+
+    response.getHeaders().add(HttpHeaders.ETAG, "123-gzip");
+
+    handler.handle(request, response);
+
+    assertEquals("304 Not modified", response.getStatus());
+
+    // the pipeline appends the coding after the handlers
+    response = new HttpResponse();
+    response.getHeaders().add(HttpHeaders.ETAG, "123");
+
+    handler.handle(request, response);
+
+    assertEquals("304 Not modified", response.getStatus());
+  }
+
+  // range of a file -> 206 with the part of the file
+  @Test
+  public void GetRange() {
+
+    request.setMethod(HttpBase.Method.GET);
+    request.getHeaders().add(HttpHeaders.RANGE, "bytes=10-19");
+
+    response.getHeaders().add(HttpHeaders.ETAG, "123");
+    response.setBody(new FileRegion(Paths.get("file"), 0, 100));
+
+    handler.handle(request, response);
+
+    assertEquals("206 Partial content", response.getStatus());
+    assertEquals("bytes 10-19/100", response.getHeaders().get(HttpHeaders.CONTENT_RANGE));
+    assertEquals(10, ((FileRegion) response.getBody()).getPosition());
+    assertEquals(10, response.getContentLength());
+  }
+
+  // several ranges -> 206 with a multipart body
+  @Test
+  public void GetMultipleRanges() {
+
+    request.setMethod(HttpBase.Method.GET);
+    request.getHeaders().add(HttpHeaders.RANGE, "bytes=0-9,-10");
+
+    response.getHeaders().add(HttpHeaders.ETAG, "123");
+    response.setBody(new FileRegion(Paths.get("file"), 0, 100));
+
+    handler.handle(request, response);
+
+    assertEquals("206 Partial content", response.getStatus());
+    assertTrue(response.getHeaders().get(HttpHeaders.CONTENT_TYPE)
+                   .startsWith("multipart/byteranges; boundary="));
+    assertTrue(response.getBody() instanceof MultipartByteRanges);
+  }
+
+  // range behind the end of the file -> 416
+  @Test
+  public void GetRangeNotSatisfiable() {
+
+    request.setMethod(HttpBase.Method.GET);
+    request.getHeaders().add(HttpHeaders.RANGE, "bytes=100-");
+
+    response.getHeaders().add(HttpHeaders.ETAG, "123");
+    response.setBody(new FileRegion(Paths.get("file"), 0, 100));
+
+    handler.handle(request, response);
+
+    assertEquals("416 Range not satisfiable", response.getStatus());
+    assertEquals("bytes */100", response.getHeaders().get(HttpHeaders.CONTENT_RANGE));
+    assertEquals(0, response.getContentLength());
+  }
+
+  // if range with an outdated etag -> 200 with the complete file
+  @Test
+  public void GetIfRangeFalse() {
+
+    request.setMethod(HttpBase.Method.GET);
+    request.getHeaders().add(HttpHeaders.RANGE, "bytes=10-19");
+    request.getHeaders().add(HttpHeaders.IF_RANGE, "\"122\"");
+
+    response.getHeaders().add(HttpHeaders.ETAG, "123");
+    response.setBody(new FileRegion(Paths.get("file"), 0, 100));
+
+    handler.handle(request, response);
+
+    assertEquals("200 OK", response.getStatus());
+    assertEquals(100, response.getContentLength());
+  }
+
+  // if range with the current date -> 206
+  @Test
+  public void GetIfRangeDate() {
+
+    request.setMethod(HttpBase.Method.GET);
+    request.getHeaders().add(HttpHeaders.RANGE, "bytes=10-19");
+    request.getHeaders().add(HttpHeaders.IF_RANGE, "Thu, 29 Sep 2016 15:00:56 GMT");
+
+    response.getHeaders().add(HttpHeaders.ETAG, "123");
+    response.getHeaders().add(HttpHeaders.LAST_MODIFIED, "Thu, 29 Sep 2016 15:00:56 GMT");
+    response.setBody(new FileRegion(Paths.get("file"), 0, 100));
 
+    handler.handle(request, response);
 
-}
\ No newline at end of file
+    assertEquals("206 Partial content", response.getStatus());
+  }
+
+  // head is never answered partially
+  @Test
+  public void HeadRange() {
+
+    request.setMethod(HttpBase.Method.HEAD);
+    request.getHeaders().add(HttpHeaders.RANGE, "bytes=10-19");
+
+    response.getHeaders().add(HttpHeaders.ETAG, "123");
+    response.setBody(new FileRegion(Paths.get("file"), 0, 100));
+
+    handler.handle(request, response);
+
+    assertEquals("200 OK", response.getStatus());
+    assertEquals(100, response.getContentLength());
+  }
+}
@@ -3,19 +3,41 @@ package io.github.chumper.webserver.handler;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import io.github.chumper.webserver.core.http.BufferRegion;
+import io.github.chumper.webserver.core.http.FileRegion;
 import io.github.chumper.webserver.core.http.HttpBase;
+import io.github.chumper.webserver.core.http.HttpDate;
 import io.github.chumper.webserver.core.http.HttpHandler;
 import io.github.chumper.webserver.core.http.HttpHeaders;
 import io.github.chumper.webserver.core.http.HttpRequest;
 import io.github.chumper.webserver.core.http.HttpResponse;
+import io.github.chumper.webserver.core.pipeline.HttpRouter;
+import io.github.chumper.webserver.files.DirectoryListings;
+import io.github.chumper.webserver.files.FileCache;
+import io.github.chumper.webserver.files.FileIndex;
+import io.github.chumper.webserver.util.XxHash64;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class HttpFileHandlerTest {
 
-  private HttpHandler handler = new HttpFileHandler("src/test/resources");
+  private HttpHandler handler = files(new HttpFileHandler("src/test/resources"));
 
   private HttpResponse response;
   private HttpRequest request;
@@ -27,14 +49,14 @@ public class HttpFileHandlerTest {
   }
 
   @Test
-  public void testFileC() {
+  public void testFileC() throws IOException {
 
     request.setMethod(HttpBase.Method.GET);
     request.setPath("/files/c.txt");
 
     handler.handle(request, response);
 
-    assertEquals("c", response.getContent().toString());
+    assertEquals("c", readBody(response));
 
     assertNotNull(response.getHeaders().get(HttpHeaders.ETAG));
     assertNotNull(response.getHeaders().get(HttpHeaders.LAST_MODIFIED));
@@ -42,14 +64,14 @@ public class HttpFileHandlerTest {
   }
 
   @Test
-  public void testFileB() {
+  public void testFileB() throws IOException {
 
     request.setMethod(HttpBase.Method.GET);
     request.setPath("/files//a/b.txt");
 
     handler.handle(request, response);
 
-    assertEquals("abc", response.getContent().toString());
+    assertEquals("abc", readBody(response));
 
     assertNotNull(response.getHeaders().get(HttpHeaders.ETAG));
     assertNotNull(response.getHeaders().get(HttpHeaders.LAST_MODIFIED));
@@ -85,4 +107,282 @@ public class HttpFileHandlerTest {
     assertNull(response.getHeaders().get(HttpHeaders.LAST_MODIFIED));
 
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testPrecompressedFile() throws IOException {
+    Path dir = Files.createTempDirectory(Files.createDirectories(Paths.get("build", "tmp")), "gz");
+    try {
+      Path file = Files.write(dir.resolve("app.js"), "app".getBytes(StandardCharsets.UTF_8));
+      Path compressed = Files.write(dir.resolve("app.js.gz"),
+                                    "gz".getBytes(StandardCharsets.UTF_8));
+      HttpHandler handler = files(new HttpFileHandler(dir.toString()));
+
+      request.setMethod(HttpBase.Method.GET);
+      request.setPath("/files/app.js");
+      request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+      handler.handle(request, response);
+
+      assertEquals("gz", readBody(response));
+      assertEquals("gzip", response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+      assertEquals("Accept-Encoding", response.getHeaders().get(HttpHeaders.VARY));
+      String lastModified =
+          HttpDate.format(Files.getLastModifiedTime(file).toMillis());
+      assertEquals(lastModified, response.getHeaders().get(HttpHeaders.LAST_MODIFIED));
+      String etag = response.getHeaders().get(HttpHeaders.ETAG);
+
+      // clients without gzip get the original with a different tag
+      request = new HttpRequest();
+      response = new HttpResponse();
+      request.setMethod(HttpBase.Method.GET);
+      request.setPath("/files/app.js");
+      handler.handle(request, response);
+
+      assertEquals("app", readBody(response));
+      assertNull(response.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+      assertEquals("Accept-Encoding", response.getHeaders().get(HttpHeaders.VARY));
+      assertEquals(etag, response.getHeaders().get(HttpHeaders.ETAG) + "-gzip");
+
+      // an outdated compressed file is not used
+      Files.setLastModifiedTime(compressed, FileTime.fromMillis(0));
+      request = new HttpRequest();
+      response = new HttpResponse();
+      request.setMethod(HttpBase.Method.GET);
+      request.setPath("/files/app.js");
+      request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+      handler.handle(request, response);
+
+      assertEquals("app", readBody(response));
+      assertNull(response.getHeaders().get(HttpHeaders.VARY));
+    } finally {
+      Files.deleteIfExists(dir.resolve("app.js"));
+      Files.deleteIfExists(dir.resolve("app.js.gz"));
+      Files.delete(dir);
+    }
+  }
+
+  @Test
+  public void testCachedFile() throws IOException {
+    try (FileCache cache = new FileCache(Paths.get("src/test/resources"), 1024, 1024, false)) {
+      HttpHandler handler = files(new HttpFileHandler("src/test/resources", cache));
+
+      for (int i = 0; i < 2; i++) {
+        request = new HttpRequest();
+        response = new HttpResponse();
+        request.setMethod(HttpBase.Method.GET);
+        request.setPath("/files/a/b.txt");
+        handler.handle(request, response);
+
+        ByteBuffer content = ((BufferRegion) response.getBody()).getContent();
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        assertEquals("abc", new String(bytes, StandardCharsets.UTF_8));
+        assertEquals(3, response.getContentLength());
+        assertEquals("bytes", response.getHeaders().get(HttpHeaders.ACCEPT_RANGES));
+        // the tag is the hash of the content
+        assertEquals(String.format("%016x", XxHash64.hash(bytes)),
+                     response.getHeaders().get(HttpHeaders.ETAG));
+      }
+      assertEquals(1, cache.getHits());
+      assertEquals(1, cache.getMisses());
+
+      // directories are still listed
+      request = new HttpRequest();
+      response = new HttpResponse();
+      request.setMethod(HttpBase.Method.GET);
+      request.setPath("/files/a");
+      handler.handle(request, response);
+      assertEquals("a" + File.separator + "b.txt\r\n", response.getContent().toString());
+    }
+  }
+
+  @Test
+  public void testConditionsAreEvaluatedBeforeTheContent() throws Exception {
+    Path root = Paths.get("src/test/resources");
+    try (FileIndex index = new FileIndex(root);
+         FileCache cache = new FileCache(root, 1024, 1024, false)) {
+      HttpHandler handler = files(new HttpFileHandler("src/test/resources", cache, index, null));
+      String hash = String.format("%016x", XxHash64.hash("abc".getBytes(StandardCharsets.UTF_8)));
+      long deadline = System.currentTimeMillis() + 10000;
+      while (!hash.equals(index.get("/a/b.txt").getETag())) {
+        assertTrue("the file was not hashed", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+
+      request.setMethod(HttpBase.Method.GET);
+      request.setPath("/files/a/b.txt");
+      request.getHeaders().add(HttpHeaders.IF_NONE_MATCH, "\"" + hash + "\"");
+      handler.handle(request, response);
+
+      assertEquals("304 Not modified", response.getStatus());
+      assertEquals(hash, response.getHeaders().get(HttpHeaders.ETAG));
+      assertNull(response.getBody());
+      assertNull(response.getHeaders().get(HttpHeaders.CONTENT_TYPE));
+      // the client has the content, so it was not loaded into the cache
+      assertEquals(0, cache.getMisses());
+      assertEquals(0, cache.getCount());
+
+      request = new HttpRequest();
+      response = new HttpResponse();
+      request.setMethod(HttpBase.Method.GET);
+      request.setPath("/files/a/b.txt");
+      handler.handle(request, response);
+      assertTrue(response.getBody() instanceof BufferRegion);
+      assertEquals(3, response.getContentLength());
+      assertEquals(1, cache.getCount());
+    }
+  }
+
+  @Test
+  public void testPathOutsideOfRoot() {
+    request.setMethod(HttpBase.Method.GET);
+    request.setPath("/files/../main/java/io/github/chumper/webserver/Main.java");
+
+    handler.handle(request, response);
+
+    assertEquals("404 Not found", response.getStatus());
+    assertNull(response.getBody());
+  }
+
+  @Test
+  public void testIndexedFiles() throws IOException {
+    try (FileIndex index = new FileIndex(Paths.get("src/test/resources"))) {
+      HttpHandler handler = files(new HttpFileHandler("src/test/resources", null, index, null));
+
+      request.setMethod(HttpBase.Method.GET);
+      request.setPath("/files//a/b.txt");
+      handler.handle(request, response);
+
+      assertEquals("abc", readBody(response));
+      assertEquals("text/plain", response.getHeaders().get(HttpHeaders.CONTENT_TYPE));
+      // until the content is hashed the tag is the modification time
+      String lastModified = String.valueOf(new File("src/test/resources/a/b.txt").lastModified());
+      String hash = String.format("%016x", XxHash64.hash("abc".getBytes(StandardCharsets.UTF_8)));
+      String etag = response.getHeaders().get(HttpHeaders.ETAG);
+      assertTrue(etag, etag.equals(lastModified) || etag.equals(hash));
+
+      for (String path : new String[]{"/files/missing.txt", "/files/../resources/c.txt"}) {
+        request = new HttpRequest();
+        response = new HttpResponse();
+        request.setMethod(HttpBase.Method.GET);
+        request.setPath(path);
+        handler.handle(request, response);
+
+        assertEquals("404 Not found", response.getStatus());
+        assertNull(response.getBody());
+      }
+      assertEquals(2, index.getMisses());
+
+      request = new HttpRequest();
+      response = new HttpResponse();
+      request.setMethod(HttpBase.Method.GET);
+      request.setPath("/files");
+      handler.handle(request, response);
+
+      assertEquals("a\r\nc.txt\r\n", response.getContent().toString());
+    }
+  }
+
+  @Test
+  public void testDirectoryPages() throws IOException {
+    Path dir = Files.createTempDirectory(Files.createDirectories(Paths.get("build", "tmp")), "list");
+    try {
+      for (String name : new String[]{"c", "a", "e", "b", "d"}) {
+        Files.createFile(dir.resolve(name));
+      }
+      // a listing is only cached when the directory did not change recently
+      Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis() - 10000));
+      DirectoryListings listings = new DirectoryListings(100);
+      HttpHandler handler = files(new HttpFileHandler(dir.toString(), null, null, listings));
+
+      assertEquals("a\r\nb\r\nc\r\nd\r\ne\r\n", list(handler, "/files").getContent().toString());
+      assertEquals("b\r\nc\r\n", list(handler, "/files?offset=1&limit=2").getContent().toString());
+      assertEquals("e\r\n", list(handler, "/files?offset=4&limit=2").getContent().toString());
+      assertEquals("", list(handler, "/files?limit=0").getContent().toString());
+      assertEquals("", list(handler, "/files?offset=9").getContent().toString());
+      assertEquals("400 Bad request", list(handler, "/files?offset=x").getStatus());
+      assertEquals("400 Bad request", list(handler, "/files?limit=-1").getStatus());
+      // the directory was read once, all other pages came from the cache
+      assertEquals(1, listings.getMisses());
+      assertEquals(4, listings.getHits());
+
+      // a client with the current listing gets 304 without the listing being looked at
+      String etag = list(handler, "/files").getHeaders().get(HttpHeaders.ETAG);
+      request = new HttpRequest();
+      response = new HttpResponse();
+      request.setMethod(HttpBase.Method.GET);
+      request.setPath("/files?limit=1");
+      request.getHeaders().add(HttpHeaders.IF_NONE_MATCH, etag);
+      handler.handle(request, response);
+      assertEquals("304 Not modified", response.getStatus());
+      assertEquals(0, response.getContentLength());
+      assertEquals(5, listings.getHits());
+
+      // a new entry changes the directory and with it the listing
+      Files.createFile(dir.resolve("f"));
+      Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis() - 5000));
+      HttpResponse changed = list(handler, "/files?offset=5");
+      assertEquals("f\r\n", changed.getContent().toString());
+      assertNotEquals(etag, changed.getHeaders().get(HttpHeaders.ETAG));
+    } finally {
+      try (Stream<Path> paths = Files.walk(dir)) {
+        paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+
+  @Test
+  public void testLargeDirectoryIsStreamed() throws IOException {
+    Path dir = Files.createTempDirectory(Files.createDirectories(Paths.get("build", "tmp")), "list");
+    try {
+      for (int i = 0; i < 1500; i++) {
+        Files.createFile(dir.resolve(String.format("%04d", i)));
+      }
+      HttpHandler handler = files(new HttpFileHandler(dir.toString(), null, null, null));
+
+      HttpResponse response = list(handler, "/files?offset=100");
+      assertEquals(-1, response.getContentLength());
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      response.getBodyWriter().writeTo(body);
+      String[] entries = body.toString("UTF-8").split("\r\n");
+      assertEquals(1400, entries.length);
+      assertEquals("0100", entries[0]);
+      assertEquals("1499", entries[1399]);
+
+      // small pages are buffered
+      assertEquals("1499\r\n", list(handler, "/files?offset=1499&limit=1000").getContent().toString());
+    } finally {
+      try (Stream<Path> paths = Files.walk(dir)) {
+        paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+
+  private HttpResponse list(HttpHandler handler,
+                            String path) {
+    HttpRequest request = new HttpRequest();
+    HttpResponse response = new HttpResponse();
+    request.setMethod(HttpBase.Method.GET);
+    request.setPath(path);
+    handler.handle(request, response);
+    return response;
+  }
+
+  /**
+   * Files are not copied into the response but sent as a region of the file
+   */
+  private String readBody(HttpResponse response) throws IOException {
+    FileRegion region = (FileRegion) response.getBody();
+    assertEquals(0, response.getContent().size());
+    assertEquals(Files.size(region.getPath()), response.getContentLength());
+    return new String(Files.readAllBytes(region.getPath()));
+  }
+
+  /**
+   * Mounts the handler below /files like the server does
+   */
+  private static HttpHandler files(HttpFileHandler handler) {
+    HttpRouter router = new HttpRouter();
+    router.route(HttpBase.Method.GET, "/files/*", handler);
+    return (request, response) -> router.handle(request, response);
+  }
+}
@@ -0,0 +1,114 @@
+package io.github.chumper.webserver.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrecompressorTest {
+
+  private Precompressor precompressor = new Precompressor(100, 0.9);
+
+  private Path root;
+
+  @Before
+  public void setUp() throws Exception {
+    root = Files.createTempDirectory(Files.createDirectories(Paths.get("build", "tmp")), "static");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> paths = Files.walk(root)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void testCompressesTextFiles() throws IOException {
+    byte[] text = text();
+    Path file = write("js/app.js", text);
+
+    assertEquals(1, precompressor.compress(root));
+
+    Path compressed = root.resolve("js/app.js.gz");
+    assertTrue(Files.exists(compressed));
+    assertEquals(Files.getLastModifiedTime(file), Files.getLastModifiedTime(compressed));
+    assertArrayEquals(text, gunzip(compressed));
+
+    // nothing changed, so nothing is created again
+    assertEquals(0, precompressor.compress(root));
+  }
+
+  @Test
+  public void testOutdatedFileIsCompressedAgain() throws IOException {
+    Path file = write("app.js", text());
+    precompressor.compress(root);
+
+    byte[] changed = (new String(text(), StandardCharsets.UTF_8) + "changed")
+        .getBytes(StandardCharsets.UTF_8);
+    Files.write(file, changed);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+    assertEquals(1, precompressor.compress(root));
+    assertArrayEquals(changed, gunzip(root.resolve("app.js.gz")));
+  }
+
+  @Test
+  public void testSkipsFilesThatDoNotCompressWell() throws IOException {
+    byte[] random = new byte[10000];
+    new Random(42).nextBytes(random);
+    write("random.bin", random);
+    write("small.txt", "small".getBytes(StandardCharsets.UTF_8));
+    write("image.png", text());
+
+    assertEquals(0, precompressor.compress(root));
+
+    assertFalse(Files.exists(root.resolve("random.bin.gz")));
+    assertFalse(Files.exists(root.resolve("small.txt.gz")));
+    assertFalse(Files.exists(root.resolve("image.png.gz")));
+  }
+
+  private Path write(String name,
+                     byte[] content) throws IOException {
+    Path file = root.resolve(name);
+    Files.createDirectories(file.getParent());
+    return Files.write(file, content);
+  }
+
+  private static byte[] text() {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      text.append("function f").append(i).append("() { return ").append(i).append("; }\n");
+    }
+    return text.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] gunzip(Path file) throws IOException {
+    try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(file))) {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        content.write(buffer, 0, read);
+      }
+      return content.toByteArray();
+    }
+  }
+}
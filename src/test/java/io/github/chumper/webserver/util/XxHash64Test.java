@@ -0,0 +1,59 @@
+package io.github.chumper.webserver.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class XxHash64Test {
+
+  @Test
+  public void testKnownHashes() {
+    assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(new byte[0]));
+    assertEquals(0x44BC2CF5AD770999L, XxHash64.hash(bytes("abc")));
+    assertEquals(0x0B242D361FDA71BCL,
+                 XxHash64.hash(bytes("The quick brown fox jumps over the lazy dog")));
+    assertEquals(0x6EF436B00EBA4078L, XxHash64.hash(sequence(1000)));
+  }
+
+  @Test
+  public void testPartsHaveTheSameHash() {
+    byte[] content = sequence(1000);
+    for (int size : new int[]{1, 3, 7, 31, 32, 33, 100, 999}) {
+      XxHash64 hash = new XxHash64();
+      for (int offset = 0; offset < content.length; offset += size) {
+        hash.update(ByteBuffer.wrap(content, offset, Math.min(size, content.length - offset)));
+      }
+      assertEquals("parts of " + size + " bytes", 0x6EF436B00EBA4078L, hash.getValue());
+    }
+  }
+
+  @Test
+  public void testDirectBufferKeepsItsOrder() {
+    byte[] content = sequence(100);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+    buffer.put(content).flip();
+
+    XxHash64 hash = new XxHash64();
+    hash.update(buffer);
+
+    assertEquals(XxHash64.hash(content), hash.getValue());
+    assertEquals(0, buffer.remaining());
+    assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static byte[] sequence(int length) {
+    byte[] content = new byte[length];
+    for (int i = 0; i < length; i++) {
+      content[i] = (byte) i;
+    }
+    return content;
+  }
+}